@@ -0,0 +1,103 @@
+package com.redhat.hacbs.recipes;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.jboss.logging.Logger;
+
+/**
+ * A thread safe cache of parsed recipe files, that is shared by everything that reads recipes.
+ * <p>
+ * Parsed recipes are keyed by the type of recipe and the SHA-256 hash of the file contents, so the same file in
+ * different checkouts or snapshots of a recipe repository is only parsed once. The hash of each file is also remembered
+ * along with its size and modification time, so as long as a file has not changed it is not read again at all. Recipe
+ * directories call {@link #invalidate(Path)} when their contents change.
+ * <p>
+ * The returned objects are shared between all callers and must not be modified.
+ */
+public final class ParsedRecipeCache {
+
+    private static final Logger log = Logger.getLogger(ParsedRecipeCache.class);
+
+    public static final ParsedRecipeCache INSTANCE = new ParsedRecipeCache(10000);
+
+    private final int maxEntries;
+    private final ConcurrentMap<Key, Object> parsed = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Path, FileEntry> files = new ConcurrentHashMap<>();
+
+    /**
+     * @param maxEntries The maximum number of parsed recipes to cache, if there are more than this the cache is cleared
+     */
+    public ParsedRecipeCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * @param handler The handler for the type of recipe
+     * @param file The recipe file
+     * @return The parsed recipe, which must not be modified
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T parse(RecipeManager<T> handler, Path file) throws IOException {
+        var path = file.toAbsolutePath().normalize();
+        var attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        var entry = files.get(path);
+        if (entry != null && entry.handler() == handler.getClass() && entry.size() == attributes.size()
+                && entry.modified().equals(attributes.lastModifiedTime())) {
+            var result = parsed.get(entry.key());
+            if (result != null) {
+                return (T) result;
+            }
+        }
+        var contents = Files.readAllBytes(path);
+        var key = new Key(handler.getClass(), hash(contents));
+        var result = (T) parsed.get(key);
+        if (result == null) {
+            result = handler.parse(new ByteArrayInputStream(contents));
+            if (parsed.size() >= maxEntries || files.size() >= maxEntries) {
+                log.infof("Parsed recipe cache has more than %s entries, clearing", maxEntries);
+                clear();
+            }
+            parsed.put(key, result);
+        }
+        files.put(path, new FileEntry(handler.getClass(), attributes.size(), attributes.lastModifiedTime(), key));
+        return result;
+    }
+
+    /**
+     * Forgets the files under the directory, so they will be read again next time they are parsed. Recipes that are
+     * already parsed are still used if the contents of the file are the same.
+     */
+    public void invalidate(Path directory) {
+        var path = directory.toAbsolutePath().normalize();
+        files.keySet().removeIf(p -> p.startsWith(path));
+    }
+
+    public void clear() {
+        files.clear();
+        parsed.clear();
+    }
+
+    private static String hash(byte[] contents) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(contents));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private record Key(Class<?> handler, String hash) {
+    }
+
+    private record FileEntry(Class<?> handler, long size, FileTime modified, Key key) {
+    }
+}
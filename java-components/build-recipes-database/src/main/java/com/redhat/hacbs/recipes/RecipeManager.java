@@ -35,6 +35,14 @@ public interface RecipeManager<T> {
         }
     }
 
+    /**
+     * Parses the file, or returns the shared result of parsing a file with the same contents from the
+     * {@link ParsedRecipeCache}. The result must not be modified.
+     */
+    default T parseCached(Path file) throws IOException {
+        return ParsedRecipeCache.INSTANCE.parse(this, file);
+    }
+
     T parse(InputStream in) throws IOException;
 
     void write(T data, OutputStream out) throws IOException;
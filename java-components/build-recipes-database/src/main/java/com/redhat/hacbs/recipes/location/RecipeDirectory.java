@@ -1,5 +1,6 @@
 package com.redhat.hacbs.recipes.location;
 
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.Optional;
@@ -28,6 +29,16 @@ public interface RecipeDirectory {
 
     Optional<Path> getDisabledPlugins(String tool);
 
+    /**
+     * Checks if a recipe file exists, implementations can answer this without going to the filesystem
+     *
+     * @param file A file under one of the paths returned by this directory
+     * @return true if the file exists
+     */
+    default boolean exists(Path file) {
+        return Files.exists(file);
+    }
+
     default <T> void writeArtifactData(AddRecipeRequest<T> data) {
         throw new IllegalStateException("Not implemented");
     }
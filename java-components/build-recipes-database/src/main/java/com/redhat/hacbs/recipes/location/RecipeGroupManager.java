@@ -1,6 +1,5 @@
 package com.redhat.hacbs.recipes.location;
 
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -38,43 +37,45 @@ public class RecipeGroupManager {
         var group = gav.getGroupId();
         log.infof("Looking up %s", group);
 
-        List<RecipePathMatch> paths = new ArrayList<>();
+        List<Match<RecipePathMatch>> matches = new ArrayList<>();
         //we need to do a lookup
         for (var r : repositories) {
             var possible = r.getArtifactPaths(gav.getGroupId(), gav.getArtifactId(),
                     gav.getVersion());
             if (possible.isPresent()) {
-                paths.add(possible.get());
+                matches.add(new Match<>(r, possible.get()));
             }
         }
 
-        for (var path : paths) {
+        for (var match : matches) {
+            var r = match.directory();
+            var path = match.path();
             if (path.getArtifactAndVersion() != null) {
                 //if there is a file specific to this group, artifact and version it takes priority
                 Path resolvedPath = path.getArtifactAndVersion().resolve(BuildRecipe.SCM.getName());
                 log.infof("Searching for recipe in %s for specific path for GAV", resolvedPath);
-                if (Files.exists(resolvedPath)) {
+                if (r.exists(resolvedPath)) {
                     artifactVersionResults.add(resolvedPath);
                 }
             }
             if (path.getArtifact() != null) {
                 Path resolvedPath = path.getArtifact().resolve(BuildRecipe.SCM.getName());
                 log.infof("Searching for recipe in %s for specific path for GAV", resolvedPath);
-                if (Files.exists(resolvedPath)) {
+                if (r.exists(resolvedPath)) {
                     artifactResults.add(resolvedPath);
                 }
             }
             if (path.getVersion() != null) {
                 Path resolvedPath = path.getVersion().resolve(BuildRecipe.SCM.getName());
                 log.infof("Searching for recipe in %s for specific path for GAV", resolvedPath);
-                if (Files.exists(resolvedPath)) {
+                if (r.exists(resolvedPath)) {
                     versionResults.add(resolvedPath);
                 }
             }
             if (path.getGroup() != null) {
                 Path resolvedPath = path.getGroup().resolve(BuildRecipe.SCM.getName());
                 log.infof("Searching for recipe in %s for specific path for GAV", resolvedPath);
-                if (Files.exists(resolvedPath)) {
+                if (r.exists(resolvedPath)) {
                     groupResults.add(resolvedPath);
                 }
             }
@@ -95,19 +96,19 @@ public class RecipeGroupManager {
 
         String scmUri = normalizeScmUri(buildInfoRequest.getScmUri());
 
-        List<Path> paths = new ArrayList<>();
+        List<Match<Path>> matches = new ArrayList<>();
         for (var r : repositories) {
             var possible = r.getBuildPaths(scmUri, buildInfoRequest.getVersion());
             if (possible.isPresent()) {
-                paths.add(possible.get());
+                matches.add(new Match<>(r, possible.get()));
             }
         }
 
         Map<BuildRecipe, Path> buildResults = new HashMap<>();
         for (var recipe : buildInfoRequest.getRecipeFiles()) {
-            for (var path : paths) {
-                var option = path.resolve(recipe.getName());
-                if (Files.exists(option)) {
+            for (var match : matches) {
+                var option = match.path().resolve(recipe.getName());
+                if (match.directory().exists(option)) {
                     buildResults.put(recipe, option);
                     break;
                 }
@@ -138,4 +139,7 @@ public class RecipeGroupManager {
             r.update();
         }
     }
+
+    private record Match<T>(RecipeDirectory directory, T path) {
+    }
 }
@@ -0,0 +1,146 @@
+package com.redhat.hacbs.recipes.location;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import org.apache.maven.artifact.versioning.ComparableVersion;
+
+/**
+ * An immutable in memory snapshot of the files in a recipe directory.
+ * <p>
+ * The index is built with a single walk of the directory. Every directory is a node with its files and subdirectories,
+ * and if it has a {@link RecipeLayoutManager#VERSION} directory the versions in it are parsed and sorted up front. This
+ * means lookups never touch the filesystem. The index does not see changes made after it was built, so it must be
+ * rebuilt whenever the directory changes.
+ */
+final class RecipeIndex {
+
+    private static final Comparator<VersionEntry> VERSION_ORDER = Comparator.comparing(VersionEntry::version)
+            .thenComparing(v -> v.path().getFileName().toString());
+
+    private final Path root;
+    private final Node rootNode;
+
+    private RecipeIndex(Path root, Node rootNode) {
+        this.root = root;
+        this.rootNode = rootNode;
+    }
+
+    static RecipeIndex build(Path root) {
+        if (!Files.isDirectory(root)) {
+            return new RecipeIndex(root, new Node(root, Map.of(), Set.of(), List.of()));
+        }
+        try {
+            return new RecipeIndex(root, load(root, true));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to index recipe directory " + root, e);
+        }
+    }
+
+    /**
+     * @return The node for the directory, or null if it does not exist
+     */
+    Node directory(Path path) {
+        var relative = root.relativize(path);
+        var node = rootNode;
+        for (var segment : relative) {
+            var name = segment.toString();
+            if (name.isEmpty()) {
+                continue;
+            }
+            if (name.equals("..")) {
+                return null;
+            }
+            node = node.child(name);
+            if (node == null) {
+                return null;
+            }
+        }
+        return node;
+    }
+
+    boolean isFile(Path path) {
+        var fileName = path.getFileName();
+        var parent = path.getParent();
+        if (fileName == null || parent == null) {
+            return false;
+        }
+        var node = directory(parent);
+        return node != null && node.files().contains(fileName.toString());
+    }
+
+    private static Node load(Path dir, boolean root) throws IOException {
+        Map<String, Node> children = new HashMap<>();
+        Set<String> files = new HashSet<>();
+        try (var stream = Files.newDirectoryStream(dir)) {
+            for (var path : stream) {
+                var name = path.getFileName().toString();
+                if (Files.isDirectory(path)) {
+                    if (!(root && name.equals(".git"))) {
+                        children.put(name, load(path, false));
+                    }
+                } else {
+                    files.add(name);
+                }
+            }
+        }
+        List<VersionEntry> versions = new ArrayList<>();
+        var versionNode = children.get(RecipeLayoutManager.VERSION);
+        if (versionNode != null) {
+            for (var child : versionNode.children().values()) {
+                versions.add(new VersionEntry(new ComparableVersion(child.path().getFileName().toString()), child.path()));
+            }
+            versions.sort(VERSION_ORDER);
+        }
+        return new Node(dir, Map.copyOf(children), Set.copyOf(files), List.copyOf(versions));
+    }
+
+    /**
+     * A directory in the index
+     *
+     * @param path The directory
+     * @param children The subdirectories by name
+     * @param files The names of the files in the directory
+     * @param versions The contents of the {@link RecipeLayoutManager#VERSION} subdirectory, sorted by version
+     */
+    record Node(Path path, Map<String, Node> children, Set<String> files, List<VersionEntry> versions) {
+
+        Node child(String name) {
+            return children.get(name);
+        }
+
+        /**
+         * @return The directory for the lowest version that is the same as or newer than the requested version
+         */
+        Optional<Path> resolveVersion(String version) {
+            if (versions.isEmpty()) {
+                return Optional.empty();
+            }
+            var requested = new ComparableVersion(version);
+            int low = 0;
+            int high = versions.size();
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (versions.get(mid).version().compareTo(requested) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low == versions.size() ? Optional.empty() : Optional.of(versions.get(low).path());
+        }
+    }
+
+    record VersionEntry(ComparableVersion version, Path path) {
+    }
+}
@@ -8,10 +8,8 @@ import java.util.List;
 import java.util.Optional;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
-
-import org.apache.maven.artifact.versioning.ComparableVersion;
 
+import com.redhat.hacbs.recipes.ParsedRecipeCache;
 import com.redhat.hacbs.recipes.build.AddBuildRecipeRequest;
 
 /**
@@ -31,6 +29,8 @@ import com.redhat.hacbs.recipes.build.AddBuildRecipeRequest;
  * the same)
  * <p>
  * At present this is just the location information.
+ * <p>
+ * Lookups are answered from a {@link RecipeIndex} of the directory, which is rebuilt by {@link #update()}.
  */
 public class RecipeLayoutManager implements RecipeDirectory {
 
@@ -43,13 +43,17 @@ public class RecipeLayoutManager implements RecipeDirectory {
     private final Path repositoryInfoDirectory;
     private final Path buildToolInfoDirectory;
     private final Path pluginInfoDirectory;
+    private final Path baseDirectory;
+    private volatile RecipeIndex index;
 
     public RecipeLayoutManager(Path baseDirectory) {
+        this.baseDirectory = baseDirectory;
         scmInfoDirectory = baseDirectory.resolve(RecipeRepositoryManager.SCM_INFO);
         buildInfoDirectory = baseDirectory.resolve(RecipeRepositoryManager.BUILD_INFO);
         repositoryInfoDirectory = baseDirectory.resolve(RecipeRepositoryManager.REPOSITORY_INFO);
         buildToolInfoDirectory = baseDirectory.resolve(RecipeRepositoryManager.BUILD_TOOL_INFO);
         pluginInfoDirectory = baseDirectory.resolve(RecipeRepositoryManager.DISABLED_PLUGINS);
+        index = RecipeIndex.build(baseDirectory);
     }
 
     /**
@@ -57,22 +61,23 @@ public class RecipeLayoutManager implements RecipeDirectory {
      */
     public Optional<RecipePathMatch> getArtifactPaths(String groupId, String artifactId, String version) {
         Path groupPath = scmInfoDirectory.resolve(groupId.replace('.', File.separatorChar));
-        Path artifactFolder = groupPath.resolve(ARTIFACT);
-        Path artifactPath = artifactFolder.resolve(artifactId);
+        Path artifactPath = null;
         Path artifactAndVersionPath = null;
         log.warning("Searching for recipe in " + groupPath);
 
-        if (Files.notExists(groupPath)) {
+        var groupNode = index.directory(groupPath);
+        if (groupNode == null) {
             return Optional.empty();
         }
         boolean groupAuthoritative = true;
-        if (Files.exists(artifactPath)) {
-            artifactAndVersionPath = resolveVersion(artifactPath, version).orElse(null);
+        var artifactFolder = groupNode.child(ARTIFACT);
+        var artifactNode = artifactFolder == null ? null : artifactFolder.child(artifactId);
+        if (artifactNode != null) {
+            artifactPath = artifactNode.path();
+            artifactAndVersionPath = artifactNode.resolveVersion(version).orElse(null);
             groupAuthoritative = false;
-        } else {
-            artifactPath = null;
         }
-        Path versionPath = resolveVersion(groupPath, version).orElse(null);
+        Path versionPath = groupNode.resolveVersion(version).orElse(null);
         if (versionPath != null) {
             groupAuthoritative = false;
         }
@@ -84,16 +89,17 @@ public class RecipeLayoutManager implements RecipeDirectory {
     @Override
     public Optional<Path> getBuildPaths(String scmUri, String version) {
         Path target = buildInfoDirectory.resolve(RecipeGroupManager.normalizeScmUri(scmUri));
-        if (!Files.exists(target)) {
+        var node = index.directory(target);
+        if (node == null) {
             return Optional.empty();
         }
-        return Optional.of(resolveVersion(target, version).orElse(target));
+        return Optional.of(node.resolveVersion(version).orElse(target));
     }
 
     @Override
     public Optional<Path> getRepositoryPaths(String name) {
         Path target = repositoryInfoDirectory.resolve(name + ".yaml");
-        if (Files.exists(target)) {
+        if (index.isFile(target)) {
             return Optional.of(target);
         }
         return Optional.empty();
@@ -102,7 +108,7 @@ public class RecipeLayoutManager implements RecipeDirectory {
     @Override
     public Optional<Path> getBuildToolInfo(String name) {
         Path target = buildToolInfoDirectory.resolve(name).resolve("tool.yaml");
-        if (Files.exists(target)) {
+        if (index.isFile(target)) {
             return Optional.of(target);
         }
         return Optional.empty();
@@ -110,46 +116,23 @@ public class RecipeLayoutManager implements RecipeDirectory {
 
     @Override
     public List<Path> getAllRepositoryPaths() {
-        if (Files.notExists(repositoryInfoDirectory)) {
+        var node = index.directory(repositoryInfoDirectory);
+        if (node == null) {
             return List.of();
         }
-        try (Stream<Path> list = Files.list(repositoryInfoDirectory)) {
-            return list.filter(s -> s.toString().endsWith(".yaml")).collect(Collectors.toList());
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+        return node.files().stream().filter(s -> s.endsWith(".yaml")).sorted().map(repositoryInfoDirectory::resolve)
+                .collect(Collectors.toList());
     }
 
     @Override
     public Optional<Path> getDisabledPlugins(String tool) {
         Path target = pluginInfoDirectory.resolve(tool + ".yaml");
-        return Files.isReadable(target) ? Optional.of(target) : Optional.empty();
+        return index.isFile(target) ? Optional.of(target) : Optional.empty();
     }
 
-    private Optional<Path> resolveVersion(Path target, String version) {
-        Path versions = target.resolve(VERSION);
-        if (!Files.exists(versions)) {
-            return Optional.empty();
-        }
-        ComparableVersion requestedVersion = new ComparableVersion(version);
-        ComparableVersion currentVersion = null;
-        Path currentPath = null;
-        try (var s = Files.list(versions)) {
-            var i = s.iterator();
-            while (i.hasNext()) {
-                var path = i.next();
-                ComparableVersion pv = new ComparableVersion(path.getFileName().toString());
-                if (requestedVersion.compareTo(pv) <= 0) {
-                    if (currentVersion == null || pv.compareTo(currentVersion) < 0) {
-                        currentVersion = pv;
-                        currentPath = path;
-                    }
-                }
-            }
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-        return Optional.ofNullable(currentPath);
+    @Override
+    public boolean exists(Path file) {
+        return index.isFile(file);
     }
 
     @Override
@@ -164,11 +147,16 @@ public class RecipeLayoutManager implements RecipeDirectory {
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
+        update();
     }
 
+    /**
+     * Rebuilds the index from the current contents of the directory
+     */
     @Override
     public void update() {
-
+        ParsedRecipeCache.INSTANCE.invalidate(baseDirectory);
+        index = RecipeIndex.build(baseDirectory);
     }
 
     @Override
@@ -191,5 +179,6 @@ public class RecipeLayoutManager implements RecipeDirectory {
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
+        update();
     }
 }
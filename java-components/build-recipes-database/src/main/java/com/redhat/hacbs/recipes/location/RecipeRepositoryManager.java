@@ -5,32 +5,68 @@ import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.merge.ContentMergeStrategy;
 import org.eclipse.jgit.merge.MergeStrategy;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.jboss.logging.Logger;
 
+import com.redhat.hacbs.recipes.ParsedRecipeCache;
+import com.redhat.hacbs.recipes.util.FileUtil;
 import com.redhat.hacbs.recipes.util.GitCredentials;
 
 /**
  * A recipe database stored in git.
+ * <p>
+ * If there is an update interval the repository is refreshed in the background. The latest commit is fetched into
+ * {@link #SNAPSHOT_REF}, and its files are written to a new snapshot directory and indexed. The new snapshot is then
+ * swapped in, so lookups always see a consistent snapshot and never wait on the network. Callers may still be reading
+ * files from a snapshot after it has been replaced, so replaced snapshots are only deleted once they have been retired
+ * for {@link #SNAPSHOT_GRACE_PERIOD}.
  */
 public class RecipeRepositoryManager implements RecipeDirectory {
+
+    private static final Logger log = Logger.getLogger(RecipeRepositoryManager.class);
+
     public static final String SCM_INFO = "scm-info";
     public static final String BUILD_INFO = "build-info";
     public static final String BUILD_TOOL_INFO = "build-tool-info";
     public static final String REPOSITORY_INFO = "repository-info";
     public static final String DISABLED_PLUGINS = "disabled-plugins";
+    /**
+     * The ref the latest commit is fetched into, the working tree is never updated
+     */
+    public static final String SNAPSHOT_REF = "refs/jbs/snapshot";
+    /**
+     * How long a replaced snapshot is kept before it is deleted
+     */
+    public static final Duration SNAPSHOT_GRACE_PERIOD = Duration.ofMinutes(10);
+    private static final String SNAPSHOTS = "jbs-snapshots";
     private final Git git;
     private final String remote;
     private final Path local;
     private final String branch;
     private final Optional<Duration> updateInterval;
-    private final RecipeLayoutManager recipeLayoutManager;
+    private final ScheduledExecutorService refreshExecutor;
+    private volatile Snapshot snapshot;
+    private final Deque<RetiredSnapshot> retiredSnapshots = new ArrayDeque<>();
+    private long snapshotGracePeriod = SNAPSHOT_GRACE_PERIOD.toMillis();
     private volatile long lastUpdate = -1;
+    private volatile long lastUpdateDuration;
 
     public RecipeRepositoryManager(Git git, String remote, Path local, String branch, Optional<Duration> updateInterval) {
         this.git = git;
@@ -39,7 +75,24 @@ public class RecipeRepositoryManager implements RecipeDirectory {
         this.branch = branch;
         this.updateInterval = updateInterval;
         this.lastUpdate = System.currentTimeMillis();
-        this.recipeLayoutManager = new RecipeLayoutManager(local);
+        ObjectId head;
+        try {
+            head = git.getRepository().resolve(Constants.HEAD);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to resolve HEAD of " + local, e);
+        }
+        this.snapshot = new Snapshot(head, local, new RecipeLayoutManager(local));
+        if (updateInterval.isPresent() && remote != null) {
+            long interval = Math.max(1, updateInterval.get().toMillis());
+            refreshExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+                var thread = new Thread(r, "recipe-refresh");
+                thread.setDaemon(true);
+                return thread;
+            });
+            refreshExecutor.scheduleWithFixedDelay(this::refresh, interval, interval, TimeUnit.MILLISECONDS);
+        } else {
+            refreshExecutor = null;
+        }
     }
 
     public static RecipeRepositoryManager create(String remote)
@@ -95,59 +148,169 @@ public class RecipeRepositoryManager implements RecipeDirectory {
      * @return The path match result
      */
     public Optional<RecipePathMatch> getArtifactPaths(String groupId, String artifactId, String version) {
-        doUpdate();
-        return recipeLayoutManager.getArtifactPaths(groupId, artifactId, version);
+        return snapshot.layout().getArtifactPaths(groupId, artifactId, version);
     }
 
     @Override
     public Optional<Path> getBuildPaths(String scmUri, String version) {
-        doUpdate();
-        return recipeLayoutManager.getBuildPaths(scmUri, version);
+        return snapshot.layout().getBuildPaths(scmUri, version);
     }
 
     @Override
     public Optional<Path> getRepositoryPaths(String name) {
-        doUpdate();
-        return recipeLayoutManager.getRepositoryPaths(name);
+        return snapshot.layout().getRepositoryPaths(name);
     }
 
     @Override
     public List<Path> getAllRepositoryPaths() {
-        doUpdate();
-        return recipeLayoutManager.getAllRepositoryPaths();
+        return snapshot.layout().getAllRepositoryPaths();
     }
 
     @Override
     public Optional<Path> getBuildToolInfo(String name) {
-        doUpdate();
-        return recipeLayoutManager.getBuildToolInfo(name);
+        return snapshot.layout().getBuildToolInfo(name);
     }
 
     @Override
     public Optional<Path> getDisabledPlugins(String tool) {
-        doUpdate();
-        return recipeLayoutManager.getDisabledPlugins(tool);
+        return snapshot.layout().getDisabledPlugins(tool);
     }
 
     @Override
-    public void update() {
-        try {
-            git.pull().setContentMergeStrategy(ContentMergeStrategy.THEIRS).setStrategy(MergeStrategy.THEIRS)
-                    .call();
-        } catch (GitAPIException e) {
-            throw new RuntimeException(e);
+    public boolean exists(Path file) {
+        return snapshot.layout().exists(file);
+    }
+
+    /**
+     * Updates to the latest version of the repository straight away, on the calling thread
+     */
+    @Override
+    public synchronized void update() {
+        long start = System.currentTimeMillis();
+        if (remote == null) {
+            //a local repository, it is used as is and the working tree is updated
+            try {
+                git.pull().setContentMergeStrategy(ContentMergeStrategy.THEIRS).setStrategy(MergeStrategy.THEIRS)
+                        .call();
+            } catch (GitAPIException e) {
+                throw new RuntimeException(e);
+            }
+            snapshot.layout().update();
+        } else {
+            deleteRetiredSnapshots();
+            try {
+                fetchSnapshot();
+            } catch (GitAPIException e) {
+                throw new RuntimeException(e);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
         }
         lastUpdate = System.currentTimeMillis();
+        lastUpdateDuration = lastUpdate - start;
+    }
+
+    /**
+     * @return The time of the last successful update, in milliseconds since the epoch
+     */
+    public long getLastUpdate() {
+        return lastUpdate;
     }
 
-    private void doUpdate() {
-        if (updateInterval.isEmpty()) {
+    /**
+     * @return How long the last successful update took, in milliseconds
+     */
+    public long getLastUpdateDuration() {
+        return lastUpdateDuration;
+    }
+
+    /**
+     * Stops refreshing in the background
+     */
+    public void close() {
+        if (refreshExecutor != null) {
+            refreshExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Sets how long replaced snapshots are kept, for testing
+     */
+    synchronized void setSnapshotGracePeriod(Duration gracePeriod) {
+        this.snapshotGracePeriod = gracePeriod.toMillis();
+    }
+
+    private void refresh() {
+        try {
+            update();
+        } catch (RuntimeException e) {
+            //the current snapshot is still used
+            log.errorf(e, "Failed to update recipe repository %s", remote);
+        }
+    }
+
+    private void fetchSnapshot() throws GitAPIException, IOException {
+        git.fetch()
+                .setRemote(remote)
+                .setCredentialsProvider(new GitCredentials())
+                .setRefSpecs(new RefSpec("+refs/heads/" + branch + ":" + SNAPSHOT_REF))
+                .setDepth(1)
+                .call();
+        var commit = git.getRepository().resolve(SNAPSHOT_REF);
+        if (commit == null || commit.equals(snapshot.commit())) {
             return;
         }
-        if (lastUpdate + updateInterval.get().toMillis() < System.currentTimeMillis()) {
-            synchronized (this) {
-                if (lastUpdate + updateInterval.get().toMillis() < System.currentTimeMillis()) {
-                    update();
+        var snapshots = git.getRepository().getDirectory().toPath().resolve(SNAPSHOTS);
+        Files.createDirectories(snapshots);
+        var directory = Files.createTempDirectory(snapshots, commit.name());
+        try {
+            checkout(commit, directory);
+        } catch (IOException | RuntimeException e) {
+            FileUtil.deleteRecursive(directory);
+            throw e;
+        }
+        var old = snapshot;
+        snapshot = new Snapshot(commit, directory, new RecipeLayoutManager(directory));
+        log.infof("Updated recipe repository %s to %s", remote, commit.name());
+        //the original clone is never deleted
+        if (!old.directory().equals(local)) {
+            retiredSnapshots.add(new RetiredSnapshot(old.directory(), System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * Deletes the snapshots that were replaced more than the grace period ago
+     */
+    private void deleteRetiredSnapshots() {
+        long cutoff = System.currentTimeMillis() - snapshotGracePeriod;
+        while (!retiredSnapshots.isEmpty() && retiredSnapshots.peek().retired() <= cutoff) {
+            var directory = retiredSnapshots.poll().directory();
+            ParsedRecipeCache.INSTANCE.invalidate(directory);
+            try {
+                FileUtil.deleteRecursive(directory);
+            } catch (RuntimeException e) {
+                log.errorf(e, "Failed to delete old recipe snapshot %s", directory);
+            }
+        }
+    }
+
+    /**
+     * Writes the files in the commit to the directory, without touching the working tree or the index
+     */
+    private void checkout(ObjectId commit, Path directory) throws IOException {
+        var repository = git.getRepository();
+        try (var revWalk = new RevWalk(repository); var treeWalk = new TreeWalk(repository)) {
+            treeWalk.addTree(revWalk.parseCommit(commit).getTree());
+            treeWalk.setRecursive(true);
+            while (treeWalk.next()) {
+                var mode = treeWalk.getFileMode(0);
+                if (mode != FileMode.REGULAR_FILE && mode != FileMode.EXECUTABLE_FILE) {
+                    continue;
+                }
+                var target = directory.resolve(treeWalk.getPathString());
+                Files.createDirectories(target.getParent());
+                try (var out = Files.newOutputStream(target)) {
+                    repository.open(treeWalk.getObjectId(0)).copyTo(out);
                 }
             }
         }
@@ -160,8 +323,14 @@ public class RecipeRepositoryManager implements RecipeDirectory {
                 ", local=" + local +
                 ", branch='" + branch + '\'' +
                 ", updateInterval=" + updateInterval +
-                ", recipeLayoutManager=" + recipeLayoutManager +
+                ", snapshot=" + snapshot.directory() +
                 ", lastUpdate=" + lastUpdate +
                 '}';
     }
+
+    private record Snapshot(ObjectId commit, Path directory, RecipeLayoutManager layout) {
+    }
+
+    private record RetiredSnapshot(Path directory, long retired) {
+    }
 }
@@ -0,0 +1,92 @@
+package com.redhat.hacbs.recipes.scm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A {@link TagMapping} with its pattern compiled and its tag split into literal text and capture group references, so
+ * mapping a version does not need to compile any regular expressions.
+ * <p>
+ * A reference is a {@code $} followed by a single digit that is not more than the number of capture groups, which is
+ * the same as replacing each {@code $n} in turn. A capture group that did not match is replaced with nothing.
+ */
+final class CompiledTagMapping {
+
+    private final Pattern pattern;
+    private final String tag;
+    /**
+     * The parts of the tag, either a String of literal text or an Integer capture group
+     */
+    private final List<Object> parts;
+    private final boolean constant;
+
+    private CompiledTagMapping(Pattern pattern, String tag, List<Object> parts) {
+        this.pattern = pattern;
+        this.tag = tag;
+        this.parts = parts;
+        this.constant = parts.stream().noneMatch(p -> p instanceof Integer);
+    }
+
+    static CompiledTagMapping compile(TagMapping mapping) {
+        var pattern = Pattern.compile(mapping.getPattern());
+        var tag = mapping.getTag();
+        int groups = pattern.matcher("").groupCount();
+        List<Object> parts = new ArrayList<>();
+        var literal = new StringBuilder();
+        for (int i = 0; i < tag.length(); ++i) {
+            var c = tag.charAt(i);
+            if (c == '$' && i + 1 < tag.length() && Character.isDigit(tag.charAt(i + 1))
+                    && Character.digit(tag.charAt(i + 1), 10) <= groups) {
+                if (!literal.isEmpty()) {
+                    parts.add(literal.toString());
+                    literal.setLength(0);
+                }
+                parts.add(Character.digit(tag.charAt(++i), 10));
+            } else {
+                literal.append(c);
+            }
+        }
+        if (!literal.isEmpty()) {
+            parts.add(literal.toString());
+        }
+        return new CompiledTagMapping(pattern, tag, List.copyOf(parts));
+    }
+
+    /**
+     * @return true if the tag does not depend on the version
+     */
+    boolean isConstant() {
+        return constant;
+    }
+
+    /**
+     * @return The tag for the version, or null if the version does not match the pattern
+     */
+    String map(String version) {
+        Matcher m = pattern.matcher(version);
+        if (!m.matches()) {
+            return null;
+        }
+        if (constant) {
+            return tag;
+        }
+        var sb = new StringBuilder();
+        for (var part : parts) {
+            if (part instanceof Integer group) {
+                var value = m.group(group);
+                if (value != null) {
+                    sb.append(value);
+                }
+            } else {
+                sb.append((String) part);
+            }
+        }
+        return sb.toString();
+    }
+
+    String getPattern() {
+        return pattern.pattern();
+    }
+}
@@ -4,10 +4,10 @@ import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -47,6 +47,7 @@ public class GitScmLocator implements ScmLocator {
         public RecipeGroupManager recipeGroupManager;
         private List<String> recipeRepos = List.of(BuildRecipe.DEFAULT_RECIPE_REPO_URL);
         private boolean cacheRepoTags;
+        private RepositoryTagCache tagCache;
         private String cacheUrl;
         private ScmLocator fallbackScmLocator;
         private boolean cloneLocalRecipeRepos = true;
@@ -91,6 +92,17 @@ public class GitScmLocator implements ScmLocator {
             return this;
         }
 
+        /**
+         * A tag cache to share between locators. If this is set then {@link #setCacheRepoTags(boolean)} has no effect.
+         *
+         * @param tagCache the cache of code repository tags
+         * @return this builder instance
+         */
+        public Builder setTagCache(RepositoryTagCache tagCache) {
+            this.tagCache = tagCache;
+            return this;
+        }
+
         /**
          * An SCM locator that should be used in case no information was found in the configured recipe repositories.
          *
@@ -135,9 +147,8 @@ public class GitScmLocator implements ScmLocator {
     }
 
     private final List<String> recipeRepos;
-    private final boolean cacheRepoTags;
     private final ScmLocator fallbackScmLocator;
-    private final Map<String, Map<String, String>> repoTagsToHash;
+    private final RepositoryTagCache tagCache;
     private final boolean cloneLocalRecipeRepos;
     private final Path gitCloneBaseDir;
 
@@ -145,9 +156,14 @@ public class GitScmLocator implements ScmLocator {
 
     private GitScmLocator(Builder builder) {
         this.recipeRepos = builder.recipeRepos;
-        this.cacheRepoTags = builder.cacheRepoTags;
         this.fallbackScmLocator = builder.fallbackScmLocator;
-        this.repoTagsToHash = cacheRepoTags ? new HashMap<>() : Map.of();
+        if (builder.tagCache != null) {
+            this.tagCache = builder.tagCache;
+        } else if (builder.cacheRepoTags) {
+            this.tagCache = RepositoryTagCache.create(Duration.ofMillis(Long.MAX_VALUE), Integer.MAX_VALUE);
+        } else {
+            this.tagCache = null;
+        }
         this.cloneLocalRecipeRepos = builder.cloneLocalRecipeRepos;
         this.recipeGroupManager = builder.recipeGroupManager;
         this.gitCloneBaseDir = builder.gitCloneBaseDir;
@@ -203,19 +219,19 @@ public class GitScmLocator implements ScmLocator {
         log.infof("Found the following build info files for %s: %s", toBuild, recipes);
 
         List<RepositoryInfo> repos = new ArrayList<>();
-        List<TagMapping> allMappings = new ArrayList<>();
+        List<CompiledTagMapping> allMappings = new ArrayList<>();
         for (var recipe : recipes) {
             ScmInfo main;
             try {
-                main = BuildRecipe.SCM.getHandler().parse(recipe);
+                main = BuildRecipe.SCM.getHandler().parseCached(recipe);
             } catch (IOException e) {
                 throw new UncheckedIOException("Failed to parse " + recipe, e);
             }
             repos.add(main);
-            allMappings.addAll(main.getTagMapping());
+            main.getTagMapping().forEach(m -> allMappings.add(m.compiled()));
             for (var j : main.getLegacyRepos()) {
                 repos.add(j);
-                allMappings.addAll(j.getTagMapping());
+                j.getTagMapping().forEach(m -> allMappings.add(m.compiled()));
             }
         }
 
@@ -240,7 +256,10 @@ public class GitScmLocator implements ScmLocator {
 
             //now look for a tag
             try {
-                final Map<String, String> tagsToHash = getTagToHashMap(parsedInfo);
+                String version = toBuild.getVersion();
+                String underscoreVersion = version.replace(".", "_");
+                final TagIndex tagIndex = getTagIndex(parsedInfo, version, underscoreVersion);
+                final Map<String, String> tagsToHash = tagIndex.tags();
                 if (fallbackTagInfo != null && fallbackTagInfo.getTag() != null) {
                     var hash = tagsToHash.get(fallbackTagInfo.getTag());
                     if (hash != null) {
@@ -248,24 +267,18 @@ public class GitScmLocator implements ScmLocator {
                     }
                 }
 
-                String version = toBuild.getVersion();
-                String underscoreVersion = version.replace(".", "_");
                 String selectedTag = null;
 
                 //first try tag mappings
                 for (var mapping : allMappings) {
                     log.debugf("Trying tag pattern %s on version %s", mapping.getPattern(), version);
-                    Matcher m = Pattern.compile(mapping.getPattern()).matcher(version);
-                    if (m.matches()) {
+                    String match = mapping.map(version);
+                    if (match != null) {
                         log.debugf("Tag pattern %s matches", mapping.getPattern());
-                        String match = mapping.getTag();
-                        for (int i = 0; i <= m.groupCount(); ++i) {
-                            match = match.replaceAll("\\$" + i, m.group(i));
-                        }
                         log.debugf("Trying to find tag %s", match);
                         //if the tag was a constant we don't require it to be in the tag set
                         //this allows for explicit refs to be used
-                        if (tagsToHash.containsKey(match) || match.equals(mapping.getTag())) {
+                        if (tagsToHash.containsKey(match) || mapping.isConstant()) {
                             selectedTag = match;
                             break;
                         }
@@ -274,7 +287,7 @@ public class GitScmLocator implements ScmLocator {
 
                 if (selectedTag == null) {
                     try {
-                        selectedTag = runTagHeuristic(version, tagsToHash);
+                        selectedTag = runTagHeuristic(version, tagIndex);
                     } catch (RuntimeException e) {
                         if (firstFailure == null) {
                             firstFailure = e;
@@ -282,7 +295,7 @@ public class GitScmLocator implements ScmLocator {
                             firstFailure.addSuppressed(e);
                         }
                         //it is a very common pattern to use underscores instead of dots in the tags
-                        selectedTag = runTagHeuristic(underscoreVersion, tagsToHash);
+                        selectedTag = runTagHeuristic(underscoreVersion, tagIndex);
                     }
                 }
 
@@ -314,23 +327,17 @@ public class GitScmLocator implements ScmLocator {
     }
 
     static String runTagHeuristic(String version, Map<String, String> tagsToHash) {
-        String selectedTag = null;
-        Set<String> versionExactContains = new HashSet<>();
-        Set<String> tagExactContains = new HashSet<>();
-        for (var name : tagsToHash.keySet()) {
-            if (name.equals(version)) {
-                //exact match is always good
-                selectedTag = version;
-                break;
-            } else if (name.contains(version)) {
-                versionExactContains.add(name);
-            } else if (version.contains(name)) {
-                tagExactContains.add(name);
-            }
-        }
-        if (selectedTag != null) {
-            return selectedTag;
+        return runTagHeuristic(version, TagIndex.of(tagsToHash));
+    }
+
+    static String runTagHeuristic(String version, TagIndex tagIndex) {
+        if (tagIndex.contains(version)) {
+            //exact match is always good
+            return version;
         }
+        String selectedTag = null;
+        Set<String> versionExactContains = tagIndex.tagsContaining(version);
+        Set<String> tagExactContains = tagIndex.tagsContainedIn(version);
 
         //no exact match
         if (versionExactContains.size() == 1) {
@@ -373,15 +380,13 @@ public class GitScmLocator implements ScmLocator {
         return selectedTag;
     }
 
-    private Map<String, String> getTagToHashMap(RepositoryInfo repo) {
-        Map<String, String> tagsToHash = repoTagsToHash.get(repo.getUri());
-        if (tagsToHash == null) {
-            tagsToHash = getTagToHashMapFromGit(repo);
-            if (cacheRepoTags) {
-                repoTagsToHash.put(repo.getUri(), tagsToHash);
-            }
+    private TagIndex getTagIndex(RepositoryInfo repo, String version, String underscoreVersion) {
+        if (tagCache == null) {
+            return TagIndex.of(getTagToHashMapFromGit(repo));
         }
-        return tagsToHash;
+        //if no tag mentions the version it may have just been released, so the cached tags are out of date
+        return tagCache.index(repo.getUriWithoutFragment(), () -> getTagToHashMapFromGit(repo),
+                index -> !index.anyContains(version) && !index.anyContains(underscoreVersion));
     }
 
     private static Map<String, String> getTagToHashMapFromGit(RepositoryInfo parsedInfo) {
@@ -0,0 +1,190 @@
+package com.redhat.hacbs.recipes.scm;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import org.jboss.logging.Logger;
+
+/**
+ * A thread safe cache of the tags in code repositories, that can be shared between {@link GitScmLocator} instances.
+ * <p>
+ * Listing the tags of a repository is a network call to the upstream SCM, and it is common to get lots of lookups for
+ * the same repository at once when a new release of a large project comes out. Only one listing is done at a time for a
+ * repository, and any other lookups for the same repository wait for it to finish. Entries older than the refresh
+ * interval are still returned, but are listed again in the background so new tags show up. Entries older than the TTL
+ * are not used at all, and entries that are missing a tag the caller expects are listed again straight away. If there
+ * are more than the maximum number of entries the expired entries are removed, and if that is not enough the cache is
+ * cleared. The tags are indexed when they are listed, so the index is shared by every lookup that uses them.
+ */
+public final class RepositoryTagCache {
+
+    private static final Logger log = Logger.getLogger(RepositoryTagCache.class);
+
+    private static final long MIN_RELOAD_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+
+    private final long ttl;
+    private final long refreshAfter;
+    private final int maxEntries;
+    private final Executor refreshExecutor;
+    private final Listener listener;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, CompletableFuture<TagIndex>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * @param ttl How long the tags of a repository are used for
+     * @param refreshAfter How long until the tags are listed again in the background, if this is not less than the TTL
+     *        the tags are never refreshed in the background
+     * @param maxEntries The maximum number of repositories to cache
+     * @param refreshExecutor The executor that background refreshes run on
+     * @param listener Notified of every time the tags of a repository are listed
+     */
+    public RepositoryTagCache(Duration ttl, Duration refreshAfter, int maxEntries, Executor refreshExecutor,
+            Listener listener) {
+        this.ttl = ttl.toMillis();
+        this.refreshAfter = refreshAfter.toMillis();
+        this.maxEntries = maxEntries;
+        this.refreshExecutor = refreshExecutor;
+        this.listener = listener;
+    }
+
+    /**
+     * @param ttl How long the tags of a repository are used for
+     * @return A cache that never refreshes in the background
+     */
+    public static RepositoryTagCache create(Duration ttl, int maxEntries) {
+        return new RepositoryTagCache(ttl, ttl, maxEntries, Runnable::run, (uri, nanos, success) -> {
+        });
+    }
+
+    /**
+     * @param uri The repository URI
+     * @param loader Lists the tags of the repository, returning a map of tag name to commit hash
+     * @return The tags of the repository
+     */
+    public Map<String, String> get(String uri, Supplier<Map<String, String>> loader) {
+        return get(uri, loader, tags -> false);
+    }
+
+    /**
+     * @param uri The repository URI
+     * @param loader Lists the tags of the repository, returning a map of tag name to commit hash
+     * @param outdated If this returns true for the cached tags they are listed again straight away, unless they were
+     *        listed in the last minute. This is for when the tags are known to be missing something, such as the tag of
+     *        a version that has just been released.
+     * @return The tags of the repository
+     */
+    public Map<String, String> get(String uri, Supplier<Map<String, String>> loader,
+            Predicate<Map<String, String>> outdated) {
+        return index(uri, loader, index -> outdated.test(index.tags())).tags();
+    }
+
+    /**
+     * The same as {@link #get(String, Supplier, Predicate)}, but returns the index of the tags, which is only built once
+     * per listing.
+     */
+    TagIndex index(String uri, Supplier<Map<String, String>> loader, Predicate<TagIndex> outdated) {
+        var entry = entries.get(uri);
+        if (entry != null) {
+            long age = System.currentTimeMillis() - entry.loaded();
+            if (age < ttl && (age < MIN_RELOAD_INTERVAL || !outdated.test(entry.index()))) {
+                if (age >= refreshAfter && !inFlight.containsKey(uri)) {
+                    refresh(uri, loader);
+                }
+                return entry.index();
+            }
+        }
+        try {
+            return load(uri, loader).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException r) {
+                throw r;
+            }
+            throw e;
+        }
+    }
+
+    public void invalidate(String uri) {
+        entries.remove(uri);
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    private void refresh(String uri, Supplier<Map<String, String>> loader) {
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    load(uri, loader).join();
+                } catch (RuntimeException e) {
+                    //the old tags are still used until they expire
+                    log.errorf(e, "Failed to refresh the tags of %s", uri);
+                }
+            });
+        } catch (RuntimeException e) {
+            log.errorf(e, "Failed to schedule refresh of the tags of %s", uri);
+        }
+    }
+
+    /**
+     * Lists the tags on the calling thread, unless they are already being listed, in which case the existing listing is
+     * returned.
+     */
+    private CompletableFuture<TagIndex> load(String uri, Supplier<Map<String, String>> loader) {
+        var future = new CompletableFuture<TagIndex>();
+        var existing = inFlight.putIfAbsent(uri, future);
+        if (existing != null) {
+            return existing;
+        }
+        long start = System.nanoTime();
+        try {
+            var index = TagIndex.of(loader.get());
+            listener.listed(uri, System.nanoTime() - start, true);
+            if (entries.put(uri, new Entry(index, System.currentTimeMillis())) == null && entries.size() > maxEntries) {
+                removeExpired();
+            }
+            future.complete(index);
+        } catch (RuntimeException e) {
+            listener.listed(uri, System.nanoTime() - start, false);
+            future.completeExceptionally(e);
+        } finally {
+            inFlight.remove(uri, future);
+        }
+        return future;
+    }
+
+    private synchronized void removeExpired() {
+        if (entries.size() <= maxEntries) {
+            return;
+        }
+        long expired = System.currentTimeMillis() - ttl;
+        entries.values().removeIf(e -> e.loaded() <= expired);
+        if (entries.size() > maxEntries) {
+            log.infof("Repository tag cache has more than %s unexpired entries, clearing", maxEntries);
+            entries.clear();
+        }
+    }
+
+    private record Entry(TagIndex index, long loaded) {
+    }
+
+    public interface Listener {
+
+        /**
+         * Called every time the tags of a repository are listed
+         *
+         * @param uri The repository URI
+         * @param nanos How long the listing took
+         * @param success If the listing succeeded
+         */
+        void listed(String uri, long nanos, boolean success);
+    }
+}
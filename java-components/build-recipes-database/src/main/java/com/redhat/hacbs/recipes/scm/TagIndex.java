@@ -0,0 +1,236 @@
+package com.redhat.hacbs.recipes.scm;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable index of the tags in a repository, built once per listing of the tags.
+ * <p>
+ * Tag selection needs to know which tags contain a version and which tags are contained in a version. Some
+ * repositories have tens of thousands of tags, so rather than scanning them all for every lookup there is a suffix
+ * array of the tag names. All the tags containing a string are then found with a binary search, and the tags contained
+ * in a string are found by looking up each of its substrings in the tag map.
+ */
+final class TagIndex {
+
+    /**
+     * Suffixes are packed into an int, with the tag number in the upper bits and the offset in the lower bits
+     */
+    private static final int OFFSET_BITS = 8;
+    private static final int MAX_OFFSET = (1 << OFFSET_BITS) - 1;
+    private static final int MAX_TAGS = Integer.MAX_VALUE >>> OFFSET_BITS;
+    private static final int INSERTION_SORT_THRESHOLD = 12;
+
+    private final Map<String, String> tags;
+    private final String[] names;
+    private final int[] suffixes;
+    /**
+     * Tags that are too long to be in the suffix array, these are just scanned
+     */
+    private final List<String> unindexed;
+
+    private TagIndex(Map<String, String> tags, String[] names, int[] suffixes, List<String> unindexed) {
+        this.tags = tags;
+        this.names = names;
+        this.suffixes = suffixes;
+        this.unindexed = unindexed;
+    }
+
+    /**
+     * @param tags A map of tag name to commit hash
+     */
+    static TagIndex of(Map<String, String> tags) {
+        var copy = Map.copyOf(tags);
+        List<String> indexed = new ArrayList<>(copy.size());
+        List<String> unindexed = new ArrayList<>();
+        int count = 0;
+        for (var name : copy.keySet()) {
+            if (name.length() > MAX_OFFSET + 1 || indexed.size() == MAX_TAGS) {
+                unindexed.add(name);
+            } else if (!name.isEmpty()) {
+                indexed.add(name);
+                count += name.length();
+            }
+        }
+        var names = indexed.toArray(new String[0]);
+        var suffixes = new int[count];
+        int pos = 0;
+        for (int i = 0; i < names.length; ++i) {
+            for (int j = 0; j < names[i].length(); ++j) {
+                suffixes[pos++] = i << OFFSET_BITS | j;
+            }
+        }
+        var index = new TagIndex(copy, names, suffixes, List.copyOf(unindexed));
+        index.sort(0, suffixes.length, 0);
+        return index;
+    }
+
+    /**
+     * @return A map of tag name to commit hash
+     */
+    Map<String, String> tags() {
+        return tags;
+    }
+
+    boolean contains(String tag) {
+        return tags.containsKey(tag);
+    }
+
+    /**
+     * @return The tags that contain the text
+     */
+    Set<String> tagsContaining(String text) {
+        if (text.isEmpty()) {
+            return tags.keySet();
+        }
+        Set<String> result = new HashSet<>();
+        for (int i = lowerBound(text); i < suffixes.length && compare(suffixes[i], text) == 0; ++i) {
+            result.add(names[suffixes[i] >>> OFFSET_BITS]);
+        }
+        for (var name : unindexed) {
+            if (name.contains(text)) {
+                result.add(name);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return true if any tag contains the text
+     */
+    boolean anyContains(String text) {
+        if (text.isEmpty()) {
+            return !tags.isEmpty();
+        }
+        int i = lowerBound(text);
+        if (i < suffixes.length && compare(suffixes[i], text) == 0) {
+            return true;
+        }
+        for (var name : unindexed) {
+            if (name.contains(text)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The tags that are contained in the text, not including the text itself
+     */
+    Set<String> tagsContainedIn(String text) {
+        Set<String> result = new HashSet<>();
+        for (int start = 0; start < text.length(); ++start) {
+            for (int end = start + 1; end <= text.length(); ++end) {
+                if (start == 0 && end == text.length()) {
+                    continue;
+                }
+                var candidate = text.substring(start, end);
+                if (tags.containsKey(candidate)) {
+                    result.add(candidate);
+                }
+            }
+        }
+        if (tags.containsKey("") && !text.isEmpty()) {
+            result.add("");
+        }
+        return result;
+    }
+
+    /**
+     * @return The position of the first suffix that is not less than the text
+     */
+    private int lowerBound(String text) {
+        int low = 0;
+        int high = suffixes.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compare(suffixes[mid], text) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return 0 if the suffix starts with the text, otherwise the order of the suffix relative to the text
+     */
+    private int compare(int suffix, String text) {
+        var name = names[suffix >>> OFFSET_BITS];
+        int offset = suffix & MAX_OFFSET;
+        int length = Math.min(name.length() - offset, text.length());
+        for (int i = 0; i < length; ++i) {
+            int diff = name.charAt(offset + i) - text.charAt(i);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return length == text.length() ? 0 : -1;
+    }
+
+    /**
+     * @return The character at the depth in the suffix, or -1 if the suffix is shorter than that
+     */
+    private int charAt(int suffix, int depth) {
+        var name = names[suffix >>> OFFSET_BITS];
+        int pos = (suffix & MAX_OFFSET) + depth;
+        return pos < name.length() ? name.charAt(pos) : -1;
+    }
+
+    /**
+     * Sorts the suffixes in the range with a multikey quicksort, where all the suffixes are known to be the same up to
+     * the depth
+     */
+    private void sort(int from, int to, int depth) {
+        while (to - from > INSERTION_SORT_THRESHOLD) {
+            int pivot = charAt(suffixes[(from + to) >>> 1], depth);
+            int lt = from;
+            int gt = to - 1;
+            int i = from;
+            while (i <= gt) {
+                int c = charAt(suffixes[i], depth);
+                if (c < pivot) {
+                    swap(lt++, i++);
+                } else if (c > pivot) {
+                    swap(i, gt--);
+                } else {
+                    ++i;
+                }
+            }
+            sort(from, lt, depth);
+            sort(gt + 1, to, depth);
+            if (pivot == -1) {
+                //all the suffixes in the middle have ended, so they are equal
+                return;
+            }
+            from = lt;
+            to = gt + 1;
+            ++depth;
+        }
+        for (int i = from + 1; i < to; ++i) {
+            for (int j = i; j > from && compareFrom(suffixes[j - 1], suffixes[j], depth) > 0; --j) {
+                swap(j - 1, j);
+            }
+        }
+    }
+
+    private int compareFrom(int a, int b, int depth) {
+        for (;; ++depth) {
+            int ca = charAt(a, depth);
+            int cb = charAt(b, depth);
+            if (ca != cb || ca == -1) {
+                return ca - cb;
+            }
+        }
+    }
+
+    private void swap(int i, int j) {
+        int tmp = suffixes[i];
+        suffixes[i] = suffixes[j];
+        suffixes[j] = tmp;
+    }
+}
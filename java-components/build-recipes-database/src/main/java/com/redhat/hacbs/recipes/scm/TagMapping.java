@@ -11,12 +11,15 @@ public class TagMapping {
      */
     private String tag;
 
+    private volatile CompiledTagMapping compiled;
+
     public String getPattern() {
         return pattern;
     }
 
     public TagMapping setPattern(String pattern) {
         this.pattern = pattern;
+        this.compiled = null;
         return this;
     }
 
@@ -26,6 +29,19 @@ public class TagMapping {
 
     public TagMapping setTag(String tag) {
         this.tag = tag;
+        this.compiled = null;
         return this;
     }
+
+    /**
+     * @return The mapping with the pattern compiled, which is only done once per mapping
+     */
+    CompiledTagMapping compiled() {
+        var result = compiled;
+        if (result == null) {
+            result = CompiledTagMapping.compile(this);
+            compiled = result;
+        }
+        return result;
+    }
 }
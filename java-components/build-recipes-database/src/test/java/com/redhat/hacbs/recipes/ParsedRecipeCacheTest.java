@@ -0,0 +1,102 @@
+package com.redhat.hacbs.recipes;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.redhat.hacbs.recipes.build.BuildRecipeInfo;
+import com.redhat.hacbs.recipes.scm.ScmInfo;
+
+public class ParsedRecipeCacheTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testSameContentsParsedOnce() throws IOException {
+        var cache = new ParsedRecipeCache(100);
+        var first = dir.resolve("a/scm.yaml");
+        var second = dir.resolve("b/scm.yaml");
+        writeScm(first, "https://github.com/foo/bar.git");
+        writeScm(second, "https://github.com/foo/bar.git");
+
+        ScmInfo parsed = cache.parse(BuildRecipe.SCM.getHandler(), first);
+        Assertions.assertEquals("https://github.com/foo/bar.git", parsed.getUri());
+        Assertions.assertSame(parsed, cache.parse(BuildRecipe.SCM.getHandler(), first));
+        Assertions.assertSame(parsed, cache.parse(BuildRecipe.SCM.getHandler(), second));
+    }
+
+    @Test
+    public void testChangedFileParsedAgain() throws IOException {
+        var cache = new ParsedRecipeCache(100);
+        var file = dir.resolve("scm.yaml");
+        writeScm(file, "https://github.com/foo/bar.git");
+        ScmInfo parsed = cache.parse(BuildRecipe.SCM.getHandler(), file);
+
+        writeScm(file, "https://github.com/foo/baz.git");
+        Files.setLastModifiedTime(file, FileTime.from(Instant.now().plusSeconds(10)));
+        Assertions.assertEquals("https://github.com/foo/baz.git",
+                cache.parse(BuildRecipe.SCM.getHandler(), file).getUri());
+
+        writeScm(file, "https://github.com/foo/bar.git");
+        Assertions.assertSame(parsed, cache.parse(BuildRecipe.SCM.getHandler(), file));
+    }
+
+    @Test
+    public void testInvalidate() throws IOException {
+        var cache = new ParsedRecipeCache(100);
+        var file = dir.resolve("repo/scm.yaml");
+        writeScm(file, "https://github.com/foo/bar.git");
+        var modified = Files.getLastModifiedTime(file);
+        cache.parse(BuildRecipe.SCM.getHandler(), file);
+
+        //same size and modification time, so it is only seen once the directory is invalidated
+        writeScm(file, "https://github.com/foo/baz.git");
+        Files.setLastModifiedTime(file, modified);
+        Assertions.assertEquals("https://github.com/foo/bar.git",
+                cache.parse(BuildRecipe.SCM.getHandler(), file).getUri());
+        cache.invalidate(dir.resolve("repo"));
+        Assertions.assertEquals("https://github.com/foo/baz.git",
+                cache.parse(BuildRecipe.SCM.getHandler(), file).getUri());
+    }
+
+    @Test
+    public void testRecipeTypesCachedSeparately() throws IOException {
+        var cache = new ParsedRecipeCache(100);
+        var scm = dir.resolve("scm.yaml");
+        var build = dir.resolve("build.yaml");
+        Files.writeString(scm, "{}\n");
+        Files.writeString(build, "{}\n");
+
+        Assertions.assertInstanceOf(ScmInfo.class, cache.parse(BuildRecipe.SCM.getHandler(), scm));
+        Assertions.assertInstanceOf(BuildRecipeInfo.class, cache.parse(BuildRecipe.BUILD.getHandler(), build));
+    }
+
+    @Test
+    public void testClearedWhenFull() throws IOException {
+        var cache = new ParsedRecipeCache(2);
+        ScmInfo first = null;
+        for (int i = 0; i < 3; ++i) {
+            var file = dir.resolve(i + "/scm.yaml");
+            writeScm(file, "https://github.com/foo/bar" + i + ".git");
+            ScmInfo parsed = cache.parse(BuildRecipe.SCM.getHandler(), file);
+            if (first == null) {
+                first = parsed;
+            }
+        }
+        var reparsed = cache.parse(BuildRecipe.SCM.getHandler(), dir.resolve("0/scm.yaml"));
+        Assertions.assertEquals(first.getUri(), reparsed.getUri());
+        Assertions.assertNotSame(first, reparsed);
+    }
+
+    private static void writeScm(Path file, String uri) throws IOException {
+        Files.createDirectories(file.getParent());
+        BuildRecipe.SCM.getHandler().write(new ScmInfo("git", uri), file);
+    }
+}
@@ -0,0 +1,55 @@
+package com.redhat.hacbs.recipes.location;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class RecipeIndexTest {
+
+    @Test
+    void testResolveVersion(@TempDir Path tempDir) throws Exception {
+        var group = tempDir.resolve("scm-info").resolve("io").resolve("quarkus");
+        for (var version : new String[] { "1.0", "2.0.Alpha1", "2.0", "10.0", "2.5" }) {
+            Files.createDirectories(group.resolve(RecipeLayoutManager.VERSION).resolve(version));
+        }
+        Files.writeString(group.resolve("scm.yaml"), "");
+        Files.createDirectories(tempDir.resolve(".git").resolve("objects"));
+
+        var index = RecipeIndex.build(tempDir);
+        var node = index.directory(group);
+        Assertions.assertNotNull(node);
+        Assertions.assertEquals(group, node.path());
+        Assertions.assertEquals("1.0", version(node, "0.1"));
+        Assertions.assertEquals("1.0", version(node, "1.0"));
+        Assertions.assertEquals("2.0.Alpha1", version(node, "1.1"));
+        Assertions.assertEquals("2.0", version(node, "2.0.Alpha2"));
+        Assertions.assertEquals("2.5", version(node, "2.1"));
+        Assertions.assertEquals("10.0", version(node, "3.0"));
+        Assertions.assertTrue(node.resolveVersion("11.0").isEmpty());
+
+        Assertions.assertTrue(index.isFile(group.resolve("scm.yaml")));
+        Assertions.assertFalse(index.isFile(group.resolve("build.yaml")));
+        Assertions.assertFalse(index.isFile(group.resolve(RecipeLayoutManager.VERSION)));
+        Assertions.assertNull(index.directory(tempDir.resolve("scm-info").resolve("org")));
+        Assertions.assertNull(index.directory(tempDir.resolve(".git")));
+
+        //the index is a snapshot
+        Files.writeString(group.resolve("build.yaml"), "");
+        Assertions.assertFalse(index.isFile(group.resolve("build.yaml")));
+        Assertions.assertTrue(RecipeIndex.build(tempDir).isFile(group.resolve("build.yaml")));
+    }
+
+    @Test
+    void testMissingDirectory(@TempDir Path tempDir) {
+        var index = RecipeIndex.build(tempDir.resolve("missing"));
+        Assertions.assertNull(index.directory(tempDir.resolve("missing").resolve("scm-info")));
+        Assertions.assertFalse(index.isFile(tempDir.resolve("missing").resolve("scm.yaml")));
+    }
+
+    private static String version(RecipeIndex.Node node, String version) {
+        return node.resolveVersion(version).orElseThrow().getFileName().toString();
+    }
+}
@@ -0,0 +1,114 @@
+package com.redhat.hacbs.recipes.location;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import org.eclipse.jgit.api.Git;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.redhat.hacbs.common.sbom.GAV;
+import com.redhat.hacbs.recipes.BuildRecipe;
+
+class RecipeRepositoryManagerTest {
+
+    @Test
+    void testUpdateSwapsSnapshot(@TempDir Path tempDir) throws Exception {
+        var upstream = tempDir.resolve("upstream");
+        var group = upstream.resolve(RecipeRepositoryManager.SCM_INFO).resolve("io").resolve("quarkus");
+        Files.createDirectories(group);
+        Files.writeString(group.resolve(BuildRecipe.SCM.getName()), "uri: https://github.com/quarkusio/quarkus.git\n");
+        try (var git = Git.init().setDirectory(upstream.toFile()).setInitialBranch("main").call()) {
+            git.add().addFilepattern(".").call();
+            git.commit().setMessage("initial").setSign(false).call();
+
+            var manager = RecipeRepositoryManager.create(upstream.toUri().toString(), "main",
+                    Optional.of(Duration.ofHours(1)), tempDir.resolve("clone"));
+            try {
+                var groupManager = new RecipeGroupManager(List.of(manager));
+                var gav = new GAV("io.quarkus", "quarkus-core", "1.0");
+                var original = groupManager.lookupScmInformation(gav);
+                Assertions.assertEquals(1, original.size());
+                Assertions.assertTrue(original.get(0).startsWith(tempDir.resolve("clone")));
+
+                //nothing changed, so the snapshot is not replaced
+                manager.update();
+                Assertions.assertEquals(original, groupManager.lookupScmInformation(gav));
+
+                var version = group.resolve(RecipeLayoutManager.VERSION).resolve("2.0");
+                Files.createDirectories(version);
+                Files.writeString(version.resolve(BuildRecipe.SCM.getName()),
+                        "uri: https://github.com/quarkusio/quarkus-2.git\n");
+                git.add().addFilepattern(".").call();
+                git.commit().setMessage("version").setSign(false).call();
+
+                //lookups use the old snapshot until the repository is updated
+                Assertions.assertEquals(original, groupManager.lookupScmInformation(gav));
+                long before = manager.getLastUpdate();
+                manager.update();
+                Assertions.assertTrue(manager.getLastUpdate() >= before);
+
+                var updated = groupManager.lookupScmInformation(gav);
+                Assertions.assertEquals(1, updated.size());
+                Assertions.assertTrue(Files.readString(updated.get(0)).contains("quarkus-2.git"));
+                Assertions.assertTrue(updated.get(0).toString().contains("2.0"));
+                //the working tree is left alone
+                Assertions.assertTrue(Files.notExists(tempDir.resolve("clone").resolve(upstream.relativize(version))));
+                Assertions.assertTrue(Files.exists(original.get(0)));
+            } finally {
+                manager.close();
+            }
+        }
+    }
+
+    @Test
+    void testReplacedSnapshotsKeptForGracePeriod(@TempDir Path tempDir) throws Exception {
+        var upstream = tempDir.resolve("upstream");
+        var group = upstream.resolve(RecipeRepositoryManager.SCM_INFO).resolve("io").resolve("quarkus");
+        Files.createDirectories(group);
+        try (var git = Git.init().setDirectory(upstream.toFile()).setInitialBranch("main").call()) {
+            commitScm(git, group, 0);
+            var manager = RecipeRepositoryManager.create(upstream.toUri().toString(), "main",
+                    Optional.of(Duration.ofHours(1)), tempDir.resolve("clone"));
+            try {
+                var groupManager = new RecipeGroupManager(List.of(manager));
+                var gav = new GAV("io.quarkus", "quarkus-core", "1.0");
+                List<Path> snapshots = new ArrayList<>();
+                for (int i = 1; i <= 3; i++) {
+                    commitScm(git, group, i);
+                    manager.update();
+                    var current = groupManager.lookupScmInformation(gav).get(0);
+                    Assertions.assertTrue(Files.readString(current).contains("quarkus-" + i + ".git"));
+                    snapshots.add(current);
+                }
+                //readers may still be using the replaced snapshots
+                for (var path : snapshots) {
+                    Assertions.assertTrue(Files.exists(path), path.toString());
+                }
+
+                manager.setSnapshotGracePeriod(Duration.ZERO);
+                manager.update();
+                Assertions.assertTrue(Files.notExists(snapshots.get(0)));
+                Assertions.assertTrue(Files.notExists(snapshots.get(1)));
+                Assertions.assertTrue(Files.exists(snapshots.get(2)));
+                Assertions.assertEquals(List.of(snapshots.get(2)), groupManager.lookupScmInformation(gav));
+                //the original clone is never deleted
+                Assertions.assertTrue(Files.exists(tempDir.resolve("clone").resolve(upstream.relativize(group))));
+            } finally {
+                manager.close();
+            }
+        }
+    }
+
+    private static void commitScm(Git git, Path group, int revision) throws Exception {
+        Files.writeString(group.resolve(BuildRecipe.SCM.getName()),
+                "uri: https://github.com/quarkusio/quarkus-" + revision + ".git\n");
+        git.add().addFilepattern(".").call();
+        git.commit().setMessage("revision " + revision).setSign(false).call();
+    }
+}
@@ -0,0 +1,115 @@
+package com.redhat.hacbs.recipes.scm;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class RepositoryTagCacheTest {
+
+    static final String URI = "https://github.com/example/example.git";
+
+    @Test
+    void testTagsAreCached() {
+        var listings = new AtomicInteger();
+        var cache = RepositoryTagCache.create(Duration.ofHours(1), 10);
+        for (int i = 0; i < 5; ++i) {
+            Assertions.assertEquals(Map.of("1.0", "abc"), cache.get(URI, () -> {
+                listings.incrementAndGet();
+                return Map.of("1.0", "abc");
+            }));
+        }
+        Assertions.assertEquals(1, listings.get());
+        cache.invalidate(URI);
+        cache.get(URI, () -> {
+            listings.incrementAndGet();
+            return Map.of();
+        });
+        Assertions.assertEquals(2, listings.get());
+    }
+
+    @Test
+    void testExpiredTagsAreListedAgain() {
+        var listings = new AtomicInteger();
+        var cache = RepositoryTagCache.create(Duration.ZERO, 10);
+        cache.get(URI, () -> Map.of("1.0", String.valueOf(listings.incrementAndGet())));
+        Assertions.assertEquals(Map.of("1.0", "2"),
+                cache.get(URI, () -> Map.of("1.0", String.valueOf(listings.incrementAndGet()))));
+    }
+
+    @Test
+    void testRecentlyListedTagsAreNotOutdated() {
+        var listings = new AtomicInteger();
+        var cache = RepositoryTagCache.create(Duration.ofHours(1), 10);
+        cache.get(URI, () -> Map.of("1.0", String.valueOf(listings.incrementAndGet())));
+        //tags listed in the last minute are used even if they look out of date
+        Assertions.assertEquals(Map.of("1.0", "1"),
+                cache.get(URI, () -> Map.of("1.0", String.valueOf(listings.incrementAndGet())), tags -> true));
+    }
+
+    @Test
+    void testFailuresAreNotCached() {
+        var cache = RepositoryTagCache.create(Duration.ofHours(1), 10);
+        Assertions.assertThrows(IllegalStateException.class, () -> cache.get(URI, () -> {
+            throw new IllegalStateException();
+        }));
+        Assertions.assertEquals(Map.of("1.0", "abc"), cache.get(URI, () -> Map.of("1.0", "abc")));
+    }
+
+    @Test
+    void testConcurrentListingsAreCoalesced() throws Exception {
+        var listings = new AtomicInteger();
+        var durations = new ArrayList<Long>();
+        var started = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var cache = new RepositoryTagCache(Duration.ofHours(1), Duration.ofHours(1), 10, Runnable::run,
+                (uri, nanos, success) -> {
+                    synchronized (durations) {
+                        durations.add(nanos);
+                    }
+                });
+        List<CompletableFuture<Map<String, String>>> results = new ArrayList<>();
+        for (int i = 0; i < 10; ++i) {
+            results.add(CompletableFuture.supplyAsync(() -> cache.get(URI, () -> {
+                listings.incrementAndGet();
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                return Map.of("1.0", "abc");
+            })));
+        }
+        Assertions.assertTrue(started.await(10, TimeUnit.SECONDS));
+        release.countDown();
+        for (var result : results) {
+            Assertions.assertEquals(Map.of("1.0", "abc"), result.get(10, TimeUnit.SECONDS));
+        }
+        Assertions.assertEquals(1, listings.get());
+        Assertions.assertEquals(1, durations.size());
+    }
+
+    @Test
+    void testBackgroundRefresh() {
+        var listings = new AtomicInteger();
+        var background = new ArrayList<Runnable>();
+        var cache = new RepositoryTagCache(Duration.ofHours(1), Duration.ZERO, 10, background::add,
+                (uri, nanos, success) -> {
+                });
+        cache.get(URI, () -> Map.of("1.0", String.valueOf(listings.incrementAndGet())));
+        //the old tags are returned while they are listed again
+        Assertions.assertEquals(Map.of("1.0", "1"),
+                cache.get(URI, () -> Map.of("1.0", String.valueOf(listings.incrementAndGet()))));
+        Assertions.assertEquals(1, background.size());
+        background.get(0).run();
+        Assertions.assertEquals("2", cache.get(URI, Map::of).get("1.0"));
+    }
+}
@@ -0,0 +1,115 @@
+package com.redhat.hacbs.recipes.scm;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Comparison of tag selection with a {@link TagIndex} and the linear scan of all the tags that it replaced, on a
+ * synthetic repository with a similar tag layout to the AWS SDK.
+ * <p>
+ * This is not run as part of the test suite. It takes the number of tags and the number of lookups as optional
+ * arguments, and reports the time taken to build the index and the time per lookup.
+ */
+public class TagIndexBenchmark {
+
+    public static void main(String[] args) {
+        int tagCount = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+        int lookups = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        Map<String, String> tags = new HashMap<>();
+        String[] versions = new String[tagCount];
+        for (int i = 0; i < tagCount; ++i) {
+            versions[i] = "2." + (i / 1000) + "." + (i % 1000);
+            var tag = switch (i % 4) {
+                case 0 -> versions[i];
+                case 1 -> "v" + versions[i];
+                case 2 -> "release-" + versions[i].replace('.', '_');
+                default -> "sdk-" + versions[i] + "-preview";
+            };
+            tags.put(tag, Integer.toHexString(i));
+        }
+        var mapping = new TagMapping().setPattern("(\\d+)\\.(\\d+)\\.(\\d+)").setTag("release-$1_$2_$3");
+
+        //warm up
+        runIndexed(TagIndex.of(tags), versions, mapping, lookups);
+        runLinear(tags, versions, mapping, lookups);
+
+        long start = System.nanoTime();
+        var index = TagIndex.of(tags);
+        long buildNanos = System.nanoTime() - start;
+        System.out.printf("%d tags: index built in %.1f ms%n", tagCount, buildNanos / 1_000_000d);
+        long indexed = runIndexed(index, versions, mapping, lookups);
+        long linear = runLinear(tags, versions, mapping, lookups);
+        System.out.printf("indexed %.1f us/lookup, linear scan %.1f us/lookup%n", indexed / 1000d / lookups,
+                linear / 1000d / lookups);
+    }
+
+    /**
+     * @return A version to look up, half of which match the tag mapping
+     */
+    static String version(String[] versions, int i) {
+        var version = versions[(i * 7919) % versions.length];
+        return i % 2 == 0 ? version : version + ".Final";
+    }
+
+    static long runIndexed(TagIndex index, String[] versions, TagMapping mapping, int lookups) {
+        var compiled = mapping.compiled();
+        long start = System.nanoTime();
+        for (int i = 0; i < lookups; ++i) {
+            var version = version(versions, i);
+            var match = compiled.map(version);
+            if (match == null || !index.contains(match)) {
+                select(() -> GitScmLocator.runTagHeuristic(version, index));
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    static long runLinear(Map<String, String> tags, String[] versions, TagMapping mapping, int lookups) {
+        long start = System.nanoTime();
+        for (int i = 0; i < lookups; ++i) {
+            var version = version(versions, i);
+            Matcher m = Pattern.compile(mapping.getPattern()).matcher(version);
+            String match = null;
+            if (m.matches()) {
+                match = mapping.getTag();
+                for (int g = 0; g <= m.groupCount(); ++g) {
+                    match = match.replaceAll("\\$" + g, m.group(g));
+                }
+            }
+            if (match == null || !tags.containsKey(match)) {
+                select(() -> linearHeuristic(version, tags));
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    static void select(Runnable heuristic) {
+        try {
+            heuristic.run();
+        } catch (RuntimeException e) {
+            //no tag found, which is still a lookup
+        }
+    }
+
+    /**
+     * The scan that {@link GitScmLocator#runTagHeuristic(String, TagIndex)} used to do, without the tag selection
+     * that follows it
+     */
+    static void linearHeuristic(String version, Map<String, String> tagsToHash) {
+        Set<String> versionExactContains = new HashSet<>();
+        Set<String> tagExactContains = new HashSet<>();
+        for (var name : tagsToHash.keySet()) {
+            if (name.equals(version)) {
+                return;
+            } else if (name.contains(version)) {
+                versionExactContains.add(name);
+            } else if (version.contains(name)) {
+                tagExactContains.add(name);
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.redhat.hacbs.recipes.scm;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class TagIndexTest {
+
+    @Test
+    void testMatchesLinearScan() {
+        var random = new Random(42);
+        var tags = randomTags(random, 2000);
+        //a tag that is too long for the suffix array
+        tags.put("release-" + "x".repeat(300) + "-1.2.3", "");
+        var index = TagIndex.of(tags);
+        List<String> queries = List.of("1.2.3", "1_2_3", "1.2", "v1", "-rc", "1.2.3.Final", "x", "zzz", "0",
+                "release-1.0.0");
+        for (var query : queries) {
+            assertMatches(tags, index, query);
+        }
+        for (int i = 0; i < 200; ++i) {
+            assertMatches(tags, index, randomVersion(random));
+        }
+    }
+
+    @Test
+    void testContainedIn() {
+        var index = TagIndex.of(Map.of("1.0", "a", "1.0.Final", "b", "Final", "c", "2.0", "d"));
+        Assertions.assertEquals(Set.of("1.0", "Final"), index.tagsContainedIn("1.0.Final"));
+        Assertions.assertEquals(Set.of("1.0.Final"), index.tagsContaining("1.0."));
+        Assertions.assertTrue(index.anyContains(".Fin"));
+        Assertions.assertFalse(index.anyContains("3.0"));
+    }
+
+    @Test
+    void testEmpty() {
+        var index = TagIndex.of(Map.of());
+        Assertions.assertEquals(Set.of(), index.tagsContaining("1.0"));
+        Assertions.assertEquals(Set.of(), index.tagsContainedIn("1.0"));
+        Assertions.assertFalse(index.anyContains("1.0"));
+    }
+
+    @Test
+    void testTagMapping() {
+        var mapping = new TagMapping().setPattern("(\\d+)\\.(\\d+)(?:\\.(\\d+))?").setTag("v$1_$2$3-$4$");
+        var compiled = mapping.compiled();
+        Assertions.assertSame(compiled, mapping.compiled());
+        Assertions.assertFalse(compiled.isConstant());
+        Assertions.assertEquals("v1_23-$4$", compiled.map("1.2.3"));
+        Assertions.assertEquals("v1_2-$4$", compiled.map("1.2"));
+        Assertions.assertNull(compiled.map("1.2.3.4"));
+
+        mapping.setTag("main");
+        Assertions.assertNotSame(compiled, mapping.compiled());
+        Assertions.assertTrue(mapping.compiled().isConstant());
+        Assertions.assertEquals("main", mapping.compiled().map("1.2"));
+    }
+
+    static void assertMatches(Map<String, String> tags, TagIndex index, String query) {
+        Set<String> containing = tags.keySet().stream().filter(t -> t.contains(query)).collect(Collectors.toSet());
+        Set<String> contained = tags.keySet().stream().filter(t -> !t.equals(query) && query.contains(t))
+                .collect(Collectors.toSet());
+        Assertions.assertEquals(containing, new HashSet<>(index.tagsContaining(query)), query);
+        Assertions.assertEquals(contained, index.tagsContainedIn(query), query);
+        Assertions.assertEquals(!containing.isEmpty(), index.anyContains(query), query);
+    }
+
+    static Map<String, String> randomTags(Random random, int count) {
+        String[] prefixes = { "", "v", "release-", "project-parent-", "rel/" };
+        String[] suffixes = { "", ".Final", "-rc1", "-RC2", ".Beta1", "_release" };
+        Map<String, String> tags = new HashMap<>();
+        while (tags.size() < count) {
+            var version = randomVersion(random);
+            if (random.nextInt(4) == 0) {
+                version = version.replace('.', '_');
+            }
+            tags.put(prefixes[random.nextInt(prefixes.length)] + version + suffixes[random.nextInt(suffixes.length)],
+                    Integer.toHexString(tags.size()));
+        }
+        return tags;
+    }
+
+    static String randomVersion(Random random) {
+        var sb = new StringBuilder().append(random.nextInt(5));
+        int parts = 1 + random.nextInt(3);
+        for (int i = 0; i < parts; ++i) {
+            sb.append('.').append(random.nextInt(12));
+        }
+        return sb.toString();
+    }
+}
@@ -1,14 +1,21 @@
 package com.redhat.hacbs.container.analyser.dependencies;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.zip.GZIPInputStream;
 
 import jakarta.inject.Singleton;
@@ -20,14 +27,17 @@ import com.google.cloud.tools.jib.api.DescriptorDigest;
 import com.google.cloud.tools.jib.api.ImageReference;
 import com.google.cloud.tools.jib.api.InvalidImageReferenceException;
 import com.google.cloud.tools.jib.api.RegistryException;
+import com.google.cloud.tools.jib.blob.Blob;
 import com.google.cloud.tools.jib.image.json.BuildableManifestTemplate;
 import com.google.cloud.tools.jib.image.json.ManifestTemplate;
 import com.google.cloud.tools.jib.image.json.V21ManifestTemplate;
 import com.google.cloud.tools.jib.registry.ManifestAndDigest;
 import com.google.cloud.tools.jib.registry.RegistryClient;
 import com.google.cloud.tools.jib.registry.credentials.CredentialRetrievalException;
+import com.redhat.hacbs.classfile.tracker.ClassFileTracker;
 import com.redhat.hacbs.classfile.tracker.NoCloseInputStream;
 import com.redhat.hacbs.classfile.tracker.TrackingData;
+import com.redhat.hacbs.common.images.ociclient.LayerExtractor;
 import com.redhat.hacbs.container.deploy.containerregistry.ContainerUtil;
 
 import io.quarkus.arc.Unremovable;
@@ -39,12 +49,29 @@ import picocli.CommandLine;
 @Unremovable
 public class AnalyseImage extends AnalyserBase {
 
+    static final int BUFFER_SIZE = 64 * 1024;
+    /**
+     * Files larger than this are not buffered, and are scanned as they are read from the layer
+     */
+    static final int MAX_ENTRY_SIZE = 32 * 1024 * 1024;
+    /**
+     * The maximum amount of file data that is waiting to be scanned
+     */
+    static final int MAX_BUFFERED_BYTES = 256 * 1024 * 1024;
+
     @CommandLine.Parameters(index = "0")
     String image;
 
     @CommandLine.Option(names = { "--base-image", "-b" }, required = false)
     Optional<String> baseImage;
 
+    /**
+     * The number of threads used to scan class files and archives, defaults to the number of processors. Layers are
+     * downloaded concurrently using up to this many threads as well.
+     */
+    @CommandLine.Option(names = "--parallelism", defaultValue = "0")
+    int parallelism;
+
     void doAnalysis(Set<String> gavs, Set<TrackingData> trackingData) throws Exception {
         Set<DescriptorDigest> layersToProcess = new HashSet<>();
         Log.infof("Processing image %s", image);
@@ -54,23 +81,134 @@ public class AnalyseImage extends AnalyserBase {
             extractLayers(baseImage.get(), layersToProcess::remove);
         }
         Log.infof("Processing layers to extract: %s", layersToProcess);
-        for (var layer : layersToProcess) {
-            var blob = client.pullBlob(layer, s -> {
-            }, s -> {
-            });
-            Path targetFile = Files.createTempFile("layer", "layer");
+        if (layersToProcess.isEmpty()) {
+            return;
+        }
+        scanLayers(layersToProcess, layer -> client.pullBlob(layer, s -> {
+        }, s -> {
+        }), gavs, trackingData);
+    }
+
+    /**
+     * Scans the layers concurrently, downloading the ones that have not already been analysed from the blob source
+     */
+    void scanLayers(Set<DescriptorDigest> layersToProcess, Function<DescriptorDigest, Blob> blobSource, Set<String> gavs,
+            Set<TrackingData> trackingData) throws Exception {
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        ExecutorService layerExecutor = Executors.newFixedThreadPool(Math.min(threads, layersToProcess.size()));
+        ExecutorService scanExecutor = Executors.newFixedThreadPool(threads);
+        try {
+            LayerScanner scanner = new LayerScanner(scanExecutor, blobSource, trackingData, gavs);
+            List<Future<?>> layers = new ArrayList<>();
+            for (var layer : layersToProcess) {
+                layers.add(layerExecutor.submit(() -> {
+                    scanner.scan(layer);
+                    return null;
+                }));
+            }
+            for (var layer : layers) {
+                await(layer);
+            }
+        } finally {
+            layerExecutor.shutdownNow();
+            scanExecutor.shutdownNow();
+        }
+    }
+
+    private static void await(Future<?> future) throws Exception {
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
 
-            try (OutputStream out = Files.newOutputStream(targetFile)) {
-                blob.writeTo(out);
+    /**
+     * Reads the layers as they are downloaded, and hands the files that may contain tracking data to the scan executor.
+     * <p>
+     * The contents of these files have to be copied out of the layer before it can move on to the next entry, so the
+     * amount of buffered data is limited, and files too large to buffer are scanned directly by the layer thread. Once
+     * all the files in a layer have been scanned the results are stored in the analysis cache, so the layer is not
+     * downloaded again by later analyses.
+     */
+    private final class LayerScanner {
+
+        private final ExecutorService scanExecutor;
+        private final Function<DescriptorDigest, Blob> blobSource;
+        private final Set<TrackingData> trackingData;
+        private final Set<String> gavs;
+        private final Semaphore buffered = new Semaphore(MAX_BUFFERED_BYTES);
+
+        LayerScanner(ExecutorService scanExecutor, Function<DescriptorDigest, Blob> blobSource,
+                Set<TrackingData> trackingData, Set<String> gavs) {
+            this.scanExecutor = scanExecutor;
+            this.blobSource = blobSource;
+            this.trackingData = trackingData;
+            this.gavs = gavs;
+        }
+
+        void scan(DescriptorDigest layer) throws Exception {
+            var cached = analysisCache.get(layer.toString());
+            if (cached.isPresent()) {
+                Log.infof("Using cached analysis of layer %s", layer.getHash());
+                record(layer, cached.get());
+                return;
             }
-            try (InputStream in = Files.newInputStream(targetFile)) {
-                GZIPInputStream inputStream = new GZIPInputStream(in);
-                TarArchiveInputStream tarArchiveInputStream = new TarArchiveInputStream(inputStream);
+            var blob = blobSource.apply(layer);
+            Set<TrackingData> layerData = Collections.synchronizedSet(new HashSet<>());
+            List<Future<?>> scans = new ArrayList<>();
+            LayerExtractor.read(blob, in -> {
+                TarArchiveInputStream tarArchiveInputStream = new TarArchiveInputStream(
+                        new GZIPInputStream(in, BUFFER_SIZE));
                 for (TarArchiveEntry entry = tarArchiveInputStream
                         .getNextEntry(); entry != null; entry = tarArchiveInputStream.getNextEntry()) {
-                    Log.debugf("Processing %s from layer %s", entry.getName(), layer.getHash());
-                    handleFile(entry.getName(), new NoCloseInputStream(tarArchiveInputStream), trackingData, gavs);
+                    String name = entry.getName();
+                    if (!entry.isFile() || !ClassFileTracker.isTrackedFile(name)) {
+                        continue;
+                    }
+                    Log.debugf("Processing %s from layer %s", name, layer.getHash());
+                    if (entry.getSize() > MAX_ENTRY_SIZE) {
+                        layerData.addAll(ClassFileTracker
+                                .readTrackingDataFromFile(new NoCloseInputStream(tarArchiveInputStream), name));
+                        continue;
+                    }
+                    int size = (int) entry.getSize();
+                    try {
+                        buffered.acquire(size);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException();
+                    }
+                    try {
+                        byte[] contents = tarArchiveInputStream.readAllBytes();
+                        scans.add(scanExecutor.submit(() -> {
+                            try {
+                                layerData.addAll(ClassFileTracker
+                                        .readTrackingDataFromFile(new ByteArrayInputStream(contents), name));
+                            } finally {
+                                buffered.release(size);
+                            }
+                            return null;
+                        }));
+                    } catch (IOException | RuntimeException e) {
+                        buffered.release(size);
+                        throw e;
+                    }
                 }
+            });
+            for (var scan : scans) {
+                await(scan);
+            }
+            analysisCache.put(layer.toString(), layerData);
+            record(layer, layerData);
+        }
+
+        private void record(DescriptorDigest layer, Set<TrackingData> layerData) {
+            synchronized (trackingData) {
+                recordTrackingData("layer " + layer.getHash(), layerData, trackingData, gavs);
             }
         }
     }
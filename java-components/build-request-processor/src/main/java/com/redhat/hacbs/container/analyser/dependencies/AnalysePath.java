@@ -1,5 +1,6 @@
 package com.redhat.hacbs.container.analyser.dependencies;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
@@ -11,7 +12,9 @@ import java.util.Set;
 
 import jakarta.inject.Singleton;
 
+import com.redhat.hacbs.classfile.tracker.ClassFileTracker;
 import com.redhat.hacbs.classfile.tracker.TrackingData;
+import com.redhat.hacbs.resources.util.HashUtil;
 
 import io.quarkus.arc.Unremovable;
 import io.quarkus.logging.Log;
@@ -37,7 +40,11 @@ public class AnalysePath extends AnalyserBase implements Runnable {
                         return FileVisitResult.CONTINUE;
                     }
                     try {
-                        return handleFile(file.getFileName().toString(), Files.newInputStream(file), trackingData, gavs);
+                        String fileName = file.getFileName().toString();
+                        if (analysisCache.isEnabled() && ClassFileTracker.isTrackedArchive(fileName)) {
+                            return handleArchive(file, fileName, trackingData, gavs);
+                        }
+                        return handleFile(fileName, Files.newInputStream(file), trackingData, gavs);
                     } catch (Exception e) {
                         Log.errorf(e, "Failed to analyse %s", file);
                         return FileVisitResult.CONTINUE;
@@ -47,4 +54,25 @@ public class AnalysePath extends AnalyserBase implements Runnable {
         }
     }
 
+    /**
+     * Analyses an archive, using the results from the analysis cache if an archive with the same SHA-256 has been
+     * analysed before.
+     */
+    FileVisitResult handleArchive(Path file, String fileName, Set<TrackingData> trackingData, Set<String> gavs)
+            throws IOException {
+        String key = "sha256:" + HashUtil.hashStream(new BufferedInputStream(Files.newInputStream(file)), "SHA-256");
+        var cached = analysisCache.get(key);
+        if (cached.isPresent()) {
+            recordTrackingData(fileName, cached.get(), trackingData, gavs);
+            return FileVisitResult.CONTINUE;
+        }
+        Log.debugf("Processing %s", fileName);
+        Set<TrackingData> jarData;
+        try (var in = Files.newInputStream(file)) {
+            jarData = ClassFileTracker.readTrackingDataFromFile(in, fileName);
+        }
+        analysisCache.put(key, jarData);
+        recordTrackingData(fileName, jarData, trackingData, gavs);
+        return FileVisitResult.CONTINUE;
+    }
 }
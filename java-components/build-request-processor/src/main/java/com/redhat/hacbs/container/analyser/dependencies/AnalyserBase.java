@@ -9,6 +9,7 @@ import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 
 import jakarta.enterprise.inject.Instance;
@@ -60,17 +61,30 @@ public abstract class AnalyserBase implements Runnable {
     @CommandLine.Option(names = "--output-all-dependencies")
     boolean outputAllDependencies;
 
+    /**
+     * A directory that is used to store the results of analysing layers and archives, so they are not analysed again
+     */
+    @CommandLine.Option(names = "--analysis-cache")
+    Optional<Path> analysisCachePath;
+
+    @CommandLine.Option(names = "--analysis-cache-max-size", defaultValue = "1073741824")
+    long analysisCacheMaxSize;
+
     @Inject
     Instance<ResultsUpdater> resultsUpdater;
 
     protected String imageDigest = "";
 
+    AnalysisCache analysisCache = AnalysisCache.disabled();
+
     @Override
     public void run() {
         try {
             Set<String> gavs = new HashSet<>();
             Set<TrackingData> trackingData = new HashSet<>();
+            analysisCache = AnalysisCache.create(analysisCachePath, analysisCacheMaxSize);
             doAnalysis(gavs, trackingData);
+            analysisCache.trim();
             if (!outputAllDependencies) {
                 rebuild.rebuild(taskRunName, gavs);
                 writeResults(gavs, trackingData);
@@ -175,6 +189,15 @@ public abstract class AnalyserBase implements Runnable {
             throws IOException {
         Log.debugf("Processing %s", fileName);
         var jarData = ClassFileTracker.readTrackingDataFromFile(contents, fileName);
+        recordTrackingData(fileName, jarData, trackingData, gavs);
+        return FileVisitResult.CONTINUE;
+    }
+
+    /**
+     * Adds the tracking data read from a file to the results, and records the GAVs that do not come from an allowed
+     * source.
+     */
+    void recordTrackingData(String fileName, Set<TrackingData> jarData, Set<TrackingData> trackingData, Set<String> gavs) {
         trackingData.addAll(jarData);
         for (var data : jarData) {
             if (data != null) {
@@ -185,7 +208,5 @@ public abstract class AnalyserBase implements Runnable {
                 }
             }
         }
-        return FileVisitResult.CONTINUE;
     }
-
 }
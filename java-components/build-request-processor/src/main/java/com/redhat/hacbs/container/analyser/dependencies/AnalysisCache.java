@@ -0,0 +1,168 @@
+package com.redhat.hacbs.container.analyser.dependencies;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.redhat.hacbs.classfile.tracker.TrackingData;
+
+import io.quarkus.logging.Log;
+
+/**
+ * A local directory store of the tracking data found in image layers and archives, keyed by their digest.
+ * <p>
+ * The same base image layers and third party jars are analysed over and over again, so if the same content has been
+ * analysed before the stored result is used instead. Entries are JSON files named after the key, and the least recently
+ * used entries are removed when the store grows larger than the maximum size. If anything goes wrong reading or writing
+ * the store the content is just analysed again.
+ */
+final class AnalysisCache {
+
+    /**
+     * Bumped whenever the stored format or the analysis itself changes, so old results are not used
+     */
+    static final String VERSION = "v1";
+    private static final TypeReference<List<Entry>> ENTRIES = new TypeReference<>() {
+    };
+
+    private final Path root;
+    private final long maxSize;
+
+    private AnalysisCache(Path root, long maxSize) {
+        this.root = root;
+        this.maxSize = maxSize;
+    }
+
+    static AnalysisCache create(Optional<Path> path, long maxSize) {
+        if (path.isEmpty()) {
+            return disabled();
+        }
+        try {
+            Path root = path.get().resolve(VERSION);
+            Files.createDirectories(root);
+            Log.infof("Using analysis cache %s with a maximum size of %s bytes", root, maxSize);
+            return new AnalysisCache(root, maxSize);
+        } catch (IOException e) {
+            Log.errorf(e, "Failed to create analysis cache %s, it will not be used", path.get());
+            return disabled();
+        }
+    }
+
+    /**
+     * @return A cache that never stores anything
+     */
+    static AnalysisCache disabled() {
+        return new AnalysisCache(null, 0);
+    }
+
+    boolean isEnabled() {
+        return root != null;
+    }
+
+    /**
+     * @param key The digest of the content, in the form algorithm:hex
+     * @return The tracking data from the last time this content was analysed
+     */
+    Optional<Set<TrackingData>> get(String key) {
+        if (root == null) {
+            return Optional.empty();
+        }
+        Path file = file(key);
+        if (!Files.exists(file)) {
+            return Optional.empty();
+        }
+        try {
+            Set<TrackingData> ret = new HashSet<>();
+            for (var entry : AnalyserBase.MAPPER.readValue(file.toFile(), ENTRIES)) {
+                ret.add(new TrackingData(entry.gav(), entry.source(), entry.attributes()));
+            }
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            Log.debugf("Using cached analysis of %s", key);
+            return Optional.of(ret);
+        } catch (IOException e) {
+            Log.errorf(e, "Failed to read cached analysis of %s", key);
+            return Optional.empty();
+        }
+    }
+
+    void put(String key, Set<TrackingData> trackingData) {
+        if (root == null) {
+            return;
+        }
+        List<Entry> entries = new ArrayList<>();
+        for (var data : trackingData) {
+            if (data != null) {
+                entries.add(new Entry(data.gav, data.source, data.getAttributes()));
+            }
+        }
+        try {
+            Path temp = Files.createTempFile(root, "analysis", ".tmp");
+            try {
+                AnalyserBase.MAPPER.writeValue(temp.toFile(), entries);
+                Files.move(temp, file(key), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            Log.errorf(e, "Failed to cache analysis of %s", key);
+        }
+    }
+
+    /**
+     * Removes the least recently used entries until the store is smaller than the maximum size.
+     */
+    void trim() {
+        if (root == null) {
+            return;
+        }
+        try {
+            List<Path> files;
+            try (Stream<Path> list = Files.list(root)) {
+                files = new ArrayList<>(list.toList());
+            }
+            long size = 0;
+            for (var file : files) {
+                size += Files.size(file);
+            }
+            if (size <= maxSize) {
+                return;
+            }
+            files.sort(Comparator.comparing(file -> {
+                try {
+                    return Files.getLastModifiedTime(file);
+                } catch (IOException e) {
+                    return FileTime.fromMillis(0);
+                }
+            }));
+            for (var file : files) {
+                if (size <= maxSize) {
+                    break;
+                }
+                long fileSize = Files.size(file);
+                if (Files.deleteIfExists(file)) {
+                    size -= fileSize;
+                }
+            }
+        } catch (IOException e) {
+            Log.errorf(e, "Failed to trim analysis cache %s", root);
+        }
+    }
+
+    private Path file(String key) {
+        return root.resolve(key.replace(':', '-') + ".json");
+    }
+
+    record Entry(String gav, String source, Map<String, String> attributes) {
+    }
+}
@@ -29,6 +29,7 @@ import com.google.cloud.tools.jib.api.buildplan.FileEntriesLayer;
 import com.google.cloud.tools.jib.api.buildplan.FilePermissions;
 import com.google.cloud.tools.jib.api.buildplan.FilePermissionsProvider;
 import com.google.cloud.tools.jib.api.buildplan.ImageFormat;
+import com.redhat.hacbs.common.images.ociclient.LayerIndex;
 import com.redhat.hacbs.common.sbom.GAV;
 import com.redhat.hacbs.container.deploy.DeployData;
 
@@ -200,15 +201,30 @@ public class ContainerRegistryDeployer {
 
         containerBuilder.addLabel("io.jvmbuildservice.gavs",
                 gavs.stream().map(GAV::stringForm).collect(Collectors.joining(",")));
-        List<Path> layers = getLayers(imageData.getArtifactsPath(), sourcePath, logsPath);
-        for (Path layer : layers) {
-            containerBuilder = containerBuilder.addLayer(List.of(layer), imageRoot);
-        }
+        Path artifactsPath = imageData.getArtifactsPath();
+        logLayers(artifactsPath, sourcePath, logsPath);
+        containerBuilder = containerBuilder.addLayer(List.of(sourcePath), imageRoot)
+                .addLayer(List.of(logsPath), imageRoot);
+        //lets the cache tell what is in the artifacts layer before it has been fully extracted
+        //the index is written to a temp dir rather than the artifacts, as they are also deployed elsewhere
+        Path indexDir = Files.createTempDirectory("layer-index");
+        try {
+            Path index = indexDir.resolve(LayerIndex.FILE_NAME);
+            LayerIndex.write(artifactsPath, index);
+            AbsoluteUnixPath artifactsRoot = imageRoot.resolve(artifactsPath.getFileName());
+            containerBuilder = containerBuilder.addFileEntriesLayer(FileEntriesLayer.builder()
+                    .addEntryRecursive(artifactsPath, artifactsRoot)
+                    .addEntry(index, artifactsRoot.resolve(LayerIndex.FILE_NAME))
+                    .build());
 
-        var result = containerBuilder.containerize(containerizer);
+            var result = containerBuilder.containerize(containerizer);
 
-        if (imageNameHashCallback != null) {
-            imageNameHashCallback.accept(imageName, result.getDigest().getHash());
+            if (imageNameHashCallback != null) {
+                imageNameHashCallback.accept(imageName, result.getDigest().getHash());
+            }
+        } finally {
+            Files.deleteIfExists(indexDir.resolve(LayerIndex.FILE_NAME));
+            Files.deleteIfExists(indexDir);
         }
     }
 
@@ -240,13 +256,11 @@ public class ContainerRegistryDeployer {
                 + "@" + digest;
     }
 
-    private List<Path> getLayers(Path artifacts, Path source, Path logs) {
+    private void logLayers(Path artifacts, Path source, Path logs) {
         Log.debug("\n Container details:\n"
                 + "\t layer 1 (source) " + source.toString() + "\n"
                 + "\t layer 2 (logs) " + logs.toString() + "\n"
                 + "\t layer 3 (artifacts) " + artifacts.toString());
-
-        return List.of(source, logs, artifacts);
     }
 
 }
@@ -17,9 +17,9 @@ public class DiffUtils {
 
     public record DiffResults(Set<String> shared, Set<String> added, Set<String> deleted,
             Map<String, DiffResult<?>> diffResults,
-            List<String> results) {
+            List<Difference> results) {
         public DiffResults(Set<String> shared, Set<String> added, Set<String> deleted, Map<String, DiffResult<?>> diffResults,
-                List<String> results) {
+                List<Difference> results) {
             this.shared = Set.copyOf(shared);
             this.added = Set.copyOf(added);
             this.deleted = Set.copyOf(deleted);
@@ -28,9 +28,10 @@ public class DiffUtils {
         }
     }
 
-    public static <T extends AsmDiffable<T>> DiffResults diff(String oldName, String newName, String type, Map<String, T> left,
-            Map<String, T> right) {
-        var results = new ArrayList<String>();
+    public static <T extends AsmDiffable<T>> DiffResults diff(String jarName, String oldName, String newName, String type,
+            Map<String, T> left, Map<String, T> right) {
+        var results = new ArrayList<Difference>();
+        var jname = jarName.replace('/', '.');
         var oname = oldName.replace('/', '.');
         var nname = newName.replace('/', '.');
         var shared = (Set<String>) new LinkedHashSet<String>();
@@ -44,8 +45,8 @@ public class DiffUtils {
         });
         var added = right.keySet().stream().filter(key -> !left.containsKey(key))
                 .collect(Collectors.toCollection(LinkedHashSet::new));
-        added.forEach(key -> results.add(String.format("+:%s:%s:%s", nname, type, Objects.toString(right.get(key), key))));
-        deleted.forEach(key -> results.add(String.format("-:%s:%s:%s", oname, type, Objects.toString(left.get(key), key))));
+        added.forEach(key -> results.add(Difference.added(jname, nname, type, Objects.toString(right.get(key), key))));
+        deleted.forEach(key -> results.add(Difference.removed(jname, oname, type, Objects.toString(left.get(key), key))));
         var diffResults = new LinkedHashMap<String, DiffResult<?>>();
         shared.forEach(clazz -> {
             var l = left.get(clazz);
@@ -0,0 +1,75 @@
+package com.redhat.hacbs.container.verifier;
+
+import com.fasterxml.jackson.annotation.JsonValue;
+
+/**
+ * A single difference between an upstream jar and a rebuilt jar.
+ * <p>
+ * The string form is what is reported and what exclusions are matched against. Classes that were added or removed are
+ * reported as {@code +:jar:class:name} and {@code -:jar:class:name}, members that were added or removed as
+ * {@code +:jar:class:kind:value} and {@code -:jar:class:kind:value}, and changes as
+ * {@code ^:jar:class:kind:old>new}.
+ *
+ * @param type The type of difference
+ * @param jarName The name of the jar the difference was found in
+ * @param className The name of the class the difference was found in, or null if a whole class was added or removed
+ * @param kind What was different, e.g. class, method or version
+ * @param value The value that was added or removed, or the old value for a change
+ * @param newValue The new value for a change, otherwise null
+ */
+public record Difference(Type type, String jarName, String className, String kind, String value, String newValue) {
+
+    public static Difference added(String jarName, String className, String kind, String value) {
+        return new Difference(Type.ADDED, jarName, className, kind, value, null);
+    }
+
+    public static Difference removed(String jarName, String className, String kind, String value) {
+        return new Difference(Type.REMOVED, jarName, className, kind, value, null);
+    }
+
+    public static Difference changed(String jarName, String className, String kind, String oldValue, String newValue) {
+        return new Difference(Type.CHANGED, jarName, className, kind, oldValue, newValue);
+    }
+
+    /**
+     * @return true if a whole class is missing from the rebuilt jar
+     */
+    public boolean isClassRemoved() {
+        return type == Type.REMOVED && className == null;
+    }
+
+    /**
+     * @return true if the class file version changed, in which case the value and the new value are the versions in
+     *         major.minor form
+     */
+    public boolean isClassVersionChanged() {
+        return type == Type.CHANGED && "version".equals(kind);
+    }
+
+    @JsonValue
+    @Override
+    public String toString() {
+        var sb = new StringBuilder();
+        sb.append(type.symbol).append(':').append(jarName).append(':');
+        if (className != null) {
+            sb.append(className).append(':');
+        }
+        sb.append(kind).append(':').append(value);
+        if (type == Type.CHANGED) {
+            sb.append('>').append(newValue);
+        }
+        return sb.toString();
+    }
+
+    public enum Type {
+        ADDED('+'),
+        REMOVED('-'),
+        CHANGED('^');
+
+        private final char symbol;
+
+        Type(char symbol) {
+            this.symbol = symbol;
+        }
+    }
+}
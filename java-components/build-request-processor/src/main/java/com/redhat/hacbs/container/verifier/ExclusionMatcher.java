@@ -0,0 +1,206 @@
+package com.redhat.hacbs.container.verifier;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Matches verification differences against the allowed differences, which are regular expressions that exclude any
+ * difference they find a match in.
+ * <p>
+ * This is compiled once per run. Most exclusions are plain text, either quoted with {@code \Q...\E} or with the
+ * metacharacters escaped, so these are put in a trie and a line is checked against all of them in a single walk. All the
+ * other expressions are combined into a single alternation, so each line is only matched once no matter how many
+ * exclusions there are.
+ */
+public final class ExclusionMatcher {
+
+    private static final ExclusionMatcher NONE = new ExclusionMatcher(new Node(), new Node(), false, List.of());
+    private static final String METACHARACTERS = "\\[](){}.*+?^$|";
+    private static final Pattern BACK_REFERENCE = Pattern.compile("\\\\([1-9]|k<)");
+
+    /**
+     * Literals that must be at the start of the line
+     */
+    private final Node anchored;
+    /**
+     * Literals that can be anywhere in the line
+     */
+    private final Node floating;
+    private final boolean matchesEverything;
+    private final List<Pattern> patterns;
+
+    private ExclusionMatcher(Node anchored, Node floating, boolean matchesEverything, List<Pattern> patterns) {
+        this.anchored = anchored;
+        this.floating = floating;
+        this.matchesEverything = matchesEverything;
+        this.patterns = patterns;
+    }
+
+    /**
+     * @return A matcher that does not exclude anything
+     */
+    public static ExclusionMatcher none() {
+        return NONE;
+    }
+
+    /**
+     * @param excludes The regular expressions to exclude
+     * @throws PatternSyntaxException If one of the expressions is not valid
+     */
+    public static ExclusionMatcher compile(Collection<String> excludes) {
+        if (excludes.isEmpty()) {
+            return NONE;
+        }
+        var anchored = new Node();
+        var floating = new Node();
+        var matchesEverything = false;
+        var expressions = new ArrayList<String>();
+        var patterns = new ArrayList<Pattern>();
+
+        for (var exclude : excludes) {
+            var compiled = Pattern.compile(exclude);
+            var startAnchored = exclude.startsWith("^");
+            var body = startAnchored ? exclude.substring(1) : exclude;
+            var endAnchored = false;
+            var literal = literal(body);
+
+            if (literal == null && body.endsWith("$")) {
+                literal = literal(body.substring(0, body.length() - 1));
+                endAnchored = true;
+            }
+            if (literal == null) {
+                //backreferences are numbered, so they can't be combined with other expressions
+                if (BACK_REFERENCE.matcher(exclude).find()) {
+                    patterns.add(compiled);
+                } else {
+                    expressions.add(exclude);
+                }
+            } else if (literal.isEmpty() && !startAnchored && !endAnchored) {
+                matchesEverything = true;
+            } else {
+                (startAnchored ? anchored : floating).add(literal, endAnchored);
+            }
+        }
+        if (!expressions.isEmpty()) {
+            try {
+                patterns.add(Pattern.compile("(?:" + String.join(")|(?:", expressions) + ")"));
+            } catch (PatternSyntaxException e) {
+                //they are all valid on their own, so just match them one at a time
+                for (var expression : expressions) {
+                    patterns.add(Pattern.compile(expression));
+                }
+            }
+        }
+        return new ExclusionMatcher(anchored, floating, matchesEverything, List.copyOf(patterns));
+    }
+
+    /**
+     * @return true if the line is excluded
+     */
+    public boolean matches(String line) {
+        if (matchesEverything || anchored.matches(line, 0)) {
+            return true;
+        }
+        if (!floating.isEmpty()) {
+            for (int i = 0; i <= line.length(); ++i) {
+                if (floating.matches(line, i)) {
+                    return true;
+                }
+            }
+        }
+        for (var pattern : patterns) {
+            if (pattern.matcher(line).find()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The text the expression matches if it only matches literal text, otherwise null
+     */
+    static String literal(String expression) {
+        var sb = new StringBuilder();
+        var i = 0;
+        while (i < expression.length()) {
+            var c = expression.charAt(i);
+            if (c == '\\') {
+                if (i + 1 == expression.length()) {
+                    return null;
+                }
+                var next = expression.charAt(i + 1);
+                if (next == 'Q') {
+                    var end = expression.indexOf("\\E", i + 2);
+                    if (end == -1) {
+                        sb.append(expression, i + 2, expression.length());
+                        i = expression.length();
+                    } else {
+                        sb.append(expression, i + 2, end);
+                        i = end + 2;
+                    }
+                    continue;
+                }
+                if (Character.isLetterOrDigit(next)) {
+                    return null;
+                }
+                sb.append(next);
+                i += 2;
+            } else if (METACHARACTERS.indexOf(c) != -1) {
+                return null;
+            } else {
+                sb.append(c);
+                ++i;
+            }
+        }
+        return sb.toString();
+    }
+
+    private static final class Node {
+        private final Map<Character, Node> children = new HashMap<>();
+        /**
+         * A literal ends here, and matches whatever comes after it
+         */
+        private boolean match;
+        /**
+         * A literal ends here, and only matches if it is also the end of the line
+         */
+        private boolean matchAtEnd;
+
+        void add(String literal, boolean atEnd) {
+            var node = this;
+            for (int i = 0; i < literal.length(); ++i) {
+                node = node.children.computeIfAbsent(literal.charAt(i), c -> new Node());
+            }
+            if (atEnd) {
+                node.matchAtEnd = true;
+            } else {
+                node.match = true;
+            }
+        }
+
+        boolean isEmpty() {
+            return children.isEmpty() && !match && !matchAtEnd;
+        }
+
+        boolean matches(String line, int start) {
+            var node = this;
+            for (int i = start;; ++i) {
+                if (node.match || (node.matchAtEnd && i == line.length())) {
+                    return true;
+                }
+                if (i == line.length()) {
+                    return false;
+                }
+                node = node.children.get(line.charAt(i));
+                if (node == null) {
+                    return false;
+                }
+            }
+        }
+    }
+}
@@ -13,7 +13,9 @@ import java.util.jar.JarInputStream;
 import java.util.regex.Pattern;
 
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.util.EntityUtils;
 import org.apache.maven.index.artifact.Gav;
 import org.apache.maven.index.artifact.M2GavCalculator;
 import org.apache.maven.model.Model;
@@ -135,43 +137,55 @@ public class MavenUtils {
         return getPluginConfiguration(project, MAVEN_COMPILER_PLUGIN_ID, TARGET);
     }
 
-    public static Optional<Path> downloadFile(URI uri) throws IOException {
+    /**
+     * Downloads a file using an existing client, so connections can be reused between downloads.
+     *
+     * @param outputFile The file to save to, its parent directories are created if required
+     * @return The output file, or empty if the file could not be downloaded
+     */
+    public static Optional<Path> downloadFile(CloseableHttpClient client, URI uri, Path outputFile) throws IOException {
         if (uri.getScheme().equals("file")) {
             return Optional.of(Path.of(uri));
         }
-        try (var client = HttpClientBuilder.create().build()) {
-            Log.debugf("Getting URL %s", uri);
-            var get = new HttpGet(uri);
+        Log.debugf("Getting URL %s", uri);
+        var get = new HttpGet(uri);
 
-            try (var response = client.execute(get)) {
-                var statusLine = response.getStatusLine();
-                var statusCode = statusLine.getStatusCode();
+        try (var response = client.execute(get)) {
+            var statusLine = response.getStatusLine();
+            var statusCode = statusLine.getStatusCode();
 
-                if (statusCode != SC_OK) {
-                    var reasonPhrase = statusLine.getReasonPhrase();
-                    Log.errorf("Unexpected status code %d (%s) for %s", statusCode, reasonPhrase, uri);
-                    return Optional.empty();
-                }
+            if (statusCode != SC_OK) {
+                var reasonPhrase = statusLine.getReasonPhrase();
+                Log.errorf("Unexpected status code %d (%s) for %s", statusCode, reasonPhrase, uri);
+                EntityUtils.consume(response.getEntity());
+                return Optional.empty();
+            }
 
-                var tempDirectory = Files.createTempDirectory("verify-built-artifacts-");
-                var outputFile = tempDirectory.resolve(Path.of(uri.getPath()).getFileName());
-                Log.debugf("Saving to %s", outputFile);
-                var entity = response.getEntity();
-                var content = entity.getContent();
+            Files.createDirectories(outputFile.getParent());
+            Log.debugf("Saving to %s", outputFile);
+            var entity = response.getEntity();
+            try (var content = entity.getContent()) {
                 Files.copy(content, outputFile);
-                return Optional.of(outputFile);
             }
+            return Optional.of(outputFile);
         }
     }
 
     public static Optional<Path> downloadCoordinates(String baseUrl, String coords) throws IOException {
         var path = coordsToPath(coords);
-        if (baseUrl.startsWith("file")) {
-            var url = baseUrl + "/" + path;
-            return downloadFile(URI.create(url).normalize());
+        var uri = URI.create(baseUrl.startsWith("file") ? baseUrl + "/" + path : baseUrl + "/" + path + "?upstream-only=true")
+                .normalize();
+        if (uri.getScheme().equals("file")) {
+            return Optional.of(Path.of(uri));
+        }
+        try (var client = HttpClientBuilder.create().build()) {
+            var tempDirectory = Files.createTempDirectory("verify-built-artifacts-");
+            var result = downloadFile(client, uri, tempDirectory.resolve(Path.of(uri.getPath()).getFileName()));
+            if (result.isEmpty()) {
+                Files.deleteIfExists(tempDirectory);
+            }
+            return result;
         }
-        var url = baseUrl + "/" + path + "?upstream-only=true";
-        return downloadFile(URI.create(url).normalize());
     }
 
     public static Optional<JavaVersion> getBuildJdk(Path path) {
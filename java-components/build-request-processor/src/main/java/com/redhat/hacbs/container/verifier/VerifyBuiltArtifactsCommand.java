@@ -8,6 +8,7 @@ import static org.apache.commons.lang3.StringUtils.endsWithAny;
 import static picocli.CommandLine.ArgGroup;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
@@ -15,25 +16,34 @@ import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.regex.Pattern;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import jakarta.enterprise.inject.Instance;
 import jakarta.inject.Inject;
 
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+
 import com.redhat.hacbs.container.results.ResultsUpdater;
 import com.redhat.hacbs.container.verifier.asm.ClassVersion;
 import com.redhat.hacbs.container.verifier.asm.JarInfo;
+import com.redhat.hacbs.recipes.util.FileUtil;
 
 import io.quarkus.logging.Log;
 import picocli.CommandLine;
@@ -42,14 +52,6 @@ import picocli.CommandLine.Option;
 
 @Command(name = "verify-built-artifacts")
 public class VerifyBuiltArtifactsCommand implements Callable<Integer> {
-    private static final String CLASS_VERSION_CHANGED_REGEX = "^\\^:(?<fileName>[^:]+):(?<className>[^:]+):version:(?<fromVersion>[0-9.]+)>(?<toVersion>[0-9.]+)$";
-
-    private static final String CLASS_REMOVED_REGEX = "^-:(?<fileName>[^:]+):class:(?<className>[^:]+)$";
-
-    static final Pattern CLASS_VERSION_CHANGED_PATTERN = Pattern.compile(CLASS_VERSION_CHANGED_REGEX);
-
-    static final Pattern CLASS_REMOVED_PATTERN = Pattern.compile(CLASS_REMOVED_REGEX);
-
     static class LocalOptions {
         @Option(required = true, names = { "-of", "--original-file" })
         Path originalFile;
@@ -95,8 +97,24 @@ public class VerifyBuiltArtifactsCommand implements Callable<Integer> {
     @Option(names = { "-e", "--excludes-file" })
     Path excludesFile;
 
+    /**
+     * The number of jars that are compared at once
+     */
     @Option(names = { "--threads" }, defaultValue = "5")
     int threads;
+
+    /**
+     * The number of upstream jars that are downloaded at once
+     */
+    @Option(names = { "--download-threads" }, defaultValue = "10")
+    int downloadThreads;
+
+    /**
+     * The number of upstream jars that can be downloaded but not yet verified, this bounds the space used in the temp
+     * directory if downloads are faster than verification
+     */
+    @Option(names = { "--max-pending-verifications" }, defaultValue = "20")
+    int maxPendingVerifications;
     @Inject
     Instance<ResultsUpdater> resultsUpdater;
 
@@ -109,7 +127,20 @@ public class VerifyBuiltArtifactsCommand implements Callable<Integer> {
         if (threads < 1) {
             threads = 1;
         }
-        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        if (downloadThreads < 1) {
+            downloadThreads = 1;
+        }
+        if (maxPendingVerifications < 1) {
+            maxPendingVerifications = 1;
+        }
+        //the download and verification stages are sized separately, so slow downloads don't hold up the CPU bound
+        //verification and the other way around
+        ExecutorService downloadExecutor = Executors.newFixedThreadPool(downloadThreads);
+        ExecutorService verifyExecutor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<>());
+        CloseableHttpClient client = HttpClientBuilder.create().setMaxConnTotal(downloadThreads)
+                .setMaxConnPerRoute(downloadThreads).build();
+        Path downloadDirectory = null;
         try {
             var excludes = getExcludes();
 
@@ -118,7 +149,7 @@ public class VerifyBuiltArtifactsCommand implements Callable<Integer> {
                 return (!numErrors.isEmpty() && !reportOnly ? 1 : 0);
             }
 
-            var futureResults = new HashMap<String, Future<List<String>>>();
+            var artifacts = new ArrayList<Artifact>();
 
             if (options.mavenOptions.deployPath.toFile().exists()) {
                 Files.walkFileTree(options.mavenOptions.deployPath, new SimpleFileVisitor<>() {
@@ -133,9 +164,7 @@ public class VerifyBuiltArtifactsCommand implements Callable<Integer> {
                                 } else {
                                     var relativeFile = options.mavenOptions.deployPath.relativize(file);
                                     var coords = pathToCoords(relativeFile);
-                                    var failures = executorService.submit(
-                                            () -> handleJar(file, relativeFile, coords, excludes));
-                                    futureResults.put(coords, failures);
+                                    artifacts.add(new Artifact(coords, file, relativeFile, attrs.size()));
                                 }
                             } catch (Exception e) {
                                 throw new RuntimeException(e);
@@ -149,23 +178,41 @@ public class VerifyBuiltArtifactsCommand implements Callable<Integer> {
                 Log.warnf("Unable to find any deployed artifacts in " + options.mavenOptions.deployPath);
             }
 
+            //start with the largest jars, so one huge jar does not end up being verified on its own at the end
+            artifacts.sort(Comparator.comparingLong(Artifact::size).reversed());
+            downloadDirectory = Files.createTempDirectory("verify-built-artifacts-");
+            var futureResults = new LinkedHashMap<String, CompletableFuture<VerificationResult>>();
+            var pendingVerifications = new Semaphore(maxPendingVerifications);
+            for (var artifact : artifacts) {
+                futureResults.put(artifact.coords(), verify(artifact, client, downloadDirectory, downloadExecutor,
+                        verifyExecutor, pendingVerifications, excludes));
+            }
+
             boolean failed = false;
-            var verificationResults = new HashMap<String, List<String>>();
+            long downloadMillis = 0;
+            long verifyMillis = 0;
+            var verificationResults = new LinkedHashMap<String, List<Difference>>();
+            var verificationTimings = new LinkedHashMap<String, Timing>();
             for (var e : futureResults.entrySet()) {
-                List<String> results = e.getValue().get();
+                var result = e.getValue().join();
+                List<Difference> results = result.failures();
                 verificationResults.put(e.getKey(), results);
+                verificationTimings.put(e.getKey(), new Timing(result.downloadMillis(), result.verifyMillis()));
+                Log.debugf("Verified %s, download took %dms, verification took %dms", e.getKey(),
+                        result.downloadMillis(), result.verifyMillis());
+                downloadMillis += result.downloadMillis();
+                verifyMillis += result.verifyMillis();
                 if (results.isEmpty()) {
                     Log.infof("Passed: %s", e.getKey());
                 } else {
 
-                    for (Iterator<String> iterator = results.iterator(); iterator.hasNext();) {
+                    for (Iterator<Difference> iterator = results.iterator(); iterator.hasNext();) {
                         var error = iterator.next();
-                        var matcher = CLASS_VERSION_CHANGED_PATTERN.matcher(error);
-                        if (matcher.matches()) {
-                            var fileName = matcher.group("fileName");
-                            var className = matcher.group("className");
-                            var fromVersion = ClassVersion.fromVersion(matcher.group("fromVersion"));
-                            var toVersion = ClassVersion.fromVersion(matcher.group("toVersion"));
+                        if (error.isClassVersionChanged()) {
+                            var fileName = error.jarName();
+                            var className = error.className();
+                            var fromVersion = ClassVersion.fromVersion(error.value());
+                            var toVersion = ClassVersion.fromVersion(error.newValue());
                             var sourceVersion = ClassVersion.toJavaVersion(fromVersion);
                             if (sourceVersion.intVersion() < 5) {
                                 Log.errorf(
@@ -182,22 +229,24 @@ public class VerifyBuiltArtifactsCommand implements Callable<Integer> {
                             reportOnly = false;
                             break;
                         }
-                        matcher = CLASS_REMOVED_PATTERN.matcher(error);
-                        if (matcher.matches()) {
-                            var fileName = matcher.group("fileName");
-                            var className = matcher.group("className");
+                        if (error.isClassRemoved()) {
+                            var fileName = error.jarName();
+                            var className = error.value();
                             Log.errorf("Class %s in file %s was removed", className, fileName);
                             reportOnly = false;
                             break;
                         }
                     }
                     if (!results.isEmpty()) {
-                        Log.errorf("Failed: %s:\n%s", e.getKey(), String.join("\n", results));
+                        Log.errorf("Failed: %s:\n%s", e.getKey(),
+                                results.stream().map(Difference::toString).collect(Collectors.joining("\n")));
                         failed = true;
                     }
                 }
             }
 
+            Log.infof("Verified %d artifacts, downloads took %dms and verification took %dms in total",
+                    verificationResults.size(), downloadMillis, verifyMillis);
             if (resultsFile != null) {
                 try {
                     Files.writeString(resultsFile, Boolean.toString(!failed));
@@ -208,7 +257,10 @@ public class VerifyBuiltArtifactsCommand implements Callable<Integer> {
             if (taskRunName != null) {
                 var json = ResultsUpdater.MAPPER.writeValueAsString(verificationResults);
                 Log.infof("Writing verification results %s", json);
-                resultsUpdater.get().updateResults(taskRunName, Map.of("VERIFICATION_RESULTS", json));
+                var timings = ResultsUpdater.MAPPER.writeValueAsString(verificationTimings);
+                Log.infof("Writing verification timings %s", timings);
+                resultsUpdater.get().updateResults(taskRunName,
+                        Map.of("VERIFICATION_RESULTS", json, "VERIFICATION_TIMINGS", timings));
             }
 
             return (failed && !reportOnly ? 1 : 0);
@@ -226,11 +278,91 @@ public class VerifyBuiltArtifactsCommand implements Callable<Integer> {
             }
             return 1;
         } finally {
-            executorService.shutdown();
+            downloadExecutor.shutdownNow();
+            verifyExecutor.shutdownNow();
+            try {
+                client.close();
+            } catch (IOException e) {
+                Log.errorf(e, "Failed to close HTTP client");
+            }
+            if (downloadDirectory != null) {
+                FileUtil.deleteRecursive(downloadDirectory);
+            }
         }
     }
 
-    private List<String> getExcludes() throws IOException {
+    /**
+     * Downloads the upstream jar on the download executor, and then compares it on the verify executor.
+     * <p>
+     * A permit is held from the start of the download until the verification is done, so at most
+     * {@link #maxPendingVerifications} upstream jars are in the download directory at once.
+     */
+    private CompletableFuture<VerificationResult> verify(Artifact artifact, CloseableHttpClient client,
+            Path downloadDirectory, ExecutorService downloadExecutor, ExecutorService verifyExecutor,
+            Semaphore pendingVerifications, ExclusionMatcher excludes) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                pendingVerifications.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+            var start = System.nanoTime();
+            try {
+                var upstreamFile = resolveArtifact(client, normalize(artifact.relativeFile().toString(), true),
+                        downloadDirectory.resolve(artifact.relativeFile()));
+                return new Download(upstreamFile, millis(start));
+            } catch (IOException e) {
+                pendingVerifications.release();
+                throw new UncheckedIOException(e);
+            } catch (RuntimeException e) {
+                pendingVerifications.release();
+                throw e;
+            }
+        }, downloadExecutor).thenCompose(download -> {
+            if (download.file().isEmpty()) {
+                pendingVerifications.release();
+                Log.warnf("Ignoring missing artifact %s", artifact.coords());
+                return CompletableFuture.completedFuture(new VerificationResult(List.of(), download.millis(), 0));
+            }
+            var result = new CompletableFuture<VerificationResult>();
+            verifyExecutor.execute(new VerifyTask(artifact.size(), () -> {
+                var start = System.nanoTime();
+                var upstreamFile = download.file().get();
+                List<Difference> errors = null;
+                Throwable failure = null;
+                try {
+                    Log.infof("Verifying %s (%s, %s)", artifact.coords(), upstreamFile.toAbsolutePath(),
+                            artifact.file().toAbsolutePath());
+                    errors = handleJar(upstreamFile, artifact.file(), excludes);
+                    Log.debugf("Verification of %s %s", artifact.coords(), errors.isEmpty() ? "passed" : "failed");
+                } catch (Throwable t) {
+                    failure = t;
+                } finally {
+                    if (upstreamFile.startsWith(downloadDirectory)) {
+                        try {
+                            Files.deleteIfExists(upstreamFile);
+                        } catch (IOException e) {
+                            Log.debugf(e, "Failed to delete %s", upstreamFile);
+                        }
+                    }
+                    pendingVerifications.release();
+                }
+                if (failure != null) {
+                    result.completeExceptionally(failure);
+                } else {
+                    result.complete(new VerificationResult(errors, download.millis(), millis(start)));
+                }
+            }));
+            return result;
+        });
+    }
+
+    private static long millis(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    private ExclusionMatcher getExcludes() throws IOException {
         var newExcludes = new ArrayList<String>();
         if (excludesFile != null) {
             if (!Files.isRegularFile(excludesFile) || !Files.isReadable(excludesFile)) {
@@ -250,46 +382,52 @@ public class VerifyBuiltArtifactsCommand implements Callable<Integer> {
 
         }
 
-        return newExcludes;
+        return ExclusionMatcher.compile(newExcludes);
     }
 
-    private List<String> handleJar(Path upstreamFile, Path rebuiltFile, List<String> excludes) {
+    private List<Difference> handleJar(Path upstreamFile, Path rebuiltFile, ExclusionMatcher excludes) {
         var left = new JarInfo(upstreamFile);
         var right = new JarInfo(rebuiltFile);
-        return left.diffJar(right, excludes);
+        return left.diff(right, excludes);
     }
 
-    private List<String> handleJar(Path rebuiltFile, Path relativeFile, String coords, List<String> excludes)
-            throws IOException {
-        try {
-            var optionalUpstreamFile = resolveArtifact(normalize(relativeFile.toString(), true));
+    Optional<Path> resolveArtifact(CloseableHttpClient client, String relativeFile, Path outputFile) throws IOException {
+        var url = options.mavenOptions.repositoryUrl.endsWith("/") ? options.mavenOptions.repositoryUrl + relativeFile
+                : options.mavenOptions.repositoryUrl + "/" + relativeFile;
+        if (options.mavenOptions.repositoryUrl.startsWith("file")) {
+            return downloadFile(client, URI.create(url), outputFile);
+        }
+        return downloadFile(client, URI.create(url + "?upstream-only=true"), outputFile);
+    }
 
-            if (optionalUpstreamFile.isEmpty()) {
-                Log.warnf("Ignoring missing artifact %s", coords);
-                return List.of();
-            }
+    record Artifact(String coords, Path file, Path relativeFile, long size) {
+    }
 
-            var upstreamFile = optionalUpstreamFile.get();
-            Log.infof("Verifying %s (%s, %s)", coords, upstreamFile.toAbsolutePath(), rebuiltFile.toAbsolutePath());
-            var errors = handleJar(upstreamFile, rebuiltFile, excludes);
-            Log.debugf("Verification of %s %s", coords, errors.isEmpty() ? "passed" : "failed");
-            return errors;
-        } catch (OutOfMemoryError e) {
-            //HUGE hack, but some things are just too large to diff in memory
-            //but we would need a complete re-rewrite to handle this
-            //these are usually tools that have heaps of classes shaded in
-            //we just ignore this case for now
-            Log.errorf(e, "Failed to analyse %s as it is too big", rebuiltFile);
-            return List.of();
-        }
+    record Download(Optional<Path> file, long millis) {
     }
 
-    Optional<Path> resolveArtifact(String relativeFile) throws IOException {
-        var url = options.mavenOptions.repositoryUrl.endsWith("/") ? options.mavenOptions.repositoryUrl + relativeFile
-                : options.mavenOptions.repositoryUrl + "/" + relativeFile;
-        if (options.mavenOptions.repositoryUrl.startsWith("file")) {
-            return downloadFile(URI.create(url));
+    /**
+     * The result for a single artifact. The failures are reported in the VERIFICATION_RESULTS result, and the timings in
+     * the VERIFICATION_TIMINGS result.
+     */
+    record VerificationResult(List<Difference> failures, long downloadMillis, long verifyMillis) {
+    }
+
+    record Timing(long downloadMillis, long verifyMillis) {
+    }
+
+    /**
+     * Verification of the largest jars is started first
+     */
+    record VerifyTask(long size, Runnable task) implements Runnable, Comparable<VerifyTask> {
+        @Override
+        public void run() {
+            task.run();
+        }
+
+        @Override
+        public int compareTo(VerifyTask o) {
+            return Long.compare(o.size, size);
         }
-        return downloadFile(URI.create(url + "?upstream-only=true"));
     }
 }
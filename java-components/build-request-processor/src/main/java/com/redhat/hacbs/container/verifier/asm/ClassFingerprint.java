@@ -0,0 +1,201 @@
+package com.redhat.hacbs.container.verifier.asm;
+
+import static com.redhat.hacbs.container.verifier.asm.AsmUtils.isPublic;
+import static com.redhat.hacbs.container.verifier.asm.AsmUtils.isSyntheticBridge;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.ModuleVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.RecordComponentVisitor;
+
+/**
+ * A hash of the parts of a class that are compared by {@link JarInfo#diffJar(JarInfo, java.util.List)}.
+ * <p>
+ * Only the raw values that {@link ClassInfo} is built from are hashed, in the order they appear in the class file, so two
+ * classes with the same fingerprint always have the same {@link ClassInfo}. Things that verification ignores, such as
+ * method bodies, debug information and non-public members, are not part of the fingerprint. This lets identical classes
+ * be skipped without building a {@link ClassInfo} for them. Modules are not fingerprinted and always get the full diff.
+ */
+final class ClassFingerprint extends ClassVisitor {
+
+    private final MessageDigest digest;
+    private boolean unsupported;
+
+    private ClassFingerprint() {
+        super(Opcodes.ASM9);
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return The fingerprint, or null if the class cannot be fingerprinted
+     */
+    static byte[] of(byte[] classData) {
+        var fingerprint = new ClassFingerprint();
+        new ClassReader(classData).accept(fingerprint, ClassReader.SKIP_CODE | ClassReader.SKIP_FRAMES);
+        return fingerprint.unsupported ? null : fingerprint.digest.digest();
+    }
+
+    @Override
+    public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+        put("class");
+        put(version);
+        put(access);
+        put(name);
+        put(signature);
+        put(superName);
+        put(interfaces);
+    }
+
+    @Override
+    public ModuleVisitor visitModule(String name, int access, String version) {
+        unsupported = true;
+        return null;
+    }
+
+    @Override
+    public void visitOuterClass(String owner, String name, String descriptor) {
+        put("outerClass");
+        put(owner);
+        put(name);
+        put(descriptor);
+    }
+
+    @Override
+    public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+        putAnnotation(descriptor, visible);
+        return null;
+    }
+
+    @Override
+    public void visitPermittedSubclass(String permittedSubclass) {
+        put("permittedSubclass");
+        put(permittedSubclass);
+    }
+
+    @Override
+    public RecordComponentVisitor visitRecordComponent(String name, String descriptor, String signature) {
+        put("recordComponent");
+        put(name);
+        put(descriptor);
+        put(signature);
+        return new RecordComponentVisitor(api) {
+            @Override
+            public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+                putAnnotation(descriptor, visible);
+                return null;
+            }
+        };
+    }
+
+    @Override
+    public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+        if (!isPublic(access)) {
+            return null;
+        }
+        put("field");
+        put(access);
+        put(name);
+        put(descriptor);
+        put(signature);
+        put(value == null ? null : value.getClass().getName() + ":" + value);
+        return new FieldVisitor(api) {
+            @Override
+            public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+                putAnnotation(descriptor, visible);
+                return null;
+            }
+        };
+    }
+
+    @Override
+    public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+        if (!isPublic(access) || isSyntheticBridge(access)) {
+            return null;
+        }
+        put("method");
+        put(access);
+        put(name);
+        put(descriptor);
+        put(signature);
+        put(exceptions);
+        return new MethodVisitor(api) {
+            @Override
+            public void visitParameter(String name, int access) {
+                put("parameter");
+                put(name);
+                put(access);
+            }
+
+            @Override
+            public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+                putAnnotation(descriptor, visible);
+                return null;
+            }
+
+            @Override
+            public void visitAnnotableParameterCount(int parameterCount, boolean visible) {
+                if (visible) {
+                    put("annotableParameterCount");
+                    put(parameterCount);
+                }
+            }
+
+            @Override
+            public AnnotationVisitor visitParameterAnnotation(int parameter, String descriptor, boolean visible) {
+                if (visible) {
+                    put("parameterAnnotation");
+                    put(parameter);
+                    put(descriptor);
+                }
+                return null;
+            }
+        };
+    }
+
+    private void putAnnotation(String descriptor, boolean visible) {
+        if (visible) {
+            put("annotation");
+            put(descriptor);
+        }
+    }
+
+    private void put(String[] values) {
+        if (values == null) {
+            put(-1);
+            return;
+        }
+        put(values.length);
+        for (var value : values) {
+            put(value);
+        }
+    }
+
+    private void put(String value) {
+        if (value == null) {
+            put(-1);
+            return;
+        }
+        var bytes = value.getBytes(StandardCharsets.UTF_8);
+        put(bytes.length);
+        digest.update(bytes);
+    }
+
+    private void put(int value) {
+        digest.update((byte) (value >>> 24));
+        digest.update((byte) (value >>> 16));
+        digest.update((byte) (value >>> 8));
+        digest.update((byte) value);
+    }
+}
@@ -3,84 +3,106 @@ package com.redhat.hacbs.container.verifier.asm;
 import static com.redhat.hacbs.container.verifier.asm.AsmUtils.isPublic;
 
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.jar.JarEntry;
-import java.util.jar.JarInputStream;
-import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.zip.ZipFile;
 
-import org.apache.commons.lang3.StringUtils;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.tree.ClassNode;
 
 import com.redhat.hacbs.container.verifier.DiffUtils;
+import com.redhat.hacbs.container.verifier.Difference;
+import com.redhat.hacbs.container.verifier.ExclusionMatcher;
 
 import io.quarkus.logging.Log;
 
-public record JarInfo(String name, Map<String, ClassInfo> classes) implements AsmDiffable<JarInfo> {
-
-    // diffClass excluding name
+/**
+ * A jar that can be compared to another jar.
+ * <p>
+ * The jars are compared one class at a time in sorted entry order, and only the current pair of classes is held in
+ * memory, so very large jars can be verified in a bounded amount of heap. Classes that are byte for byte identical are
+ * not parsed at all, and classes with the same {@link ClassFingerprint} are skipped without building a full
+ * {@link ClassInfo} for them.
+ */
+public record JarInfo(String name, Path file) implements AsmDiffable<JarInfo> {
 
     public JarInfo(Path file) {
-        this(Objects.toString(file.getFileName()), readClasses(file));
+        this(Objects.toString(file.getFileName()), file);
     }
 
-    private static Map<String, ClassInfo> readClasses(Path file) {
-        var classes = new LinkedHashMap<String, ClassInfo>();
+    private static List<String> classNames(ZipFile zip) {
+        var names = new ArrayList<String>();
+        for (var entries = zip.entries(); entries.hasMoreElements();) {
+            var name = entries.nextElement().getName();
 
-        try (var in = new JarInputStream(Files.newInputStream(file))) {
-            var entry = (JarEntry) null;
+            if (!name.endsWith(".class")) {
+                continue;
+            }
 
-            while ((entry = in.getNextJarEntry()) != null) {
-                try {
-                    var name = entry.getRealName();
+            // XXX: Skipping lambda for now
+            if (name.contains("$$Lambda$")) {
+                Log.debugf("Skipping file %s", name);
+                continue;
+            }
 
-                    if (!name.endsWith(".class")) {
-                        //classes.put(name, null);
-                        continue;
-                    }
+            names.add(name);
+        }
+        Collections.sort(names);
+        return names;
+    }
 
-                    // XXX: Skipping lambda for now
-                    if (name.contains("$$Lambda$")) {
-                        Log.debugf("Skipping file %s", name);
-                        continue;
-                    }
+    private static byte[] readBytes(ZipFile zip, String name) throws IOException {
+        try (var in = zip.getInputStream(zip.getEntry(name))) {
+            return in.readAllBytes();
+        }
+    }
 
-                    var reader = new ClassReader(in);
-                    var node = new ClassNode();
-                    reader.accept(node, 0);
+    /**
+     * @return true if the classes are known to have no differences that verification cares about
+     */
+    private static boolean sameFingerprint(String name, byte[] left, byte[] right) {
+        try {
+            var leftFingerprint = ClassFingerprint.of(left);
+            return leftFingerprint != null && Arrays.equals(leftFingerprint, ClassFingerprint.of(right));
+        } catch (Exception e) {
+            Log.debugf(e, "Failed to fingerprint %s", name);
+            return false;
+        }
+    }
 
-                    if (isPublic(node.access)) {
-                        var classInfo = new ClassInfo(node);
-                        classes.put(name, classInfo);
-                    }
-                } catch (Exception e) {
-                    Log.errorf(e, "Failed to verify %s", entry.getName());
-                }
+    /**
+     * @return The class info, or null if the class is not public or cannot be read
+     */
+    private static ClassInfo readClass(String name, byte[] data) {
+        try {
+            var reader = new ClassReader(data);
+            var node = new ClassNode();
+            reader.accept(node, 0);
+
+            if (isPublic(node.access)) {
+                return new ClassInfo(node);
             }
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+        } catch (Exception e) {
+            Log.errorf(e, "Failed to verify %s", name);
         }
-
-        return classes;
+        return null;
     }
 
-    private static void addChange(List<String> diffResults, String jarName, String className,
+    private static void addChange(List<Difference> diffResults, String jarName, String className,
             String fieldName, String oldValue, String newValue) {
-        var s = String.format("^:%s:%s:%s:%s>%s", jarName, className.replace('/', '.'), fieldName, oldValue, newValue);
-        diffResults.add(s);
+        diffResults.add(Difference.changed(jarName, className.replace('/', '.'), fieldName, oldValue, newValue));
     }
 
-    private static <T extends AsmDiffable<T>> void addChanges(List<String> diffResults, String jarName, String type,
+    private static <T extends AsmDiffable<T>> void addChanges(List<Difference> diffResults, String jarName, String type,
             String oldName, String newName, Map<String, T> left,
             Map<String, T> right) {
-        var results = DiffUtils.diff(jarName + ":" + oldName, jarName + ":" + newName, type, left, right);
+        var results = DiffUtils.diff(jarName, oldName, newName, type, left, right);
         diffResults.addAll(results.results());
 
         for (var r : results.diffResults().entrySet()) {
@@ -92,112 +114,171 @@ public record JarInfo(String name, Map<String, ClassInfo> classes) implements As
     }
 
     public List<String> diffJar(JarInfo jar, List<String> excludes) {
-        var classResults = DiffUtils.diff(this.name(), jar.name(), "class", this.classes(), jar.classes());
-        var diffResults = new ArrayList<>(classResults.results());
+        return diff(jar, ExclusionMatcher.compile(excludes)).stream().map(Difference::toString).toList();
+    }
 
-        for (var name : classResults.shared()) {
-            var left = this.classes().get(name);
+    /**
+     * @param excludes The differences that are allowed, these are not returned
+     * @return The differences between the jars, sorted by their string form
+     */
+    public List<Difference> diff(JarInfo jar, ExclusionMatcher excludes) {
+        var diffResults = new ArrayList<Difference>();
+        var oldName = this.name().replace('/', '.');
+        var newName = jar.name().replace('/', '.');
+
+        try (var leftZip = new ZipFile(this.file().toFile()); var rightZip = new ZipFile(jar.file().toFile())) {
+            var leftNames = classNames(leftZip);
+            var rightNames = classNames(rightZip);
+            var i = 0;
+            var j = 0;
+
+            while (i < leftNames.size() || j < rightNames.size()) {
+                var cmp = i == leftNames.size() ? 1
+                        : j == rightNames.size() ? -1 : leftNames.get(i).compareTo(rightNames.get(j));
+
+                if (cmp < 0) {
+                    var name = leftNames.get(i++);
+                    var left = readClass(name, readBytes(leftZip, name));
+
+                    if (left != null) {
+                        diffResults.add(Difference.removed(oldName, null, "class", left.toString()));
+                    }
+                } else if (cmp > 0) {
+                    var name = rightNames.get(j++);
+                    var right = readClass(name, readBytes(rightZip, name));
 
-            // null means file other than .class file
-            if (left == null) {
-                continue;
-            }
+                    if (right != null) {
+                        diffResults.add(Difference.added(newName, null, "class", right.toString()));
+                    }
+                } else {
+                    var name = leftNames.get(i++);
+                    j++;
+                    var leftData = readBytes(leftZip, name);
+                    var rightData = readBytes(rightZip, name);
 
-            var right = jar.classes().get(name);
+                    if (Arrays.equals(leftData, rightData) || sameFingerprint(name, leftData, rightData)) {
+                        continue;
+                    }
 
-            if (!Objects.equals(left.version(), right.version())) {
-                addChange(diffResults, this.name(), left.name(), "version",
-                        left.version().majorVersion() + "." + left.version().minorVersion(),
-                        right.version().majorVersion() + "." + right.version().minorVersion());
-            }
+                    var left = readClass(name, leftData);
+                    var right = readClass(name, rightData);
 
-            if (!Objects.equals(left.access(), right.access())) {
-                addChange(diffResults, this.name(), left.name(), "access", Objects.toString(left.access()),
-                        Objects.toString(right.access()));
+                    if (left == null && right == null) {
+                        continue;
+                    } else if (right == null) {
+                        diffResults.add(Difference.removed(oldName, null, "class", left.toString()));
+                    } else if (left == null) {
+                        diffResults.add(Difference.added(newName, null, "class", right.toString()));
+                    } else {
+                        diffClass(diffResults, left, right);
+                    }
+                }
             }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
 
-            if (!Objects.equals(left.name(), right.name())) {
-                addChange(diffResults, this.name(), left.name(), "name", left.name(), right.name());
+        //each line is only formatted once, it is used for both the exclusions and the sort order
+        var errors = new ArrayList<Map.Entry<String, Difference>>();
+        for (var difference : diffResults) {
+            var line = difference.toString();
+            if (!excludes.matches(line)) {
+                errors.add(Map.entry(line, difference));
             }
+        }
+        errors.sort(Map.Entry.comparingByKey());
 
-            if (!Objects.equals(left.signature(), right.signature())) {
-                addChange(diffResults, this.name(), left.name(), "signature", left.signature(),
-                        right.signature());
-            }
+        if (Log.isInfoEnabled() && !errors.isEmpty()) {
+            Log.infof("Jar verification got %d errors:\n%s", errors.size(),
+                    errors.stream().map(Map.Entry::getKey).collect(Collectors.joining("\n")));
+        }
+        return errors.stream().map(Map.Entry::getValue).collect(Collectors.toCollection(ArrayList::new));
+    }
 
-            if (!Objects.equals(left.superName(), right.superName())) {
-                addChange(diffResults, this.name(), left.name(), "superName", left.superName(),
-                        right.superName());
-            }
+    private void diffClass(List<Difference> diffResults, ClassInfo left, ClassInfo right) {
+        if (!Objects.equals(left.version(), right.version())) {
+            addChange(diffResults, this.name(), left.name(), "version",
+                    left.version().majorVersion() + "." + left.version().minorVersion(),
+                    right.version().majorVersion() + "." + right.version().minorVersion());
+        }
 
-            if (!Objects.equals(left.interfaces(), right.interfaces())) {
-                addChange(diffResults, this.name(), left.name(), "interfaces",
-                        Objects.toString(left.interfaces()), Objects.toString(right.interfaces()));
-            }
+        if (!Objects.equals(left.access(), right.access())) {
+            addChange(diffResults, this.name(), left.name(), "access", Objects.toString(left.access()),
+                    Objects.toString(right.access()));
+        }
 
-            //we don't care about these from a verification point of view
-            //            if (!Objects.equals(left.sourceFile(), right.sourceFile())) {
-            //                addChange(diffResults, this.name(), left.name(), "sourceFile", left.sourceFile(),
-            //                        right.sourceFile());
-            //            }
-            //
-            //            if (!Objects.equals(left.sourceDebug(), right.sourceDebug())) {
-            //                addChange(diffResults, this.name(), left.name(), "sourceDebug", left.sourceDebug(),
-            //                        right.sourceDebug());
-            //            }
-
-            if (!Objects.equals(left.module(), right.module())) {
-                addChanges(diffResults, this.name, "module", left.name(), right.name(), left.module(), right.module());
-            }
+        if (!Objects.equals(left.name(), right.name())) {
+            addChange(diffResults, this.name(), left.name(), "name", left.name(), right.name());
+        }
 
-            if (!Objects.equals(left.outerClass(), right.outerClass())) {
-                addChange(diffResults, this.name(), left.name(), "outerClass", left.outerClass(),
-                        right.outerClass());
-            }
+        if (!Objects.equals(left.signature(), right.signature())) {
+            addChange(diffResults, this.name(), left.name(), "signature", left.signature(),
+                    right.signature());
+        }
 
-            if (!Objects.equals(left.outerMethod(), right.outerMethod())) {
-                addChange(diffResults, this.name(), left.name(), "outerMethod", left.outerMethod(),
-                        right.outerMethod());
-            }
+        if (!Objects.equals(left.superName(), right.superName())) {
+            addChange(diffResults, this.name(), left.name(), "superName", left.superName(),
+                    right.superName());
+        }
 
-            if (!Objects.equals(left.outerMethodDesc(), right.outerMethodDesc())) {
-                addChange(diffResults, this.name(), left.name(), "outerMethodDesc", left.outerMethodDesc(),
-                        right.outerMethodDesc());
-            }
+        if (!Objects.equals(left.interfaces(), right.interfaces())) {
+            addChange(diffResults, this.name(), left.name(), "interfaces",
+                    Objects.toString(left.interfaces()), Objects.toString(right.interfaces()));
+        }
 
-            if (!Objects.equals(left.visibleAnnotations(), right.visibleAnnotations())) {
-                addChanges(diffResults, this.name(), "annotation", left.name(), right.name(), left.visibleAnnotations(),
-                        right.visibleAnnotations());
-            }
+        //we don't care about these from a verification point of view
+        //            if (!Objects.equals(left.sourceFile(), right.sourceFile())) {
+        //                addChange(diffResults, this.name(), left.name(), "sourceFile", left.sourceFile(),
+        //                        right.sourceFile());
+        //            }
+        //
+        //            if (!Objects.equals(left.sourceDebug(), right.sourceDebug())) {
+        //                addChange(diffResults, this.name(), left.name(), "sourceDebug", left.sourceDebug(),
+        //                        right.sourceDebug());
+        //            }
+
+        if (!Objects.equals(left.module(), right.module())) {
+            addChanges(diffResults, this.name, "module", left.name(), right.name(), left.module(), right.module());
+        }
 
-            if (!Objects.equals(left.permittedSubclasses(), right.permittedSubclasses())) {
-                addChange(diffResults, this.name(), left.name(),
-                        "permittedSubclasses", Objects.toString(left.permittedSubclasses()),
-                        Objects.toString(right.permittedSubclasses()));
-            }
+        if (!Objects.equals(left.outerClass(), right.outerClass())) {
+            addChange(diffResults, this.name(), left.name(), "outerClass", left.outerClass(),
+                    right.outerClass());
+        }
 
-            if (!Objects.equals(left.recordComponents(), right.recordComponents())) {
-                addChanges(diffResults, this.name(), "recordComponent", left.name(), right.name(), left.recordComponents(),
-                        right.recordComponents());
-            }
+        if (!Objects.equals(left.outerMethod(), right.outerMethod())) {
+            addChange(diffResults, this.name(), left.name(), "outerMethod", left.outerMethod(),
+                    right.outerMethod());
+        }
 
-            if (!Objects.equals(left.fields(), right.fields())) {
-                addChanges(diffResults, this.name(), "field", left.name(), right.name(), left.fields(), right.fields());
-            }
+        if (!Objects.equals(left.outerMethodDesc(), right.outerMethodDesc())) {
+            addChange(diffResults, this.name(), left.name(), "outerMethodDesc", left.outerMethodDesc(),
+                    right.outerMethodDesc());
+        }
 
-            if (!Objects.equals(left.methods(), right.methods())) {
-                addChanges(diffResults, this.name(), "method", left.name(), right.name(), left.methods(), right.methods());
-            }
+        if (!Objects.equals(left.visibleAnnotations(), right.visibleAnnotations())) {
+            addChanges(diffResults, this.name(), "annotation", left.name(), right.name(), left.visibleAnnotations(),
+                    right.visibleAnnotations());
         }
 
-        var errors = new ArrayList<>(diffResults);
-        excludes.stream().map(Pattern::compile).map(Pattern::asPredicate).forEach(errors::removeIf);
+        if (!Objects.equals(left.permittedSubclasses(), right.permittedSubclasses())) {
+            addChange(diffResults, this.name(), left.name(),
+                    "permittedSubclasses", Objects.toString(left.permittedSubclasses()),
+                    Objects.toString(right.permittedSubclasses()));
+        }
 
-        if (Log.isInfoEnabled() && !errors.isEmpty()) {
-            Log.infof("Jar verification got %d errors:\n%s", errors.size(), StringUtils.join(errors, '\n'));
+        if (!Objects.equals(left.recordComponents(), right.recordComponents())) {
+            addChanges(diffResults, this.name(), "recordComponent", left.name(), right.name(), left.recordComponents(),
+                    right.recordComponents());
+        }
+
+        if (!Objects.equals(left.fields(), right.fields())) {
+            addChanges(diffResults, this.name(), "field", left.name(), right.name(), left.fields(), right.fields());
+        }
+
+        if (!Objects.equals(left.methods(), right.methods())) {
+            addChanges(diffResults, this.name(), "method", left.name(), right.name(), left.methods(), right.methods());
         }
-        Collections.sort(errors);
-        return errors;
     }
 
     @Override
@@ -0,0 +1,123 @@
+package com.redhat.hacbs.container.analyser.dependencies;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.google.cloud.tools.jib.api.DescriptorDigest;
+import com.google.cloud.tools.jib.blob.Blobs;
+import com.redhat.hacbs.classfile.tracker.ClassFileTracker;
+import com.redhat.hacbs.classfile.tracker.TrackingData;
+
+public class AnalyseImageTestCase {
+
+    static final TrackingData CENTRAL = new TrackingData("com.acme:central:1.0", "central", Map.of());
+    static final TrackingData REBUILT = new TrackingData("com.acme:rebuilt:1.0", "rebuilt", Map.of());
+    static final TrackingData IN_JAR = new TrackingData("com.acme:in-jar:1.0", "central", Map.of());
+    static final TrackingData LARGE_JAR = new TrackingData("com.acme:large-jar:1.0", "central", Map.of());
+
+    @TempDir
+    Path cacheDir;
+
+    @Test
+    public void testScanLayers() throws Exception {
+        Map<DescriptorDigest, byte[]> layers = new LinkedHashMap<>();
+        addLayer(layers, Map.of("app/Central.class", trackedClass(CENTRAL),
+                "app/Rebuilt.class", trackedClass(REBUILT),
+                "app/README.txt", "not tracked".getBytes(StandardCharsets.UTF_8)));
+        addLayer(layers, Map.of("lib/small.jar", jar(Map.of("Small.class", trackedClass(IN_JAR)))));
+        //too large to buffer, so it is scanned by the layer thread as it is read
+        byte[] padding = new byte[AnalyseImage.MAX_ENTRY_SIZE];
+        new Random(0).nextBytes(padding);
+        addLayer(layers, Map.of("lib/large.jar", jar(Map.of("padding.bin", padding,
+                "Large.class", trackedClass(LARGE_JAR)))));
+
+        AnalyseImage analyser = new AnalyseImage();
+        analyser.allowedSources = Set.of("redhat", "rebuilt");
+        analyser.parallelism = 2;
+        analyser.analysisCache = AnalysisCache.create(Optional.of(cacheDir), Long.MAX_VALUE);
+        Set<String> gavs = new HashSet<>();
+        Set<TrackingData> trackingData = new HashSet<>();
+        analyser.scanLayers(layers.keySet(), layer -> Blobs.from(new ByteArrayInputStream(layers.get(layer))), gavs,
+                trackingData);
+        Assertions.assertEquals(Set.of(CENTRAL, REBUILT, IN_JAR, LARGE_JAR), trackingData);
+        Assertions.assertEquals(Set.of(CENTRAL.gav, IN_JAR.gav, LARGE_JAR.gav), gavs);
+
+        //the layers have been analysed, so they are not downloaded again
+        gavs.clear();
+        trackingData.clear();
+        analyser.scanLayers(layers.keySet(), layer -> {
+            throw new IllegalStateException("Layer " + layer + " should not be downloaded");
+        }, gavs, trackingData);
+        Assertions.assertEquals(Set.of(CENTRAL, REBUILT, IN_JAR, LARGE_JAR), trackingData);
+        Assertions.assertEquals(Set.of(CENTRAL.gav, IN_JAR.gav, LARGE_JAR.gav), gavs);
+    }
+
+    @Test
+    public void testLayerFailure() throws Exception {
+        Map<DescriptorDigest, byte[]> layers = new LinkedHashMap<>();
+        addLayer(layers, Map.of("app/Central.class", trackedClass(CENTRAL)));
+        byte[] layer = layers.values().iterator().next();
+        AnalyseImage analyser = new AnalyseImage();
+        analyser.allowedSources = Set.of("rebuilt");
+        analyser.parallelism = 2;
+        analyser.analysisCache = AnalysisCache.create(Optional.of(cacheDir), Long.MAX_VALUE);
+        //a truncated layer fails the analysis, rather than silently missing dependencies
+        Assertions.assertThrows(IOException.class, () -> analyser.scanLayers(layers.keySet(),
+                digest -> Blobs.from(new ByteArrayInputStream(layer, 0, layer.length / 2)), new HashSet<>(),
+                new HashSet<>()));
+        Assertions.assertTrue(analyser.analysisCache.get(layers.keySet().iterator().next().toString()).isEmpty());
+    }
+
+    private byte[] trackedClass(TrackingData data) throws IOException {
+        byte[] thisClass = getClass().getResourceAsStream(getClass().getSimpleName() + ".class").readAllBytes();
+        return ClassFileTracker.addTrackingDataToClass(thisClass, data, getClass().getSimpleName(), true);
+    }
+
+    private static byte[] jar(Map<String, byte[]> files) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(out)) {
+            for (var file : files.entrySet()) {
+                zip.putNextEntry(new ZipEntry(file.getKey()));
+                zip.write(file.getValue());
+                zip.closeEntry();
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static void addLayer(Map<DescriptorDigest, byte[]> layers, Map<String, byte[]> files) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (TarArchiveOutputStream tar = new TarArchiveOutputStream(new GZIPOutputStream(out))) {
+            for (var file : files.entrySet()) {
+                TarArchiveEntry entry = new TarArchiveEntry(file.getKey());
+                entry.setSize(file.getValue().length);
+                tar.putArchiveEntry(entry);
+                tar.write(file.getValue());
+                tar.closeArchiveEntry();
+            }
+        }
+        byte[] layer = out.toByteArray();
+        String hash = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(layer));
+        layers.put(DescriptorDigest.fromHash(hash), layer);
+    }
+}
@@ -0,0 +1,54 @@
+package com.redhat.hacbs.container.analyser.dependencies;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.redhat.hacbs.classfile.tracker.TrackingData;
+
+public class AnalysisCacheTestCase {
+
+    static final TrackingData DATA = new TrackingData("com.acme:acme:1.0", "central", Map.of("a", "b"));
+    static final TrackingData OTHER_DATA = new TrackingData("com.acme:other:1.0", "rebuilt", Map.of());
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testStoreAndTrim() throws Exception {
+        AnalysisCache cache = AnalysisCache.create(Optional.of(dir), 1000);
+        Assertions.assertTrue(cache.get("sha256:aa").isEmpty());
+        cache.put("sha256:aa", Set.of(DATA, OTHER_DATA));
+        cache.put("sha256:bb", Set.of());
+        Assertions.assertEquals(Set.of(DATA, OTHER_DATA), cache.get("sha256:aa").orElseThrow());
+        Assertions.assertEquals(Set.of(), cache.get("sha256:bb").orElseThrow());
+
+        //the least recently used entries are removed first
+        Path root = dir.resolve(AnalysisCache.VERSION);
+        for (int i = 0; i < 20; ++i) {
+            cache.put("sha256:" + i, Set.of(DATA));
+            Files.setLastModifiedTime(root.resolve("sha256-" + i + ".json"), FileTime.fromMillis(1000 + i));
+        }
+        cache.get("sha256:0");
+        cache.trim();
+        long size = 0;
+        try (var files = Files.list(root)) {
+            for (var file : files.toList()) {
+                size += Files.size(file);
+            }
+        }
+        Assertions.assertTrue(size <= 1000);
+        Assertions.assertTrue(cache.get("sha256:0").isPresent());
+        Assertions.assertTrue(cache.get("sha256:1").isEmpty());
+        Assertions.assertTrue(cache.get("sha256:19").isPresent());
+
+        Assertions.assertTrue(AnalysisCache.create(Optional.empty(), 1000).get("sha256:0").isEmpty());
+    }
+}
@@ -0,0 +1,72 @@
+package com.redhat.hacbs.container.verifier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+
+class ExclusionMatcherTest {
+
+    static final List<String> LINES = List.of(
+            "-:jbossws-common-4.0.0.Final.jar:class:org/jboss/ws/common/CalendarTest",
+            "+:jbossws-common-4.0.0.Final.jar:class:org/jboss/ws/common/CalendarTest",
+            "^:auto-value-1.7.jar:autovalue.shaded.com.google.common.base.Optional:version:49.0>52.0",
+            "+:foo-1.0.jar:org.foo.Bar:method:public void baz()",
+            "-:foo-1.0.jar:org.foo.Bar:field:public int count",
+            "");
+
+    static final List<String> EXCLUDES = List.of(
+            "\\Q-:jbossws-common-4.0.0.Final.jar:class:org/jboss/ws/common/CalendarTest\\E",
+            "^\\Q+:jbossws-common-4.0.0.Final.jar:class:org/jboss/ws/common/CalendarTest\\E$",
+            "^\\Q+:jbossws-common-4.0.0.Final.jar:class:org/jboss/ws/common/Calendar\\E$",
+            "\\^:.*:version:49\\.0>52\\.0",
+            "^\\+:.*[^:]:method:.*baz",
+            "int count$",
+            "^$",
+            "^\\Qfoo\\E",
+            "count",
+            "(a)\\1",
+            "Optional:version",
+            "\\Qno end quote",
+            "\\d+\\.\\d+>");
+
+    @Test
+    void testMatchesLikeRegularExpressions() {
+        for (var exclude : EXCLUDES) {
+            var matcher = ExclusionMatcher.compile(List.of(exclude));
+            var pattern = Pattern.compile(exclude).asPredicate();
+            for (var line : LINES) {
+                assertThat(matcher.matches(line)).as("%s matching %s", exclude, line).isEqualTo(pattern.test(line));
+            }
+        }
+    }
+
+    @Test
+    void testCombinedExcludes() {
+        var matcher = ExclusionMatcher.compile(EXCLUDES);
+        for (var line : LINES) {
+            var expected = EXCLUDES.stream().anyMatch(e -> Pattern.compile(e).matcher(line).find());
+            assertThat(matcher.matches(line)).as(line).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    void testNoExcludes() {
+        var matcher = ExclusionMatcher.compile(List.of());
+        for (var line : LINES) {
+            assertThat(matcher.matches(line)).isFalse();
+        }
+        assertThat(ExclusionMatcher.compile(List.of("")).matches("anything")).isTrue();
+    }
+
+    @Test
+    void testLiteral() {
+        assertThat(ExclusionMatcher.literal("\\Qa.b\\E:c\\.d")).isEqualTo("a.b:c.d");
+        assertThat(ExclusionMatcher.literal("\\^:foo")).isEqualTo("^:foo");
+        assertThat(ExclusionMatcher.literal("a.b")).isNull();
+        assertThat(ExclusionMatcher.literal("\\d")).isNull();
+        assertThat(ExclusionMatcher.literal("a\\")).isNull();
+    }
+}
@@ -21,6 +21,25 @@ public class JarVerificationTestCase {
         runTests(SimpleClass.class, (s) -> s, List.of());
     }
 
+    @Test
+    void testIgnoredChanges() {
+        //debug information and private members are not verified
+        runTests(SimpleClass.class, (s) -> new ClassVisitor(Opcodes.ASM9, s) {
+            @Override
+            public void visitSource(String source, String debug) {
+            }
+
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor, String signature,
+                    String[] exceptions) {
+                if (Modifier.isPrivate(access)) {
+                    return null;
+                }
+                return super.visitMethod(access, name, descriptor, signature, exceptions);
+            }
+        }, List.of());
+    }
+
     @Test
     void testRemovePublicFields() {
         runTests(SimpleClass.class, (s) -> new ClassVisitor(Opcodes.ASM9, s) {
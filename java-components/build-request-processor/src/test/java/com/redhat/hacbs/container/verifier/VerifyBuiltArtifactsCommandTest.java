@@ -2,8 +2,6 @@ package com.redhat.hacbs.container.verifier;
 
 import static com.redhat.hacbs.container.verifier.MavenUtils.coordsToGav;
 import static com.redhat.hacbs.container.verifier.MavenUtils.coordsToPath;
-import static com.redhat.hacbs.container.verifier.VerifyBuiltArtifactsCommand.CLASS_REMOVED_PATTERN;
-import static com.redhat.hacbs.container.verifier.VerifyBuiltArtifactsCommand.CLASS_VERSION_CHANGED_PATTERN;
 import static org.assertj.core.api.Assertions.assertThat;
 
 import java.io.IOException;
@@ -14,6 +12,7 @@ import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
+import org.apache.http.impl.client.HttpClientBuilder;
 import org.junit.jupiter.api.Test;
 
 import picocli.CommandLine;
@@ -77,6 +76,23 @@ public class VerifyBuiltArtifactsCommandTest {
         assertThat(exitCode).isZero();
     }
 
+    @Test
+    void testPendingVerificationsBounded() throws Exception {
+        var localJunit = junitJar();
+        Path repo = Files.createTempDirectory("test");
+        for (var i = 0; i < 5; ++i) {
+            Path dir = Files.createDirectories(repo.resolve("com/acme/acme" + i + "/1.0"));
+            Files.copy(localJunit, dir.resolve("acme" + i + "-1.0.jar"));
+        }
+        Path results = repo.resolve("results");
+        //a single permit means each jar has to be verified before the next can be downloaded
+        var args = new String[] { "-r", repo.toUri().toString(), "--deploy-path", repo.toString(), "--threads", "2",
+                "--download-threads", "4", "--max-pending-verifications", "1", "--results-file", results.toString() };
+        var exitCode = new CommandLine(new VerifyBuiltArtifactsCommand()).execute(args);
+        assertThat(exitCode).isZero();
+        assertThat(results).hasContent("true");
+    }
+
     private static Path junitJar() {
         var path = Thread.currentThread().getContextClassLoader()
                 .getResource(Test.class.getName().replace(".", "/") + ".class");
@@ -87,28 +103,27 @@ public class VerifyBuiltArtifactsCommandTest {
 
     @Test
     void testClassVersionChanged() {
-        var input = "^:auto-value-1.7.jar:autovalue.shaded.com.google$.j2objc.annotations.$RetainedWith:version:49.0>52.0";
-        var matcher = CLASS_VERSION_CHANGED_PATTERN.matcher(input);
-        assertThat(matcher).matches();
-        var fileName = matcher.group("fileName");
-        assertThat(fileName).isNotNull().isEqualTo("auto-value-1.7.jar");
-        var className = matcher.group("className");
-        assertThat(className).isNotNull().isEqualTo("autovalue.shaded.com.google$.j2objc.annotations.$RetainedWith");
-        var fromVersion = matcher.group("fromVersion");
-        assertThat(fromVersion).isNotNull().isEqualTo("49.0");
-        var toVersion = matcher.group("toVersion");
-        assertThat(toVersion).isNotNull().isEqualTo("52.0");
+        var difference = Difference.changed("auto-value-1.7.jar",
+                "autovalue.shaded.com.google$.j2objc.annotations.$RetainedWith", "version", "49.0", "52.0");
+        assertThat(difference.isClassVersionChanged()).isTrue();
+        assertThat(difference.isClassRemoved()).isFalse();
+        assertThat(difference).hasToString(
+                "^:auto-value-1.7.jar:autovalue.shaded.com.google$.j2objc.annotations.$RetainedWith:version:49.0>52.0");
+        assertThat(Difference.changed("foo-1.0.jar", "org.foo.Bar", "access", "1", "9").isClassVersionChanged())
+                .isFalse();
     }
 
     @Test
     void testClassRemoved() {
-        var input = "-:smallrye-common-classloader-1.6.0.jar:class:io/smallrye/common/classloader/ClassDefiner";
-        var matcher = CLASS_REMOVED_PATTERN.matcher(input);
-        assertThat(matcher).matches();
-        var fileName = matcher.group("fileName");
-        assertThat(fileName).isNotNull().isEqualTo("smallrye-common-classloader-1.6.0.jar");
-        var className = matcher.group("className");
-        assertThat(className).isNotNull().isEqualTo("io/smallrye/common/classloader/ClassDefiner");
+        var difference = Difference.removed("smallrye-common-classloader-1.6.0.jar", null, "class",
+                "io/smallrye/common/classloader/ClassDefiner");
+        assertThat(difference.isClassRemoved()).isTrue();
+        assertThat(difference.isClassVersionChanged()).isFalse();
+        assertThat(difference).hasToString(
+                "-:smallrye-common-classloader-1.6.0.jar:class:io/smallrye/common/classloader/ClassDefiner");
+        assertThat(Difference.added("foo-1.0.jar", null, "class", "org/foo/Bar").isClassRemoved()).isFalse();
+        assertThat(Difference.removed("foo-1.0.jar", "org.foo.Bar", "method", "public void baz()").isClassRemoved())
+                .isFalse();
     }
 
     @Test
@@ -119,7 +134,10 @@ public class VerifyBuiltArtifactsCommandTest {
                 .containsExactly("org.mock-server", "mockserver-netty", "jar", "jar-with-dependencies", "5.8.1");
         var verifyBuiltArtifactsCommand = new VerifyBuiltArtifactsCommand();
         verifyBuiltArtifactsCommand.options.mavenOptions.repositoryUrl = REPOSITORY_URL;
-        var optPath = verifyBuiltArtifactsCommand.resolveArtifact(coordsToPath(coords));
+        var downloadDirectory = Files.createTempDirectory("test");
+        var client = HttpClientBuilder.create().build();
+        var optPath = verifyBuiltArtifactsCommand.resolveArtifact(client, coordsToPath(coords),
+                downloadDirectory.resolve(coordsToPath(coords)));
         assertThat(optPath).hasValueSatisfying(path -> assertThat(path).isRegularFile().hasFileName(
                 gav.getArtifactId() + "-" + gav.getVersion() + "-" + gav.getClassifier() + "." + gav.getExtension()));
         var verifyBuiltArtifactsCommand2 = new VerifyBuiltArtifactsCommand();
@@ -128,7 +146,9 @@ public class VerifyBuiltArtifactsCommandTest {
         var gav2 = coordsToGav(coords2);
         assertThat(gav2).extracting("groupId", "artifactId", "extension", "classifier", "version")
                 .containsExactly("org.mock-server", "mockserver-netty", "jar", "jar-with-dependencies", "5.15.0");
-        var optPath2 = verifyBuiltArtifactsCommand2.resolveArtifact(coordsToPath(coords2));
+        var optPath2 = verifyBuiltArtifactsCommand2.resolveArtifact(client, coordsToPath(coords2),
+                downloadDirectory.resolve(coordsToPath(coords2)));
+        client.close();
         assertThat(optPath2).hasValueSatisfying(path -> assertThat(path).isRegularFile().hasFileName(
                 gav2.getArtifactId() + "-" + gav2.getVersion() + "-" + gav2.getClassifier() + "." + gav2.getExtension()));
         var args = new String[] { "-of", optPath2.get().toAbsolutePath().toString(), "-nf",
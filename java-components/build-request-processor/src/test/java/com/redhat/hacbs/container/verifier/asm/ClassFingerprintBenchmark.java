@@ -0,0 +1,157 @@
+package com.redhat.hacbs.container.verifier.asm;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipInputStream;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+
+/**
+ * Throughput comparison of comparing classes by {@link ClassFingerprint} and by building and comparing a full
+ * {@link ClassInfo}.
+ * <p>
+ * This is not run as part of the test suite. Run it with the path of a large jar as the first argument, otherwise the
+ * ASM jar is used. A "rebuilt" copy of the jar is created with the source file and line numbers removed from every class,
+ * so every class differs byte for byte but is structurally identical, which is what most classes in a correct rebuild
+ * look like.
+ */
+public class ClassFingerprintBenchmark {
+
+    static final int ITERATIONS = 10;
+
+    public static void main(String[] args) throws Exception {
+        Path jar = args.length > 0 ? Path.of(args[0])
+                : Path.of(ClassReader.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        List<byte[]> upstream = new ArrayList<>();
+        List<byte[]> rebuilt = new ArrayList<>();
+        Path rebuiltJar = Files.createTempFile("rebuilt", ".jar");
+        try (var in = new ZipInputStream(Files.newInputStream(jar));
+                var out = new JarOutputStream(Files.newOutputStream(rebuiltJar))) {
+            for (var entry = in.getNextEntry(); entry != null; entry = in.getNextEntry()) {
+                byte[] data = in.readAllBytes();
+                if (entry.getName().endsWith(".class")) {
+                    upstream.add(data);
+                    data = stripDebug(data);
+                    rebuilt.add(data);
+                }
+                out.putNextEntry(new JarEntry(entry.getName()));
+                out.write(data);
+            }
+        }
+        try {
+            long bytes = upstream.stream().mapToLong(b -> b.length).sum();
+            System.out.printf("%s: %d classes, %.1f MB%n", jar.getFileName(), upstream.size(), bytes / (1024d * 1024));
+            //warm up
+            fullDiff(upstream, rebuilt);
+            fingerprint(upstream, rebuilt);
+            long full = 0;
+            long fingerprint = 0;
+            for (int i = 0; i < ITERATIONS; ++i) {
+                full += fullDiff(upstream, rebuilt);
+                fingerprint += fingerprint(upstream, rebuilt);
+            }
+            print("full ClassInfo comparison", upstream.size(), full);
+            print("fingerprint comparison", upstream.size(), fingerprint);
+            System.out.printf("speedup: %.1fx%n", full / (double) fingerprint);
+
+            var left = new JarInfo(jar);
+            var right = new JarInfo(rebuiltJar);
+            left.diffJar(right, List.of());
+            long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; ++i) {
+                if (!left.diffJar(right, List.of()).isEmpty()) {
+                    throw new IllegalStateException("Rebuilt jar should have no differences");
+                }
+            }
+            print("JarInfo.diffJar", upstream.size(), System.nanoTime() - start);
+        } finally {
+            Files.delete(rebuiltJar);
+        }
+    }
+
+    static long fullDiff(List<byte[]> upstream, List<byte[]> rebuilt) {
+        long start = System.nanoTime();
+        for (int i = 0; i < upstream.size(); ++i) {
+            if (!sameVerifiedParts(classInfo(upstream.get(i)), classInfo(rebuilt.get(i)))) {
+                throw new IllegalStateException("Class " + i + " differs");
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    static long fingerprint(List<byte[]> upstream, List<byte[]> rebuilt) {
+        long start = System.nanoTime();
+        for (int i = 0; i < upstream.size(); ++i) {
+            var left = ClassFingerprint.of(upstream.get(i));
+            if (left != null && !Arrays.equals(left, ClassFingerprint.of(rebuilt.get(i)))) {
+                throw new IllegalStateException("Class " + i + " has a different fingerprint");
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Compares the same parts of the class as {@link JarInfo#diffJar(JarInfo, List)}
+     */
+    static boolean sameVerifiedParts(ClassInfo left, ClassInfo right) {
+        if (left == null || right == null) {
+            return left == right;
+        }
+        return Objects.equals(left.version(), right.version()) && Objects.equals(left.access(), right.access())
+                && Objects.equals(left.name(), right.name()) && Objects.equals(left.signature(), right.signature())
+                && Objects.equals(left.superName(), right.superName())
+                && Objects.equals(left.interfaces(), right.interfaces()) && Objects.equals(left.module(), right.module())
+                && Objects.equals(left.outerClass(), right.outerClass())
+                && Objects.equals(left.outerMethod(), right.outerMethod())
+                && Objects.equals(left.outerMethodDesc(), right.outerMethodDesc())
+                && Objects.equals(left.visibleAnnotations(), right.visibleAnnotations())
+                && Objects.equals(left.permittedSubclasses(), right.permittedSubclasses())
+                && Objects.equals(left.recordComponents(), right.recordComponents())
+                && Objects.equals(left.fields(), right.fields()) && Objects.equals(left.methods(), right.methods());
+    }
+
+    static ClassInfo classInfo(byte[] data) {
+        var node = new ClassNode();
+        new ClassReader(data).accept(node, 0);
+        return AsmUtils.isPublic(node.access) ? new ClassInfo(node) : null;
+    }
+
+    static byte[] stripDebug(byte[] data) {
+        var reader = new ClassReader(data);
+        var writer = new ClassWriter(0);
+        reader.accept(new ClassVisitor(Opcodes.ASM9, writer) {
+            @Override
+            public void visitSource(String source, String debug) {
+            }
+
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor, String signature,
+                    String[] exceptions) {
+                return new MethodVisitor(Opcodes.ASM9, super.visitMethod(access, name, descriptor, signature, exceptions)) {
+                    @Override
+                    public void visitLineNumber(int line, Label start) {
+                    }
+                };
+            }
+        }, 0);
+        return writer.toByteArray();
+    }
+
+    static void print(String mode, int classes, long nanos) {
+        double seconds = nanos / 1_000_000_000d;
+        System.out.printf("%s: %.1f ms/jar, %.0f classes/s%n", mode, seconds * 1000 / ITERATIONS,
+                classes * (double) ITERATIONS / seconds);
+    }
+}
@@ -30,6 +30,8 @@ public class RebuiltArtifacts {
 
     final List<RebuiltArtifactDeletionListener> imageDeletionListeners = Collections.synchronizedList(new ArrayList<>());
 
+    final List<RebuiltArtifactListener> rebuiltArtifactListeners = Collections.synchronizedList(new ArrayList<>());
+
     final Set<String> gavs = Collections.newSetFromMap(new ConcurrentHashMap<>());
 
     @PostConstruct
@@ -46,6 +48,7 @@ public class RebuiltArtifacts {
             public void onAdd(RebuiltArtifact artifactBuild) {
                 Log.infof("Adding new RebuiltArtifact %s", artifactBuild.getSpec().getGav());
                 gavs.add(artifactBuild.getSpec().getGav());
+                notifyRebuilt(artifactBuild.getSpec().getGav());
             }
 
             @Override
@@ -63,6 +66,7 @@ public class RebuiltArtifacts {
                 }
                 Log.infof("Adding updated RebuiltArtifact %s", newObj.getSpec().getGav());
                 gavs.add(newObj.getSpec().getGav());
+                notifyRebuilt(newObj.getSpec().getGav());
             }
 
             @Override
@@ -85,10 +89,28 @@ public class RebuiltArtifacts {
         });
     }
 
+    void notifyRebuilt(String gav) {
+        List<RebuiltArtifactListener> listeners = new ArrayList<>(rebuiltArtifactListeners.size());
+        synchronized (rebuiltArtifactListeners) {
+            listeners.addAll(rebuiltArtifactListeners);
+        }
+        for (var i : listeners) {
+            try {
+                i.rebuiltArtifactAdded(gav);
+            } catch (Throwable t) {
+                Log.errorf(t, "Failed to notify rebuilt artifact listener");
+            }
+        }
+    }
+
     public void addImageDeletionListener(RebuiltArtifactDeletionListener listener) {
         imageDeletionListeners.add(listener);
     }
 
+    public void addRebuiltArtifactListener(RebuiltArtifactListener listener) {
+        rebuiltArtifactListeners.add(listener);
+    }
+
     public boolean isPossiblyRebuilt(String gav) {
         return gavs.contains(gav);
     }
@@ -96,4 +118,8 @@ public class RebuiltArtifacts {
     public interface RebuiltArtifactDeletionListener {
         void rebuiltArtifactDeleted(String gav, String imageDigest);
     }
+
+    public interface RebuiltArtifactListener {
+        void rebuiltArtifactAdded(String gav);
+    }
 }
@@ -5,13 +5,11 @@ import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeSet;
 
 import jakarta.ws.rs.DefaultValue;
 import jakarta.ws.rs.GET;
@@ -24,14 +22,12 @@ import jakarta.ws.rs.core.Response;
 
 import org.apache.http.client.utils.DateUtils;
 import org.apache.maven.artifact.repository.metadata.Metadata;
-import org.apache.maven.artifact.repository.metadata.Versioning;
-import org.apache.maven.artifact.repository.metadata.io.xpp3.MetadataXpp3Reader;
 import org.apache.maven.artifact.repository.metadata.io.xpp3.MetadataXpp3Writer;
-import org.apache.maven.artifact.versioning.ComparableVersion;
 
 import com.redhat.hacbs.artifactcache.services.ArtifactResult;
 import com.redhat.hacbs.artifactcache.services.BuildPolicy;
 import com.redhat.hacbs.artifactcache.services.CacheFacade;
+import com.redhat.hacbs.artifactcache.services.PublishDates;
 import com.redhat.hacbs.artifactcache.services.RemoteRepositoryManager;
 import com.redhat.hacbs.artifactcache.services.RepositoryCache;
 import com.redhat.hacbs.resources.util.HashUtil;
@@ -47,10 +43,12 @@ public class V2CacheMavenResource {
     public static final String DEFAULT = "default";
     final CacheFacade cache;
     final RemoteRepositoryManager remoteRepositoryManager;
+    final PublishDates publishDates;
 
-    public V2CacheMavenResource(CacheFacade cache, RemoteRepositoryManager remoteRepositoryManager) {
+    public V2CacheMavenResource(CacheFacade cache, RemoteRepositoryManager remoteRepositoryManager, PublishDates publishDates) {
         this.cache = cache;
         this.remoteRepositoryManager = remoteRepositoryManager;
+        this.publishDates = publishDates;
     }
 
     @GET
@@ -108,7 +106,7 @@ public class V2CacheMavenResource {
             caches.addAll(remoteRepositoryManager.getRemoteRepositories(RemoteRepositoryManager.SYSTEM + DEFAULT));
         }
         BuildPolicy bp = new BuildPolicy(caches);
-        return new CacheFacade(Map.of("", bp));
+        return cache.withBuildPolicies(Map.of("", bp));
     }
 
     @GET
@@ -210,97 +208,80 @@ public class V2CacheMavenResource {
             String group,
             boolean sha1)
             throws Exception {
-        try {
-            //group is not really a group
-            //depending on if there are plugins or versions
-            //we only care about versions, so we assume the last segment
-            //of the group is the artifact id
-            int lastIndex = group.lastIndexOf('/');
-            String artifactId = group.substring(lastIndex + 1);
-            String groupId = group.substring(0, lastIndex);
-            Metadata outputModel = null;
-            boolean firstFile = true;
-            Set<String> seenVersions = new TreeSet<>(new Comparator<String>() {
-                @Override
-                public int compare(String o1, String o2) {
-                    return new ComparableVersion(o2).compareTo(new ComparableVersion(o1));
-                }
-            });
-            //we need to merge additional versions into a single file
-            for (var i : data) {
-                try (var in = i.getData()) {
-                    MetadataXpp3Reader reader = new MetadataXpp3Reader();
-                    var model = reader.read(in);
-                    if (firstFile) {
-                        outputModel = model.clone();
-                        if (outputModel.getVersioning() == null) {
-                            outputModel.setVersioning(new Versioning());
-                        }
-                        outputModel.getVersioning().setVersions(new ArrayList<>());
-                    }
-                    if (model.getVersioning() != null) {
-                        seenVersions.addAll(model.getVersioning().getVersions());
-                    }
-                }
-                firstFile = false;
+        //the merged versions come from the metadata cache, so the files themselves are not needed
+        for (var i : data) {
+            try {
+                i.close();
+            } catch (Throwable t) {
+                Log.error("Failed to close resource", t);
             }
-            //iterate most recent to oldest
-            //once we have started including older versions then we can stop checking
-            //technically an older point release may still end up being present that was
-            //not there at the commit time, but in practice this should not be an issue
-            boolean addAll = false;
-            for (var version : seenVersions) {
-                if (version.contains("SNAPSHOT")) {
-                    continue;
-                }
-                if (addAll) {
-                    outputModel.getVersioning().getVersions().add(version);
-                } else {
-                    if (commitTime.getTime() > 0) {
+        }
+        //group is not really a group
+        //depending on if there are plugins or versions
+        //we only care about versions, so we assume the last segment
+        //of the group is the artifact id
+        int lastIndex = group.lastIndexOf('/');
+        String artifactId = group.substring(lastIndex + 1);
+        String groupId = group.substring(0, lastIndex);
+        var merged = cache.getMergedMetadata(buildPolicy, group);
+        if (merged.isEmpty()) {
+            throw new NotFoundException();
+        }
+        Metadata outputModel = merged.get().template().clone();
+        //iterate most recent to oldest
+        //once we have started including older versions then we can stop checking
+        //technically an older point release may still end up being present that was
+        //not there at the commit time, but in practice this should not be an issue
+        boolean addAll = false;
+        for (var version : merged.get().versions()) {
+            if (version.contains("SNAPSHOT")) {
+                continue;
+            }
+            if (addAll) {
+                outputModel.getVersioning().getVersions().add(version);
+            } else {
+                if (commitTime.getTime() > 0) {
+                    Long published = publishDates.getPublishTime(groupId, artifactId, version);
+                    if (published == null) {
                         var result = cache.getArtifactMetadata(buildPolicy, groupId, artifactId, version,
                                 artifactId + "-" + version + ".pom", false);
-                        if (result.isPresent()) {
-                            var lastModified = result.get().get("last-modified");
-                            if (lastModified != null) {
-                                var date = DateUtils.parseDate(lastModified);
-                                if (date != null && date.after(commitTime)) {
-                                    //remove versions released after this artifact
-                                    Log.infof("Removing version %s from %s/maven-metadata.xml", version, group);
-                                    continue;
-                                }
-                            }
-                        } else {
+                        if (result.isEmpty()) {
                             //not found, don't add it
                             continue;
                         }
+                        var lastModified = result.get().get("last-modified");
+                        if (lastModified != null) {
+                            var date = DateUtils.parseDate(lastModified);
+                            if (date != null) {
+                                published = date.getTime();
+                                publishDates.recordPublishTime(groupId, artifactId, version, published);
+                            }
+                        }
+                    }
+                    if (published != null && published > commitTime.getTime()) {
+                        //remove versions released after this artifact
+                        Log.infof("Removing version %s from %s/maven-metadata.xml", version, group);
+                        continue;
                     }
-                    //the default behaviour is to add the version, set it to latest and move to add all mode
-                    //if the artifact is not found or too new then it this is skipped by the continue statements
-                    //above
-                    outputModel.getVersioning().getVersions().add(version);
-                    outputModel.getVersioning().setRelease(version);
-                    outputModel.getVersioning().setLatest(version);
-                    outputModel.getVersioning().setLastUpdatedTimestamp(commitTime);
-                    addAll = true;
-                }
-            }
-            MetadataXpp3Writer writer = new MetadataXpp3Writer();
-            ByteArrayOutputStream out = new ByteArrayOutputStream();
-            writer.write(out, outputModel);
-            if (sha1) {
-                return new ByteArrayInputStream(HashUtil.sha1(out.toByteArray()).getBytes(StandardCharsets.UTF_8));
-            } else {
-                return new ByteArrayInputStream(out.toByteArray());
-            }
-        } finally {
-            for (var i : data) {
-                try {
-                    i.close();
-                } catch (Throwable t) {
-                    Log.error("Failed to close resource", t);
                 }
+                //the default behaviour is to add the version, set it to latest and move to add all mode
+                //if the artifact is not found or too new then it this is skipped by the continue statements
+                //above
+                outputModel.getVersioning().getVersions().add(version);
+                outputModel.getVersioning().setRelease(version);
+                outputModel.getVersioning().setLatest(version);
+                outputModel.getVersioning().setLastUpdatedTimestamp(commitTime);
+                addAll = true;
             }
         }
+        MetadataXpp3Writer writer = new MetadataXpp3Writer();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.write(out, outputModel);
+        if (sha1) {
+            return new ByteArrayInputStream(HashUtil.sha1(out.toByteArray()).getBytes(StandardCharsets.UTF_8));
+        } else {
+            return new ByteArrayInputStream(out.toByteArray());
+        }
     }
 
 }
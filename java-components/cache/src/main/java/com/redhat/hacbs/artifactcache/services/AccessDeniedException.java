@@ -0,0 +1,14 @@
+package com.redhat.hacbs.artifactcache.services;
+
+/**
+ * Thrown by a {@link RepositoryClient} when the repository refuses to serve a file, e.g. with a 401 or 403.
+ * <p>
+ * Repository managers commonly do this for paths that they do not serve, but it can also mean the credentials are wrong
+ * or have expired. The file is skipped for this request, but unlike a miss it is not remembered.
+ */
+public class AccessDeniedException extends RuntimeException {
+
+    public AccessDeniedException(String message) {
+        super(message);
+    }
+}
@@ -5,10 +5,23 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import jakarta.annotation.PreDestroy;
 import jakarta.enterprise.context.control.ActivateRequestContext;
+import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
 
+import org.eclipse.microprofile.config.ConfigProvider;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 import io.quarkus.logging.Log;
 import io.quarkus.runtime.Startup;
 
@@ -19,12 +32,53 @@ import io.quarkus.runtime.Startup;
 @Startup
 public class CacheFacade {
 
+    /**
+     * If all repositories should be probed at once for artifacts that are not cached, rather than one at a time
+     */
+    public static final String PARALLEL_LOOKUP = "cache-parallel-lookup";
+    public static final String PARALLEL_LOOKUP_THREADS = "cache-parallel-lookup-threads";
+    public static final String REPOSITORY_LOOKUP = "cache_repository_lookup";
+
+    final boolean parallelLookup;
+    /**
+     * Runs the repository probes for parallel lookups. This is separate from the worker pool, as the request threads
+     * block waiting for the probes.
+     */
+    final ExecutorService probeExecutor;
+    final boolean ownsProbeExecutor;
     final Map<String, BuildPolicy> buildPolicies;
     final Map<String, List<RepositoryCache>> buildPolicyCaches;
+    final NegativeLookupCache negativeLookupCache;
+    final MetadataCache metadataCache;
 
     public CacheFacade(Map<String, BuildPolicy> buildPolicies) throws Exception {
+        this(buildPolicies, NegativeLookupCache.disabled(), MetadataCache.disabled());
+    }
+
+    @Inject
+    public CacheFacade(Map<String, BuildPolicy> buildPolicies, NegativeLookupCache negativeLookupCache,
+            MetadataCache metadataCache) throws Exception {
+        this(buildPolicies, negativeLookupCache, metadataCache,
+                ConfigProvider.getConfig().getOptionalValue(PARALLEL_LOOKUP, Boolean.class).orElse(false),
+                ConfigProvider.getConfig().getOptionalValue(PARALLEL_LOOKUP_THREADS, Integer.class).orElse(20));
+    }
+
+    CacheFacade(Map<String, BuildPolicy> buildPolicies, NegativeLookupCache negativeLookupCache,
+            MetadataCache metadataCache, boolean parallelLookup, int probeThreads) {
+        this(buildPolicies, negativeLookupCache, metadataCache, parallelLookup,
+                parallelLookup ? createProbeExecutor(probeThreads) : null, true);
+    }
+
+    private CacheFacade(Map<String, BuildPolicy> buildPolicies, NegativeLookupCache negativeLookupCache,
+            MetadataCache metadataCache, boolean parallelLookup, ExecutorService probeExecutor,
+            boolean ownsProbeExecutor) {
         this.buildPolicies = buildPolicies;
+        this.negativeLookupCache = negativeLookupCache;
+        this.metadataCache = metadataCache;
         this.buildPolicyCaches = new HashMap<>();
+        this.parallelLookup = parallelLookup;
+        this.probeExecutor = probeExecutor;
+        this.ownsProbeExecutor = ownsProbeExecutor;
 
         for (var e : buildPolicies.entrySet()) {
             List<RepositoryCache> cacheList = new ArrayList<>(e.getValue().getRepositories());
@@ -32,13 +86,43 @@ public class CacheFacade {
         }
     }
 
+    /**
+     * Creates a facade for a different set of build policies, that shares the lookup caches and probe threads of this
+     * one. The returned facade does not need to be closed.
+     */
+    public CacheFacade withBuildPolicies(Map<String, BuildPolicy> buildPolicies) {
+        return new CacheFacade(buildPolicies, negativeLookupCache, metadataCache, parallelLookup, probeExecutor, false);
+    }
+
+    private static ExecutorService createProbeExecutor(int probeThreads) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(probeThreads, probeThreads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "cache-repository-probe-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    @PreDestroy
+    void close() {
+        if (probeExecutor != null && ownsProbeExecutor) {
+            probeExecutor.shutdownNow();
+        }
+    }
+
     @ActivateRequestContext
     public Optional<ArtifactResult> getArtifactFile(String buildPolicy, String group, String artifact, String version,
             String target, boolean tracked) {
-        //first attempt we only look for cached files, so no network access
-        for (var i : buildPolicyCaches.get(buildPolicy)) {
+        List<RepositoryCache> cacheList = buildPolicyCaches.get(buildPolicy);
+        if (parallelLookup && cacheList.size() > 1) {
+            return parallelLookup(cacheList, group, artifact, version, target, tracked);
+        }
+        for (var i : cacheList) {
             try {
-                var res = i.getArtifactFile(group, artifact, version, target, tracked, false);
+                var res = lookup(i, group, artifact, version, target, tracked);
                 if (res.isPresent()) {
                     return res;
                 }
@@ -66,7 +150,7 @@ public class CacheFacade {
         }
         for (var i : cacheList) {
             try {
-                var res = i.getArtifactFile(group, artifact, version, target, tracked, false);
+                var res = lookup(i, group, artifact, version, target, tracked);
                 if (res.isPresent()) {
                     return res.map(ArtifactResult::getMetadata);
                 }
@@ -77,11 +161,124 @@ public class CacheFacade {
         return Optional.empty();
     }
 
+    /**
+     * Probes the repositories at once, and then downloads from the highest priority repository that might have the
+     * artifact. Probes are only waited on in priority order, so a slow low priority repository does not delay a download
+     * from a higher priority one. If a download turns out to be a miss the next repository that might have it is tried,
+     * so the result is the same as a sequential lookup.
+     * <p>
+     * Cached files are checked first in priority order, and only the repositories before the first one that has the
+     * artifact cached are probed. There is no network access if the highest priority repository already has it.
+     */
+    private Optional<ArtifactResult> parallelLookup(List<RepositoryCache> cacheList, String group, String artifact,
+            String version, String target, boolean tracked) {
+        Optional<ArtifactResult> cached = Optional.empty();
+        int cachedIdx = 0;
+        for (; cachedIdx < cacheList.size(); ++cachedIdx) {
+            try {
+                cached = cacheList.get(cachedIdx).getArtifactFile(group, artifact, version, target, tracked, true);
+                if (cached.isPresent()) {
+                    break;
+                }
+            } catch (Throwable t) {
+                Log.errorf(t, "Unable to download %s:%s:%s", group, artifact, target);
+            }
+        }
+        List<CompletableFuture<Boolean>> probes = new ArrayList<>(cachedIdx);
+        for (var idx = 0; idx < cachedIdx; ++idx) {
+            var i = cacheList.get(idx);
+            if (negativeLookupCache.isMissing(i.getRepository().getName(), group, artifact, version, target)) {
+                probes.add(null);
+            } else {
+                probes.add(CompletableFuture.supplyAsync(() -> probe(i, group, artifact, version, target, tracked),
+                        probeExecutor));
+            }
+        }
+        for (var idx = 0; idx < cachedIdx; ++idx) {
+            var probe = probes.get(idx);
+            if (probe == null) {
+                continue;
+            }
+            var i = cacheList.get(idx);
+            try {
+                boolean mayHave;
+                try {
+                    mayHave = probe.join();
+                } catch (CompletionException e) {
+                    Log.debugf(e, "Unable to check %s for %s:%s:%s", i.getRepository().getName(), group, artifact, target);
+                    mayHave = true;
+                }
+                if (!mayHave) {
+                    negativeLookupCache.recordMissing(i.getRepository().getName(), group, artifact, version, target);
+                    continue;
+                }
+                //the negative lookup cache has already been checked
+                var res = download(i, group, artifact, version, target, tracked);
+                if (res.isPresent()) {
+                    if (cached.isPresent()) {
+                        cached.get().close();
+                    }
+                    return res;
+                }
+            } catch (Throwable t) {
+                Log.errorf(t, "Unable to download %s:%s:%s", group, artifact, target);
+            }
+        }
+        return cached;
+    }
+
+    private static boolean probe(RepositoryCache cache, String group, String artifact, String version, String target,
+            boolean tracked) {
+        var sample = Timer.start();
+        try {
+            return cache.mayHaveArtifactFile(group, artifact, version, target, tracked);
+        } finally {
+            sample.stop(repositoryTimer(cache, "probe"));
+        }
+    }
+
+    private static Timer repositoryTimer(RepositoryCache cache, String type) {
+        return Timer.builder(REPOSITORY_LOOKUP)
+                .tag("repository", cache.getRepository().getName())
+                .tag("type", type)
+                .publishPercentileHistogram()
+                .register(Metrics.globalRegistry);
+    }
+
+    /**
+     * Looks up an artifact from a repository, skipping repositories that recently reported they don't have it
+     */
+    private Optional<ArtifactResult> lookup(RepositoryCache cache, String group, String artifact, String version,
+            String target, boolean tracked) {
+        if (negativeLookupCache.isMissing(cache.getRepository().getName(), group, artifact, version, target)) {
+            return Optional.empty();
+        }
+        return download(cache, group, artifact, version, target, tracked);
+    }
+
+    /**
+     * Retrieves an artifact from a repository, remembering it if the repository does not have it
+     */
+    private Optional<ArtifactResult> download(RepositoryCache cache, String group, String artifact, String version,
+            String target, boolean tracked) {
+        String repository = cache.getRepository().getName();
+        var sample = Timer.start();
+        Optional<ArtifactResult> res;
+        try {
+            //only remember confirmed misses, an empty result can also mean e.g. that a tracked sha1 could not be generated
+            res = cache.getArtifactFile(group, artifact, version, target, tracked, false,
+                    () -> negativeLookupCache.recordMissing(repository, group, artifact, version, target));
+        } finally {
+            sample.stop(repositoryTimer(cache, "lookup"));
+        }
+        return res;
+    }
+
     @ActivateRequestContext
     public List<ArtifactResult> getMetadataFiles(String buildPolicy, String group, String target) {
         List<ArtifactResult> results = new ArrayList<>();
         for (var i : buildPolicyCaches.get(buildPolicy)) {
-            var res = i.getMetadataFile(group, target);
+            var res = metadataCache.getMetadataFile(i, group, target);
             if (res.isPresent()) {
                 results.add(res.get());
             }
@@ -89,4 +286,12 @@ public class CacheFacade {
         return results;
     }
 
+    /**
+     * Returns the versions from all the {@code maven-metadata.xml} files for the group, merged and sorted newest first.
+     */
+    @ActivateRequestContext
+    public Optional<MetadataCache.MergedMetadata> getMergedMetadata(String buildPolicy, String group) {
+        return metadataCache.getMergedMetadata(buildPolicyCaches.get(buildPolicy), group);
+    }
+
 }
@@ -0,0 +1,279 @@
+package com.redhat.hacbs.artifactcache.services;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+import io.quarkus.logging.Log;
+
+/**
+ * Persistent index of the directories managed by {@link RootStorageManager}.
+ * <p>
+ * This is an append only log of access and delete records, which is compacted on startup and when it grows too large
+ * compared to the number of live entries. This means that on restart the cache can load the last access time and size
+ * of every directory without having to walk the whole volume.
+ * <p>
+ * Accesses are not written straight away, the directory is just marked as dirty and the record is written on the next
+ * {@link #flush(Map)}. This keeps the overhead of accessing a directory low, and means the size is measured after the
+ * request that accessed it has finished writing.
+ */
+final class DirectoryIndex {
+
+    static final String FILE_NAME = ".cache-index";
+    /**
+     * Written once the index has been flushed on shutdown, so the next start knows the index matches the volume
+     */
+    static final String CLEAN_SHUTDOWN_FILE_NAME = ".cache-index-clean";
+
+    private static final int MAGIC = 0x48434958;
+    private static final int VERSION = 1;
+    private static final byte ACCESS = 1;
+    private static final byte DELETE = 2;
+    private static final int MIN_COMPACTION_RECORDS = 10000;
+
+    private final Path file;
+    private final Path cleanShutdownFile;
+    private final Path root;
+    private final String marker;
+    private final BiConsumer<String, Long> sizeListener;
+
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+    private final Set<String> deleted = ConcurrentHashMap.newKeySet();
+    private final ConcurrentMap<String, Long> sizes = new ConcurrentHashMap<>();
+
+    private DataOutputStream out;
+    private long records;
+
+    DirectoryIndex(Path root, String marker, BiConsumer<String, Long> sizeListener) {
+        this.root = root;
+        this.file = root.resolve(FILE_NAME);
+        this.cleanShutdownFile = root.resolve(CLEAN_SHUTDOWN_FILE_NAME);
+        this.marker = marker;
+        this.sizeListener = sizeListener;
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    /**
+     * Loads the index from disk.
+     *
+     * @return The last access time and size of every live directory, or null if there is no usable index
+     */
+    synchronized Map<String, Entry> load() {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        Map<String, Entry> entries = new HashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 64 * 1024))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                Log.errorf("Ignoring cache index %s with unknown format", file);
+                return null;
+            }
+            for (;;) {
+                byte type;
+                try {
+                    type = in.readByte();
+                } catch (EOFException e) {
+                    break;
+                }
+                String relative = in.readUTF();
+                if (type == ACCESS) {
+                    long time = in.readLong();
+                    long size = in.readLong();
+                    entries.put(relative, new Entry(time, size));
+                } else if (type == DELETE) {
+                    entries.remove(relative);
+                } else {
+                    Log.errorf("Ignoring cache index %s as it is corrupt", file);
+                    return null;
+                }
+            }
+        } catch (EOFException e) {
+            //the last record was only partially written, everything before it is still valid
+            Log.infof("Cache index %s was truncated, ignoring the final record", file);
+        } catch (IOException e) {
+            Log.errorf(e, "Failed to read cache index %s", file);
+            return null;
+        }
+        for (var e : entries.entrySet()) {
+            sizes.put(e.getKey(), e.getValue().size());
+        }
+        return entries;
+    }
+
+    /**
+     * Replaces the index with one that only contains the given entries, and opens it for appending.
+     */
+    synchronized void rewrite(Map<String, Entry> entries) throws IOException {
+        close();
+        Path temp = root.resolve(FILE_NAME + ".tmp");
+        try (DataOutputStream tempOut = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temp), 64 * 1024))) {
+            tempOut.writeInt(MAGIC);
+            tempOut.writeInt(VERSION);
+            for (var e : entries.entrySet()) {
+                writeAccess(tempOut, e.getKey(), e.getValue().lastAccess(), e.getValue().size());
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        sizes.clear();
+        for (var e : entries.entrySet()) {
+            sizes.put(e.getKey(), e.getValue().size());
+        }
+        records = entries.size();
+        out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file, StandardOpenOption.APPEND)));
+    }
+
+    void accessed(String relative) {
+        dirty.add(relative);
+    }
+
+    void deleted(String relative) {
+        dirty.remove(relative);
+        deleted.add(relative);
+        sizes.remove(relative);
+    }
+
+    /**
+     * @return The size of the directory the last time it was written to the index, or zero if it is not known
+     */
+    long size(String relative) {
+        return sizes.getOrDefault(relative, 0L);
+    }
+
+    /**
+     * Writes out all pending records.
+     *
+     * @param accessTimes The current access times of all directories
+     */
+    synchronized void flush(Map<String, AtomicLong> accessTimes) throws IOException {
+        if (out == null) {
+            return;
+        }
+        for (var it = deleted.iterator(); it.hasNext();) {
+            String relative = it.next();
+            it.remove();
+            out.writeByte(DELETE);
+            out.writeUTF(relative);
+            records++;
+        }
+        for (var it = dirty.iterator(); it.hasNext();) {
+            String relative = it.next();
+            it.remove();
+            AtomicLong time = accessTimes.get(relative);
+            if (time == null || time.get() < 0) {
+                //deleted or in the process of being deleted
+                continue;
+            }
+            long size = measure(root.resolve(relative));
+            Long existing = sizes.put(relative, size);
+            if (existing == null || existing != size) {
+                sizeListener.accept(relative, size);
+            }
+            writeAccess(out, relative, time.get(), size);
+            records++;
+        }
+        out.flush();
+        if (records > MIN_COMPACTION_RECORDS && records > accessTimes.size() * 2L) {
+            Map<String, Entry> live = new HashMap<>();
+            for (var e : accessTimes.entrySet()) {
+                long time = e.getValue().get();
+                if (time >= 0) {
+                    live.put(e.getKey(), new Entry(time, size(e.getKey())));
+                }
+            }
+            Log.infof("Compacting cache index from %s records to %s", records, live.size());
+            rewrite(live);
+        }
+    }
+
+    synchronized void close() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+
+    /**
+     * Records that the index is up to date, this must only be called after the final flush.
+     */
+    void markCleanShutdown() throws IOException {
+        Files.writeString(cleanShutdownFile, "");
+    }
+
+    /**
+     * Removes the clean shutdown marker, so that if this process does not shut down cleanly the next one knows.
+     *
+     * @return If the last process shut down cleanly
+     */
+    boolean clearCleanShutdown() {
+        try {
+            return Files.deleteIfExists(cleanShutdownFile);
+        } catch (IOException e) {
+            Log.errorf(e, "Failed to delete %s", cleanShutdownFile);
+            return false;
+        }
+    }
+
+    /**
+     * Measures the size of a directory, not including sub directories that are managed separately.
+     */
+    long measure(Path dir) {
+        AtomicLong size = new AtomicLong();
+        try {
+            Files.walkFileTree(dir, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path d, BasicFileAttributes attrs) {
+                    if (!d.equals(dir) && Files.exists(d.resolve(marker))) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path f, BasicFileAttributes attrs) {
+                    size.addAndGet(attrs.size());
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path f, IOException exc) {
+                    //the file may have been deleted while we were walking
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            Log.debugf(e, "Failed to measure %s", dir);
+        }
+        return size.get();
+    }
+
+    private static void writeAccess(DataOutputStream out, String relative, long time, long size) throws IOException {
+        out.writeByte(ACCESS);
+        out.writeUTF(relative);
+        out.writeLong(time);
+        out.writeLong(size);
+    }
+
+    record Entry(long lastAccess, long size) {
+    }
+}
@@ -0,0 +1,106 @@
+package com.redhat.hacbs.artifactcache.services;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Tracks which GAVs are in use, so they are not deleted while they are being read.
+ * <p>
+ * Any number of readers can hold a GAV at once, while a delete waits until all readers are done and blocks new readers
+ * until it is complete. State changes are made with {@link ConcurrentMap#compute}, so there is no global lock, and
+ * waiters block on a latch that belongs to the GAV they are waiting on rather than being woken up by every release.
+ */
+final class GavReferenceCounter {
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Marks the GAV as in use, waiting for any in progress delete to complete.
+     */
+    void acquire(String gav) {
+        for (;;) {
+            Entry entry = entries.compute(gav, (k, v) -> {
+                if (v == null) {
+                    v = new Entry(false);
+                } else if (v.deleting) {
+                    return v;
+                }
+                v.references++;
+                return v;
+            });
+            if (!entry.deleting) {
+                return;
+            }
+            await(entry);
+        }
+    }
+
+    void release(String gav) {
+        entries.computeIfPresent(gav, (k, v) -> {
+            if (v.deleting) {
+                throw new IllegalStateException("Released " + gav + " while it was being deleted");
+            }
+            if (--v.references == 0) {
+                v.done.countDown();
+                return null;
+            }
+            return v;
+        });
+    }
+
+    /**
+     * Marks the GAV as being deleted, waiting for all readers to release it.
+     *
+     * @return false if another thread is already deleting the GAV
+     */
+    boolean beginDelete(String gav) {
+        Entry ours = new Entry(true);
+        for (;;) {
+            Entry entry = entries.computeIfAbsent(gav, k -> ours);
+            if (entry == ours) {
+                return true;
+            } else if (entry.deleting) {
+                return false;
+            }
+            await(entry);
+        }
+    }
+
+    void endDelete(String gav) {
+        Entry entry = entries.remove(gav);
+        if (entry != null) {
+            entry.done.countDown();
+        }
+    }
+
+    int references(String gav) {
+        Entry entry = entries.get(gav);
+        return entry == null || entry.deleting ? 0 : entry.references;
+    }
+
+    private static void await(Entry entry) {
+        try {
+            entry.done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static final class Entry {
+        final boolean deleting;
+        /**
+         * Only modified inside a compute call for this key
+         */
+        volatile int references;
+        /**
+         * Released when the entry is removed from the map
+         */
+        final CountDownLatch done = new CountDownLatch(1);
+
+        Entry(boolean deleting) {
+            this.deleting = deleting;
+        }
+    }
+}
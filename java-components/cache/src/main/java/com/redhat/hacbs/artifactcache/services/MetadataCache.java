@@ -0,0 +1,250 @@
+package com.redhat.hacbs.artifactcache.services;
+
+import java.io.ByteArrayInputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+
+import org.apache.maven.artifact.repository.metadata.Metadata;
+import org.apache.maven.artifact.repository.metadata.Versioning;
+import org.apache.maven.artifact.repository.metadata.io.xpp3.MetadataXpp3Reader;
+import org.apache.maven.artifact.versioning.ComparableVersion;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.noop.NoopCounter;
+import io.quarkus.logging.Log;
+
+/**
+ * Caches metadata files such as {@code maven-metadata.xml} in memory, and the parsed and merged version lists built from
+ * them.
+ * <p>
+ * Files are served from memory for {@code cache-metadata-ttl}, after which they are revalidated against the upstream
+ * repository with a conditional request, so unchanged files are not downloaded or parsed again. Merged version lists are
+ * keyed by the list of repositories they were built from, and are rebuilt only if one of the underlying files has
+ * changed. If the upstream repository fails the last known file is used.
+ */
+@Singleton
+public class MetadataCache {
+
+    static final String MAVEN_METADATA = "maven-metadata.xml";
+
+    final long ttl;
+    final int maxEntries;
+    /**
+     * repository/group/target -> file
+     */
+    final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    /**
+     * repositories/group -> merged versions
+     */
+    final ConcurrentMap<String, Merged> merged = new ConcurrentHashMap<>();
+    private final Counter hits;
+    private final Counter notModified;
+    private final Counter downloads;
+
+    @Inject
+    public MetadataCache(
+            @ConfigProperty(name = "cache-metadata-ttl", defaultValue = "PT1M") Duration ttl,
+            @ConfigProperty(name = "cache-metadata-max-entries", defaultValue = "10000") int maxEntries,
+            MeterRegistry registry) {
+        this(ttl.toMillis(), maxEntries, registry.counter("cache_metadata", "result", "hit"),
+                registry.counter("cache_metadata", "result", "not-modified"),
+                registry.counter("cache_metadata", "result", "download"));
+        Log.infof("Metadata cache TTL is %s with a maximum of %s entries", ttl, maxEntries);
+    }
+
+    MetadataCache(long ttl, int maxEntries, Counter hits, Counter notModified, Counter downloads) {
+        this.ttl = ttl;
+        this.maxEntries = maxEntries;
+        this.hits = hits;
+        this.notModified = notModified;
+        this.downloads = downloads;
+    }
+
+    /**
+     * @return A cache that never stores anything
+     */
+    public static MetadataCache disabled() {
+        return new MetadataCache(-1, 0,
+                new NoopCounter(new Meter.Id("cache_metadata", Tags.empty(), null, null, Meter.Type.COUNTER)),
+                new NoopCounter(new Meter.Id("cache_metadata", Tags.empty(), null, null, Meter.Type.COUNTER)),
+                new NoopCounter(new Meter.Id("cache_metadata", Tags.empty(), null, null, Meter.Type.COUNTER)));
+    }
+
+    /**
+     * @return The metadata file as an artifact result, or empty if the repository does not have it
+     */
+    public Optional<ArtifactResult> getMetadataFile(RepositoryCache cache, String group, String target) {
+        return get(cache, group, target).map(Entry::toResult);
+    }
+
+    /**
+     * Returns the versions from the {@code maven-metadata.xml} files of all the repositories, newest first.
+     *
+     * @return The merged versions, or empty if none of the repositories have metadata for the group
+     */
+    public Optional<MergedMetadata> getMergedMetadata(List<RepositoryCache> caches, String group) {
+        List<Entry> sources = new ArrayList<>(caches.size());
+        for (var cache : caches) {
+            get(cache, group, MAVEN_METADATA).ifPresent(sources::add);
+        }
+        if (sources.isEmpty()) {
+            return Optional.empty();
+        }
+        String key = caches.stream().map(c -> c.getRepository().getName()).collect(Collectors.joining(",")) + "/" + group;
+        Merged existing = merged.get(key);
+        //entries are replaced rather than modified when the upstream file changes
+        if (existing != null && existing.sources.equals(sources)) {
+            return Optional.of(existing.result);
+        }
+        Metadata template = null;
+        TreeSet<String> versions = new TreeSet<>(
+                Comparator.comparing(ComparableVersion::new, Comparator.reverseOrder()));
+        for (var source : sources) {
+            Metadata model = source.parse();
+            if (template == null) {
+                template = model.clone();
+                if (template.getVersioning() == null) {
+                    template.setVersioning(new Versioning());
+                }
+                template.getVersioning().setVersions(new ArrayList<>());
+            }
+            if (model.getVersioning() != null) {
+                versions.addAll(model.getVersioning().getVersions());
+            }
+        }
+        MergedMetadata result = new MergedMetadata(template, List.copyOf(versions));
+        if (ttl >= 0) {
+            if (merged.size() >= maxEntries) {
+                merged.clear();
+            }
+            merged.put(key, new Merged(sources, result));
+        }
+        return Optional.of(result);
+    }
+
+    public void clear() {
+        entries.clear();
+        merged.clear();
+    }
+
+    Optional<Entry> get(RepositoryCache cache, String group, String target) {
+        String key = cache.getRepository().getName() + "/" + group + "/" + target;
+        Entry existing = entries.get(key);
+        long now = System.currentTimeMillis();
+        if (existing != null && existing.validUntil > now) {
+            hits.increment();
+            return existing.present();
+        }
+        Map<String, String> conditionalHeaders = existing == null ? Map.of() : existing.conditionalHeaders();
+        Entry entry;
+        try {
+            var result = cache.getMetadataFile(group, target, conditionalHeaders);
+            if (result.isEmpty()) {
+                entry = new Entry(null, Map.of(), now + ttl);
+            } else {
+                try (var file = result.get()) {
+                    if (existing != null && file.getMetadata().containsKey(RepositoryClient.NOT_MODIFIED)) {
+                        notModified.increment();
+                        existing.validUntil = now + ttl;
+                        return existing.present();
+                    }
+                    downloads.increment();
+                    entry = new Entry(file.getData().readAllBytes(), file.getMetadata(), now + ttl);
+                }
+            }
+        } catch (Exception e) {
+            if (existing != null) {
+                Log.debugf(e, "Failed to revalidate metadata %s, using the cached copy", key);
+                return existing.present();
+            }
+            Log.debugf(e, "Failed to retrieve metadata %s", key);
+            return Optional.empty();
+        }
+        if (ttl >= 0) {
+            if (entries.size() >= maxEntries && !entries.containsKey(key)) {
+                Log.infof("Metadata cache has more than %s entries, clearing", maxEntries);
+                entries.clear();
+            }
+            entries.put(key, entry);
+        }
+        return entry.present();
+    }
+
+    /**
+     * The merged metadata, the template has no versions and must be cloned before it is modified.
+     */
+    public record MergedMetadata(Metadata template, List<String> versions) {
+    }
+
+    record Merged(List<Entry> sources, MergedMetadata result) {
+    }
+
+    static final class Entry {
+        /**
+         * The file contents, or null if the repository does not have the file
+         */
+        final byte[] data;
+        final Map<String, String> headers;
+        volatile long validUntil;
+        private volatile Metadata parsed;
+
+        Entry(byte[] data, Map<String, String> headers, long validUntil) {
+            this.data = data;
+            this.headers = Collections.unmodifiableMap(new HashMap<>(headers));
+            this.validUntil = validUntil;
+        }
+
+        Optional<Entry> present() {
+            return data == null ? Optional.empty() : Optional.of(this);
+        }
+
+        ArtifactResult toResult() {
+            return new ArtifactResult(null, new ByteArrayInputStream(data), data.length, Optional.empty(), headers);
+        }
+
+        Map<String, String> conditionalHeaders() {
+            if (data == null) {
+                return Map.of();
+            }
+            Map<String, String> ret = new HashMap<>();
+            for (var e : headers.entrySet()) {
+                if (e.getKey().equalsIgnoreCase("etag")) {
+                    ret.put("If-None-Match", e.getValue());
+                } else if (e.getKey().equalsIgnoreCase("last-modified")) {
+                    ret.put("If-Modified-Since", e.getValue());
+                }
+            }
+            return ret;
+        }
+
+        Metadata parse() {
+            Metadata ret = parsed;
+            if (ret == null) {
+                try {
+                    ret = new MetadataXpp3Reader().read(new ByteArrayInputStream(data));
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+                parsed = ret;
+            }
+            return ret;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.redhat.hacbs.artifactcache.services;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import com.redhat.hacbs.artifactcache.artifactwatch.RebuiltArtifacts;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.noop.NoopCounter;
+import io.quarkus.logging.Log;
+
+/**
+ * Remembers artifacts that a repository does not have, so we don't keep asking the upstream repository for them.
+ * <p>
+ * Entries expire after a fixed TTL, and all entries for a GAV are removed when it is rebuilt. Entries are grouped by GAV
+ * so they can be invalidated without scanning the whole cache. If there are more than the maximum number of entries the
+ * expired entries are removed, and if that is not enough the cache is cleared.
+ */
+@Singleton
+public class NegativeLookupCache {
+
+    final long ttl;
+    final int maxEntries;
+    /**
+     * GAV -> repository/target -> expiry time
+     */
+    final ConcurrentMap<String, ConcurrentMap<String, Long>> entries = new ConcurrentHashMap<>();
+    final AtomicInteger size = new AtomicInteger();
+    private final Counter hits;
+    private final Counter misses;
+
+    @Inject
+    public NegativeLookupCache(
+            @ConfigProperty(name = "cache-negative-lookup-ttl", defaultValue = "PT5M") Duration ttl,
+            @ConfigProperty(name = "cache-negative-lookup-max-entries", defaultValue = "100000") int maxEntries,
+            MeterRegistry registry, RebuiltArtifacts rebuiltArtifacts) {
+        this(ttl, maxEntries, registry.counter("cache_negative_lookup", "result", "hit"),
+                registry.counter("cache_negative_lookup", "result", "miss"));
+        rebuiltArtifacts.addRebuiltArtifactListener(this::invalidate);
+        Log.infof("Negative lookup cache TTL is %s with a maximum of %s entries", ttl, maxEntries);
+    }
+
+    NegativeLookupCache(Duration ttl, int maxEntries, Counter hits, Counter misses) {
+        this.ttl = ttl.toMillis();
+        this.maxEntries = maxEntries;
+        this.hits = hits;
+        this.misses = misses;
+    }
+
+    /**
+     * @return A cache that never remembers anything
+     */
+    public static NegativeLookupCache disabled() {
+        return new NegativeLookupCache(Duration.ZERO, 0,
+                new NoopCounter(new Meter.Id("cache_negative_lookup", Tags.empty(), null, null, Meter.Type.COUNTER)),
+                new NoopCounter(new Meter.Id("cache_negative_lookup", Tags.empty(), null, null, Meter.Type.COUNTER)));
+    }
+
+    /**
+     * @return true if the repository recently reported that it does not have this artifact
+     */
+    public boolean isMissing(String repository, String group, String artifact, String version, String target) {
+        if (ttl <= 0) {
+            return false;
+        }
+        var gavEntries = entries.get(gav(group, artifact, version));
+        if (gavEntries != null) {
+            String key = repository + "/" + target;
+            Long expiry = gavEntries.get(key);
+            if (expiry != null) {
+                if (expiry > System.currentTimeMillis()) {
+                    hits.increment();
+                    return true;
+                }
+                if (gavEntries.remove(key, expiry)) {
+                    size.decrementAndGet();
+                }
+            }
+        }
+        misses.increment();
+        return false;
+    }
+
+    public void recordMissing(String repository, String group, String artifact, String version, String target) {
+        if (ttl <= 0) {
+            return;
+        }
+        var gavEntries = entries.computeIfAbsent(gav(group, artifact, version), k -> new ConcurrentHashMap<>());
+        if (gavEntries.put(repository + "/" + target, System.currentTimeMillis() + ttl) == null
+                && size.incrementAndGet() > maxEntries) {
+            removeExpired();
+        }
+    }
+
+    /**
+     * Removes all entries for a GAV, in the form group:artifact:version
+     */
+    public void invalidate(String gav) {
+        var removed = entries.remove(gav);
+        if (removed != null) {
+            size.addAndGet(-removed.size());
+        }
+    }
+
+    public void clear() {
+        entries.clear();
+        size.set(0);
+    }
+
+    private synchronized void removeExpired() {
+        if (size.get() <= maxEntries) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (var it = entries.values().iterator(); it.hasNext();) {
+            var gavEntries = it.next();
+            for (var e = gavEntries.entrySet().iterator(); e.hasNext();) {
+                if (e.next().getValue() <= now) {
+                    e.remove();
+                    size.decrementAndGet();
+                }
+            }
+            if (gavEntries.isEmpty()) {
+                it.remove();
+            }
+        }
+        if (size.get() > maxEntries) {
+            Log.infof("Negative lookup cache has more than %s unexpired entries, clearing", maxEntries);
+            clear();
+        }
+    }
+
+    private static String gav(String group, String artifact, String version) {
+        return group.replace('/', '.') + ":" + artifact + ":" + version;
+    }
+}
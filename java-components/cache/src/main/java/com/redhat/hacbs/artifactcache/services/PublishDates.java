@@ -0,0 +1,109 @@
+package com.redhat.hacbs.artifactcache.services;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import io.quarkus.logging.Log;
+
+/**
+ * A persistent table of the time each artifact version was published, so that filtering metadata by commit time does
+ * not need to fetch a {@code .pom} for every version.
+ * <p>
+ * Publish dates do not change once a version has been released, so entries are never invalidated. New entries are
+ * appended to a file in the root of the cache volume, one {@code group:artifact:version<tab>time} line per entry.
+ */
+@Singleton
+public class PublishDates {
+
+    static final String FILE_NAME = ".publish-dates";
+
+    final ConcurrentMap<String, Long> dates = new ConcurrentHashMap<>();
+    private final Path file;
+    private Writer out;
+
+    @Inject
+    public PublishDates(@ConfigProperty(name = "cache-path") Path path) {
+        this.file = path.resolve(FILE_NAME);
+        load();
+        Log.infof("Loaded %s artifact publish dates", dates.size());
+    }
+
+    PublishDates() {
+        this.file = null;
+    }
+
+    /**
+     * @return The publish time in milliseconds, or null if it is not known
+     */
+    public Long getPublishTime(String group, String artifact, String version) {
+        return dates.get(gav(group, artifact, version));
+    }
+
+    public void recordPublishTime(String group, String artifact, String version, long time) {
+        String gav = gav(group, artifact, version);
+        if (dates.putIfAbsent(gav, time) == null && file != null) {
+            write(gav, time);
+        }
+    }
+
+    private void load() {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (var lines = Files.lines(file, StandardCharsets.UTF_8)) {
+            lines.forEach(line -> {
+                int index = line.lastIndexOf('\t');
+                if (index > 0) {
+                    try {
+                        dates.put(line.substring(0, index), Long.parseLong(line.substring(index + 1)));
+                    } catch (NumberFormatException e) {
+                        //a partially written line, ignore it
+                    }
+                }
+            });
+        } catch (IOException | RuntimeException e) {
+            Log.errorf(e, "Failed to read publish dates from %s", file);
+        }
+    }
+
+    private synchronized void write(String gav, long time) {
+        try {
+            if (out == null) {
+                out = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                        StandardOpenOption.APPEND);
+            }
+            out.write(gav + "\t" + time + "\n");
+            out.flush();
+        } catch (IOException e) {
+            Log.errorf(e, "Failed to write publish date to %s", file);
+        }
+    }
+
+    @PreDestroy
+    synchronized void close() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                Log.errorf(e, "Failed to close %s", file);
+            }
+            out = null;
+        }
+    }
+
+    private static String gav(String group, String artifact, String version) {
+        return group.replace('/', '.') + ":" + artifact + ":" + version;
+    }
+}
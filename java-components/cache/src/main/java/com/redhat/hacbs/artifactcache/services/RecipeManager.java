@@ -12,6 +12,7 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
 
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
@@ -31,26 +32,54 @@ import com.redhat.hacbs.recipes.location.RecipeRepositoryManager;
 import com.redhat.hacbs.recipes.mavenrepo.MavenRepositoryInfo;
 import com.redhat.hacbs.recipes.mavenrepo.MavenRepositoryInfoManager;
 import com.redhat.hacbs.recipes.scm.GitScmLocator;
+import com.redhat.hacbs.recipes.scm.RepositoryTagCache;
 import com.redhat.hacbs.recipes.tools.BuildToolInfo;
 import com.redhat.hacbs.recipes.tools.BuildToolInfoManager;
 import com.redhat.hacbs.recipes.util.FileUtil;
 
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import io.quarkus.logging.Log;
+import io.quarkus.runtime.ExecutorRecorder;
 import io.quarkus.runtime.Startup;
 
 @Startup
 @Singleton
 public class RecipeManager {
 
+    public static final String SCM_LS_REMOTE = "cache_scm_ls_remote";
+    public static final String RECIPE_REFRESH_AGE = "cache_recipe_refresh_age_seconds";
+    public static final String RECIPE_REFRESH_DURATION = "cache_recipe_refresh_duration_seconds";
+
     @Inject
     CachePomScmLocator cachePomScmLocator;
 
+    @Inject
+    MeterRegistry registry;
+
     @ConfigProperty(name = "build-info.repositories", defaultValue = BuildRecipe.DEFAULT_RECIPE_REPO_URL)
     List<String> buildInfoRepos;
 
+    /**
+     * How long the tags of a code repository are used for when looking up SCM information
+     */
+    @ConfigProperty(name = "scm-tag-cache-ttl", defaultValue = "PT1H")
+    Duration tagCacheTtl;
+
+    /**
+     * How long until the tags of a code repository are listed again in the background
+     */
+    @ConfigProperty(name = "scm-tag-cache-refresh", defaultValue = "PT5M")
+    Duration tagCacheRefresh;
+
+    @ConfigProperty(name = "scm-tag-cache-max-entries", defaultValue = "10000")
+    int tagCacheMaxEntries;
+
     final List<RecipeDirectory> recipeDirs = new ArrayList<>();
     final List<Path> tempFiles = new ArrayList<>();
     RecipeGroupManager recipeGroupManager;
+    RepositoryTagCache tagCache;
 
     @PostConstruct
     void setup() throws IOException, GitAPIException {
@@ -58,10 +87,29 @@ public class RecipeManager {
             Path tempDir = Files.createTempDirectory("recipe");
             Log.infof("Reading repos from %s at %s", i, tempDir);
             tempFiles.add(tempDir);
-            recipeDirs
-                    .add(RecipeRepositoryManager.create(i, Optional.of(Duration.of(1, ChronoUnit.MINUTES)), tempDir));
+            var manager = RecipeRepositoryManager.create(i, Optional.of(Duration.of(1, ChronoUnit.MINUTES)), tempDir);
+            recipeDirs.add(manager);
+            Gauge.builder(RECIPE_REFRESH_AGE, manager,
+                    m -> (System.currentTimeMillis() - m.getLastUpdate()) / 1000.0)
+                    .tag("repository", i)
+                    .register(registry);
+            Gauge.builder(RECIPE_REFRESH_DURATION, manager, m -> m.getLastUpdateDuration() / 1000.0)
+                    .tag("repository", i)
+                    .register(registry);
         }
         recipeGroupManager = new RecipeGroupManager(recipeDirs);
+        Timer success = lsRemoteTimer("success");
+        Timer failure = lsRemoteTimer("failure");
+        tagCache = new RepositoryTagCache(tagCacheTtl, tagCacheRefresh, tagCacheMaxEntries, ExecutorRecorder.getCurrent(),
+                (uri, nanos, ok) -> (ok ? success : failure).record(nanos, TimeUnit.NANOSECONDS));
+        Log.infof("SCM tag cache TTL is %s with a refresh interval of %s", tagCacheTtl, tagCacheRefresh);
+    }
+
+    private Timer lsRemoteTimer(String result) {
+        return Timer.builder(SCM_LS_REMOTE)
+                .tag("result", result)
+                .publishPercentileHistogram()
+                .register(registry);
     }
 
     public void forceUpdate() {
@@ -70,6 +118,11 @@ public class RecipeManager {
 
     @PreDestroy
     void clear() {
+        for (var i : recipeDirs) {
+            if (i instanceof RecipeRepositoryManager manager) {
+                manager.close();
+            }
+        }
         for (var i : tempFiles) {
             FileUtil.deleteRecursive(i);
         }
@@ -78,6 +131,7 @@ public class RecipeManager {
     public GitScmLocator locator() {
         return GitScmLocator.builder()
                 .setRecipeGroupManager(recipeGroupManager)
+                .setTagCache(tagCache)
                 .setFallback(cachePomScmLocator)
                 .build();
     }
@@ -88,7 +142,7 @@ public class RecipeManager {
             var path = i.getRepositoryPaths(repo);
             if (path.isPresent()) {
                 try {
-                    ret.add(MavenRepositoryInfoManager.INSTANCE.parse(path.get()));
+                    ret.add(MavenRepositoryInfoManager.INSTANCE.parseCached(path.get()));
                 } catch (IOException e) {
                     Log.errorf(e, "Failed to parse repository info file %s", path.get());
                 }
@@ -104,7 +158,7 @@ public class RecipeManager {
             for (var path : paths) {
                 try {
                     ret.put(path.getFileName().toString().replace(".yaml", ""),
-                            MavenRepositoryInfoManager.INSTANCE.parse(path));
+                            MavenRepositoryInfoManager.INSTANCE.parseCached(path));
                 } catch (IOException e) {
                     Log.errorf(e, "Failed to parse repository info file %s", path);
                 }
@@ -119,7 +173,7 @@ public class RecipeManager {
             var path = i.getBuildToolInfo(name);
             if (path.isPresent()) {
                 try {
-                    for (var b : BuildToolInfoManager.INSTANCE.parse(path.get())) {
+                    for (var b : BuildToolInfoManager.INSTANCE.parseCached(path.get())) {
                         results.put(b.getVersion(), b);
 
                     }
@@ -137,7 +191,7 @@ public class RecipeManager {
         if (path == null) {
             return null;
         }
-        return BuildRecipe.BUILD.getHandler().parse(path);
+        return BuildRecipe.BUILD.getHandler().parseCached(path);
     }
 
     public List<String> getDisabledPlugins(String name) {
@@ -148,7 +202,7 @@ public class RecipeManager {
 
             if (path.isPresent()) {
                 try {
-                    return DisabledPluginsManager.INSTANCE.parse(path.get()).getDisabledPlugins();
+                    return DisabledPluginsManager.INSTANCE.parseCached(path.get()).getDisabledPlugins();
                 } catch (IOException e) {
                     Log.errorf(e, "Failed to parse plugin info file %s", path);
                 }
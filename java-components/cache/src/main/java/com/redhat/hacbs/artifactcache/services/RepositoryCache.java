@@ -4,6 +4,8 @@ import static com.redhat.hacbs.classfile.tracker.TrackingData.extractClassifier;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -19,29 +21,43 @@ import java.util.Properties;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Function;
+import java.util.zip.Deflater;
 
 import org.apache.commons.lang3.StringUtils;
+import org.eclipse.microprofile.config.ConfigProvider;
 
 import com.redhat.hacbs.classfile.tracker.ClassFileTracker;
+import com.redhat.hacbs.classfile.tracker.CompressionSettings;
 import com.redhat.hacbs.classfile.tracker.HashingOutputStream;
 import com.redhat.hacbs.classfile.tracker.TrackingData;
 import com.redhat.hacbs.common.sbom.GAV;
 
+import io.micrometer.core.instrument.Metrics;
 import io.quarkus.logging.Log;
+import io.quarkus.runtime.ExecutorRecorder;
 
 /**
  * A per repository cache implementation
  */
 public class RepositoryCache {
 
-    private static final Object DELETE_IN_PROGRESS = new Object();
     public static final String SHA_1 = ".sha1";
     public static final String DOWNLOADS = ".downloads";
     public static final String HEADERS = ".hacbs-http-headers";
     public static final String ORIGINAL = "original";
     public static final String TRANSFORMED = "transformed";
+    public static final String PARALLEL_TRACKING = "cache-parallel-tracking";
+    public static final String TRACKING_COMPRESSION_LEVEL = "cache-tracking-compression-level";
+    public static final String TRACKING_COMPRESSION_STRATEGY = "cache-tracking-compression-strategy";
+    public static final String PIPELINED_DOWNLOADS = "cache-pipelined-downloads";
+    public static final String TIME_TO_FIRST_BYTE = "cache_time_to_first_byte";
+    private static final String WARM = "warm";
+    private static final String COLD = "cold";
+    private static final String COLD_PIPELINED = "cold-pipelined";
     final StorageManager storageManager;
     final StorageManager downloaded;
     final StorageManager transformed;
@@ -50,6 +66,21 @@ public class RepositoryCache {
 
     final boolean overwriteExistingBytecodeMarkers;
 
+    /**
+     * The pool used to add tracking data to classes, or null if jars are processed on the request thread
+     */
+    final ForkJoinPool trackingPool;
+
+    /**
+     * The compression used for classes that have had tracking data added
+     */
+    final CompressionSettings trackingCompression;
+
+    /**
+     * If tracked jars should be generated while they are being downloaded, rather than from the downloaded file
+     */
+    final boolean pipelinedDownloads;
+
     /**
      * Tracks in progress downloads to prevent concurrency issues
      */
@@ -57,11 +88,9 @@ public class RepositoryCache {
     final ConcurrentMap<String, CountDownLatch> inProgressTransformations = new ConcurrentHashMap<>();
 
     /**
-     * This will either hold {@link #DELETE_IN_PROGRESS} if delete is in progress, or a countdown latch.
-     *
-     * Access must be synchronized on the map itself
+     * Tracks the GAVs that are currently being read, so they are not deleted out from under a request
      */
-    final Map<String, Object> inUseTracker = new HashMap<>();
+    final GavReferenceCounter inUseTracker = new GavReferenceCounter();
 
     public RepositoryCache(StorageManager storageManager, Repository repository, boolean overwriteExistingBytecodeMarkers) {
         this.storageManager = storageManager;
@@ -70,6 +99,15 @@ public class RepositoryCache {
         this.tempDownloads = storageManager.resolve(DOWNLOADS);
         this.repository = repository;
         this.overwriteExistingBytecodeMarkers = overwriteExistingBytecodeMarkers;
+        var config = ConfigProvider.getConfig();
+        this.trackingPool = config.getOptionalValue(PARALLEL_TRACKING, Boolean.class).orElse(false)
+                ? ForkJoinPool.commonPool()
+                : null;
+        this.trackingCompression = new CompressionSettings(
+                config.getOptionalValue(TRACKING_COMPRESSION_LEVEL, Integer.class).orElse(Deflater.DEFAULT_COMPRESSION),
+                config.getOptionalValue(TRACKING_COMPRESSION_STRATEGY, CompressionSettings.Strategy.class)
+                        .orElse(CompressionSettings.Strategy.DEFAULT));
+        this.pipelinedDownloads = config.getOptionalValue(PIPELINED_DOWNLOADS, Boolean.class).orElse(false);
         Log.infof("Creating cache with path %s", storageManager.toString());
     }
 
@@ -79,9 +117,29 @@ public class RepositoryCache {
 
     public Optional<ArtifactResult> getArtifactFile(String group, String artifact, String version, String target,
             boolean tracked, boolean cacheOnly) {
+        return getArtifactFile(group, artifact, version, target, tracked, cacheOnly, () -> {
+        });
+    }
+
+    /**
+     * Retrieves an artifact file, downloading it if it is not cached.
+     * <p>
+     * An empty result does not always mean the upstream repository does not have the file, e.g. a tracked sha1 cannot be
+     * generated if the upstream repository has no hash for the jar. The notFound callback is only run if the upstream
+     * repository reported that the file is not present.
+     */
+    public Optional<ArtifactResult> getArtifactFile(String group, String artifact, String version, String target,
+            boolean tracked, boolean cacheOnly, Runnable notFound) {
+        return getArtifactFile(group, artifact, version, target, tracked, cacheOnly, pipelinedDownloads, notFound);
+    }
+
+    private Optional<ArtifactResult> getArtifactFile(String group, String artifact, String version, String target,
+            boolean tracked, boolean cacheOnly, boolean pipelined, Runnable notFound) {
         if (tracked && target.endsWith(".jar.sha1")) {
+            //we need the hash of the tracked jar, which is not known until it has been fully generated
+            //so we can't use the pipelined download
             var jarResult = getArtifactFile(group, artifact, version, target.substring(0, target.length() - ".sha1".length()),
-                    tracked, cacheOnly);
+                    tracked, cacheOnly, false, notFound);
             if (jarResult.isEmpty()) {
                 return Optional.empty();
             }
@@ -104,10 +162,29 @@ public class RepositoryCache {
                     + File.separator + version + File.separator + target;
             return handleFile(targetFile, group.replace(File.separatorChar, '.') + ":" + artifact + ":" + version,
                     (c) -> c.getArtifactFile(group, artifact, version, target), tracked, cacheOnly,
-                    extractClassifier(artifact, version, target));
+                    extractClassifier(artifact, version, target), pipelined, notFound);
         }
     }
 
+    /**
+     * Checks if this repository might have an artifact, without downloading it. This is true if the file is already
+     * cached, otherwise the upstream repository is asked.
+     *
+     * @return false if the artifact is definitely not present
+     */
+    public boolean mayHaveArtifactFile(String group, String artifact, String version, String target, boolean tracked) {
+        if (tracked && target.endsWith(".jar.sha1")) {
+            //this is generated from the jar
+            target = target.substring(0, target.length() - ".sha1".length());
+        }
+        String targetFile = group.replace('.', File.separatorChar) + File.separator + artifact
+                + File.separator + version + File.separator + target;
+        if (Files.exists(Path.of(downloaded.path()).resolve(targetFile))) {
+            return true;
+        }
+        return repository.getClient().mayHaveArtifactFile(group, artifact, version, target);
+    }
+
     public Optional<ArtifactResult> getMetadataFile(String group, String target) {
         try {
             return repository.getClient().getMetadataFile(group, target);
@@ -117,9 +194,18 @@ public class RepositoryCache {
         }
     }
 
+    /**
+     * Retrieves a metadata file with conditional request headers. Unlike {@link #getMetadataFile(String, String)} upstream
+     * failures are thrown, so callers can tell them apart from a missing file.
+     */
+    public Optional<ArtifactResult> getMetadataFile(String group, String target, Map<String, String> conditionalHeaders) {
+        return repository.getClient().getMetadataFile(group, target, conditionalHeaders);
+    }
+
     private Optional<ArtifactResult> handleFile(String targetFile, String gav,
             Function<RepositoryClient, Optional<ArtifactResult>> clientInvocation, boolean tracked, boolean cacheOnly,
-            String classifier) {
+            String classifier, boolean pipelined, Runnable notFound) {
+        long start = System.nanoTime();
         try {
             var check = inProgressDownloads.get(targetFile);
             if (check != null) {
@@ -134,7 +220,8 @@ public class RepositoryCache {
                 if (check != null) {
                     check.awaitReady();
                 }
-                return handleDownloadedFile(actual, trackedFile, tracked, gav, classifier);
+                return recordTimeToFirstByte(WARM, start,
+                        handleDownloadedFile(actual, trackedFile, tracked, gav, classifier));
             }
             if (cacheOnly) {
                 return Optional.empty();
@@ -148,36 +235,36 @@ public class RepositoryCache {
                 //if the file is not there it may mean that the sha1 was wrong
                 //so we never cache it
                 if (Files.exists(actual)) {
-                    return handleDownloadedFile(actual, trackedFile, tracked, gav, classifier);
+                    return recordTimeToFirstByte(COLD, start,
+                            handleDownloadedFile(actual, trackedFile, tracked, gav, classifier));
                 }
                 existing = inProgressDownloads.putIfAbsent(targetFile, newFile);
             }
-            return newFile.download(clientInvocation, repository.getClient(), actual, trackedFile,
-                    tempDownloads, tracked, gav, classifier);
+            boolean pipeline = pipelined && tracked && actual.getFileName().toString().endsWith(".jar");
+            var result = newFile.download(clientInvocation, repository.getClient(), actual, trackedFile,
+                    tempDownloads, tracked, gav, classifier, pipeline, notFound, start);
+            //a pipelined result records the time when the first byte is read, as it may not have been generated yet
+            return pipeline ? result : recordTimeToFirstByte(COLD, start, result);
 
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Records how long it took until the result was ready to be sent to the client
+     */
+    private static Optional<ArtifactResult> recordTimeToFirstByte(String type, long start, Optional<ArtifactResult> result) {
+        if (result.isPresent()) {
+            Metrics.timer(TIME_TO_FIRST_BYTE, "hit", type).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        return result;
+    }
+
     public void deleteGav(String gav) {
-        while (true) {
-            synchronized (inUseTracker) {
-                Object res = inUseTracker.get(gav);
-                if (res == DELETE_IN_PROGRESS) {
-                    //already deleting
-                    return;
-                } else if (res != null) {
-                    try {
-                        inUseTracker.wait();
-                        continue;
-                    } catch (InterruptedException e) {
-                        throw new RuntimeException(e);
-                    }
-                }
-                inUseTracker.put(gav, DELETE_IN_PROGRESS);
-                break;
-            }
+        if (!inUseTracker.beginDelete(gav)) {
+            //already deleting
+            return;
         }
         try {
             var parsed = GAV.parse(gav);
@@ -185,10 +272,7 @@ public class RepositoryCache {
                     + File.separator + parsed.getVersion();
             storageManager.delete(targetFile);
         } finally {
-            synchronized (inUseTracker) {
-                inUseTracker.remove(gav);
-                inUseTracker.notifyAll();
-            }
+            inUseTracker.endDelete(gav);
         }
 
     }
@@ -246,14 +330,14 @@ public class RepositoryCache {
                     existing.await();
                 } else {
                     Files.createDirectories(trackedJarFile.getParent());
-                    try (OutputStream out = Files.newOutputStream(trackedJarFile); var in = Files.newInputStream(downloaded)) {
+                    try (OutputStream out = Files.newOutputStream(trackedJarFile)) {
                         HashingOutputStream hashingOutputStream = new HashingOutputStream(out);
                         Map<String, String> attributes = StringUtils.isNotBlank(classifier) ? Map.of("classifier", classifier)
                                 : Map.of();
-                        ClassFileTracker.addTrackingDataToJar(in,
+                        ClassFileTracker.addTrackingDataToJar(downloaded,
                                 new TrackingData(gav, repository.getName(), attributes),
                                 hashingOutputStream,
-                                overwriteExistingBytecodeMarkers);
+                                overwriteExistingBytecodeMarkers, trackingPool, trackingCompression);
                         hashingOutputStream.close();
 
                         Files.writeString(instrumentedSha, hashingOutputStream.getHash());
@@ -307,25 +391,24 @@ public class RepositoryCache {
     final class DownloadingFile {
 
         final String key;
-        boolean ready = false;
-        Throwable problem;
+        /**
+         * A latch rather than a monitor, so waiting threads are not pinned if they are virtual threads
+         */
+        final CountDownLatch ready = new CountDownLatch(1);
+        volatile Throwable problem;
 
         DownloadingFile(String key) {
             this.key = key;
         }
 
         void awaitReady() {
-            synchronized (this) {
-                while (!ready) {
-                    try {
-                        wait();
-                    } catch (InterruptedException e) {
-                        throw new RuntimeException(e);
-                    }
-                }
-                if (problem != null) {
-                    throw new RuntimeException(problem);
-                }
+            try {
+                ready.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            if (problem != null) {
+                throw new RuntimeException(problem);
             }
         }
 
@@ -336,11 +419,20 @@ public class RepositoryCache {
                 StorageManager downloadTempDir,
                 boolean tracked,
                 String gav,
-                String classifier) {
+                String classifier,
+                boolean pipelined,
+                Runnable notFound,
+                long start) {
             GavLock lock = new GavLock(gav);
+            boolean completedInBackground = false;
             try {
                 Optional<ArtifactResult> result = clientInvocation.apply(repositoryClient);
-                if (result.isPresent()) {
+                if (result.isPresent() && pipelined) {
+                    var ret = downloadPipelined(result.get(), repositoryClient, downloadTarget, trackedFile, downloadTempDir,
+                            gav, classifier, lock, start);
+                    completedInBackground = true;
+                    return ret;
+                } else if (result.isPresent()) {
                     MessageDigest md = MessageDigest.getInstance("SHA-1");
                     Path tempFile = Files.createTempFile(downloadTempDir.accessDirectory("downloads"), "download", ".part");
                     InputStream in = result.get().getData();
@@ -373,14 +465,14 @@ public class RepositoryCache {
                             if (tracked) {
                                 Path tempTransformedFile = Files.createTempFile(downloadTempDir.accessDirectory("downloads"),
                                         "transformed", ".part");
-                                try (var inFromFile = Files.newInputStream(tempFile);
-                                        var transformedOut = Files.newOutputStream(tempTransformedFile)) {
+                                try (var transformedOut = Files.newOutputStream(tempTransformedFile)) {
                                     Map<String, String> attributes = StringUtils.isNotBlank(classifier)
                                             ? Map.of("classifier", classifier)
                                             : Map.of();
-                                    ClassFileTracker.addTrackingDataToJar(inFromFile,
+                                    ClassFileTracker.addTrackingDataToJar(tempFile,
                                             new TrackingData(gav, repository.getName(), attributes),
-                                            transformedOut, overwriteExistingBytecodeMarkers);
+                                            transformedOut, overwriteExistingBytecodeMarkers, trackingPool,
+                                            trackingCompression);
                                 }
                                 Files.delete(tempFile);
                                 return Optional
@@ -408,81 +500,248 @@ public class RepositoryCache {
                         }
                     }
 
-                    Files.createDirectories(downloadTarget.getParent());
-                    Files.move(tempFile, downloadTarget, StandardCopyOption.ATOMIC_MOVE);
-
-                    if (result.get().getExpectedSha().isPresent()) {
-                        Files.writeString(downloadTarget.getParent().resolve(downloadTarget.getFileName().toString() + SHA_1),
-                                result.get().getExpectedSha().get(), StandardCharsets.UTF_8);
-                    }
-                    Properties p = new Properties();
-                    for (var e : result.get().getMetadata().entrySet()) {
-                        p.put(e.getKey().toLowerCase(), e.getValue());
-                    }
-                    p.remove("content-length"); //use the actual on disk length
-                    try (OutputStream out = Files.newOutputStream(
-                            downloadTarget.getParent().resolve(downloadTarget.getFileName().toString() + HEADERS))) {
-                        p.store(out, "");
-                    }
+                    storeDownloadedFile(tempFile, downloadTarget, result.get());
                     return handleDownloadedFile(downloadTarget, trackedFile, tracked, gav, classifier);
                 }
+                notFound.run();
+                return Optional.empty();
+            } catch (AccessDeniedException e) {
+                //the client has already logged this, it is skipped for this request but not remembered as a miss
+                lock.run();
                 return Optional.empty();
             } catch (Throwable e) {
                 lock.run();
-                synchronized (this) {
-                    problem = e;
-                }
+                problem = e;
                 Log.errorf(e, "Failed to download artifact %s from %s", downloadTarget, repositoryClient);
-                return Optional.empty();
+                //failures are not treated as a miss, so they are not remembered by the negative lookup cache
+                if (e instanceof RuntimeException re) {
+                    throw re;
+                }
+                throw new RuntimeException(e);
             } finally {
-                inProgressDownloads.remove(key);
-                synchronized (this) {
-                    ready = true;
-                    notifyAll();
+                if (!completedInBackground) {
+                    markReady();
                 }
             }
         }
+
+        private void markReady() {
+            inProgressDownloads.remove(key);
+            ready.countDown();
+        }
+
+        /**
+         * Downloads a jar and streams the tracked version to the client while it is being generated.
+         * <p>
+         * The upstream stream is read on a background thread, and once the download is complete and the hash has been
+         * checked the tracked jar is generated from the downloaded file, exactly as it would be for a non pipelined
+         * download. The returned result streams the tracked jar to the client as it is written. Once it is complete both
+         * files are moved into the cache, other requests for the file will wait until this has happened.
+         * <p>
+         * If the jar can't be tracked before any output has been written, the original jar is sent instead.
+         */
+        private Optional<ArtifactResult> downloadPipelined(ArtifactResult result, RepositoryClient repositoryClient,
+                Path downloadTarget, Path trackedFile, StorageManager downloadTempDir, String gav, String classifier,
+                GavLock lock, long start) throws Exception {
+            Path tempFile = Files.createTempFile(downloadTempDir.accessDirectory("downloads"), "download", ".part");
+            StreamingFile transformedFile = new StreamingFile(
+                    Files.createTempFile(downloadTempDir.accessDirectory("downloads"), "transformed", ".part"));
+            InputStream transformedIn = transformedFile.openInput();
+            //the background task holds its own lock, as the client may close the result before it is done
+            GavLock backgroundLock = new GavLock(gav);
+            try {
+                ExecutorRecorder.getCurrent().execute(() -> {
+                    Throwable failure = null;
+                    boolean cached = false;
+                    try {
+                        MessageDigest md = MessageDigest.getInstance("SHA-1");
+                        try (InputStream in = result.getData();
+                                OutputStream out = Files.newOutputStream(tempFile)) {
+                            byte[] buffer = new byte[8192];
+                            int r;
+                            while ((r = in.read(buffer)) > 0) {
+                                out.write(buffer, 0, r);
+                                md.update(buffer, 0, r);
+                            }
+                        }
+                        byte[] digest = md.digest();
+                        StringBuilder sb = new StringBuilder(40);
+                        for (int i = 0; i < digest.length; ++i) {
+                            sb.append(Integer.toHexString((digest[i] & 0xFF) | 0x100).substring(1, 3));
+                        }
+                        String hash = sb.toString();
+                        Path original = tempFile;
+                        boolean verified = result.getExpectedSha().isEmpty()
+                                || hash.equalsIgnoreCase(result.getExpectedSha().get());
+                        if (verified) {
+                            storeDownloadedFile(tempFile, downloadTarget, result);
+                            original = downloadTarget;
+                        } else {
+                            //the tracked jar is still sent to the client, but nothing is cached
+                            Log.error("Filed to cache " + downloadTarget + " from " + repositoryClient.getName()
+                                    + " calculated sha '" + hash
+                                    + "' did not match expected '" + result.getExpectedSha().get() + "'");
+                        }
+                        HashingOutputStream hashingOutputStream;
+                        boolean tracked = false;
+                        try (OutputStream transformedOut = transformedFile.openOutput()) {
+                            WrittenOutputStream writtenOut = new WrittenOutputStream(transformedOut);
+                            hashingOutputStream = new HashingOutputStream(writtenOut);
+                            try {
+                                Map<String, String> attributes = StringUtils.isNotBlank(classifier)
+                                        ? Map.of("classifier", classifier)
+                                        : Map.of();
+                                ClassFileTracker.addTrackingDataToJar(original,
+                                        new TrackingData(gav, repository.getName(), attributes),
+                                        hashingOutputStream, overwriteExistingBytecodeMarkers, trackingPool,
+                                        trackingCompression);
+                                hashingOutputStream.close();
+                                tracked = true;
+                            } catch (Exception e) {
+                                if (writtenOut.written) {
+                                    throw e;
+                                }
+                                Log.errorf(e, "Failed to track jar %s, sending the original", original);
+                                Files.copy(original, transformedOut);
+                            }
+                        }
+                        if (tracked && verified) {
+                            Files.createDirectories(trackedFile.getParent());
+                            Files.move(transformedFile.getPath(), trackedFile, StandardCopyOption.ATOMIC_MOVE);
+                            Files.writeString(trackedFile.getParent().resolve(trackedFile.getFileName().toString() + SHA_1),
+                                    hashingOutputStream.getHash());
+                            cached = true;
+                        }
+                    } catch (Throwable e) {
+                        failure = e;
+                        problem = e;
+                        Log.errorf(e, "Failed to download artifact %s from %s", downloadTarget, repositoryClient);
+                    } finally {
+                        try {
+                            Files.deleteIfExists(tempFile);
+                        } catch (IOException ex) {
+                            Log.errorf(ex, "Failed to delete %s", tempFile);
+                        }
+                        transformedFile.complete(failure, cached);
+                        backgroundLock.run();
+                        markReady();
+                    }
+                });
+            } catch (Throwable t) {
+                transformedIn.close();
+                transformedFile.complete(t, false);
+                backgroundLock.run();
+                Files.deleteIfExists(tempFile);
+                throw t;
+            }
+            Map<String, String> metadata = new HashMap<>(result.getMetadata());
+            metadata.keySet().removeIf(s -> s.equalsIgnoreCase("content-length"));
+            return Optional.of(new ArtifactResult(null, new TimeToFirstByteInputStream(transformedIn, start), -1,
+                    Optional.empty(), metadata, lock));
+        }
+
+        private void storeDownloadedFile(Path tempFile, Path downloadTarget, ArtifactResult result) throws IOException {
+            Files.createDirectories(downloadTarget.getParent());
+            Files.move(tempFile, downloadTarget, StandardCopyOption.ATOMIC_MOVE);
+
+            if (result.getExpectedSha().isPresent()) {
+                Files.writeString(downloadTarget.getParent().resolve(downloadTarget.getFileName().toString() + SHA_1),
+                        result.getExpectedSha().get(), StandardCharsets.UTF_8);
+            }
+            Properties p = new Properties();
+            for (var e : result.getMetadata().entrySet()) {
+                p.put(e.getKey().toLowerCase(), e.getValue());
+            }
+            p.remove("content-length"); //use the actual on disk length
+            try (OutputStream out = Files.newOutputStream(
+                    downloadTarget.getParent().resolve(downloadTarget.getFileName().toString() + HEADERS))) {
+                p.store(out, "");
+            }
+        }
+    }
+
+    /**
+     * Records the time to first byte for a pipelined download when the first data is read to be sent to the client.
+     */
+    private static final class TimeToFirstByteInputStream extends FilterInputStream {
+
+        final long start;
+        boolean recorded;
+
+        TimeToFirstByteInputStream(InputStream in, long start) {
+            super(in);
+            this.start = start;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int r = super.read();
+            if (r != -1) {
+                record();
+            }
+            return r;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int r = super.read(b, off, len);
+            if (r > 0) {
+                record();
+            }
+            return r;
+        }
+
+        private void record() {
+            if (!recorded) {
+                recorded = true;
+                Metrics.timer(TIME_TO_FIRST_BYTE, "hit", COLD_PIPELINED).record(System.nanoTime() - start,
+                        TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    /**
+     * Records if anything has been written, so a failed rewrite can tell if it is too late to send something else.
+     */
+    private static final class WrittenOutputStream extends FilterOutputStream {
+
+        boolean written;
+
+        WrittenOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            written = true;
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            written |= len > 0;
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() {
+            //the underlying stream is closed by the caller
+        }
     }
 
     class GavLock implements Runnable {
         final String gav;
-        boolean closed;
+        final AtomicBoolean closed = new AtomicBoolean();
 
         GavLock(String gav) {
             this.gav = gav;
-            while (true) {
-                synchronized (inUseTracker) {
-                    Object results = inUseTracker.get(gav);
-                    if (results == DELETE_IN_PROGRESS) {
-                        try {
-                            inUseTracker.wait();
-                            continue;
-                        } catch (InterruptedException e) {
-                            throw new RuntimeException(e);
-                        }
-                    } else if (results == null) {
-                        results = new AtomicInteger();
-                        inUseTracker.put(gav, results);
-                    }
-                    AtomicInteger count = (AtomicInteger) results;
-                    count.incrementAndGet();
-                    break;
-                }
-            }
+            inUseTracker.acquire(gav);
         }
 
         @Override
         public void run() {
-            synchronized (inUseTracker) {
-                if (closed) {
-                    return;
-                }
-                closed = true;
-                AtomicInteger count = (AtomicInteger) inUseTracker.get(gav);
-                if (count.decrementAndGet() == 0) {
-                    inUseTracker.remove(gav);
-                    inUseTracker.notifyAll();
-                }
+            if (closed.compareAndSet(false, true)) {
+                inUseTracker.release(gav);
             }
         }
     }
@@ -1,9 +1,15 @@
 package com.redhat.hacbs.artifactcache.services;
 
+import java.util.Map;
 import java.util.Optional;
 
 public interface RepositoryClient {
 
+    /**
+     * Metadata key that is present on results for conditional requests where the file has not changed
+     */
+    String NOT_MODIFIED = "not-modified";
+
     String getName();
 
     /**
@@ -14,9 +20,26 @@ public interface RepositoryClient {
      * @param version The version
      * @param target The target file
      * @return empty if the file is not present, otherwise the file data
+     * @throws AccessDeniedException if the repository refused to serve the file
      */
     Optional<ArtifactResult> getArtifactFile(String group, String artifact, String version, String target);
 
+    /**
+     * Cheaply checks if the repository might have an artifact related file, without downloading it.
+     * <p>
+     * This must only return false if the file is definitely not present. If the repository cannot tell, or the check
+     * fails, then this should return true.
+     *
+     * @param group The group
+     * @param artifact The artifact
+     * @param version The version
+     * @param target The target file
+     * @return false if the file is definitely not present
+     */
+    default boolean mayHaveArtifactFile(String group, String artifact, String version, String target) {
+        return true;
+    }
+
     /**
      * Retrieves a metadata file from the repository
      *
@@ -26,4 +49,15 @@ public interface RepositoryClient {
      */
     Optional<ArtifactResult> getMetadataFile(String group, String target);
 
+    /**
+     * Retrieves a metadata file, using conditional request headers such as {@code If-None-Match} so that the file is
+     * only sent if it has changed.
+     * <p>
+     * If the file has not changed the result has no data, and its metadata contains {@link #NOT_MODIFIED}. Clients that
+     * do not support conditional requests just return the file.
+     */
+    default Optional<ArtifactResult> getMetadataFile(String group, String target, Map<String, String> conditionalHeaders) {
+        return getMetadataFile(group, target);
+    }
+
 }
@@ -7,12 +7,17 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
-import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -28,6 +33,8 @@ import jakarta.inject.Singleton;
 
 import org.eclipse.microprofile.config.inject.ConfigProperty;
 
+import com.redhat.hacbs.artifactcache.services.eviction.EvictionPolicy;
+
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.Meter;
 import io.micrometer.core.instrument.MeterRegistry;
@@ -48,6 +55,7 @@ public class RootStorageManager implements StorageManager {
 
     private static final String MARKER = "cache.directory.marker";
     public static final int DELETE_TIMEOUT = 10000;
+    private static final int INDEX_FLUSH_INTERVAL = 10000;
 
     final Path path;
 
@@ -71,6 +79,16 @@ public class RootStorageManager implements StorageManager {
     private final Counter cacheFreeCount;
     private final Counter deletedEntries;
 
+    /**
+     * Persistent index of the cache directories, or null if it is disabled
+     */
+    final DirectoryIndex index;
+
+    final EvictionPolicy evictionPolicy;
+    private final Counter policyHits;
+    private final Counter policyMisses;
+    private final Counter bytesFreed;
+
     /**
      * This is an approximation, to deal with situations were we are not on our own volume.
      *
@@ -87,6 +105,8 @@ public class RootStorageManager implements StorageManager {
             @ConfigProperty(name = "cache-disk-percentage-high-water") double highWater,
             @ConfigProperty(name = "cache-disk-percentage-low-water") double lowWater,
             @ConfigProperty(name = "cache-delete-batch-size", defaultValue = "30") int deleteBatchSize,
+            @ConfigProperty(name = "cache-index-enabled", defaultValue = "true") boolean indexEnabled,
+            @ConfigProperty(name = "cache-eviction-policy", defaultValue = EvictionPolicy.LRU) String evictionPolicy,
             MeterRegistry registry) throws IOException {
         this.highWater = highWater;
         this.lowWater = lowWater;
@@ -111,6 +131,24 @@ public class RootStorageManager implements StorageManager {
         });
         cacheFreeCount = registry.counter("cache_free_count");
         deletedEntries = registry.counter("cache_deleted_entries");
+        this.evictionPolicy = EvictionPolicy.create(evictionPolicy);
+        this.index = indexEnabled ? new DirectoryIndex(path, MARKER, this.evictionPolicy::sized) : null;
+        Tags policyTags = Tags.of("policy", this.evictionPolicy.name());
+        policyHits = registry.counter("cache_eviction_policy_hits", policyTags);
+        policyMisses = registry.counter("cache_eviction_policy_misses", policyTags);
+        bytesFreed = registry.counter("cache_eviction_bytes_freed", policyTags);
+        registry.gauge("cache_eviction_policy_hit_ratio", policyTags, this, new ToDoubleFunction<RootStorageManager>() {
+            @Override
+            public double applyAsDouble(RootStorageManager value) {
+                double total = value.policyHits.count() + value.policyMisses.count();
+                return total == 0 ? 0 : value.policyHits.count() / total;
+            }
+        });
+    }
+
+    public RootStorageManager(Path path, double highWater, double lowWater, int deleteBatchSize, MeterRegistry registry)
+            throws IOException {
+        this(path, highWater, lowWater, deleteBatchSize, true, EvictionPolicy.LRU, registry);
     }
 
     RootStorageManager(FileStore fileStore,
@@ -118,6 +156,25 @@ public class RootStorageManager implements StorageManager {
             double highWater,
             double lowWater,
             int deleteBatchSize) throws IOException {
+        this(fileStore, path, highWater, lowWater, deleteBatchSize, false);
+    }
+
+    RootStorageManager(FileStore fileStore,
+            Path path,
+            double highWater,
+            double lowWater,
+            int deleteBatchSize,
+            boolean indexEnabled) throws IOException {
+        this(fileStore, path, highWater, lowWater, deleteBatchSize, indexEnabled, EvictionPolicy.create(EvictionPolicy.LRU));
+    }
+
+    RootStorageManager(FileStore fileStore,
+            Path path,
+            double highWater,
+            double lowWater,
+            int deleteBatchSize,
+            boolean indexEnabled,
+            EvictionPolicy evictionPolicy) throws IOException {
         this.highWater = highWater;
         this.lowWater = lowWater;
         this.fileStore = fileStore;
@@ -131,6 +188,13 @@ public class RootStorageManager implements StorageManager {
                 formatSize(lowWaterFreeSpace), formatSize(fileStore.getTotalSpace()));
         cacheFreeCount = new NoopCounter(new Meter.Id("cache_free_count", Tags.empty(), null, null, Meter.Type.COUNTER));
         deletedEntries = new NoopCounter(new Meter.Id("cache_deleted_entries", Tags.empty(), null, null, Meter.Type.COUNTER));
+        policyHits = new NoopCounter(
+                new Meter.Id("cache_eviction_policy_hits", Tags.empty(), null, null, Meter.Type.COUNTER));
+        policyMisses = new NoopCounter(
+                new Meter.Id("cache_eviction_policy_misses", Tags.empty(), null, null, Meter.Type.COUNTER));
+        bytesFreed = new NoopCounter(new Meter.Id("cache_eviction_bytes_freed", Tags.empty(), null, null, Meter.Type.COUNTER));
+        this.evictionPolicy = evictionPolicy;
+        this.index = indexEnabled ? new DirectoryIndex(path, MARKER, evictionPolicy::sized) : null;
     }
 
     @PostConstruct
@@ -142,56 +206,213 @@ public class RootStorageManager implements StorageManager {
                 checkSpace();
             }
         }, 60000, 60000);
+        if (index != null) {
+            timer.schedule(new TimerTask() {
+                @Override
+                public void run() {
+                    flushIndex();
+                }
+            }, INDEX_FLUSH_INTERVAL, INDEX_FLUSH_INTERVAL);
+        }
         ExecutorRecorder.getCurrent().execute(this::initialLoad);
     }
 
     @PreDestroy
     void destroy() {
-        timer.cancel();
+        if (timer != null) {
+            timer.cancel();
+        }
+        if (index != null) {
+            boolean flushed = flushIndex();
+            try {
+                index.close();
+                if (flushed) {
+                    index.markCleanShutdown();
+                }
+            } catch (IOException e) {
+                Log.errorf(e, "Failed to close cache index");
+            }
+        }
+    }
+
+    boolean flushIndex() {
+        try {
+            index.flush(inUseMap);
+            return true;
+        } catch (Throwable e) {
+            Log.errorf(e, "Failed to update cache index");
+            return false;
+        }
     }
 
     void initialLoad() {
         //there map be initial data in the cache dir, we load it into the in-memory map to allow it to be deleted
         //if the cache needs to be cleared
+        if (index != null) {
+            boolean cleanShutdown = index.clearCleanShutdown();
+            Map<String, DirectoryIndex.Entry> entries = index.load();
+            if (entries != null) {
+                long ourSize = 0;
+                for (var e : entries.entrySet()) {
+                    inUseMap.putIfAbsent(e.getKey(), new AtomicLong(e.getValue().lastAccess()));
+                    ourSize += e.getValue().size();
+                }
+                loadEvictionPolicy(entries);
+                try {
+                    index.rewrite(entries);
+                    adjustForExistingUsage(ourSize);
+                } catch (IOException e) {
+                    Log.error("Failed to rewrite cache index", e);
+                } finally {
+                    Log.infof("Initial load of existing entries from the cache index completed, found %s", entries.size());
+                }
+                if (!cleanShutdown) {
+                    reconcileIndex(entries);
+                }
+                return;
+            }
+        }
         AtomicInteger count = new AtomicInteger();
         AtomicLong ourSize = new AtomicLong();
+        Map<String, DirectoryIndex.Entry> entries = new HashMap<>();
         try {
-
+            //the cache directory each file belongs to, so the sizes can be added to the index
+            Deque<String> owners = new ArrayDeque<>();
+            Map<String, Long> sizes = new HashMap<>();
             Files.walkFileTree(path, new SimpleFileVisitor<>() {
                 @Override
                 public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
                     Path marker = dir.resolve(MARKER);
                     if (Files.exists(marker)) {
                         count.incrementAndGet();
-                        inUseMap.putIfAbsent(path.relativize(dir).toString(),
+                        String relative = path.relativize(dir).toString();
+                        inUseMap.putIfAbsent(relative,
                                 new AtomicLong(Files.getLastModifiedTime(dir).toMillis()));
+                        owners.push(relative);
+                    } else {
+                        owners.push(owners.isEmpty() ? "" : owners.peek());
                     }
                     return FileVisitResult.CONTINUE;
                 }
 
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                    owners.pop();
+                    return super.postVisitDirectory(dir, exc);
+                }
+
                 @Override
                 public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-                    ourSize.addAndGet(Files.size(file));
+                    long size = Files.size(file);
+                    ourSize.addAndGet(size);
+                    if (!owners.isEmpty() && !owners.peek().isEmpty()) {
+                        sizes.merge(owners.peek(), size, Long::sum);
+                    }
                     return FileVisitResult.CONTINUE;
                 }
             });
-            long otherSpace = fileStore.getTotalSpace() - ourSize.get();
-            long overhead = otherSpace - fileStore.getUsableSpace();
-            if (overhead > fileStore.getTotalSpace() * 0.05d) { //if the overhead is more than 5%
-                Log.infof("Detected existing disk usage of %s, recalculating ", formatSize(overhead));
-                highWaterFreeSpace = (long) ((fileStore.getTotalSpace() - overhead) * (1 - highWater));
-                lowWaterFreeSpace = (long) ((fileStore.getTotalSpace() - overhead) * (1 - lowWater));
-                Log.infof(
-                        "Cache requires at least %s space free, and will delete to the low water mark of %s. Total disk size is %s.",
-                        formatSize(highWaterFreeSpace),
-                        formatSize(lowWaterFreeSpace), formatSize(fileStore.getTotalSpace()));
+            for (var e : inUseMap.entrySet()) {
+                entries.put(e.getKey(), new DirectoryIndex.Entry(e.getValue().get(), sizes.getOrDefault(e.getKey(), 0L)));
             }
+            loadEvictionPolicy(entries);
+            adjustForExistingUsage(ourSize.get());
         } catch (IOException e) {
             Log.error("Failed to scan existing files", e);
         } finally {
             Log.infof("Initial load of existing entries completed, found %s", count.get());
         }
+        if (index != null) {
+            try {
+                index.rewrite(entries);
+            } catch (IOException e) {
+                Log.error("Failed to write cache index", e);
+            }
+        }
+    }
+
+    /**
+     * The index is only flushed periodically, so if the process did not shut down cleanly it may be missing directories
+     * that were created just before it stopped, or still have directories that were deleted. In that case this walks
+     * the volume once the index has been loaded, so the cache can serve requests while it runs, and fixes up any
+     * differences. Without this a directory missing from the index would never be evicted.
+     */
+    void reconcileIndex(Map<String, DirectoryIndex.Entry> entries) {
+        Set<String> found = new HashSet<>();
+        AtomicInteger added = new AtomicInteger();
+        try {
+            Files.walkFileTree(path, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                    if (Files.exists(dir.resolve(MARKER))) {
+                        String relative = path.relativize(dir).toString();
+                        found.add(relative);
+                        if (!entries.containsKey(relative) && inUseMap.putIfAbsent(relative,
+                                new AtomicLong(attrs.lastModifiedTime().toMillis())) == null) {
+                            //the size is measured when the index is next flushed
+                            evictionPolicy.loaded(relative, 0);
+                            index.accessed(relative);
+                            added.incrementAndGet();
+                        }
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    //the file may have been deleted while we were walking
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            Log.error("Failed to reconcile the cache index with the existing files", e);
+            return;
+        }
+        int removed = 0;
+        for (var relative : entries.keySet()) {
+            AtomicLong lock = inUseMap.get(relative);
+            if (found.contains(relative) || lock == null) {
+                continue;
+            }
+            //take the delete lock, so this does not race with a request that is recreating the directory
+            long expect = lock.get();
+            if (expect != DELETE_IN_PROGRESS && !Files.exists(path.resolve(relative).resolve(MARKER))
+                    && lock.compareAndSet(expect, DELETE_IN_PROGRESS)) {
+                inUseMap.remove(relative);
+                evictionPolicy.removed(relative);
+                index.deleted(relative);
+                removed++;
+                synchronized (lock) {
+                    lock.notifyAll();
+                }
+            }
+        }
+        Log.infof("Reconciled the cache index with the existing files, added %s entries and removed %s", added.get(),
+                removed);
+    }
+
+    /**
+     * Adds the existing entries to the eviction policy, in the order they were last accessed
+     */
+    private void loadEvictionPolicy(Map<String, DirectoryIndex.Entry> entries) {
+        List<Map.Entry<String, DirectoryIndex.Entry>> sorted = new ArrayList<>(entries.entrySet());
+        sorted.sort(Comparator.comparingLong(e -> e.getValue().lastAccess()));
+        for (var e : sorted) {
+            evictionPolicy.loaded(e.getKey(), e.getValue().size());
+        }
+    }
 
+    private void adjustForExistingUsage(long ourSize) throws IOException {
+        long otherSpace = fileStore.getTotalSpace() - ourSize;
+        long overhead = otherSpace - fileStore.getUsableSpace();
+        if (overhead > fileStore.getTotalSpace() * 0.05d) { //if the overhead is more than 5%
+            Log.infof("Detected existing disk usage of %s, recalculating ", formatSize(overhead));
+            highWaterFreeSpace = (long) ((fileStore.getTotalSpace() - overhead) * (1 - highWater));
+            lowWaterFreeSpace = (long) ((fileStore.getTotalSpace() - overhead) * (1 - lowWater));
+            Log.infof(
+                    "Cache requires at least %s space free, and will delete to the low water mark of %s. Total disk size is %s.",
+                    formatSize(highWaterFreeSpace),
+                    formatSize(lowWaterFreeSpace), formatSize(fileStore.getTotalSpace()));
+        }
     }
 
     /**
@@ -209,6 +430,8 @@ public class RootStorageManager implements StorageManager {
         //otherwise we just use CAS to update it
         //deletion will notifyAll on the AtomicLong before it is removed
         long timeOut = System.currentTimeMillis() + DELETE_TIMEOUT;
+        //if we already know about the directory then the marker has already been written
+        boolean known = inUseMap.containsKey(relative);
         for (;;) {
             if (System.currentTimeMillis() > timeOut) {
                 throw new IOException("Timed out waiting for entry deletion: " + relative);
@@ -228,15 +451,27 @@ public class RootStorageManager implements StorageManager {
             }
         }
 
+        if (known) {
+            policyHits.increment();
+        } else {
+            policyMisses.increment();
+        }
+        evictionPolicy.accessed(relative);
+        if (index != null) {
+            index.accessed(relative);
+        }
         Path dir = path.resolve(relative);
         if (!Files.exists(dir)) {
             Files.createDirectories(dir);
+            known = false;
         } else if (!Files.isDirectory(dir)) {
             throw new RuntimeException("Not a directory");
         }
-        Path marker = dir.resolve(MARKER);
-        if (!Files.exists(marker)) {
-            Files.writeString(marker, Long.toString(System.currentTimeMillis()));
+        if (!known) {
+            Path marker = dir.resolve(MARKER);
+            if (!Files.exists(marker)) {
+                Files.writeString(marker, Long.toString(System.currentTimeMillis()));
+            }
         }
         return dir;
 
@@ -290,6 +525,10 @@ public class RootStorageManager implements StorageManager {
             Log.errorf("Delete called on non-existent path %s", relative);
         }
         var existing = inUseMap.remove(relative);
+        evictionPolicy.removed(relative);
+        if (index != null) {
+            index.deleted(relative);
+        }
         if (existing != null) {
             existing.set(System.currentTimeMillis());
             synchronized (existing) {
@@ -319,13 +558,14 @@ public class RootStorageManager implements StorageManager {
 
         Log.infof("Clearing path %s", path);
         try (var s = Files.list(this.path.resolve(path))) {
-            s.forEach(RootStorageManager::deleteRecursive);
+            s.filter(p -> index == null || !p.equals(index.getFile())).forEach(RootStorageManager::deleteRecursive);
         } catch (IOException e) {
             Log.errorf("Failed to clear path %s", e);
         } finally {
             Log.infof("Cache Free Completed");
             HashMap<String, AtomicLong> vals = new HashMap<>(inUseMap);
             inUseMap.clear();
+            evictionPolicy.clear();
             for (var i : vals.entrySet()) {
                 i.getValue().set(1);
                 synchronized (i.getValue()) {
@@ -346,48 +586,54 @@ public class RootStorageManager implements StorageManager {
     }
 
     private void freeSpace() throws IOException {
+        long initialFreeSpace = fileStore.getUsableSpace();
         Log.infof("Disk usage is too high, currently %s/%s is free, trying to delete entries to get this to %s",
-                formatSize(fileStore.getUsableSpace()), formatSize(fileStore.getTotalSpace()), formatSize(lowWaterFreeSpace));
+                formatSize(initialFreeSpace), formatSize(fileStore.getTotalSpace()), formatSize(lowWaterFreeSpace));
         cacheFreeCount.increment();
         try {
-            TreeMap<Long, List<String>> entries = new TreeMap<>();
-            for (var e : inUseMap.entrySet()) {
-                entries.computeIfAbsent(e.getValue().get(), (s) -> new ArrayList<>()).add(e.getKey());
-            }
+            //entries that could not be deleted, so the policy does not keep returning them
+            Set<String> skipped = new HashSet<>();
             int batchCount = 0;
-            var it = entries.entrySet().iterator();
             //free till we hit low water
-            while (it.hasNext() && fileStore.getUsableSpace() < lowWaterFreeSpace) {
-                Log.infof("Deleting batch %s of %s entries", batchCount++, deleteBatchSize);
-                int count = 0;
+            while (fileStore.getUsableSpace() < lowWaterFreeSpace) {
                 //delete in chunks of batch size
-                while (count++ < deleteBatchSize && it.hasNext()) {
-                    var toDel = it.next();
-                    long expect = toDel.getKey();
-                    for (var file : toDel.getValue()) {
-                        AtomicLong lock = inUseMap.get(file);
-                        if (lock == null) {
-                            continue;
+                List<String> batch = evictionPolicy.victims(deleteBatchSize, skipped);
+                if (batch.isEmpty()) {
+                    break;
+                }
+                Log.infof("Deleting batch %s of %s entries", batchCount++, deleteBatchSize);
+                for (var file : batch) {
+                    AtomicLong lock = inUseMap.get(file);
+                    if (lock == null) {
+                        evictionPolicy.removed(file);
+                        continue;
+                    }
+                    long expect = lock.get();
+                    if (expect != DELETE_IN_PROGRESS && lock.compareAndSet(expect, DELETE_IN_PROGRESS)) {
+                        inUseMap.remove(file);
+                        evictionPolicy.evicted(file);
+                        if (index != null) {
+                            index.deleted(file);
                         }
-                        if (lock.compareAndSet(expect, DELETE_IN_PROGRESS)) {
-                            inUseMap.remove(file);
-                            try {
-                                safeDeleteRecursive(path.resolve(file));
-                            } catch (Exception e) {
-                                Log.errorf(e, "Failed to clear %s", file);
-                            } finally {
-                                synchronized (lock) {
-                                    lock.notifyAll();
-                                }
+                        try {
+                            safeDeleteRecursive(path.resolve(file));
+                            deletedEntries.increment();
+                        } catch (Exception e) {
+                            Log.errorf(e, "Failed to clear %s", file);
+                        } finally {
+                            synchronized (lock) {
+                                lock.notifyAll();
                             }
-
-                        } else {
-                            Log.infof("Unable to delete %s as it is in use", file);
                         }
+
+                    } else {
+                        skipped.add(file);
+                        Log.infof("Unable to delete %s as it is in use", file);
                     }
                 }
             }
         } finally {
+            bytesFreed.increment(Math.max(0, fileStore.getUsableSpace() - initialFreeSpace));
             Log.infof("Cache Free Completed");
         }
     }
@@ -0,0 +1,176 @@
+package com.redhat.hacbs.artifactcache.services;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import io.quarkus.logging.Log;
+
+/**
+ * A temporary file that is read while it is still being written.
+ * <p>
+ * This allows the cache to start sending a tracked jar to the client while the upstream download is still in progress.
+ * The reader blocks until more data is written, or the writer completes. Once both the reader and the writer are done
+ * the file is deleted, unless the writer has moved it into the cache.
+ * <p>
+ * This uses an explicit lock rather than a monitor, so blocked readers do not pin virtual threads.
+ */
+final class StreamingFile {
+
+    private final Path path;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private long written;
+    private boolean complete;
+    private Throwable failure;
+    private boolean readerClosed;
+    private boolean keep;
+
+    StreamingFile(Path path) {
+        this.path = path;
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    /**
+     * Opens the stream used to write the file. There must only be a single writer.
+     */
+    OutputStream openOutput() throws IOException {
+        OutputStream file = Files.newOutputStream(path);
+        return new BufferedOutputStream(new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                file.write(b, off, len);
+                lock.lock();
+                try {
+                    written += len;
+                    changed.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                file.close();
+            }
+        }, 64 * 1024);
+    }
+
+    /**
+     * Called by the writer when it is done.
+     *
+     * @param failure The problem that stopped the write, or null if the whole file was written
+     * @param keep If the writer has moved the file somewhere that the reader can still access it, and it should not be
+     *        deleted
+     */
+    void complete(Throwable failure, boolean keep) {
+        boolean delete;
+        lock.lock();
+        try {
+            this.complete = true;
+            this.failure = failure;
+            this.keep = keep;
+            delete = readerClosed && !keep;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (delete) {
+            deleteFile();
+        }
+    }
+
+    /**
+     * Opens a stream that reads the file as it is written, only returning EOF once the writer has completed.
+     */
+    InputStream openInput() throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        return new InputStream() {
+            long position;
+
+            @Override
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                int r = read(b, 0, 1);
+                return r == -1 ? -1 : b[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) {
+                    return 0;
+                }
+                long available;
+                lock.lock();
+                try {
+                    while (written == position && !complete) {
+                        try {
+                            changed.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new InterruptedIOException();
+                        }
+                    }
+                    if (failure != null) {
+                        throw new IOException("Failed to generate " + path, failure);
+                    }
+                    available = written - position;
+                } finally {
+                    lock.unlock();
+                }
+                if (available == 0) {
+                    return -1;
+                }
+                int r = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, available)), position);
+                if (r > 0) {
+                    position += r;
+                }
+                return r;
+            }
+
+            @Override
+            public void close() throws IOException {
+                channel.close();
+                boolean delete;
+                lock.lock();
+                try {
+                    if (readerClosed) {
+                        return;
+                    }
+                    readerClosed = true;
+                    delete = complete && !keep;
+                } finally {
+                    lock.unlock();
+                }
+                if (delete) {
+                    deleteFile();
+                }
+            }
+        };
+    }
+
+    private void deleteFile() {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            Log.errorf(e, "Failed to delete %s", path);
+        }
+    }
+}
@@ -1,23 +1,28 @@
 package com.redhat.hacbs.artifactcache.services.client.maven;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
 import java.util.Base64;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 import org.apache.http.HttpException;
 import org.apache.http.HttpRequest;
 import org.apache.http.HttpRequestInterceptor;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.protocol.HttpContext;
+import org.eclipse.microprofile.config.Config;
 import org.eclipse.microprofile.config.ConfigProvider;
 
+import com.redhat.hacbs.artifactcache.services.AccessDeniedException;
 import com.redhat.hacbs.artifactcache.services.ArtifactResult;
 import com.redhat.hacbs.artifactcache.services.RepositoryClient;
 import com.redhat.hacbs.artifactcache.util.RequestCleanup;
@@ -29,6 +34,18 @@ import io.quarkus.vertx.http.runtime.CurrentVertxRequest;
 public class MavenClient implements RepositoryClient {
 
     public static final String SHA_1 = ".sha1";
+    public static final String MAX_CONNECTIONS = "cache-http-max-connections";
+    static final String MAX_WORKER_THREADS = "quarkus.thread-pool.max-threads";
+    static final int DEFAULT_CONNECTIONS = 10;
+    /**
+     * Status codes that mean the repository does not have the file, these are remembered as a miss
+     */
+    static final Set<Integer> MISSING_STATUS_CODES = Set.of(404, 410);
+    /**
+     * Status codes that mean the repository refused to serve the file. Repository managers commonly return these for
+     * paths that they do not serve, but they can also mean a credentials problem, so they are never remembered.
+     */
+    static final Set<Integer> DENIED_STATUS_CODES = Set.of(401, 403);
     private final String name;
     private final URI uri;
 
@@ -42,9 +59,10 @@ public class MavenClient implements RepositoryClient {
 
     public MavenClient(String name, URI uri, int networkRetries, String username, String password) {
         this.networkRetries = networkRetries;
-        int threads = ConfigProvider.getConfig().getOptionalValue("quarkus.thread.pool.max.threads", Integer.class).orElse(10);
-        HttpClientBuilder httpClientBuilder = HttpClientBuilder.create().disableAutomaticRetries().setMaxConnPerRoute(threads)
-                .setMaxConnTotal(threads);
+        int connections = maxConnections(ConfigProvider.getConfig());
+        HttpClientBuilder httpClientBuilder = HttpClientBuilder.create().disableAutomaticRetries()
+                .setMaxConnPerRoute(connections)
+                .setMaxConnTotal(connections);
         if (username != null && password != null) {
             String header = "Basic "
                     + Base64.getEncoder().encodeToString((username + ":" + password).getBytes(StandardCharsets.UTF_8));
@@ -64,6 +82,14 @@ public class MavenClient implements RepositoryClient {
         requestCleanup = RequestCleanup.instance();
     }
 
+    /**
+     * The pool can be sized independently of the worker pool, otherwise we default to one connection per worker thread
+     */
+    static int maxConnections(Config config) {
+        return config.getOptionalValue(MAX_CONNECTIONS, Integer.class)
+                .orElseGet(() -> config.getOptionalValue(MAX_WORKER_THREADS, Integer.class).orElse(DEFAULT_CONNECTIONS));
+    }
+
     public static MavenClient of(String name, URI uri) {
         //we hard code a single retry at this point
         return new MavenClient(name, uri, 1, null, null);
@@ -83,8 +109,26 @@ public class MavenClient implements RepositoryClient {
 
     }
 
+    @Override
+    public boolean mayHaveArtifactFile(String group, String artifact, String version, String target) {
+        String targetUri = uri + "/" + group + "/" + artifact + "/" + version + "/" + target;
+        try (var response = remoteClient.execute(new HttpHead(targetUri))) {
+            //anything else could mean the file is there, e.g. repos that don't support HEAD
+            //a 401 or 403 is left for the download to report, as it must not be remembered as a miss
+            return !MISSING_STATUS_CODES.contains(response.getStatusLine().getStatusCode());
+        } catch (IOException e) {
+            Log.debugf(e, "Failed to check for %s", targetUri);
+            return true;
+        }
+    }
+
     private Optional<ArtifactResult> downloadMavenFile(String group, String artifact, String version, String target,
             String targetUri) {
+        return downloadMavenFile(group, artifact, version, target, targetUri, Map.of());
+    }
+
+    private Optional<ArtifactResult> downloadMavenFile(String group, String artifact, String version, String target,
+            String targetUri, Map<String, String> requestHeaders) {
         long backoff = 10000;
         IOException networkException = null;
         int retryCount = 0;
@@ -97,11 +141,13 @@ public class MavenClient implements RepositoryClient {
                 //if all the connections are being used to download the main artifacts then there are
                 //none in the pool to download the shas
                 try {
-                    if (!target.endsWith(SHA_1) && sha1 == null) {
+                    //conditional requests are only used for metadata, which does not need the sha
+                    if (!target.endsWith(SHA_1) && sha1 == null && requestHeaders.isEmpty()) {
                         try (var hash = remoteClient.execute(new HttpGet(
                                 targetUri + SHA_1))) {
-                            if (hash.getStatusLine().getStatusCode() == 404) {
-                                hash.getEntity().getContent().readAllBytes(); //read the 404 page
+                            int hashStatus = hash.getStatusLine().getStatusCode();
+                            if (MISSING_STATUS_CODES.contains(hashStatus) || DENIED_STATUS_CODES.contains(hashStatus)) {
+                                hash.getEntity().getContent().readAllBytes(); //read the error page
                                 Log.debugf("Could not find sha1 hash for artifact %s/%s/%s/%s from repo %s at %s", group,
                                         artifact,
                                         version,
@@ -116,6 +162,7 @@ public class MavenClient implements RepositoryClient {
                         }
                     }
                     HttpGet httpGet = new HttpGet(targetUri);
+                    requestHeaders.forEach(httpGet::addHeader);
                     response = remoteClient.execute(httpGet);
                     requestCleanup.addResource(response);
                 } catch (IOException e) {
@@ -129,17 +176,27 @@ public class MavenClient implements RepositoryClient {
                     }
                     continue;
                 }
-                if (response.getStatusLine().getStatusCode() == 404) {
-                    Log.infof("404 downloading artifact %s", targetUri);
+                if (MISSING_STATUS_CODES.contains(response.getStatusLine().getStatusCode())) {
+                    Log.infof("%s downloading artifact %s", response.getStatusLine().getStatusCode(), targetUri);
                     closeResponse(response);
                     return Optional.empty();
                 }
+                if (DENIED_STATUS_CODES.contains(response.getStatusLine().getStatusCode())) {
+                    Log.warnf("%s downloading artifact %s", response.getStatusLine().getStatusCode(), targetUri);
+                    closeResponse(response);
+                    throw new AccessDeniedException(
+                            response.getStatusLine().getStatusCode() + " downloading " + target + " from " + targetUri);
+                }
+                if (response.getStatusLine().getStatusCode() == 304) {
+                    response.close();
+                    return Optional.of(new ArtifactResult(null, InputStream.nullInputStream(), 0, Optional.empty(),
+                            Map.of(NOT_MODIFIED, "true")));
+                }
                 if (response.getStatusLine().getStatusCode() != 200) {
                     closeResponse(response);
-                    Log.errorf(
-                            "Unexpected status code: " + response.getStatusLine().getStatusCode() + " downloading %s from %s",
-                            target, targetUri);
-                    return Optional.empty();
+                    //this is a failure rather than a miss, so we don't want it remembered as missing
+                    throw new IOException("Unexpected status code: " + response.getStatusLine().getStatusCode()
+                            + " downloading " + target + " from " + targetUri);
                 }
                 Map<String, String> headers = new HashMap<>();
                 for (var i : response.getAllHeaders()) {
@@ -150,6 +207,8 @@ public class MavenClient implements RepositoryClient {
                         .of(new ArtifactResult(null, new CloseDelegateInputStream(response.getEntity().getContent(), response),
                                 response.getEntity().getContentLength(),
                                 Optional.ofNullable(sha1), headers));
+            } catch (AccessDeniedException e) {
+                throw e;
             } catch (Exception e) {
                 try {
                     if (response != null) {
@@ -179,6 +238,12 @@ public class MavenClient implements RepositoryClient {
 
     }
 
+    @Override
+    public Optional<ArtifactResult> getMetadataFile(String group, String target, Map<String, String> conditionalHeaders) {
+        Log.debugf("Revalidating metadata %s/%s from repo %s at %s", group, target, name, uri);
+        return downloadMavenFile(group, null, null, target, uri + "/" + group + "/" + target, conditionalHeaders);
+    }
+
     @Override
     public String toString() {
         return "MavenClient{" +
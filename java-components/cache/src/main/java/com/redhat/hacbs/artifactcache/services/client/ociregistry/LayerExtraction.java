@@ -0,0 +1,182 @@
+package com.redhat.hacbs.artifactcache.services.client.ociregistry;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.redhat.hacbs.artifactcache.services.ArtifactResult;
+import com.redhat.hacbs.artifactcache.services.RootStorageManager;
+import com.redhat.hacbs.common.images.ociclient.LayerExtractor;
+import com.redhat.hacbs.common.images.ociclient.LayerIndex;
+import com.redhat.hacbs.common.images.ociclient.LocalImage;
+
+import io.quarkus.logging.Log;
+
+/**
+ * An artifacts layer that is being extracted in the background, where files can be read as soon as they have been
+ * extracted rather than once the whole layer is done.
+ * <p>
+ * Files are extracted into a temp directory that is moved into place once the layer has been verified. If the layer
+ * contains a {@link LayerIndex} then once it has been extracted requests for files that are not in the layer return
+ * straight away, otherwise they wait for the extraction to finish. The index is either at the root of the layer, or
+ * one level down when the image was built with Jib, which adds the artifacts directory itself.
+ * <p>
+ * This is a deliberate trade off: files are served before the layer digest has been checked, so the registry is
+ * trusted. Files are served along with their {@code .sha1}, but as that comes from the same layer it only catches
+ * corruption, not a layer that does not match its digest. If verification fails nothing is moved into place, but files
+ * that have already been served are not recalled.
+ */
+final class LayerExtraction implements LayerExtractor.EntryListener {
+
+    private static final String SHA_1 = ".sha1";
+
+    private final Path outputPath;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final Set<String> extracted = new HashSet<>();
+    /**
+     * Where the extracted files currently are, guarded by the lock so that files are not opened while they are moved
+     */
+    private Path root;
+    /**
+     * Only used by the extraction thread
+     */
+    private Path tempPath;
+    private LayerIndex index;
+    /**
+     * The directory containing the index relative to the layer root, either empty or ending in {@code /}
+     */
+    private String indexPrefix;
+    private boolean finished;
+    private Throwable failure;
+
+    LayerExtraction(Path outputPath) {
+        this.outputPath = outputPath;
+    }
+
+    /**
+     * Extracts the last layer of the image, this blocks until the extraction is complete.
+     */
+    void run(LocalImage image) {
+        Throwable problem = null;
+        try {
+            Path temp = Files.createTempDirectory(outputPath.getParent(), outputPath.getFileName().toString());
+            lock.lock();
+            try {
+                tempPath = root = temp;
+            } finally {
+                lock.unlock();
+            }
+            image.pullLayer(image.getLayerCount() - 1, tempPath, this);
+            lock.lock();
+            try {
+                Files.move(tempPath, outputPath, StandardCopyOption.ATOMIC_MOVE);
+                root = outputPath;
+            } finally {
+                lock.unlock();
+            }
+        } catch (Throwable t) {
+            Log.errorf(t, "Failed to extract layer to %s", outputPath);
+            problem = t;
+        }
+        lock.lock();
+        try {
+            failure = problem;
+            finished = true;
+            if (tempPath != null && Files.exists(tempPath)) {
+                RootStorageManager.deleteRecursive(tempPath);
+            }
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void entryExtracted(String name) {
+        LayerIndex layerIndex = null;
+        String prefix = indexPrefix(name);
+        if (prefix != null) {
+            try (InputStream in = Files.newInputStream(tempPath.resolve(name))) {
+                layerIndex = LayerIndex.read(in);
+            } catch (IOException e) {
+                Log.errorf(e, "Failed to read layer index for %s", outputPath);
+            }
+        }
+        lock.lock();
+        try {
+            extracted.add(name);
+            if (layerIndex != null) {
+                index = layerIndex;
+                indexPrefix = prefix;
+            }
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until the file has been extracted, or it is known that the layer does not contain it.
+     *
+     * @param relative The path of the file, using {@code /} as the separator
+     */
+    Optional<ArtifactResult> open(String relative) throws IOException, InterruptedException {
+        String sha = relative.endsWith(SHA_1) ? null : relative + SHA_1;
+        lock.lock();
+        try {
+            for (;;) {
+                if (failure != null) {
+                    throw new IOException("Failed to extract layer to " + outputPath, failure);
+                }
+                if (extracted.contains(relative)) {
+                    if (sha == null || finished || extracted.contains(sha) || notInLayer(sha)) {
+                        Path file = root.resolve(relative);
+                        Optional<String> expectedSha = sha != null && extracted.contains(sha)
+                                ? Optional.of(Files.readString(root.resolve(sha)))
+                                : Optional.empty();
+                        return Optional.of(new ArtifactResult(null, Files.newInputStream(file), Files.size(file),
+                                expectedSha, Map.of()));
+                    }
+                } else if (finished || notInLayer(relative)) {
+                    return Optional.empty();
+                }
+                changed.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return If the index has been extracted and the file is not in it, this is always called with the lock held
+     */
+    private boolean notInLayer(String relative) {
+        return index != null
+                && !(relative.startsWith(indexPrefix) && index.contains(relative.substring(indexPrefix.length())));
+    }
+
+    /**
+     * @return The directory containing the index if this entry is the layer index, otherwise null
+     */
+    static String indexPrefix(String name) {
+        if (name.equals(LayerIndex.FILE_NAME)) {
+            return "";
+        }
+        if (name.endsWith("/" + LayerIndex.FILE_NAME)) {
+            String prefix = name.substring(0, name.length() - LayerIndex.FILE_NAME.length());
+            if (prefix.indexOf('/') == prefix.length() - 1) {
+                return prefix;
+            }
+        }
+        return null;
+    }
+}
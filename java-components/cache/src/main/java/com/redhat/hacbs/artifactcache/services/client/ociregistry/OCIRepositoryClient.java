@@ -5,14 +5,25 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.microprofile.config.ConfigProvider;
 
 import com.redhat.hacbs.artifactcache.artifactwatch.RebuiltArtifacts;
 import com.redhat.hacbs.artifactcache.services.ArtifactResult;
 import com.redhat.hacbs.artifactcache.services.RepositoryClient;
+import com.redhat.hacbs.artifactcache.services.RootStorageManager;
 import com.redhat.hacbs.artifactcache.services.StorageManager;
 import com.redhat.hacbs.common.images.ociclient.LocalImage;
 import com.redhat.hacbs.common.images.ociclient.OCIRegistryClient;
@@ -22,6 +33,17 @@ import io.quarkus.logging.Log;
 
 public class OCIRepositoryClient implements RepositoryClient {
 
+    public static final String TAG_CACHE_TTL = "cache-oci-tag-ttl";
+    public static final String TAG_CACHE_MAX_ENTRIES = "cache-oci-tag-max-entries";
+    /**
+     * If files should be served while the layer is still being extracted, before the layer digest has been verified
+     */
+    public static final String LAZY_EXTRACTION = "cache-oci-lazy-extraction";
+    /**
+     * The maximum number of layers that are extracted in the background at once
+     */
+    public static final String EXTRACTION_THREADS = "cache-oci-extraction-threads";
+
     private final Optional<String> prependHashedGav;
     private final StorageManager storageManager;
 
@@ -31,6 +53,17 @@ public class OCIRepositoryClient implements RepositoryClient {
 
     final Map<String, CountDownLatch> locks = new ConcurrentHashMap<>();
 
+    /**
+     * Resolved images by tag, so warm lookups don't need to fetch the manifest again
+     */
+    final ConcurrentMap<String, ResolvedTag> resolvedTags = new ConcurrentHashMap<>();
+    final long tagCacheTtl;
+    final int tagCacheMaxEntries;
+
+    final boolean lazyExtraction;
+    final Map<String, LayerExtraction> extractions = new ConcurrentHashMap<>();
+    final ExecutorService extractionExecutor;
+
     public OCIRepositoryClient(String registry, String owner, String repository, Optional<String> authToken,
             Optional<String> prependHashedGav,
             boolean enableHttpAndInsecureFailover, RebuiltArtifacts rebuiltArtifacts,
@@ -39,6 +72,27 @@ public class OCIRepositoryClient implements RepositoryClient {
         this.registryClient = new OCIRegistryClient(registry, owner, repository, authToken, enableHttpAndInsecureFailover);
         this.rebuiltArtifacts = rebuiltArtifacts;
         this.storageManager = storageManager;
+        var config = ConfigProvider.getConfig();
+        this.tagCacheTtl = config.getOptionalValue(TAG_CACHE_TTL, Duration.class).orElse(Duration.ofMinutes(10)).toMillis();
+        this.tagCacheMaxEntries = config.getOptionalValue(TAG_CACHE_MAX_ENTRIES, Integer.class).orElse(10000);
+        this.lazyExtraction = config.getOptionalValue(LAZY_EXTRACTION, Boolean.class).orElse(false);
+        if (lazyExtraction) {
+            int threads = config.getOptionalValue(EXTRACTION_THREADS, Integer.class).orElse(4);
+            AtomicInteger count = new AtomicInteger();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), r -> {
+                        Thread t = new Thread(r, "layer-extraction-" + count.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            this.extractionExecutor = executor;
+        } else {
+            this.extractionExecutor = null;
+        }
+        //a new build of the GAV may have pushed a different image to the same tag
+        rebuiltArtifacts.addImageDeletionListener((gav, digest) -> resolvedTags.remove(tag(gav)));
+        rebuiltArtifacts.addRebuiltArtifactListener(gav -> resolvedTags.remove(tag(gav)));
     }
 
     @Override
@@ -53,29 +107,31 @@ public class OCIRepositoryClient implements RepositoryClient {
 
         group = group.replace("/", ".");
         String groupPath = group.replace(DOT, File.separator);
-        String hashedGav = ShaUtil.sha256sum(group, artifact, version);
-        if (prependHashedGav.isPresent()) {
-            hashedGav = prependHashedGav.get() + UNDERSCORE + hashedGav;
-        }
-        if (hashedGav.length() > 128) {
-            hashedGav = hashedGav.substring(0, 128);
-        }
-
         String gav = group + ":" + artifact + ":" + version;
         if (!rebuiltArtifacts.isPossiblyRebuilt(gav)) {
             return Optional.empty();
         }
+        String hashedGav = tag(gav);
         Log.debugf("Attempting to retrieve %s for artifact %s", hashedGav, gav);
         return doDownload(group, artifact, version, target, time, groupPath, hashedGav);
     }
 
+    @Override
+    public boolean mayHaveArtifactFile(String group, String artifact, String version, String target) {
+        return rebuiltArtifacts.isPossiblyRebuilt(group.replace("/", ".") + ":" + artifact + ":" + version);
+    }
+
     private Optional<ArtifactResult> doDownload(String group, String artifact, String version, String target, long time,
             String groupPath, String hashedGav) {
         try {
-            var image = registryClient.pullImage(hashedGav);
+            var image = resolveTag(hashedGav);
             if (image.isEmpty()) {
                 return Optional.empty();
             }
+            if (lazyExtraction) {
+                return lazyDownload(image.get(),
+                        group.replace(DOT, "/") + "/" + artifact + "/" + version + "/" + target);
+            }
 
             Optional<Path> repoRoot = getLocalCachePath(image.get());
             if (repoRoot.isPresent()) {
@@ -99,6 +155,83 @@ public class OCIRepositoryClient implements RepositoryClient {
         return Optional.empty();
     }
 
+    /**
+     * Serves a file from the image, starting a background extraction of the layer if it is not already cached and
+     * returning as soon as the file has been extracted.
+     */
+    private Optional<ArtifactResult> lazyDownload(LocalImage image, String relative) throws Exception {
+        String digestHash = image.getDigestHash();
+        Path digestHashPath = storageManager.accessDirectory(digestHash);
+        Path artifactsPath = digestHashPath.resolve(ARTIFACTS);
+        LayerExtraction extraction = extractions.get(digestHash);
+        if (extraction == null) {
+            if (existInLocalCache(digestHashPath)) {
+                return open(artifactsPath.resolve(relative));
+            }
+            Files.createDirectories(digestHashPath);
+            LayerExtraction ours = new LayerExtraction(artifactsPath);
+            extraction = extractions.putIfAbsent(digestHash, ours);
+            if (extraction == null) {
+                //another extraction may have completed after we checked
+                if (existInLocalCache(digestHashPath)) {
+                    extractions.remove(digestHash, ours);
+                    return open(artifactsPath.resolve(relative));
+                }
+                extraction = ours;
+                //if all the threads are busy requests wait for the extraction to be started
+                extractionExecutor.execute(() -> {
+                    try {
+                        ours.run(image);
+                    } finally {
+                        extractions.remove(digestHash, ours);
+                    }
+                });
+            }
+        }
+        return extraction.open(relative);
+    }
+
+    private Optional<ArtifactResult> open(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return Optional.empty();
+        }
+        return Optional.of(new ArtifactResult(null, Files.newInputStream(file), Files.size(file), getSha1(file), Map.of()));
+    }
+
+    /**
+     * Resolves a tag to an image, using the cached result if it is still valid
+     */
+    private Optional<LocalImage> resolveTag(String tag) {
+        long now = System.currentTimeMillis();
+        ResolvedTag existing = resolvedTags.get(tag);
+        if (existing != null) {
+            if (existing.expiry > now) {
+                return Optional.of(existing.image);
+            }
+            resolvedTags.remove(tag, existing);
+        }
+        var image = registryClient.pullImage(tag);
+        if (image.isPresent() && tagCacheTtl > 0) {
+            if (resolvedTags.size() >= tagCacheMaxEntries) {
+                Log.infof("OCI tag cache has more than %s entries, clearing", tagCacheMaxEntries);
+                resolvedTags.clear();
+            }
+            resolvedTags.put(tag, new ResolvedTag(image.get(), now + tagCacheTtl));
+        }
+        return image;
+    }
+
+    private String tag(String gav) {
+        String hashedGav = ShaUtil.sha256sum(gav);
+        if (prependHashedGav.isPresent()) {
+            hashedGav = prependHashedGav.get() + UNDERSCORE + hashedGav;
+        }
+        if (hashedGav.length() > 128) {
+            hashedGav = hashedGav.substring(0, 128);
+        }
+        return hashedGav;
+    }
+
     @Override
     public Optional<ArtifactResult> getMetadataFile(String group, String target) {
         return Optional.empty();
@@ -143,9 +276,19 @@ public class OCIRepositoryClient implements RepositoryClient {
         //we don't actually check as we might want to allow more,
         //and just require the artifacts to be in the last layer
         //Oras doesn't store with the artifacts directory so create it as well.
-        Path outputPath = Files.createDirectories(Paths.get(digestHashPath.toString(), ARTIFACTS));
-
-        image.pullLayer(image.getLayerCount() - 1, outputPath);
+        //the layer is extracted as it is downloaded, so it goes into a temp directory that is only moved into
+        //place once the download has been verified, otherwise a partial extraction would look like a cached image
+        Files.createDirectories(digestHashPath);
+        Path tempPath = Files.createTempDirectory(digestHashPath, ARTIFACTS);
+        Path outputPath = Paths.get(digestHashPath.toString(), ARTIFACTS);
+        try {
+            image.pullLayer(image.getLayerCount() - 1, tempPath);
+            Files.move(tempPath, outputPath, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            if (Files.exists(tempPath)) {
+                RootStorageManager.deleteRecursive(tempPath);
+            }
+        }
         return Optional.of(outputPath);
     }
 
@@ -163,6 +306,9 @@ public class OCIRepositoryClient implements RepositoryClient {
         return Optional.empty();
     }
 
+    record ResolvedTag(LocalImage image, long expiry) {
+    }
+
     private static final String UNDERSCORE = "_";
     private static final String ARTIFACTS = "artifacts";
     private static final String DOT = ".";
@@ -0,0 +1,84 @@
+package com.redhat.hacbs.artifactcache.services.eviction;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Base class for policies that need a lock to update their data structures.
+ * <p>
+ * Accesses happen on every request, so rather than taking the lock they are added to a lock free buffer. The buffer is
+ * drained by whichever thread gets the lock, either an access that finds the buffer is full and the lock is free, or
+ * any of the other operations before they run. This means requests never wait for each other to update the policy, and
+ * the policy is always up to date when victims are selected.
+ */
+abstract class BufferedEvictionPolicy implements EvictionPolicy {
+
+    static final int DRAIN_THRESHOLD = 64;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Queue<String> accesses = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger buffered = new AtomicInteger();
+
+    /**
+     * Applies an access to the policy, this is always called with the lock held.
+     */
+    protected abstract void onAccessed(String key);
+
+    @Override
+    public final void accessed(String key) {
+        accesses.add(key);
+        if (buffered.incrementAndGet() >= DRAIN_THRESHOLD && lock.tryLock()) {
+            try {
+                drain();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Runs the task with the lock held, after applying any buffered accesses.
+     */
+    protected final void locked(Runnable task) {
+        lock.lock();
+        try {
+            drain();
+            task.run();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    protected final <T> T locked(Supplier<T> task) {
+        lock.lock();
+        try {
+            drain();
+            return task.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public final List<String> victims(int max, Set<String> exclude) {
+        return locked(() -> selectVictims(max, exclude));
+    }
+
+    /**
+     * Selects the victims, this is always called with the lock held.
+     */
+    protected abstract List<String> selectVictims(int max, Set<String> exclude);
+
+    private void drain() {
+        String key;
+        while ((key = accesses.poll()) != null) {
+            buffered.decrementAndGet();
+            onAccessed(key);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.redhat.hacbs.artifactcache.services.eviction;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Decides which cache directories get deleted when the disk usage is too high.
+ * <p>
+ * Policies are updated incrementally as directories are accessed, so selecting victims does not require sorting all the
+ * entries in the cache. Implementations must be thread safe.
+ */
+public interface EvictionPolicy {
+
+    String LRU = "lru";
+    String SIZE_WEIGHTED_LRU = "size-weighted-lru";
+    String TINY_LFU = "tiny-lfu";
+
+    /**
+     * @return The name of the policy, used to tag metrics
+     */
+    String name();
+
+    /**
+     * Called for every directory that exists when the cache starts. Entries are passed in the order they were last
+     * accessed, oldest first.
+     */
+    void loaded(String key, long size);
+
+    /**
+     * Called every time a directory is accessed, including the first time it is created.
+     */
+    void accessed(String key);
+
+    /**
+     * Called when the size of a directory is known or has changed.
+     */
+    void sized(String key, long size);
+
+    /**
+     * Called when a directory has been deleted outside of eviction.
+     */
+    void removed(String key);
+
+    /**
+     * Called when a directory returned from {@link #victims(int, Set)} has been deleted.
+     */
+    default void evicted(String key) {
+        removed(key);
+    }
+
+    void clear();
+
+    /**
+     * Returns the next directories that should be deleted, in the order they should be deleted.
+     *
+     * @param max The maximum number of directories to return
+     * @param exclude Directories that should not be returned, generally because they could not be deleted
+     */
+    List<String> victims(int max, Set<String> exclude);
+
+    static EvictionPolicy create(String name) {
+        return switch (name.toLowerCase(Locale.ENGLISH)) {
+            case LRU -> new LruEvictionPolicy();
+            case SIZE_WEIGHTED_LRU -> new SizeWeightedEvictionPolicy();
+            case TINY_LFU -> new TinyLfuEvictionPolicy();
+            default -> throw new IllegalArgumentException("Unknown eviction policy " + name);
+        };
+    }
+}
@@ -0,0 +1,70 @@
+package com.redhat.hacbs.artifactcache.services.eviction;
+
+/**
+ * A count-min sketch of 4 bit counters used to estimate how often a key has been accessed.
+ * <p>
+ * All counters are halved once the number of recorded accesses reaches the sample size, so the estimates favour recent
+ * activity. This class is not thread safe.
+ */
+final class FrequencySketch {
+
+    private static final int MIN_CAPACITY = 1024;
+    private static final int MAX_COUNT = 15;
+    private static final int[] SEEDS = { 0x97cb3127, 0xc2b2ae35, 0x85ebca6b, 0x27d4eb2f };
+
+    private byte[] table = new byte[MIN_CAPACITY];
+    private int sampleSize = MIN_CAPACITY * 10;
+    private int additions;
+
+    /**
+     * Grows the sketch to fit the expected number of distinct keys. Existing counts are discarded if it is resized.
+     */
+    void ensureCapacity(int expected) {
+        int size = Integer.highestOneBit(Math.max(expected, MIN_CAPACITY) - 1) << 1;
+        if (size > table.length) {
+            table = new byte[size];
+            sampleSize = size * 10;
+            additions = 0;
+        }
+    }
+
+    int frequency(String key) {
+        int hash = spread(key.hashCode());
+        int min = MAX_COUNT;
+        for (int seed : SEEDS) {
+            min = Math.min(min, table[index(hash, seed)]);
+        }
+        return min;
+    }
+
+    void increment(String key) {
+        int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int seed : SEEDS) {
+            int i = index(hash, seed);
+            if (table[i] < MAX_COUNT) {
+                table[i]++;
+                added = true;
+            }
+        }
+        if (added && ++additions >= sampleSize) {
+            for (int i = 0; i < table.length; ++i) {
+                table[i] = (byte) (table[i] >> 1);
+            }
+            additions /= 2;
+        }
+    }
+
+    private int index(int hash, int seed) {
+        int h = (hash ^ seed) * seed;
+        h ^= h >>> 16;
+        return h & (table.length - 1);
+    }
+
+    private static int spread(int h) {
+        h ^= h >>> 17;
+        h *= 0xed5ad4bb;
+        h ^= h >>> 11;
+        return h;
+    }
+}
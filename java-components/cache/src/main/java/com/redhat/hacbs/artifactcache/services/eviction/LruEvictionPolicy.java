@@ -0,0 +1,63 @@
+package com.redhat.hacbs.artifactcache.services.eviction;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Evicts the least recently used directories first, regardless of their size.
+ */
+public class LruEvictionPolicy extends BufferedEvictionPolicy {
+
+    private final LinkedHashMap<String, Boolean> order = new LinkedHashMap<>(16, 0.75f, true);
+
+    @Override
+    public String name() {
+        return LRU;
+    }
+
+    @Override
+    public void loaded(String key, long size) {
+        locked(() -> {
+            order.put(key, Boolean.TRUE);
+        });
+    }
+
+    @Override
+    protected void onAccessed(String key) {
+        order.put(key, Boolean.TRUE);
+    }
+
+    @Override
+    public void sized(String key, long size) {
+    }
+
+    @Override
+    public void removed(String key) {
+        locked(() -> {
+            order.remove(key);
+        });
+    }
+
+    @Override
+    public void clear() {
+        locked(() -> {
+            order.clear();
+        });
+    }
+
+    @Override
+    protected List<String> selectVictims(int max, Set<String> exclude) {
+        List<String> ret = new ArrayList<>(max);
+        for (var key : order.keySet()) {
+            if (ret.size() == max) {
+                break;
+            }
+            if (!exclude.contains(key)) {
+                ret.add(key);
+            }
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,131 @@
+package com.redhat.hacbs.artifactcache.services.eviction;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * A size weighted LRU, based on the Greedy Dual Size Frequency algorithm.
+ * <p>
+ * Every directory has a priority of {@code L + hits / size}, where {@code L} is the priority of the last evicted entry.
+ * Large directories that are rarely used are evicted before small directories that are used frequently, and as
+ * {@code L} increases over time entries that have not been used recently will eventually be evicted no matter their
+ * size.
+ * <p>
+ * Directories with an unknown size are treated as being a single byte, so newly created directories are unlikely to be
+ * evicted before their size has been measured.
+ */
+public class SizeWeightedEvictionPolicy extends BufferedEvictionPolicy {
+
+    private final Map<String, Node> nodes = new HashMap<>();
+    private final TreeSet<Node> queue = new TreeSet<>(
+            Comparator.comparingDouble((Node n) -> n.priority).thenComparingLong(n -> n.sequence));
+    private double inflation;
+    private long sequence;
+
+    @Override
+    public String name() {
+        return SIZE_WEIGHTED_LRU;
+    }
+
+    @Override
+    public void loaded(String key, long size) {
+        locked(() -> {
+            Node node = nodes.computeIfAbsent(key, Node::new);
+            queue.remove(node);
+            node.size = size;
+            node.hits = Math.max(node.hits, 1);
+            update(node);
+        });
+    }
+
+    @Override
+    protected void onAccessed(String key) {
+        Node node = nodes.computeIfAbsent(key, Node::new);
+        queue.remove(node);
+        node.hits++;
+        update(node);
+    }
+
+    @Override
+    public void sized(String key, long size) {
+        locked(() -> {
+            Node node = nodes.get(key);
+            if (node == null || node.size == size) {
+                return;
+            }
+            queue.remove(node);
+            node.size = size;
+            node.priority = node.base + (double) node.hits / Math.max(size, 1);
+            queue.add(node);
+        });
+    }
+
+    @Override
+    public void removed(String key) {
+        locked(() -> {
+            Node node = nodes.remove(key);
+            if (node != null) {
+                queue.remove(node);
+            }
+        });
+    }
+
+    @Override
+    public void evicted(String key) {
+        locked(() -> {
+            Node node = nodes.remove(key);
+            if (node != null) {
+                queue.remove(node);
+                inflation = Math.max(inflation, node.priority);
+            }
+        });
+    }
+
+    @Override
+    public void clear() {
+        locked(() -> {
+            nodes.clear();
+            queue.clear();
+            inflation = 0;
+        });
+    }
+
+    @Override
+    protected List<String> selectVictims(int max, Set<String> exclude) {
+        List<String> ret = new ArrayList<>(max);
+        for (var node : queue) {
+            if (ret.size() == max) {
+                break;
+            }
+            if (!exclude.contains(node.key)) {
+                ret.add(node.key);
+            }
+        }
+        return ret;
+    }
+
+    private void update(Node node) {
+        node.base = inflation;
+        node.priority = inflation + (double) node.hits / Math.max(node.size, 1);
+        node.sequence = sequence++;
+        queue.add(node);
+    }
+
+    private static final class Node {
+        final String key;
+        long size;
+        long hits;
+        double base;
+        double priority;
+        long sequence;
+
+        Node(String key) {
+            this.key = key;
+        }
+    }
+}
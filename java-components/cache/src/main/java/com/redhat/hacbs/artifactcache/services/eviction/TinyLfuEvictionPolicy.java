@@ -0,0 +1,135 @@
+package com.redhat.hacbs.artifactcache.services.eviction;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An eviction policy based on W-TinyLFU.
+ * <p>
+ * New directories enter a small LRU window. When they leave the window they move to the probation segment of a
+ * segmented LRU, and are promoted to the protected segment if they are accessed again. When space needs to be freed the
+ * oldest entry in the window is compared against the oldest entry in probation, and the one that has been accessed less
+ * often according to a frequency sketch is evicted. This means one off downloads are evicted before entries that are
+ * regularly used, even if the regularly used entries have not been accessed as recently.
+ * <p>
+ * As the files are already on disk the admission decision is made when selecting victims, rather than when the
+ * directory is created.
+ */
+public class TinyLfuEvictionPolicy extends BufferedEvictionPolicy {
+
+    private static final double WINDOW_PERCENTAGE = 0.01;
+    private static final double PROTECTED_PERCENTAGE = 0.8;
+
+    private final LinkedHashMap<String, Boolean> window = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, Boolean> probation = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, Boolean> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+    private final FrequencySketch sketch = new FrequencySketch();
+
+    @Override
+    public String name() {
+        return TINY_LFU;
+    }
+
+    @Override
+    public void loaded(String key, long size) {
+        locked(() -> {
+            //we don't know anything about the frequency of existing entries, so they all start in probation
+            if (!window.containsKey(key) && !protectedSegment.containsKey(key)) {
+                probation.put(key, Boolean.TRUE);
+            }
+            sketch.ensureCapacity(size());
+        });
+    }
+
+    @Override
+    protected void onAccessed(String key) {
+        sketch.increment(key);
+        if (window.containsKey(key)) {
+            window.get(key);
+        } else if (protectedSegment.containsKey(key)) {
+            protectedSegment.get(key);
+        } else if (probation.remove(key) != null) {
+            protectedSegment.put(key, Boolean.TRUE);
+            int maxProtected = (int) (size() * PROTECTED_PERCENTAGE);
+            while (protectedSegment.size() > maxProtected) {
+                var it = protectedSegment.keySet().iterator();
+                String demoted = it.next();
+                it.remove();
+                probation.put(demoted, Boolean.TRUE);
+            }
+        } else {
+            window.put(key, Boolean.TRUE);
+            sketch.ensureCapacity(size());
+            int maxWindow = Math.max(1, (int) (size() * WINDOW_PERCENTAGE));
+            while (window.size() > maxWindow) {
+                var it = window.keySet().iterator();
+                String candidate = it.next();
+                it.remove();
+                probation.put(candidate, Boolean.TRUE);
+            }
+        }
+    }
+
+    @Override
+    public void sized(String key, long size) {
+    }
+
+    @Override
+    public void removed(String key) {
+        locked(() -> {
+            if (window.remove(key) == null && probation.remove(key) == null) {
+                protectedSegment.remove(key);
+            }
+        });
+    }
+
+    @Override
+    public void clear() {
+        locked(() -> {
+            window.clear();
+            probation.clear();
+            protectedSegment.clear();
+        });
+    }
+
+    @Override
+    protected List<String> selectVictims(int max, Set<String> exclude) {
+        List<String> ret = new ArrayList<>(max);
+        Iterator<String> candidates = window.keySet().iterator();
+        Iterator<String> probationVictims = probation.keySet().iterator();
+        String candidate = next(candidates, exclude);
+        String victim = next(probationVictims, exclude);
+        while (ret.size() < max && (candidate != null || victim != null)) {
+            if (victim == null || (candidate != null && sketch.frequency(candidate) <= sketch.frequency(victim))) {
+                ret.add(candidate);
+                candidate = next(candidates, exclude);
+            } else {
+                ret.add(victim);
+                victim = next(probationVictims, exclude);
+            }
+        }
+        Iterator<String> protectedVictims = protectedSegment.keySet().iterator();
+        String next;
+        while (ret.size() < max && (next = next(protectedVictims, exclude)) != null) {
+            ret.add(next);
+        }
+        return ret;
+    }
+
+    private int size() {
+        return window.size() + probation.size() + protectedSegment.size();
+    }
+
+    private static String next(Iterator<String> it, Set<String> exclude) {
+        while (it.hasNext()) {
+            String key = it.next();
+            if (!exclude.contains(key)) {
+                return key;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,227 @@
+package com.redhat.hacbs.artifactcache.services;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.redhat.hacbs.resources.util.HashUtil;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class CacheFacadeTestCase {
+
+    @Test
+    public void testOnlyMissesAreRemembered() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        NegativeLookupCache negativeLookupCache = new NegativeLookupCache(Duration.ofMinutes(5), 100,
+                registry.counter("hits"), registry.counter("misses"));
+        Path temp = Files.createTempDirectory("cache-facade-test");
+        try {
+            RootStorageManager storageManager = new RootStorageManager(temp, 1, 1, 1, new CompositeMeterRegistry());
+            TestClient client = new TestClient("central", Set.of("acme-1.0.pom"));
+            CacheFacade facade = new CacheFacade(
+                    Map.of("default", new BuildPolicy(List.of(repository(storageManager, client)))),
+                    negativeLookupCache, MetadataCache.disabled());
+
+            Assertions.assertTrue(facade.getArtifactFile("default", "com/acme", "acme", "1.0", "acme-1.0.pom", false)
+                    .isPresent());
+            Assertions.assertFalse(negativeLookupCache.isMissing("central", "com/acme", "acme", "1.0", "acme-1.0.pom"));
+
+            Assertions.assertTrue(facade.getArtifactFile("default", "com/acme", "acme", "1.0", "acme-1.0-sources.jar", false)
+                    .isEmpty());
+            Assertions.assertTrue(negativeLookupCache.isMissing("central", "com/acme", "acme", "1.0", "acme-1.0-sources.jar"));
+
+            //a failure is not a miss
+            client.fail = true;
+            Assertions.assertTrue(facade.getArtifactFile("default", "com/acme", "acme", "2.0", "acme-2.0.pom", false)
+                    .isEmpty());
+            Assertions.assertFalse(negativeLookupCache.isMissing("central", "com/acme", "acme", "2.0", "acme-2.0.pom"));
+        } finally {
+            LocalCacheTest.deleteRecursive(temp);
+        }
+    }
+
+    @Test
+    public void testAccessDeniedIsNotRemembered() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        NegativeLookupCache negativeLookupCache = new NegativeLookupCache(Duration.ofMinutes(5), 100,
+                registry.counter("hits"), registry.counter("misses"));
+        Path temp = Files.createTempDirectory("cache-facade-test");
+        try {
+            RootStorageManager storageManager = new RootStorageManager(temp, 1, 1, 1, new CompositeMeterRegistry());
+            TestClient denied = new TestClient("private", Set.of("acme-1.0.pom"));
+            denied.denied = true;
+            TestClient central = new TestClient("central", Set.of("acme-1.0.pom"));
+            CacheFacade facade = new CacheFacade(
+                    Map.of("default", new BuildPolicy(List.of(repository(storageManager, denied),
+                            repository(storageManager, central)))),
+                    negativeLookupCache, MetadataCache.disabled());
+
+            //the next repository is still tried
+            try (var res = facade.getArtifactFile("default", "com/acme", "acme", "1.0", "acme-1.0.pom", false)
+                    .orElseThrow()) {
+                Assertions.assertEquals("central:acme-1.0.pom",
+                        new String(res.getData().readAllBytes(), StandardCharsets.UTF_8));
+            }
+            Assertions.assertFalse(negativeLookupCache.isMissing("private", "com/acme", "acme", "1.0", "acme-1.0.pom"));
+
+            Assertions.assertTrue(facade.getArtifactFile("default", "com/acme", "acme", "1.0", "acme-1.0.jar", false)
+                    .isEmpty());
+            Assertions.assertFalse(negativeLookupCache.isMissing("private", "com/acme", "acme", "1.0", "acme-1.0.jar"));
+            Assertions.assertTrue(negativeLookupCache.isMissing("central", "com/acme", "acme", "1.0", "acme-1.0.jar"));
+
+            //once access is granted the file is served
+            denied.denied = false;
+            try (var res = facade.getArtifactFile("default", "com/acme", "acme", "1.0", "acme-1.0.pom", false)
+                    .orElseThrow()) {
+                Assertions.assertEquals("private:acme-1.0.pom",
+                        new String(res.getData().readAllBytes(), StandardCharsets.UTF_8));
+            }
+        } finally {
+            LocalCacheTest.deleteRecursive(temp);
+        }
+    }
+
+    @Test
+    public void testParallelLookup() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        Counter hits = registry.counter("hits");
+        Counter misses = registry.counter("misses");
+        NegativeLookupCache negativeLookupCache = new NegativeLookupCache(Duration.ofMinutes(5), 100, hits, misses);
+        Path temp = Files.createTempDirectory("cache-facade-test");
+        CacheFacade facade = null;
+        try {
+            RootStorageManager storageManager = new RootStorageManager(temp, 1, 1, 1, new CompositeMeterRegistry());
+            TestClient central = new TestClient("central", Set.of());
+            TestClient other = new TestClient("other", Set.of("acme-1.0.pom"));
+            facade = new CacheFacade(
+                    Map.of("default", new BuildPolicy(List.of(repository(storageManager, central),
+                            repository(storageManager, other)))),
+                    negativeLookupCache, MetadataCache.disabled(), true, 2);
+
+            Assertions.assertTrue(facade.getArtifactFile("default", "com/acme", "acme", "1.0", "acme-1.0.pom", false)
+                    .isPresent());
+            Assertions.assertEquals(1, central.probes.get());
+            Assertions.assertEquals(1, other.probes.get());
+            //each repository is only checked once
+            Assertions.assertEquals(0, hits.count());
+            Assertions.assertEquals(2, misses.count());
+            Assertions.assertTrue(negativeLookupCache.isMissing("central", "com/acme", "acme", "1.0", "acme-1.0.pom"));
+
+            //the cached file is found without probing
+            Assertions.assertTrue(facade.getArtifactFile("default", "com/acme", "acme", "1.0", "acme-1.0.pom", false)
+                    .isPresent());
+            Assertions.assertEquals(1, central.probes.get());
+            Assertions.assertEquals(1, other.probes.get());
+        } finally {
+            if (facade != null) {
+                facade.close();
+            }
+            LocalCacheTest.deleteRecursive(temp);
+        }
+    }
+
+    @Test
+    public void testParallelLookupPriority() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        NegativeLookupCache negativeLookupCache = new NegativeLookupCache(Duration.ofMinutes(5), 100,
+                registry.counter("hits"), registry.counter("misses"));
+        Path temp = Files.createTempDirectory("cache-facade-test");
+        CacheFacade facade = null;
+        try {
+            RootStorageManager storageManager = new RootStorageManager(temp, 1, 1, 1, new CompositeMeterRegistry());
+            TestClient high = new TestClient("high", Set.of("acme-1.0.pom"));
+            TestClient low = new TestClient("low", Set.of("acme-1.0.pom"));
+            RepositoryCache lowCache = repository(storageManager, low);
+            facade = new CacheFacade(Map.of("default", new BuildPolicy(List.of(lowCache))),
+                    negativeLookupCache, MetadataCache.disabled(), true, 2);
+            try (var res = facade.getArtifactFile("default", "com/acme", "acme", "1.0", "acme-1.0.pom", false)
+                    .orElseThrow()) {
+                Assertions.assertEquals("low:acme-1.0.pom", new String(res.getData().readAllBytes(), StandardCharsets.UTF_8));
+            }
+
+            //the file cached in a lower priority repository does not win over a higher priority one
+            CacheFacade both = facade.withBuildPolicies(
+                    Map.of("default", new BuildPolicy(List.of(repository(storageManager, high), lowCache))));
+            Assertions.assertSame(facade.probeExecutor, both.probeExecutor);
+            try (var res = both.getArtifactFile("default", "com/acme", "acme", "1.0", "acme-1.0.pom", false)
+                    .orElseThrow()) {
+                Assertions.assertEquals("high:acme-1.0.pom",
+                        new String(res.getData().readAllBytes(), StandardCharsets.UTF_8));
+            }
+            Assertions.assertEquals(1, high.probes.get());
+            Assertions.assertEquals(0, low.probes.get());
+            //closing the shared facade does not stop the probe threads
+            both.close();
+            Assertions.assertFalse(facade.probeExecutor.isShutdown());
+        } finally {
+            if (facade != null) {
+                facade.close();
+            }
+            LocalCacheTest.deleteRecursive(temp);
+        }
+    }
+
+    static RepositoryCache repository(RootStorageManager storageManager, TestClient client) throws Exception {
+        return new RepositoryCache(storageManager.resolve(client.name),
+                new Repository(client.name, "http://" + client.name + ".com", RepositoryType.MAVEN2, client), true);
+    }
+
+    static class TestClient implements RepositoryClient {
+        final String name;
+        final Set<String> files;
+        final AtomicInteger probes = new AtomicInteger();
+        volatile boolean fail;
+        volatile boolean denied;
+
+        TestClient(String name, Set<String> files) {
+            this.name = name;
+            this.files = files;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public Optional<ArtifactResult> getArtifactFile(String group, String artifact, String version, String target) {
+            if (fail) {
+                throw new RuntimeException("Upstream failure");
+            }
+            if (denied) {
+                throw new AccessDeniedException("403 downloading " + target);
+            }
+            if (!files.contains(target)) {
+                return Optional.empty();
+            }
+            String contents = name + ":" + target;
+            byte[] data = contents.getBytes(StandardCharsets.UTF_8);
+            return Optional.of(new ArtifactResult(null, new ByteArrayInputStream(data), data.length,
+                    Optional.of(HashUtil.sha1(contents)), Map.of()));
+        }
+
+        @Override
+        public boolean mayHaveArtifactFile(String group, String artifact, String version, String target) {
+            probes.incrementAndGet();
+            return files.contains(target);
+        }
+
+        @Override
+        public Optional<ArtifactResult> getMetadataFile(String group, String target) {
+            return Optional.empty();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.redhat.hacbs.artifactcache.services;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Contention comparison of {@link GavReferenceCounter} and the single monitor that it replaced.
+ * <p>
+ * This is not run as part of the test suite. It takes the maximum number of threads and the number of iterations per
+ * thread as optional arguments, and reports the throughput of acquire/release pairs for each thread count.
+ */
+public class GavReferenceCounterBenchmark {
+
+    static final int GAVS = 1000;
+
+    public static void main(String[] args) throws Exception {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+        String[] gavs = new String[GAVS];
+        for (int i = 0; i < GAVS; ++i) {
+            gavs[i] = "com.acme:artifact" + i + ":1.0";
+        }
+        GavReferenceCounter counter = new GavReferenceCounter();
+        MonitorTracker monitor = new MonitorTracker();
+        //warm up
+        run(1, iterations, gavs, counter::acquire, counter::release);
+        run(1, iterations, gavs, monitor::acquire, monitor::release);
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            long monitorNanos = run(threads, iterations, gavs, monitor::acquire, monitor::release);
+            long counterNanos = run(threads, iterations, gavs, counter::acquire, counter::release);
+            System.out.printf("%d threads: monitor %.1f ops/us, reference counter %.1f ops/us%n", threads,
+                    threads * (double) iterations / (monitorNanos / 1000d),
+                    threads * (double) iterations / (counterNanos / 1000d));
+        }
+    }
+
+    static long run(int threads, int iterations, String[] gavs, Op acquire, Op release) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; ++t) {
+            int offset = t * 7;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < iterations; ++i) {
+                        //a mix of hot and cold GAVs, so several threads hold the same GAV at once
+                        String gav = gavs[(i % 10 == 0 ? i + offset : i % 10) % gavs.length];
+                        acquire.apply(gav);
+                        release.apply(gav);
+                    }
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                } finally {
+                    done.countDown();
+                }
+            });
+            thread.start();
+        }
+        long time = System.nanoTime();
+        start.countDown();
+        done.await();
+        return System.nanoTime() - time;
+    }
+
+    interface Op {
+        void apply(String gav);
+    }
+
+    /**
+     * The previous implementation, a single map guarded by its own monitor
+     */
+    static final class MonitorTracker {
+        final Map<String, AtomicInteger> inUse = new HashMap<>();
+
+        void acquire(String gav) {
+            synchronized (inUse) {
+                inUse.computeIfAbsent(gav, k -> new AtomicInteger()).incrementAndGet();
+            }
+        }
+
+        void release(String gav) {
+            synchronized (inUse) {
+                if (inUse.get(gav).decrementAndGet() == 0) {
+                    inUse.remove(gav);
+                    inUse.notifyAll();
+                }
+            }
+        }
+    }
+}
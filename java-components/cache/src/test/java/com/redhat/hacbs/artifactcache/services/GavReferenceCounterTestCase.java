@@ -0,0 +1,39 @@
+package com.redhat.hacbs.artifactcache.services;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class GavReferenceCounterTestCase {
+
+    @Test
+    public void testDeleteWaitsForReaders() throws Exception {
+        GavReferenceCounter counter = new GavReferenceCounter();
+        counter.acquire("a:b:1");
+        counter.acquire("a:b:1");
+        counter.acquire("a:c:1");
+        Assertions.assertEquals(2, counter.references("a:b:1"));
+
+        CompletableFuture<Boolean> delete = CompletableFuture.supplyAsync(() -> counter.beginDelete("a:b:1"));
+        Assertions.assertThrows(TimeoutException.class, () -> delete.get(100, TimeUnit.MILLISECONDS));
+        counter.release("a:b:1");
+        Assertions.assertThrows(TimeoutException.class, () -> delete.get(100, TimeUnit.MILLISECONDS));
+        counter.release("a:b:1");
+        Assertions.assertTrue(delete.get(10, TimeUnit.SECONDS));
+
+        //other GAVs are not affected, and a second delete does nothing
+        counter.acquire("a:c:1");
+        Assertions.assertEquals(2, counter.references("a:c:1"));
+        Assertions.assertFalse(counter.beginDelete("a:b:1"));
+
+        //readers wait for the delete to finish
+        CompletableFuture<Void> read = CompletableFuture.runAsync(() -> counter.acquire("a:b:1"));
+        Assertions.assertThrows(TimeoutException.class, () -> read.get(100, TimeUnit.MILLISECONDS));
+        counter.endDelete("a:b:1");
+        read.get(10, TimeUnit.SECONDS);
+        Assertions.assertEquals(1, counter.references("a:b:1"));
+    }
+}
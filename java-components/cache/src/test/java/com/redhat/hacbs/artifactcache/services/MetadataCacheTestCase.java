@@ -0,0 +1,138 @@
+package com.redhat.hacbs.artifactcache.services;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class MetadataCacheTestCase {
+
+    @Test
+    public void testRevalidation() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        Counter hits = registry.counter("hits");
+        Counter notModified = registry.counter("notModified");
+        Counter downloads = registry.counter("downloads");
+        MetadataCache cache = new MetadataCache(0, 100, hits, notModified, downloads);
+        Path temp = Files.createTempDirectory("metadata-test");
+        try {
+            RootStorageManager storageManager = new RootStorageManager(temp, 1, 1, 1, new CompositeMeterRegistry());
+            TestClient central = new TestClient("central", "1.0", "2.0");
+            TestClient other = new TestClient("other", "1.5", "10.0");
+            List<RepositoryCache> caches = List.of(repository(storageManager, central), repository(storageManager, other));
+
+            var merged = cache.getMergedMetadata(caches, "com/acme/acme").get();
+            Assertions.assertEquals(List.of("10.0", "2.0", "1.5", "1.0"), merged.versions());
+            Assertions.assertTrue(merged.template().getVersioning().getVersions().isEmpty());
+            Assertions.assertEquals(2, downloads.count());
+
+            //the TTL is 0, so this revalidates, but the files have not changed
+            Assertions.assertSame(merged, cache.getMergedMetadata(caches, "com/acme/acme").get());
+            Assertions.assertEquals(2, notModified.count());
+            Assertions.assertEquals("\"2\"", central.lastEtag);
+
+            //a change to one of the files rebuilds the merged versions
+            other.versions = new String[] { "1.5", "10.0", "11.0" };
+            merged = cache.getMergedMetadata(caches, "com/acme/acme").get();
+            Assertions.assertEquals(List.of("11.0", "10.0", "2.0", "1.5", "1.0"), merged.versions());
+            Assertions.assertEquals(3, downloads.count());
+
+            //the cached copy is used if the upstream repository fails
+            central.fail = true;
+            Assertions.assertEquals(merged, cache.getMergedMetadata(caches, "com/acme/acme").get());
+            Assertions.assertTrue(cache.getMergedMetadata(caches, "com/acme/missing").isEmpty());
+        } finally {
+            LocalCacheTest.deleteRecursive(temp);
+        }
+    }
+
+    @Test
+    public void testPublishDates() throws Exception {
+        Path temp = Files.createTempDirectory("publish-dates-test");
+        try {
+            PublishDates dates = new PublishDates(temp);
+            Assertions.assertNull(dates.getPublishTime("com/acme", "acme", "1.0"));
+            dates.recordPublishTime("com/acme", "acme", "1.0", 1000);
+            dates.recordPublishTime("com/acme", "acme", "2.0", 2000);
+            //publish dates do not change
+            dates.recordPublishTime("com/acme", "acme", "1.0", 3000);
+            dates.close();
+
+            dates = new PublishDates(temp);
+            Assertions.assertEquals(1000, dates.getPublishTime("com.acme", "acme", "1.0"));
+            Assertions.assertEquals(2000, dates.getPublishTime("com/acme", "acme", "2.0"));
+            Assertions.assertNull(dates.getPublishTime("com/acme", "acme", "3.0"));
+            dates.close();
+        } finally {
+            LocalCacheTest.deleteRecursive(temp);
+        }
+    }
+
+    static RepositoryCache repository(RootStorageManager storageManager, TestClient client) throws Exception {
+        return new RepositoryCache(storageManager,
+                new Repository(client.name, "http://" + client.name + ".com", RepositoryType.MAVEN2, client), true);
+    }
+
+    static class TestClient implements RepositoryClient {
+        final String name;
+        volatile String[] versions;
+        volatile boolean fail;
+        volatile String lastEtag;
+
+        TestClient(String name, String... versions) {
+            this.name = name;
+            this.versions = versions;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public Optional<ArtifactResult> getArtifactFile(String group, String artifact, String version, String target) {
+            return Optional.empty();
+        }
+
+        @Override
+        public Optional<ArtifactResult> getMetadataFile(String group, String target) {
+            return getMetadataFile(group, target, Map.of());
+        }
+
+        @Override
+        public Optional<ArtifactResult> getMetadataFile(String group, String target,
+                Map<String, String> conditionalHeaders) {
+            if (fail) {
+                throw new RuntimeException("Upstream failure");
+            }
+            if (!group.equals("com/acme/acme")) {
+                return Optional.empty();
+            }
+            String etag = "\"" + versions.length + "\"";
+            lastEtag = conditionalHeaders.get("If-None-Match");
+            if (etag.equals(lastEtag)) {
+                return Optional.of(new ArtifactResult(null, new ByteArrayInputStream(new byte[0]), 0, Optional.empty(),
+                        Map.of(NOT_MODIFIED, "true")));
+            }
+            StringBuilder sb = new StringBuilder("<metadata><groupId>com.acme</groupId><artifactId>acme</artifactId>"
+                    + "<versioning><versions>");
+            for (var i : versions) {
+                sb.append("<version>").append(i).append("</version>");
+            }
+            sb.append("</versions></versioning></metadata>");
+            byte[] data = sb.toString().getBytes(StandardCharsets.UTF_8);
+            return Optional.of(new ArtifactResult(null, new ByteArrayInputStream(data), data.length, Optional.empty(),
+                    Map.of("ETag", etag)));
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.redhat.hacbs.artifactcache.services;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class NegativeLookupCacheTestCase {
+
+    @Test
+    public void testNegativeLookup() throws InterruptedException {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        Counter hits = registry.counter("hits");
+        Counter misses = registry.counter("misses");
+        NegativeLookupCache cache = new NegativeLookupCache(Duration.ofMillis(200), 100, hits, misses);
+
+        Assertions.assertFalse(cache.isMissing("central", "com/acme", "acme", "1.0", "acme-1.0.jar"));
+        cache.recordMissing("central", "com/acme", "acme", "1.0", "acme-1.0.jar");
+        Assertions.assertTrue(cache.isMissing("central", "com/acme", "acme", "1.0", "acme-1.0.jar"));
+        Assertions.assertFalse(cache.isMissing("central", "com/acme", "acme", "1.0", "acme-1.0.pom"));
+        Assertions.assertFalse(cache.isMissing("rebuilt", "com/acme", "acme", "1.0", "acme-1.0.jar"));
+        Assertions.assertEquals(1, hits.count());
+        Assertions.assertEquals(3, misses.count());
+
+        //rebuilding the GAV removes all entries for it
+        cache.recordMissing("rebuilt", "com/acme", "acme", "1.0", "acme-1.0.jar");
+        cache.invalidate("com.acme:acme:1.0");
+        Assertions.assertFalse(cache.isMissing("central", "com/acme", "acme", "1.0", "acme-1.0.jar"));
+        Assertions.assertFalse(cache.isMissing("rebuilt", "com/acme", "acme", "1.0", "acme-1.0.jar"));
+        Assertions.assertEquals(0, cache.size.get());
+
+        //entries expire
+        cache.recordMissing("central", "com/acme", "acme", "1.0", "acme-1.0.jar");
+        Thread.sleep(300);
+        Assertions.assertFalse(cache.isMissing("central", "com/acme", "acme", "1.0", "acme-1.0.jar"));
+        Assertions.assertEquals(0, cache.size.get());
+    }
+
+    @Test
+    public void testMaxEntries() {
+        NegativeLookupCache cache = new NegativeLookupCache(Duration.ofMinutes(5), 10, Counter.builder("hits")
+                .register(new SimpleMeterRegistry()), Counter.builder("misses").register(new SimpleMeterRegistry()));
+        for (var i = 0; i < 10; ++i) {
+            cache.recordMissing("central", "com/acme", "acme", "1." + i, "acme-1." + i + ".jar");
+        }
+        Assertions.assertTrue(cache.isMissing("central", "com/acme", "acme", "1.0", "acme-1.0.jar"));
+        cache.recordMissing("central", "com/acme", "acme", "2.0", "acme-2.0.jar");
+        Assertions.assertTrue(cache.size.get() <= 10);
+        Assertions.assertFalse(cache.isMissing("central", "com/acme", "acme", "1.0", "acme-1.0.jar"));
+    }
+}
@@ -9,11 +9,19 @@ import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileAttributeView;
 import java.nio.file.attribute.FileStoreAttributeView;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import com.redhat.hacbs.artifactcache.services.eviction.EvictionPolicy;
+
 public class StorageManagerTestCase {
 
     @Test
@@ -71,6 +79,118 @@ public class StorageManagerTestCase {
 
     }
 
+    @Test
+    public void testIndex() throws IOException {
+        Path path = Files.createTempDirectory("test");
+        RootStorageManager manager = new RootStorageManager(new MockFileSystem(path, 100000L), path, 0.5, 0.4, 1, true);
+        manager.initialLoad();
+        Files.writeString(manager.accessDirectory("t1").resolve("f1"), "1234567890");
+        Files.writeString(manager.accessFile("t2/f2"), "12345");
+        Files.writeString(manager.accessFile("t3/f3"), "123");
+        manager.accessDirectory("t3/sub");
+        manager.delete("t2");
+        manager.flushIndex();
+        manager.destroy();
+
+        //modify a directory behind the index's back, the sizes should still come from the index
+        Files.writeString(path.resolve("t1").resolve("f2"), "12345");
+        RootStorageManager loaded = new RootStorageManager(new MockFileSystem(path, 100000L), path, 0.5, 0.4, 1, true);
+        loaded.initialLoad();
+        Assertions.assertEquals(manager.inUseMap.keySet(), loaded.inUseMap.keySet());
+        Assertions.assertEquals(manager.inUseMap.get("t1").get(), loaded.inUseMap.get("t1").get());
+        long markerSize = Files.size(path.resolve("t1").resolve("cache.directory.marker"));
+        Assertions.assertEquals(10 + markerSize, loaded.index.size("t1"));
+        Assertions.assertEquals(3 + markerSize, loaded.index.size("t3"));
+        Assertions.assertEquals(0, loaded.index.size("t2"));
+
+        //without an index the cache falls back to scanning the directory
+        Files.delete(path.resolve(DirectoryIndex.FILE_NAME));
+        RootStorageManager scanned = new RootStorageManager(new MockFileSystem(path, 100000L), path, 0.5, 0.4, 1, true);
+        scanned.initialLoad();
+        Assertions.assertEquals(manager.inUseMap.keySet(), scanned.inUseMap.keySet());
+        Assertions.assertEquals(15 + markerSize, scanned.index.size("t1"));
+        Assertions.assertEquals(3 + markerSize, scanned.index.size("t3"));
+        Assertions.assertTrue(Files.exists(path.resolve(DirectoryIndex.FILE_NAME)));
+        scanned.destroy();
+    }
+
+    @Test
+    public void testIndexReconciliation() throws IOException {
+        Path path = Files.createTempDirectory("test");
+        RootStorageManager manager = new RootStorageManager(new MockFileSystem(path, 100000L), path, 0.5, 0.4, 1, true);
+        manager.initialLoad();
+        Files.writeString(manager.accessFile("t1/f1"), "1234567890");
+        Files.writeString(manager.accessFile("t2/f2"), "12345");
+        manager.flushIndex();
+        //simulate a crash before the next flush, t3 is created but never written to the index
+        Files.writeString(manager.accessFile("t3/f3"), "123");
+        RootStorageManager.deleteRecursive(path.resolve("t2"));
+
+        RootStorageManager loaded = new RootStorageManager(new MockFileSystem(path, 100000L), path, 0.5, 0.4, 1, true);
+        loaded.initialLoad();
+        Assertions.assertEquals(Set.of("t1", "t3"), loaded.inUseMap.keySet());
+        loaded.flushIndex();
+        long markerSize = Files.size(path.resolve("t3").resolve("cache.directory.marker"));
+        Assertions.assertEquals(3 + markerSize, loaded.index.size("t3"));
+        loaded.destroy();
+
+        //the fixed up index is used on the next start
+        RootStorageManager reloaded = new RootStorageManager(new MockFileSystem(path, 100000L), path, 0.5, 0.4, 1, true);
+        Assertions.assertEquals(Set.of("t1", "t3"), reloaded.index.load().keySet());
+        reloaded.destroy();
+
+        //after a clean shutdown the volume is not walked, so a directory the index does not know about is not found
+        Path cleanShutdown = path.resolve(DirectoryIndex.CLEAN_SHUTDOWN_FILE_NAME);
+        Assertions.assertTrue(Files.exists(cleanShutdown));
+        Files.createDirectories(path.resolve("t4"));
+        Files.copy(path.resolve("t3").resolve("cache.directory.marker"), path.resolve("t4").resolve("cache.directory.marker"));
+        RootStorageManager clean = new RootStorageManager(new MockFileSystem(path, 100000L), path, 0.5, 0.4, 1, true);
+        clean.initialLoad();
+        Assertions.assertEquals(Set.of("t1", "t3"), clean.inUseMap.keySet());
+        Assertions.assertFalse(Files.exists(cleanShutdown));
+
+        //that process did not shut down cleanly, so the next one reconciles the index
+        RootStorageManager crashed = new RootStorageManager(new MockFileSystem(path, 100000L), path, 0.5, 0.4, 1, true);
+        crashed.initialLoad();
+        Assertions.assertEquals(Set.of("t1", "t3", "t4"), crashed.inUseMap.keySet());
+        crashed.destroy();
+    }
+
+    @Test
+    public void testConcurrentAccessEviction() throws Exception {
+        for (var policy : List.of(EvictionPolicy.LRU, EvictionPolicy.SIZE_WEIGHTED_LRU, EvictionPolicy.TINY_LFU)) {
+            Path path = Files.createTempDirectory("test");
+            //200 directories with a 10 byte file and the marker use around 4600 bytes, which is over the high water mark
+            RootStorageManager manager = new RootStorageManager(new MockFileSystem(path, 6000L), path, 0.5, 0.0001, 10, false,
+                    EvictionPolicy.create(policy));
+            ExecutorService executor = Executors.newFixedThreadPool(4);
+            try {
+                List<Future<?>> tasks = new ArrayList<>();
+                for (var t = 0; t < 4; ++t) {
+                    int offset = t * 50;
+                    tasks.add(executor.submit(() -> {
+                        for (var i = 0; i < 1000; ++i) {
+                            Files.writeString(manager.accessFile("t" + ((i + offset) % 200) + "/f"), "1234567890");
+                        }
+                        return null;
+                    }));
+                }
+                for (var task : tasks) {
+                    task.get();
+                }
+            } finally {
+                executor.shutdown();
+            }
+            //the low water mark can't be reached, so every directory the policy knows about is deleted
+            manager.checkSpace();
+            Assertions.assertTrue(manager.inUseMap.isEmpty(), policy);
+            for (var i = 0; i < 200; ++i) {
+                Assertions.assertFalse(Files.exists(path.resolve("t" + i).resolve("f")), policy);
+            }
+            RootStorageManager.deleteRecursive(path);
+        }
+    }
+
     private static class MockFileSystem extends FileStore {
 
         final Path path;
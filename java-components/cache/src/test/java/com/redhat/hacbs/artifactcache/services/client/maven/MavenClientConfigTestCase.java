@@ -0,0 +1,33 @@
+package com.redhat.hacbs.artifactcache.services.client.maven;
+
+import java.util.Map;
+
+import org.eclipse.microprofile.config.Config;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import io.smallrye.config.PropertiesConfigSource;
+import io.smallrye.config.SmallRyeConfigBuilder;
+
+public class MavenClientConfigTestCase {
+
+    @Test
+    public void testConnectionsDefaultToWorkerThreads() {
+        Assertions.assertEquals(64, MavenClient.maxConnections(config(Map.of(MavenClient.MAX_WORKER_THREADS, "64"))));
+    }
+
+    @Test
+    public void testConnectionsOverride() {
+        Assertions.assertEquals(20, MavenClient.maxConnections(
+                config(Map.of(MavenClient.MAX_WORKER_THREADS, "64", MavenClient.MAX_CONNECTIONS, "20"))));
+    }
+
+    @Test
+    public void testConnectionsDefault() {
+        Assertions.assertEquals(MavenClient.DEFAULT_CONNECTIONS, MavenClient.maxConnections(config(Map.of())));
+    }
+
+    static Config config(Map<String, String> properties) {
+        return new SmallRyeConfigBuilder().withSources(new PropertiesConfigSource(properties, "test", 100)).build();
+    }
+}
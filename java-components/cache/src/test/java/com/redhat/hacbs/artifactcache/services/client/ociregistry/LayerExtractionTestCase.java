@@ -0,0 +1,198 @@
+package com.redhat.hacbs.artifactcache.services.client.ociregistry;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.google.cloud.tools.jib.api.DescriptorDigest;
+import com.google.cloud.tools.jib.image.json.OciManifestTemplate;
+import com.redhat.hacbs.artifactcache.services.ArtifactResult;
+import com.redhat.hacbs.artifactcache.services.RootStorageManager;
+import com.redhat.hacbs.common.images.ociclient.LayerExtractor;
+import com.redhat.hacbs.common.images.ociclient.LayerIndex;
+import com.redhat.hacbs.common.images.ociclient.LocalImage;
+
+public class LayerExtractionTestCase {
+
+    static final String POM = "com/acme/acme/1.0/acme-1.0.pom";
+    static final String JAR = "com/acme/acme/1.0/acme-1.0.jar";
+
+    @Test
+    public void testFilesServedBeforeExtractionCompletes() throws Exception {
+        Path temp = Files.createTempDirectory("layer-test");
+        try {
+            Path source = temp.resolve("source");
+            write(source, POM, "pom");
+            write(source, POM + ".sha1", "pom-sha");
+            write(source, JAR, "jar");
+            LayerIndex.write(source, source.resolve(LayerIndex.FILE_NAME));
+
+            CountDownLatch finish = new CountDownLatch(1);
+            TestImage image = new TestImage(source, finish);
+            Path output = Files.createDirectories(temp.resolve("digest")).resolve("artifacts");
+            LayerExtraction extraction = new LayerExtraction(output);
+            CompletableFuture<Void> run = CompletableFuture.runAsync(() -> extraction.run(image));
+
+            //the pom and its sha are available while the layer is still being extracted
+            try (ArtifactResult pom = extraction.open(POM).orElseThrow()) {
+                Assertions.assertEquals("pom", new String(pom.getData().readAllBytes(), StandardCharsets.UTF_8));
+                Assertions.assertEquals("pom-sha", pom.getExpectedSha().orElseThrow());
+            }
+            //the index says this is not in the layer
+            Assertions.assertTrue(extraction.open("com/acme/acme/1.0/acme-1.0-sources.jar").isEmpty());
+            Assertions.assertFalse(run.isDone());
+
+            //the jar has no sha in the index, so it does not need to wait for one
+            try (ArtifactResult jar = extraction.open(JAR).orElseThrow()) {
+                Assertions.assertTrue(jar.getExpectedSha().isEmpty());
+            }
+
+            finish.countDown();
+            run.get(10, TimeUnit.SECONDS);
+            Assertions.assertTrue(Files.exists(output.resolve(JAR)));
+            Assertions.assertTrue(extraction.open(POM).isPresent());
+        } finally {
+            RootStorageManager.deleteRecursive(temp);
+        }
+    }
+
+    @Test
+    public void testIndexInArtifactsDirectory() throws Exception {
+        Path temp = Files.createTempDirectory("layer-test");
+        try {
+            //Jib adds the artifacts directory itself to the layer
+            Path source = temp.resolve("source");
+            Path artifacts = source.resolve("artifacts");
+            write(artifacts, POM, "pom");
+            Path index = Files.createDirectories(temp.resolve("index")).resolve(LayerIndex.FILE_NAME);
+            LayerIndex.write(artifacts, index);
+            Assertions.assertFalse(Files.exists(artifacts.resolve(LayerIndex.FILE_NAME)));
+            Files.copy(index, artifacts.resolve(LayerIndex.FILE_NAME));
+
+            CountDownLatch finish = new CountDownLatch(1);
+            LayerExtraction extraction = new LayerExtraction(
+                    Files.createDirectories(temp.resolve("digest")).resolve("artifacts"));
+            CompletableFuture<Void> run = CompletableFuture.runAsync(() -> extraction.run(new TestImage(source, finish)));
+
+            Assertions.assertTrue(extraction.open("artifacts/" + POM).isPresent());
+            Assertions.assertTrue(extraction.open("artifacts/" + JAR).isEmpty());
+            Assertions.assertTrue(extraction.open(POM).isEmpty());
+            Assertions.assertFalse(run.isDone());
+            finish.countDown();
+            run.get(10, TimeUnit.SECONDS);
+        } finally {
+            RootStorageManager.deleteRecursive(temp);
+        }
+    }
+
+    @Test
+    public void testIndexPrefix() {
+        Assertions.assertEquals("", LayerExtraction.indexPrefix(LayerIndex.FILE_NAME));
+        Assertions.assertEquals("artifacts/", LayerExtraction.indexPrefix("artifacts/" + LayerIndex.FILE_NAME));
+        Assertions.assertNull(LayerExtraction.indexPrefix("com/acme/" + LayerIndex.FILE_NAME));
+        Assertions.assertNull(LayerExtraction.indexPrefix("com/acme/acme-1.0.pom"));
+    }
+
+    @Test
+    public void testWithoutIndex() throws Exception {
+        Path temp = Files.createTempDirectory("layer-test");
+        try {
+            Path source = temp.resolve("source");
+            write(source, POM, "pom");
+            CountDownLatch finish = new CountDownLatch(1);
+            TestImage image = new TestImage(source, finish);
+            LayerExtraction extraction = new LayerExtraction(
+                    Files.createDirectories(temp.resolve("digest")).resolve("artifacts"));
+            CompletableFuture.runAsync(() -> extraction.run(image));
+
+            //without an index misses have to wait for the whole layer
+            CompletableFuture<Boolean> missing = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return extraction.open(JAR).isPresent();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            Assertions.assertThrows(TimeoutException.class, () -> missing.get(200, TimeUnit.MILLISECONDS));
+            finish.countDown();
+            Assertions.assertFalse(missing.get(10, TimeUnit.SECONDS));
+        } finally {
+            RootStorageManager.deleteRecursive(temp);
+        }
+    }
+
+    static void write(Path root, String path, String contents) throws IOException {
+        Path file = root.resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, contents);
+    }
+
+    /**
+     * Copies the files in sorted order like a layer would contain them, then waits before finishing
+     */
+    static class TestImage implements LocalImage {
+        final Path source;
+        final CountDownLatch finish;
+
+        TestImage(Path source, CountDownLatch finish) {
+            this.source = source;
+            this.finish = finish;
+        }
+
+        @Override
+        public void pullLayer(int layer, Path outputPath, LayerExtractor.EntryListener entryListener) throws IOException {
+            try (var files = Files.walk(source)) {
+                for (var file : files.filter(Files::isRegularFile).sorted().toList()) {
+                    String name = source.relativize(file).toString();
+                    write(outputPath, name, Files.readString(file));
+                    entryListener.entryExtracted(name);
+                }
+            }
+            try {
+                finish.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public int getLayerCount() {
+            return 1;
+        }
+
+        @Override
+        public OciManifestTemplate getManifest() {
+            return null;
+        }
+
+        @Override
+        public DescriptorDigest getDescriptorDigest() {
+            return null;
+        }
+
+        @Override
+        public String getDigestHash() {
+            return "digest";
+        }
+
+        @Override
+        public void pullLayer(int layer, Path target) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void pullLayer(int layer, Path outputPath, Consumer<Long> blobSizeListener,
+                Consumer<Long> writtenByteCountListener) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.redhat.hacbs.artifactcache.services.eviction;
+
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class EvictionPolicyTestCase {
+
+    @Test
+    public void testLru() {
+        EvictionPolicy policy = EvictionPolicy.create(EvictionPolicy.LRU);
+        policy.loaded("old", 10);
+        policy.accessed("a");
+        policy.accessed("b");
+        policy.accessed("c");
+        policy.accessed("a");
+        Assertions.assertEquals(List.of("old", "b", "c", "a"), policy.victims(10, Set.of()));
+        Assertions.assertEquals(List.of("c"), policy.victims(1, Set.of("old", "b")));
+        policy.evicted("old");
+        policy.removed("b");
+        Assertions.assertEquals(List.of("c", "a"), policy.victims(10, Set.of()));
+    }
+
+    @Test
+    public void testSizeWeighted() {
+        EvictionPolicy policy = EvictionPolicy.create(EvictionPolicy.SIZE_WEIGHTED_LRU);
+        policy.accessed("big");
+        policy.accessed("small");
+        policy.sized("big", 1000000);
+        policy.sized("small", 1000);
+        //the big entry is evicted first, even though it is older
+        Assertions.assertEquals(List.of("big", "small"), policy.victims(10, Set.of()));
+        policy.accessed("big");
+        policy.accessed("big");
+        Assertions.assertEquals(List.of("big", "small"), policy.victims(10, Set.of()));
+        policy.evicted("big");
+        //evicting increases the base priority, so newer entries of the same size are kept over older ones
+        policy.accessed("new");
+        policy.sized("new", 1000000);
+        policy.accessed("other");
+        policy.sized("other", 1000);
+        Assertions.assertEquals(List.of("new", "small", "other"), policy.victims(10, Set.of()));
+    }
+
+    @Test
+    public void testTinyLfu() {
+        EvictionPolicy policy = EvictionPolicy.create(EvictionPolicy.TINY_LFU);
+        for (var i = 0; i < 10; ++i) {
+            policy.loaded("existing" + i, 10);
+        }
+        //the hot entry is used a lot, but not recently
+        for (var i = 0; i < 5; ++i) {
+            policy.accessed("hot");
+        }
+        for (var i = 0; i < 5; ++i) {
+            policy.accessed("oneoff" + i);
+        }
+        //accessing it after it has left the window promotes it to the protected segment
+        policy.accessed("hot");
+        policy.accessed("oneoff5");
+        List<String> victims = policy.victims(100, Set.of());
+        Assertions.assertEquals(17, victims.size());
+        Assertions.assertEquals(List.of("existing0", "existing1"), victims.subList(0, 2));
+        Assertions.assertEquals(16, victims.indexOf("hot"));
+        policy.removed("hot");
+        Assertions.assertFalse(policy.victims(100, Set.of()).contains("hot"));
+    }
+}
@@ -4,16 +4,26 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.function.BiConsumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
@@ -22,6 +32,9 @@ import java.util.zip.ZipOutputStream;
 
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
 import org.objectweb.asm.Attribute;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassWriter;
@@ -31,6 +44,11 @@ public class ClassFileTracker {
 
     public static final Logger LOGGER = Logger.getLogger("dependency-analyser");
 
+    /**
+     * The number of entries per thread that can be read ahead of the writer when rewriting jars in parallel.
+     */
+    static final int MAX_PENDING_PER_THREAD = 16;
+
     public static byte[] addTrackingDataToClass(byte[] classData, TrackingData data, String name, boolean overwrite) {
         try {
             ClassReader classReader = new ClassReader(classData);
@@ -64,6 +82,21 @@ public class ClassFileTracker {
 
     public static TrackingData readTrackingInformationFromClass(byte[] classData,
             BiConsumer<String, byte[]> untrackedClassesListener) {
+        try {
+            TrackingAttributeScanner scanner = new TrackingAttributeScanner(classData);
+            TrackingData data = scanner.readTrackingData();
+            if (data == null && untrackedClassesListener != null) {
+                untrackedClassesListener.accept(scanner.getClassName(), classData);
+            }
+            return data;
+        } catch (TrackingAttributeScanner.MalformedClassException e) {
+            LOGGER.log(Level.FINE, "Falling back to ASM to read tracking data", e);
+        }
+        return readTrackingInformationFromClassWithAsm(classData, untrackedClassesListener);
+    }
+
+    static TrackingData readTrackingInformationFromClassWithAsm(byte[] classData,
+            BiConsumer<String, byte[]> untrackedClassesListener) {
         ClassReader classReader = new ClassReader(classData);
         ClassTrackingReadDataVisitor classTrackingVisitor = new ClassTrackingReadDataVisitor(Opcodes.ASM9);
         classReader.accept(classTrackingVisitor, new Attribute[] { new ClassFileSourceAttribute(null) }, 0);
@@ -81,50 +114,301 @@ public class ClassFileTracker {
 
     public static void addTrackingDataToJar(InputStream input, TrackingData data, OutputStream out, boolean overwrite)
             throws IOException, ZipException {
+        addTrackingDataToJar(input, data, out, overwrite, null);
+    }
+
+    /**
+     * Adds tracking data to every class in the jar.
+     * <p>
+     * If a pool is provided the class rewrites are fanned out across it, while the archive itself is still read and
+     * written in a single pass. Entries are always written in their original order, so the output is byte for byte
+     * identical to the serial version.
+     *
+     * @param pool The pool to use to rewrite classes, or null to rewrite them on the calling thread
+     */
+    public static void addTrackingDataToJar(InputStream input, TrackingData data, OutputStream out, boolean overwrite,
+            ForkJoinPool pool) throws IOException, ZipException {
+        addTrackingDataToJar(input, data, out, overwrite, pool, CompressionSettings.DEFAULT);
+    }
+
+    /**
+     * Adds tracking data to every class in the jar, compressing the rewritten entries using the provided settings.
+     * <p>
+     * This matches {@link #addTrackingDataToJar(Path, TrackingData, OutputStream, boolean, ForkJoinPool, CompressionSettings)}
+     * for the rewritten entries. The other entries can't be copied in compressed form from a stream, so they are deflated
+     * again with the default settings.
+     *
+     * @param pool The pool to use to rewrite classes, or null to rewrite them on the calling thread
+     * @param compression The compression settings to use for rewritten entries
+     */
+    public static void addTrackingDataToJar(InputStream input, TrackingData data, OutputStream out, boolean overwrite,
+            ForkJoinPool pool, CompressionSettings compression) throws IOException, ZipException {
         Set<String> seen = new HashSet<>();
+        //entries that have been read but not yet written, this bounds the amount of data held in memory
+        Deque<PendingEntry> pending = new ArrayDeque<>();
+        int maxPending = pool == null ? 0 : pool.getParallelism() * MAX_PENDING_PER_THREAD;
         try (ZipInputStream zipIn = new ZipInputStream(input)) {
-            try (ZipOutputStream zipOut = new ZipOutputStream(out)) {
+            try (CompressingZipOutputStream zipOut = new CompressingZipOutputStream(out)) {
                 var entry = zipIn.getNextEntry();
                 while (entry != null) {
                     if (!seen.contains(entry.getName())) {
                         seen.add(entry.getName());
+                        PendingEntry result = null;
                         if (entry.getName().endsWith(".class")) {
-                            ZipEntry newEntry = new ZipEntry(entry.getName());
-                            if (entry.getLastAccessTime() != null) {
-                                newEntry.setLastAccessTime(entry.getLastAccessTime());
-                            }
-                            if (entry.getLastModifiedTime() != null) {
-                                newEntry.setLastModifiedTime(entry.getLastModifiedTime());
-                            }
-                            byte[] modified = addTrackingDataToClass(zipIn.readAllBytes(), data, entry.getName(), overwrite);
-                            newEntry.setSize(modified.length);
-                            zipOut.putNextEntry(newEntry);
-                            zipOut.write(modified);
+                            ZipEntry newEntry = copyTimes(entry, new ZipEntry(entry.getName()));
+                            byte[] classData = zipIn.readAllBytes();
+                            String name = entry.getName();
+                            result = new PendingEntry(newEntry, compression,
+                                    submit(pool, () -> addTrackingDataToClass(classData, data, name, overwrite)));
                         } else if (entry.getName().endsWith(".jar")) {
-                            ZipEntry newEntry = new ZipEntry(entry.getName());
-                            if (entry.getLastAccessTime() != null) {
-                                newEntry.setLastAccessTime(entry.getLastAccessTime());
-                            }
-                            if (entry.getLastModifiedTime() != null) {
-                                newEntry.setLastModifiedTime(entry.getLastModifiedTime());
-                            }
-                            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                            addTrackingDataToJar(new NoCloseInputStream(zipIn), data, baos, overwrite);
-                            byte[] modified = baos.toByteArray();
-                            newEntry.setSize(modified.length);
-                            zipOut.putNextEntry(newEntry);
-                            zipOut.write(modified);
+                            ZipEntry newEntry = copyTimes(entry, new ZipEntry(entry.getName()));
+                            byte[] jarData = zipIn.readAllBytes();
+                            //nested jars are rewritten serially, but different nested jars can be rewritten concurrently
+                            result = new PendingEntry(newEntry, compression, submit(pool, () -> {
+                                ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                                addTrackingDataToJar(new ByteArrayInputStream(jarData), data, baos, overwrite);
+                                return baos.toByteArray();
+                            }));
                         } else if (!isBlockOrSF(entry.getName())) {
-                            zipOut.putNextEntry(entry);
-                            zipOut.write(zipIn.readAllBytes());
+                            //reading the data will fill in the sizes, we want to write the entry as it was before this
+                            ZipEntry newEntry = new ZipEntry(entry);
+                            result = new PendingEntry(newEntry, null, CompletableFuture.completedFuture(zipIn.readAllBytes()));
+                        }
+                        if (result != null) {
+                            pending.add(result);
+                            while (pending.size() > maxPending) {
+                                pending.poll().write(zipOut);
+                            }
                         }
                     }
                     entry = zipIn.getNextEntry();
                 }
+                while (!pending.isEmpty()) {
+                    pending.poll().write(zipOut);
+                }
+            }
+        } finally {
+            for (var i : pending) {
+                i.data.cancel(false);
             }
         }
     }
 
+    /**
+     * Adds tracking data to every class in the jar file.
+     * <p>
+     * Unlike the stream based version this has random access to the source archive, so entries that do not need to be
+     * modified are copied to the output in their compressed form without being inflated and deflated again. Rewritten
+     * entries are compressed using the provided settings, and if a pool is provided this compression is done in parallel
+     * along with the class rewriting.
+     *
+     * @param pool The pool to use to rewrite classes, or null to rewrite them on the calling thread
+     * @param compression The compression settings to use for rewritten entries
+     */
+    public static void addTrackingDataToJar(Path input, TrackingData data, OutputStream out, boolean overwrite,
+            ForkJoinPool pool, CompressionSettings compression) throws IOException {
+        Set<String> seen = new HashSet<>();
+        Deque<PendingRawEntry> pending = new ArrayDeque<>();
+        int maxPending = pool == null ? 0 : pool.getParallelism() * MAX_PENDING_PER_THREAD;
+        try (ZipFile zipFile = ZipFile.builder().setPath(input).get()) {
+            try (ZipArchiveOutputStream zipOut = new ZipArchiveOutputStream(out)) {
+                var entries = zipFile.getEntriesInPhysicalOrder();
+                while (entries.hasMoreElements()) {
+                    var entry = entries.nextElement();
+                    if (!seen.add(entry.getName())) {
+                        continue;
+                    }
+                    PendingRawEntry result = null;
+                    if (entry.getName().endsWith(".class")) {
+                        ZipArchiveEntry newEntry = copyTimes(entry, new ZipArchiveEntry(entry.getName()));
+                        byte[] classData = readEntry(zipFile, entry);
+                        String name = entry.getName();
+                        result = new PendingRawEntry(newEntry, submit(pool, () -> compress(newEntry,
+                                addTrackingDataToClass(classData, data, name, overwrite), compression)));
+                    } else if (entry.getName().endsWith(".jar")) {
+                        ZipArchiveEntry newEntry = copyTimes(entry, new ZipArchiveEntry(entry.getName()));
+                        byte[] jarData = readEntry(zipFile, entry);
+                        result = new PendingRawEntry(newEntry, submit(pool, () -> {
+                            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                            addTrackingDataToJar(new ByteArrayInputStream(jarData), data, baos, overwrite);
+                            return compress(newEntry, baos.toByteArray(), compression);
+                        }));
+                    } else if (!isBlockOrSF(entry.getName())) {
+                        //copied as is, without decompressing it
+                        result = new PendingRawEntry(entry, null);
+                    }
+                    if (result != null) {
+                        pending.add(result);
+                        while (pending.size() > maxPending) {
+                            pending.poll().write(zipFile, zipOut);
+                        }
+                    }
+                }
+                while (!pending.isEmpty()) {
+                    pending.poll().write(zipFile, zipOut);
+                }
+            }
+        } finally {
+            for (var i : pending) {
+                if (i.data != null) {
+                    i.data.cancel(false);
+                }
+            }
+        }
+    }
+
+    private static byte[] readEntry(ZipFile zipFile, ZipArchiveEntry entry) throws IOException {
+        try (var in = zipFile.getInputStream(entry)) {
+            return in.readAllBytes();
+        }
+    }
+
+    /**
+     * Compresses the data according to the settings, and sets the size, crc and method on the entry so it can be added as a
+     * raw entry.
+     */
+    static byte[] compress(ZipArchiveEntry entry, byte[] data, CompressionSettings compression) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        entry.setSize(data.length);
+        entry.setCrc(crc.getValue());
+        if (compression.level() == Deflater.NO_COMPRESSION) {
+            entry.setMethod(ZipEntry.STORED);
+            entry.setCompressedSize(data.length);
+            return data;
+        }
+        Deflater deflater = new Deflater(compression.level(), true);
+        try {
+            deflater.setStrategy(compression.strategy().deflaterStrategy);
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 64);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int count = deflater.deflate(buffer);
+                out.write(buffer, 0, count);
+            }
+            entry.setMethod(ZipEntry.DEFLATED);
+            entry.setCompressedSize(out.size());
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static ZipArchiveEntry copyTimes(ZipArchiveEntry from, ZipArchiveEntry to) {
+        if (from.getLastAccessTime() != null) {
+            to.setLastAccessTime(from.getLastAccessTime());
+        }
+        if (from.getLastModifiedTime() != null) {
+            to.setLastModifiedTime(from.getLastModifiedTime());
+        }
+        return to;
+    }
+
+    private static ZipEntry copyTimes(ZipEntry from, ZipEntry to) {
+        if (from.getLastAccessTime() != null) {
+            to.setLastAccessTime(from.getLastAccessTime());
+        }
+        if (from.getLastModifiedTime() != null) {
+            to.setLastModifiedTime(from.getLastModifiedTime());
+        }
+        return to;
+    }
+
+    private static Future<byte[]> submit(ForkJoinPool pool, Callable<byte[]> task) throws IOException {
+        if (pool != null) {
+            return pool.submit(task);
+        }
+        try {
+            return CompletableFuture.completedFuture(task.call());
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * A zip output stream where the compression can be changed between entries.
+     */
+    private static final class CompressingZipOutputStream extends ZipOutputStream {
+
+        CompressingZipOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        void setCompression(CompressionSettings compression) {
+            setLevel(compression.level());
+            def.setStrategy(compression.strategy().deflaterStrategy);
+        }
+    }
+
+    /**
+     * An entry that has been read from the source jar, but may still be in the process of being rewritten.
+     *
+     * @param compression The compression for a rewritten entry, or null if the entry is written as it was before
+     */
+    private record PendingEntry(ZipEntry entry, CompressionSettings compression, Future<byte[]> data) {
+
+        void write(CompressingZipOutputStream zipOut) throws IOException {
+            byte[] contents;
+            try {
+                contents = data.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted rewriting " + entry.getName());
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException io) {
+                    throw io;
+                }
+                throw new IOException("Failed to rewrite " + entry.getName(), e.getCause());
+            }
+            if (compression != null) {
+                entry.setSize(contents.length);
+                if (compression.level() == Deflater.NO_COMPRESSION) {
+                    CRC32 crc = new CRC32();
+                    crc.update(contents);
+                    entry.setMethod(ZipEntry.STORED);
+                    entry.setCompressedSize(contents.length);
+                    entry.setCrc(crc.getValue());
+                }
+            }
+            zipOut.setCompression(compression == null ? CompressionSettings.DEFAULT : compression);
+            zipOut.putNextEntry(entry);
+            zipOut.write(contents);
+        }
+    }
+
+    /**
+     * An entry that will be added to the output in compressed form. If there is no data the entry is copied from the source
+     * archive, otherwise the data is the compressed form of the rewritten entry.
+     */
+    private record PendingRawEntry(ZipArchiveEntry entry, Future<byte[]> data) {
+
+        void write(ZipFile zipFile, ZipArchiveOutputStream zipOut) throws IOException {
+            if (data == null) {
+                try (var in = zipFile.getRawInputStream(entry)) {
+                    zipOut.addRawArchiveEntry(entry, in);
+                }
+                return;
+            }
+            byte[] contents;
+            try {
+                contents = data.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted rewriting " + entry.getName());
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException io) {
+                    throw io;
+                }
+                throw new IOException("Failed to rewrite " + entry.getName(), e.getCause());
+            }
+            zipOut.addRawArchiveEntry(entry, new ByteArrayInputStream(contents));
+        }
+    }
+
     // same as the impl in sun.security.util.SignatureFileVerifier#isBlockOrSF()
     static boolean isBlockOrSF(final String s) {
         if (s == null) {
@@ -188,56 +472,110 @@ public class ClassFileTracker {
 
     public static Set<TrackingData> readTrackingDataFromFile(InputStream contents, String fileName,
             BiConsumer<String, byte[]> untrackedClassesListener) throws IOException {
-        if (fileName.endsWith(".class")) {
-            TrackingData data = readTrackingInformationFromClass(contents.readAllBytes(), untrackedClassesListener);
-            if (data != null) {
-                return Set.of(data);
-            }
-        } else if (fileName.endsWith(".jar")) {
-            return ClassFileTracker.readTrackingDataFromJar(contents, fileName, untrackedClassesListener);
-        } else if (fileName.endsWith(".tgz") || fileName.endsWith(".tar.gz")) {
-            try {
-                Set<TrackingData> ret = new HashSet<>();
-                GZIPInputStream inputStream = new GZIPInputStream(contents);
-                TarArchiveInputStream tarArchiveInputStream = new TarArchiveInputStream(inputStream);
-                for (TarArchiveEntry entry = tarArchiveInputStream
-                        .getNextEntry(); entry != null; entry = tarArchiveInputStream.getNextEntry()) {
-                    ret.addAll(readTrackingDataFromFile(new NoCloseInputStream(tarArchiveInputStream), entry.getName(),
-                            untrackedClassesListener));
+        TrackedFileType type = TrackedFileType.forFileName(fileName);
+        if (type == null) {
+            return Collections.emptySet();
+        }
+        switch (type) {
+            case CLASS -> {
+                TrackingData data = readTrackingInformationFromClass(contents.readAllBytes(), untrackedClassesListener);
+                if (data != null) {
+                    return Set.of(data);
                 }
-                return ret;
-            } catch (Exception e) {
-                //we don't fail on archives
-                LOGGER.log(Level.SEVERE, "Failed to analyse archive " + fileName, e);
             }
-        } else if (fileName.endsWith(".tar")) {
-            try {
-                Set<TrackingData> ret = new HashSet<>();
-                TarArchiveInputStream tarArchiveInputStream = new TarArchiveInputStream(contents);
-                for (TarArchiveEntry entry = tarArchiveInputStream
-                        .getNextEntry(); entry != null; entry = tarArchiveInputStream.getNextEntry()) {
-                    ret.addAll(readTrackingDataFromFile(new NoCloseInputStream(tarArchiveInputStream), entry.getName(),
-                            untrackedClassesListener));
+            case JAR -> {
+                return ClassFileTracker.readTrackingDataFromJar(contents, fileName, untrackedClassesListener);
+            }
+            case GZIPPED_TAR -> {
+                try {
+                    Set<TrackingData> ret = new HashSet<>();
+                    GZIPInputStream inputStream = new GZIPInputStream(contents);
+                    TarArchiveInputStream tarArchiveInputStream = new TarArchiveInputStream(inputStream);
+                    for (TarArchiveEntry entry = tarArchiveInputStream
+                            .getNextEntry(); entry != null; entry = tarArchiveInputStream.getNextEntry()) {
+                        ret.addAll(readTrackingDataFromFile(new NoCloseInputStream(tarArchiveInputStream), entry.getName(),
+                                untrackedClassesListener));
+                    }
+                    return ret;
+                } catch (Exception e) {
+                    //we don't fail on archives
+                    LOGGER.log(Level.SEVERE, "Failed to analyse archive " + fileName, e);
                 }
-                return ret;
-            } catch (Exception e) {
-                //we don't fail on archives
-                LOGGER.log(Level.SEVERE, "Failed to analyse archive " + fileName, e);
             }
-        } else if (fileName.endsWith(".zip")) {
-            try {
-                Set<TrackingData> ret = new HashSet<>();
-                ZipInputStream tarArchiveInputStream = new ZipInputStream(contents);
-                for (var entry = tarArchiveInputStream
-                        .getNextEntry(); entry != null; entry = tarArchiveInputStream.getNextEntry()) {
-                    ret.addAll(readTrackingDataFromFile(new NoCloseInputStream(tarArchiveInputStream), entry.getName(),
-                            untrackedClassesListener));
+            case TAR -> {
+                try {
+                    Set<TrackingData> ret = new HashSet<>();
+                    TarArchiveInputStream tarArchiveInputStream = new TarArchiveInputStream(contents);
+                    for (TarArchiveEntry entry = tarArchiveInputStream
+                            .getNextEntry(); entry != null; entry = tarArchiveInputStream.getNextEntry()) {
+                        ret.addAll(readTrackingDataFromFile(new NoCloseInputStream(tarArchiveInputStream), entry.getName(),
+                                untrackedClassesListener));
+                    }
+                    return ret;
+                } catch (Exception e) {
+                    //we don't fail on archives
+                    LOGGER.log(Level.SEVERE, "Failed to analyse archive " + fileName, e);
+                }
+            }
+            case ZIP -> {
+                try {
+                    Set<TrackingData> ret = new HashSet<>();
+                    ZipInputStream tarArchiveInputStream = new ZipInputStream(contents);
+                    for (var entry = tarArchiveInputStream
+                            .getNextEntry(); entry != null; entry = tarArchiveInputStream.getNextEntry()) {
+                        ret.addAll(readTrackingDataFromFile(new NoCloseInputStream(tarArchiveInputStream), entry.getName(),
+                                untrackedClassesListener));
+                    }
+                    return ret;
+                } catch (Exception e) {
+                    LOGGER.log(Level.SEVERE, "Failed to analyse archive " + fileName, e);
                 }
-                return ret;
-            } catch (Exception e) {
-                LOGGER.log(Level.SEVERE, "Failed to analyse archive " + fileName, e);
             }
         }
         return Collections.emptySet();
     }
+
+    /**
+     * @return true if {@link #readTrackingDataFromFile(InputStream, String)} can find tracking data in a file with this
+     *         name, so callers can skip reading any other file
+     */
+    public static boolean isTrackedFile(String fileName) {
+        return TrackedFileType.forFileName(fileName) != null;
+    }
+
+    /**
+     * @return true if the file is an archive that {@link #readTrackingDataFromFile(InputStream, String)} looks inside
+     */
+    public static boolean isTrackedArchive(String fileName) {
+        TrackedFileType type = TrackedFileType.forFileName(fileName);
+        return type != null && type != TrackedFileType.CLASS;
+    }
+
+    /**
+     * The kinds of file {@link #readTrackingDataFromFile(InputStream, String)} reads, by file name suffix
+     */
+    private enum TrackedFileType {
+        CLASS(".class"),
+        JAR(".jar"),
+        GZIPPED_TAR(".tgz", ".tar.gz"),
+        TAR(".tar"),
+        ZIP(".zip");
+
+        private final String[] suffixes;
+
+        TrackedFileType(String... suffixes) {
+            this.suffixes = suffixes;
+        }
+
+        static TrackedFileType forFileName(String fileName) {
+            for (TrackedFileType type : values()) {
+                for (String suffix : type.suffixes) {
+                    if (fileName.endsWith(suffix)) {
+                        return type;
+                    }
+                }
+            }
+            return null;
+        }
+    }
 }
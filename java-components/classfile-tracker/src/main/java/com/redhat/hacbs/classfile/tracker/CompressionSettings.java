@@ -0,0 +1,37 @@
+package com.redhat.hacbs.classfile.tracker;
+
+import java.util.zip.Deflater;
+
+/**
+ * The compression settings used for entries that are rewritten when adding tracking data to a jar.
+ *
+ * @param level The deflate level, from {@link Deflater#NO_COMPRESSION} to {@link Deflater#BEST_COMPRESSION}. If this is
+ *        {@link Deflater#NO_COMPRESSION} entries are stored rather than deflated.
+ * @param strategy The deflate strategy
+ */
+public record CompressionSettings(int level, Strategy strategy) {
+
+    public static final CompressionSettings DEFAULT = new CompressionSettings(Deflater.DEFAULT_COMPRESSION,
+            Strategy.DEFAULT);
+
+    public CompressionSettings {
+        if (level != Deflater.DEFAULT_COMPRESSION && (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION)) {
+            throw new IllegalArgumentException("Invalid compression level " + level);
+        }
+        if (strategy == null) {
+            throw new IllegalArgumentException("Compression strategy must not be null");
+        }
+    }
+
+    public enum Strategy {
+        DEFAULT(Deflater.DEFAULT_STRATEGY),
+        FILTERED(Deflater.FILTERED),
+        HUFFMAN_ONLY(Deflater.HUFFMAN_ONLY);
+
+        final int deflaterStrategy;
+
+        Strategy(int deflaterStrategy) {
+            this.deflaterStrategy = deflaterStrategy;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.redhat.hacbs.classfile.tracker;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads the {@link ClassFileSourceAttribute} from a class file without parsing the rest of the class.
+ * <p>
+ * This walks the constant pool to find the attribute name and the class name, and then skips over the fields and
+ * methods using their attribute lengths to get to the class attributes. Nothing is allocated apart from the constant pool
+ * offsets and the result. If the class file is malformed this throws {@link MalformedClassException}, and the caller
+ * should fall back to ASM.
+ */
+final class TrackingAttributeScanner {
+
+    private static final int MAGIC = 0xCAFEBABE;
+    private static final byte[] ATTRIBUTE_NAME = ClassFileSourceAttribute.ATTRIBUTE_NAME
+            .getBytes(StandardCharsets.UTF_8);
+
+    private final byte[] data;
+    private final int[] constantPool;
+    private final int thisClass;
+    private final int attributeName;
+    private final int attributesOffset;
+
+    TrackingAttributeScanner(byte[] data) {
+        this.data = data;
+        try {
+            if (readInt(0) != MAGIC) {
+                throw new MalformedClassException("Not a class file");
+            }
+            int count = readUnsignedShort(8);
+            constantPool = new int[count];
+            int attributeName = 0;
+            int offset = 10;
+            for (int i = 1; i < count; ++i) {
+                constantPool[i] = offset;
+                int tag = data[offset];
+                switch (tag) {
+                    case 1: //Utf8
+                        int length = readUnsignedShort(offset + 1);
+                        if (attributeName == 0 && matches(offset + 3, length, ATTRIBUTE_NAME)) {
+                            attributeName = i;
+                        }
+                        offset += 3 + length;
+                        break;
+                    case 3: //Integer
+                    case 4: //Float
+                    case 9: //Fieldref
+                    case 10: //Methodref
+                    case 11: //InterfaceMethodref
+                    case 12: //NameAndType
+                    case 17: //Dynamic
+                    case 18: //InvokeDynamic
+                        offset += 5;
+                        break;
+                    case 5: //Long
+                    case 6: //Double
+                        offset += 9;
+                        ++i;
+                        break;
+                    case 7: //Class
+                    case 8: //String
+                    case 16: //MethodType
+                    case 19: //Module
+                    case 20: //Package
+                        offset += 3;
+                        break;
+                    case 15: //MethodHandle
+                        offset += 4;
+                        break;
+                    default:
+                        throw new MalformedClassException("Unknown constant pool tag " + tag);
+                }
+            }
+            this.attributeName = attributeName;
+            thisClass = readUnsignedShort(offset + 2);
+            offset += 6;
+            offset += 2 + readUnsignedShort(offset) * 2; //interfaces
+            offset = skipMembers(offset); //fields
+            offset = skipMembers(offset); //methods
+            attributesOffset = offset;
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new MalformedClassException("Truncated class file", e);
+        }
+    }
+
+    /**
+     * @return The tracking data, or null if the class is not tracked
+     */
+    TrackingData readTrackingData() {
+        if (attributeName == 0) {
+            return null;
+        }
+        try {
+            int count = readUnsignedShort(attributesOffset);
+            int offset = attributesOffset + 2;
+            for (int i = 0; i < count; ++i) {
+                int length = readInt(offset + 2);
+                if (readUnsignedShort(offset) == attributeName) {
+                    return readAttribute(offset + 6, offset + 6 + length);
+                }
+                offset += 6 + length;
+            }
+            return null;
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new MalformedClassException("Truncated class file", e);
+        }
+    }
+
+    /**
+     * @return The internal name of the class
+     */
+    String getClassName() {
+        try {
+            int utf8 = constantPool[readUnsignedShort(constantPool[thisClass] + 1)];
+            return readModifiedUtf8(utf8 + 3, readUnsignedShort(utf8 + 1));
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new MalformedClassException("Truncated class file", e);
+        }
+    }
+
+    private TrackingData readAttribute(int offset, int end) {
+        int version = data[offset++];
+        if (version != ClassFileSourceAttribute.VERSION) {
+            throw new MalformedClassException("Unknown version " + version);
+        }
+        String gav = readString(offset, end);
+        offset += 4 + Math.max(0, readInt(offset));
+        String source = readString(offset, end);
+        offset += 4 + Math.max(0, readInt(offset));
+        int attributeCount = readInt(offset);
+        offset += 4;
+        Map<String, String> attributes = new HashMap<>();
+        for (int i = 0; i < attributeCount; ++i) {
+            String key = readString(offset, end);
+            offset += 4 + Math.max(0, readInt(offset));
+            String val = readString(offset, end);
+            offset += 4 + Math.max(0, readInt(offset));
+            attributes.put(key, val);
+        }
+        return new TrackingData(gav, source, attributes);
+    }
+
+    private String readString(int offset, int end) {
+        int length = readInt(offset);
+        if (length <= 0) {
+            return null;
+        }
+        if (offset + 4 + length > end) {
+            throw new MalformedClassException("Attribute string overflows the attribute");
+        }
+        return new String(data, offset + 4, length, StandardCharsets.UTF_8);
+    }
+
+    private int skipMembers(int offset) {
+        int count = readUnsignedShort(offset);
+        offset += 2;
+        for (int i = 0; i < count; ++i) {
+            int attributes = readUnsignedShort(offset + 6);
+            offset += 8;
+            for (int j = 0; j < attributes; ++j) {
+                offset += 6 + readInt(offset + 2);
+            }
+        }
+        return offset;
+    }
+
+    private boolean matches(int offset, int length, byte[] expected) {
+        if (length != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < length; ++i) {
+            if (data[offset + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String readModifiedUtf8(int offset, int length) {
+        char[] chars = new char[length];
+        int end = offset + length;
+        int count = 0;
+        while (offset < end) {
+            int c = data[offset++] & 0xFF;
+            if (c < 0x80) {
+                chars[count++] = (char) c;
+            } else if ((c & 0xE0) == 0xC0) {
+                chars[count++] = (char) (((c & 0x1F) << 6) | (data[offset++] & 0x3F));
+            } else {
+                chars[count++] = (char) (((c & 0xF) << 12) | ((data[offset++] & 0x3F) << 6) | (data[offset++] & 0x3F));
+            }
+        }
+        return new String(chars, 0, count);
+    }
+
+    private int readUnsignedShort(int offset) {
+        return ((data[offset] & 0xFF) << 8) | (data[offset + 1] & 0xFF);
+    }
+
+    private int readInt(int offset) {
+        return ((data[offset] & 0xFF) << 24) | ((data[offset + 1] & 0xFF) << 16) | ((data[offset + 2] & 0xFF) << 8)
+                | (data[offset + 3] & 0xFF);
+    }
+
+    static final class MalformedClassException extends RuntimeException {
+        MalformedClassException(String message) {
+            super(message);
+        }
+
+        MalformedClassException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+}
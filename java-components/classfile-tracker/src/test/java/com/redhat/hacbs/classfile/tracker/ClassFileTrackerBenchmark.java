@@ -0,0 +1,81 @@
+package com.redhat.hacbs.classfile.tracker;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Simple throughput comparison of the serial, parallel and raw copy jar rewriting modes.
+ * <p>
+ * This is not run as part of the test suite, run it with a path to a large jar (e.g. scala-library or kotlin-compiler)
+ * as the first argument, otherwise a small synthetic jar is used.
+ */
+public class ClassFileTrackerBenchmark {
+
+    static final TrackingData DATA = new TrackingData("com.acme:acme:1.0", "central", Map.of());
+
+    public static void main(String[] args) throws Exception {
+        byte[] jar = args.length > 0 ? Files.readAllBytes(Path.of(args[0]))
+                : ClassTrackingModificationTestCase.createTestJar();
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+
+        byte[] serial = run(jar, null);
+        byte[] parallel = run(jar, pool);
+        if (!Arrays.equals(serial, parallel)) {
+            throw new IllegalStateException("Parallel output does not match serial output");
+        }
+        //warm up
+        for (int i = 0; i < iterations; ++i) {
+            run(jar, null);
+            run(jar, pool);
+        }
+        report("serial", jar, iterations, null);
+        report("parallel (" + pool.getParallelism() + " threads)", jar, iterations, pool);
+
+        Path file = Files.createTempFile("benchmark", ".jar");
+        try {
+            Files.write(file, jar);
+            for (int i = 0; i < iterations; ++i) {
+                runRaw(file, pool);
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; ++i) {
+                runRaw(file, pool);
+            }
+            print("raw copy (" + pool.getParallelism() + " threads)", jar, iterations, System.nanoTime() - start);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    static void report(String mode, byte[] jar, int iterations, ForkJoinPool pool) throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; ++i) {
+            run(jar, pool);
+        }
+        print(mode, jar, iterations, System.nanoTime() - start);
+    }
+
+    static void print(String mode, byte[] jar, int iterations, long nanos) {
+        double seconds = nanos / 1_000_000_000d;
+        System.out.printf("%s: %.1f ms/jar, %.1f MB/s%n", mode, seconds * 1000 / iterations,
+                jar.length * (double) iterations / seconds / (1024 * 1024));
+    }
+
+    static byte[] runRaw(Path jar, ForkJoinPool pool) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ClassFileTracker.addTrackingDataToJar(jar, DATA, out, false, pool, CompressionSettings.DEFAULT);
+        return out.toByteArray();
+    }
+
+    static byte[] run(byte[] jar, ForkJoinPool pool) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ClassFileTracker.addTrackingDataToJar(new ByteArrayInputStream(jar), DATA, out, false, pool);
+        return out.toByteArray();
+    }
+}
@@ -1,9 +1,21 @@
 package com.redhat.hacbs.classfile.tracker;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 import java.util.jar.JarEntry;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
 import org.junit.jupiter.api.Assertions;
@@ -29,6 +41,26 @@ public class ClassTrackingModificationTestCase {
         Assertions.assertEquals(CHANGED_DATA, ClassFileTracker.readTrackingInformationFromClass(results));
     }
 
+    @Test
+    public void testAttributeScannerMatchesAsm() throws Exception {
+        for (var clazz : List.of(getClass(), TrackingData.class, ClassFileTracker.class, TrackingAttributeScanner.class)) {
+            byte[] classData = clazz.getResourceAsStream(clazz.getSimpleName() + ".class").readAllBytes();
+            Assertions.assertNull(new TrackingAttributeScanner(classData).readTrackingData());
+            Assertions.assertEquals(clazz.getName().replace('.', '/'), new TrackingAttributeScanner(classData).getClassName());
+            byte[] tracked = ClassFileTracker.addTrackingDataToClass(classData, DATA, "test", true);
+            TrackingAttributeScanner scanner = new TrackingAttributeScanner(tracked);
+            Assertions.assertEquals(DATA, scanner.readTrackingData());
+            Assertions.assertEquals(ClassFileTracker.readTrackingInformationFromClassWithAsm(tracked, null),
+                    scanner.readTrackingData());
+            Assertions.assertEquals(clazz.getName().replace('.', '/'), scanner.getClassName());
+        }
+        //truncated classes are rejected, so the caller can fall back to ASM
+        byte[] thisClass = getClass().getResourceAsStream(getClass().getSimpleName() + ".class").readAllBytes();
+        byte[] truncated = Arrays.copyOf(thisClass, thisClass.length / 2);
+        Assertions.assertThrows(TrackingAttributeScanner.MalformedClassException.class,
+                () -> new TrackingAttributeScanner(truncated));
+    }
+
     @Test
     public void testBytecodeJarLevelTracking() throws Exception {
         byte[] thisClass = getClass().getResourceAsStream(getClass().getSimpleName() + ".class").readAllBytes();
@@ -41,4 +73,119 @@ public class ClassTrackingModificationTestCase {
         var results = ClassFileTracker.addTrackingDataToJar(out.toByteArray(), DATA, true);
         Assertions.assertEquals(Collections.singleton(DATA), ClassFileTracker.readTrackingDataFromJar(results, "test.jar"));
     }
+
+    @Test
+    public void testParallelJarTrackingIsIdentical() throws Exception {
+        byte[] jar = createTestJar();
+        ByteArrayOutputStream serial = new ByteArrayOutputStream();
+        ClassFileTracker.addTrackingDataToJar(new ByteArrayInputStream(jar), DATA, serial, true);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            ByteArrayOutputStream parallel = new ByteArrayOutputStream();
+            ClassFileTracker.addTrackingDataToJar(new ByteArrayInputStream(jar), DATA, parallel, true, pool);
+            Assertions.assertArrayEquals(serial.toByteArray(), parallel.toByteArray());
+        } finally {
+            pool.shutdown();
+        }
+        Assertions.assertEquals(Collections.singleton(DATA),
+                ClassFileTracker.readTrackingDataFromJar(serial.toByteArray(), "test.jar"));
+    }
+
+    @Test
+    public void testRawCopyJarTracking() throws Exception {
+        Path jar = Files.createTempFile("tracking", ".jar");
+        try {
+            byte[] original = createTestJar();
+            Files.write(jar, original);
+            ByteArrayOutputStream serial = new ByteArrayOutputStream();
+            ClassFileTracker.addTrackingDataToJar(jar, DATA, serial, true, null, CompressionSettings.DEFAULT);
+            ForkJoinPool pool = new ForkJoinPool(4);
+            try {
+                ByteArrayOutputStream parallel = new ByteArrayOutputStream();
+                ClassFileTracker.addTrackingDataToJar(jar, DATA, parallel, true, pool, CompressionSettings.DEFAULT);
+                Assertions.assertArrayEquals(serial.toByteArray(), parallel.toByteArray());
+            } finally {
+                pool.shutdown();
+            }
+            Assertions.assertEquals(Collections.singleton(DATA),
+                    ClassFileTracker.readTrackingDataFromJar(serial.toByteArray(), "test.jar"));
+            //the stream based version should produce the same entries
+            Assertions.assertEquals(readEntries(ClassFileTracker.addTrackingDataToJar(original, DATA, true)),
+                    readEntries(serial.toByteArray()));
+
+            ByteArrayOutputStream stored = new ByteArrayOutputStream();
+            ClassFileTracker.addTrackingDataToJar(jar, DATA, stored, true, null,
+                    new CompressionSettings(Deflater.NO_COMPRESSION, CompressionSettings.Strategy.DEFAULT));
+            Assertions.assertEquals(readEntries(serial.toByteArray()), readEntries(stored.toByteArray()));
+            try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(stored.toByteArray()))) {
+                for (var entry = in.getNextEntry(); entry != null; entry = in.getNextEntry()) {
+                    if (entry.getName().endsWith(".class")) {
+                        Assertions.assertEquals(ZipEntry.STORED, entry.getMethod());
+                    }
+                }
+            }
+        } finally {
+            Files.delete(jar);
+        }
+    }
+
+    @Test
+    public void testStreamJarTrackingCompression() throws Exception {
+        byte[] original = createTestJar();
+        byte[] deflated = ClassFileTracker.addTrackingDataToJar(original, DATA, true);
+        ByteArrayOutputStream stored = new ByteArrayOutputStream();
+        ClassFileTracker.addTrackingDataToJar(new ByteArrayInputStream(original), DATA, stored, true, null,
+                new CompressionSettings(Deflater.NO_COMPRESSION, CompressionSettings.Strategy.DEFAULT));
+        Assertions.assertEquals(readEntries(deflated), readEntries(stored.toByteArray()));
+        try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(stored.toByteArray()))) {
+            for (var entry = in.getNextEntry(); entry != null; entry = in.getNextEntry()) {
+                if (entry.getName().endsWith(".class")) {
+                    Assertions.assertEquals(ZipEntry.STORED, entry.getMethod());
+                }
+            }
+        }
+    }
+
+    static Map<String, String> readEntries(byte[] jar) throws Exception {
+        Map<String, String> ret = new LinkedHashMap<>();
+        try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(jar))) {
+            for (var entry = in.getNextEntry(); entry != null; entry = in.getNextEntry()) {
+                ret.put(entry.getName(), Base64.getEncoder().encodeToString(in.readAllBytes()));
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Creates a jar with a mix of classes, resources and a nested jar.
+     */
+    static byte[] createTestJar() throws Exception {
+        ByteArrayOutputStream nested = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(nested)) {
+            addClass(zip, ClassFileTracker.class);
+            zip.putNextEntry(new JarEntry("nested.txt"));
+            zip.write("nested".getBytes(StandardCharsets.UTF_8));
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(out)) {
+            zip.putNextEntry(new JarEntry("META-INF/MANIFEST.MF"));
+            zip.write("Manifest-Version: 1.0\n".getBytes(StandardCharsets.UTF_8));
+            for (var i : List.of(ClassTrackingModificationTestCase.class, TrackingData.class, HashingOutputStream.class,
+                    NoCloseInputStream.class, ClassFileSourceAttribute.class, ClassTrackingWriteDataVisitor.class)) {
+                addClass(zip, i);
+            }
+            zip.putNextEntry(new JarEntry("lib/nested.jar"));
+            zip.write(nested.toByteArray());
+            zip.putNextEntry(new JarEntry("META-INF/TEST.SF"));
+            zip.write("signature".getBytes(StandardCharsets.UTF_8));
+        }
+        return out.toByteArray();
+    }
+
+    static void addClass(ZipOutputStream zip, Class<?> clazz) throws Exception {
+        zip.putNextEntry(new JarEntry(clazz.getName().replace(".", "/") + ".class"));
+        try (var in = clazz.getResourceAsStream(clazz.getSimpleName() + ".class")) {
+            zip.write(in.readAllBytes());
+        }
+    }
 }
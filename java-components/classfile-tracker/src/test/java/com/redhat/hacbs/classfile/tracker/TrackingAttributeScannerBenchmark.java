@@ -0,0 +1,91 @@
+package com.redhat.hacbs.classfile.tracker;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Throughput comparison of {@link TrackingAttributeScanner} and the ASM visitor that it replaced.
+ * <p>
+ * This is not run as part of the test suite. Run it with the paths of some real jars as arguments, otherwise a small
+ * synthetic jar is used. Every class in the jars is read with both implementations, half of them with tracking data
+ * added, and the results are checked to be identical before timing.
+ */
+public class TrackingAttributeScannerBenchmark {
+
+    static final int ITERATIONS = 20;
+
+    public static void main(String[] args) throws Exception {
+        List<byte[]> classes = new ArrayList<>();
+        if (args.length == 0) {
+            readClasses(ClassTrackingModificationTestCase.createTestJar(), classes);
+        } else {
+            for (var jar : args) {
+                readClasses(Files.readAllBytes(Path.of(jar)), classes);
+            }
+        }
+        long bytes = 0;
+        for (int i = 0; i < classes.size(); ++i) {
+            if (i % 2 == 0) {
+                classes.set(i, ClassFileTracker.addTrackingDataToClass(classes.get(i),
+                        ClassTrackingModificationTestCase.DATA, "benchmark", true));
+            }
+            byte[] data = classes.get(i);
+            bytes += data.length;
+            if (!Objects.equals(ClassFileTracker.readTrackingInformationFromClassWithAsm(data, null),
+                    new TrackingAttributeScanner(data).readTrackingData())) {
+                throw new IllegalStateException("Scanner result does not match ASM for class " + i);
+            }
+        }
+        System.out.printf("%d classes, %.1f MB%n", classes.size(), bytes / (1024d * 1024));
+        //warm up
+        run(classes, true);
+        run(classes, false);
+        long asm = 0;
+        long scanner = 0;
+        for (int i = 0; i < ITERATIONS; ++i) {
+            asm += run(classes, true);
+            scanner += run(classes, false);
+        }
+        print("asm visitor", classes.size(), asm);
+        print("attribute scanner", classes.size(), scanner);
+        System.out.printf("speedup: %.1fx%n", asm / (double) scanner);
+    }
+
+    static long run(List<byte[]> classes, boolean asm) {
+        long start = System.nanoTime();
+        int tracked = 0;
+        for (var data : classes) {
+            if ((asm ? ClassFileTracker.readTrackingInformationFromClassWithAsm(data, null)
+                    : ClassFileTracker.readTrackingInformationFromClass(data)) != null) {
+                tracked++;
+            }
+        }
+        if (tracked != (classes.size() + 1) / 2) {
+            throw new IllegalStateException("Unexpected tracked class count " + tracked);
+        }
+        return System.nanoTime() - start;
+    }
+
+    static void print(String mode, int classes, long nanos) {
+        double seconds = nanos / 1_000_000_000d;
+        System.out.printf("%s: %.1f ms/iteration, %.0f classes/s%n", mode, seconds * 1000 / ITERATIONS,
+                classes * (double) ITERATIONS / seconds);
+    }
+
+    static void readClasses(byte[] jar, List<byte[]> classes) throws Exception {
+        try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(jar))) {
+            for (var entry = in.getNextEntry(); entry != null; entry = in.getNextEntry()) {
+                if (entry.getName().endsWith(".class")) {
+                    classes.add(in.readAllBytes());
+                } else if (entry.getName().endsWith(".jar")) {
+                    readClasses(in.readAllBytes(), classes);
+                }
+            }
+        }
+    }
+}
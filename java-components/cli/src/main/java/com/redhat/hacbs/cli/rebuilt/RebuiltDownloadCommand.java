@@ -29,6 +29,7 @@ import com.google.cloud.tools.jib.registry.ManifestAndDigest;
 import com.google.cloud.tools.jib.registry.RegistryClient;
 import com.google.cloud.tools.jib.registry.credentials.CredentialRetrievalException;
 import com.redhat.hacbs.cli.artifacts.GavCompleter;
+import com.redhat.hacbs.common.images.ociclient.LayerExtractor;
 import com.redhat.hacbs.resources.model.v1alpha1.RebuiltArtifact;
 import com.redhat.hacbs.resources.model.v1alpha1.RebuiltArtifactSpec;
 
@@ -62,6 +63,10 @@ public class RebuiltDownloadCommand
             "--download-type" }, description = "What to download (ALL, SOURCE or LOGS). Default: ${DEFAULT-VALUE}", defaultValue = "ALL")
     DownloadSelection selection = DownloadSelection.ALL;
 
+    @CommandLine.Option(names = { "-x",
+            "--extract" }, description = "Extract the layers into directories as they are downloaded, instead of saving the archives")
+    boolean extract;
+
     @Override
     public void run() {
         Map<String, RebuiltArtifact> builds = RebuildCompleter.createNames();
@@ -144,12 +149,12 @@ public class RebuiltDownloadCommand
                 if (selection == DownloadSelection.ALL || selection == DownloadSelection.SOURCE) {
                     System.out.println("Located layer " + layers.get(0).getDigest().getHash() + " to download sources");
                     writeLayer(registryClient, layers.get(0), Paths.get(targetDirectory.toString(), gav +
-                            "-source.tar.gz"));
+                            (extract ? "-source" : "-source.tar.gz")));
                 }
                 if (selection == DownloadSelection.ALL || selection == DownloadSelection.LOGS) {
                     System.out.println("Located layer " + layers.get(1).getDigest().getHash() + " to download logs");
                     writeLayer(registryClient, layers.get(1), Paths.get(targetDirectory.toString(), gav +
-                            "-logs.tar.gz"));
+                            (extract ? "-logs" : "-logs.tar.gz")));
                 }
             } else {
                 throw new RuntimeException("Unexpected manifest size");
@@ -165,6 +170,10 @@ public class RebuiltDownloadCommand
         Blob blob = registryClient.pullBlob(layer.getDigest(), s -> {
         }, s -> {
         });
+        if (extract) {
+            LayerExtractor.extractVerified(blob, targetPath);
+            return;
+        }
 
         try (OutputStream tarOutputStream = Files.newOutputStream(targetPath)) {
             blob.writeTo(tarOutputStream);
@@ -0,0 +1,188 @@
+package com.redhat.hacbs.common.images.ociclient;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+
+import com.google.cloud.tools.jib.blob.Blob;
+
+/**
+ * Extracts gzipped tar image layers as they are downloaded, without writing the archive to disk first.
+ * <p>
+ * The blob is written into a pipe by a separate thread, so downloading and digest verification (which Jib does as the
+ * blob is written) happen at the same time as inflation and extraction. The extraction only succeeds once the whole blob
+ * has been written and its digest has been checked, so callers should use {@link #extractVerified(Blob, Path)} if a
+ * partial extraction must not be seen.
+ */
+public class LayerExtractor {
+
+    static final int PIPE_SIZE = 1024 * 1024;
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private LayerExtractor() {
+    }
+
+    public static void extract(Blob blob, Path outputPath) throws IOException {
+        extract(blob, outputPath, name -> {
+        });
+    }
+
+    /**
+     * Extracts the blob, notifying the listener as each file is written
+     */
+    public static void extract(Blob blob, Path outputPath, EntryListener listener) throws IOException {
+        read(blob, in -> extract(in, outputPath, listener));
+    }
+
+    /**
+     * Extracts the blob into a temporary sibling of the target directory, which is only moved into place once the
+     * whole blob has been downloaded and its digest verified. An existing target directory is replaced.
+     */
+    public static void extractVerified(Blob blob, Path target) throws IOException {
+        Path parent = Files.createDirectories(target.toAbsolutePath().getParent());
+        Path tempPath = Files.createTempDirectory(parent, target.getFileName() + "-");
+        try {
+            extract(blob, tempPath);
+            if (Files.exists(target)) {
+                deleteRecursive(target);
+            }
+            Files.move(tempPath, target, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            if (Files.exists(tempPath)) {
+                deleteRecursive(tempPath);
+            }
+        }
+    }
+
+    /**
+     * Passes the contents of the blob to the consumer as they are downloaded. The consumer does not need to read the
+     * whole stream, but this only returns once the whole blob has been downloaded and verified.
+     */
+    public static void read(Blob blob, BlobConsumer consumer) throws IOException {
+        PipedInputStream in = new PipedInputStream(PIPE_SIZE);
+        PipedOutputStream out = new PipedOutputStream(in);
+        AtomicReference<Throwable> downloadFailure = new AtomicReference<>();
+        Thread download = new Thread(() -> {
+            try {
+                blob.writeTo(out);
+            } catch (Throwable t) {
+                downloadFailure.set(t);
+            } finally {
+                //only close once the failure has been recorded, so the reader sees it when the pipe ends early
+                try {
+                    out.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }, "layer-download");
+        download.setDaemon(true);
+        download.start();
+        try (in) {
+            try {
+                consumer.accept(in);
+                //read the gzip trailer and any padding, so the download can finish and verify the digest
+                in.transferTo(OutputStream.nullOutputStream());
+            } catch (IOException | RuntimeException e) {
+                //if the download failed that is the real cause
+                Throwable cause = downloadFailure.get();
+                if (cause != null) {
+                    e.addSuppressed(cause);
+                }
+                throw e;
+            }
+        } finally {
+            try {
+                download.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+        Throwable failure = downloadFailure.get();
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        } else if (failure != null) {
+            throw new IOException("Failed to download layer", failure);
+        }
+    }
+
+    /**
+     * Extracts a gzipped tar archive into the output directory
+     */
+    public static void extract(InputStream gzippedTar, Path outputPath) throws IOException {
+        extract(gzippedTar, outputPath, name -> {
+        });
+    }
+
+    public static void extract(InputStream gzippedTar, Path outputPath, EntryListener listener) throws IOException {
+        Path root = outputPath.toAbsolutePath().normalize();
+        try (GZIPInputStream inputStream = new GZIPInputStream(new NoCloseInputStream(gzippedTar), BUFFER_SIZE);
+                TarArchiveInputStream tar = new TarArchiveInputStream(inputStream)) {
+            for (TarArchiveEntry entry = tar.getNextEntry(); entry != null; entry = tar.getNextEntry()) {
+                Path path = root.resolve(entry.getName()).normalize();
+                if (!path.startsWith(root)) {
+                    throw new IOException("Layer entry " + entry.getName() + " is outside the output directory");
+                }
+                if (entry.isDirectory()) {
+                    Files.createDirectories(path);
+                } else {
+                    Files.createDirectories(path.getParent());
+                    Files.copy(tar, path, StandardCopyOption.REPLACE_EXISTING);
+                    listener.entryExtracted(root.relativize(path).toString().replace(path.getFileSystem().getSeparator(),
+                            "/"));
+                }
+            }
+        }
+    }
+
+    private static void deleteRecursive(Path file) throws IOException {
+        if (Files.isDirectory(file, LinkOption.NOFOLLOW_LINKS)) {
+            try (Stream<Path> files = Files.list(file)) {
+                for (var f : files.toList()) {
+                    deleteRecursive(f);
+                }
+            }
+        }
+        Files.delete(file);
+    }
+
+    public interface BlobConsumer {
+        void accept(InputStream data) throws IOException;
+    }
+
+    public interface EntryListener {
+        /**
+         * Called once a file has been completely written
+         *
+         * @param name The path of the file relative to the output directory, using {@code /} as the separator
+         */
+        void entryExtracted(String name);
+    }
+
+    /**
+     * The gzip stream is closed before the rest of the pipe is drained
+     */
+    private static final class NoCloseInputStream extends FilterInputStream {
+        NoCloseInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.redhat.hacbs.common.images.ociclient;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * A list of the files in an image layer and their sizes, stored in the layer itself as {@link #FILE_NAME}.
+ * <p>
+ * A client extracting the layer knows what files it contains as soon as the index has been extracted, and can tell that
+ * a file is missing without waiting for the whole layer. Jib sorts layer entries by path so the index is one of the
+ * first, other tools may put it anywhere in the layer.
+ * <p>
+ * The format is one {@code <size><tab><path>} line per file, where paths are relative to the directory containing the
+ * index and use {@code /} as the separator.
+ */
+public final class LayerIndex {
+
+    public static final String FILE_NAME = ".layer-index";
+
+    private final Map<String, Long> entries;
+
+    private LayerIndex(Map<String, Long> entries) {
+        this.entries = Collections.unmodifiableMap(entries);
+    }
+
+    /**
+     * Creates an index of all the files under the root directory, and writes it to the target file. The root directory
+     * is not modified, the index is added to the layer alongside its contents.
+     */
+    public static LayerIndex write(Path root, Path target) throws IOException {
+        Map<String, Long> entries = new TreeMap<>();
+        try (Stream<Path> files = Files.walk(root)) {
+            for (var file : (Iterable<Path>) files::iterator) {
+                if (Files.isRegularFile(file) && !file.equals(root.resolve(FILE_NAME)) && !file.equals(target)) {
+                    entries.put(root.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/"),
+                            Files.size(file));
+                }
+            }
+        }
+        try (Writer out = Files.newBufferedWriter(target, StandardCharsets.UTF_8)) {
+            for (var e : entries.entrySet()) {
+                out.write(e.getValue() + "\t" + e.getKey() + "\n");
+            }
+        }
+        return new LayerIndex(entries);
+    }
+
+    public static LayerIndex read(InputStream in) throws IOException {
+        Map<String, Long> entries = new TreeMap<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            int index = line.indexOf('\t');
+            if (index < 0) {
+                throw new IOException("Invalid layer index line: " + line);
+            }
+            try {
+                entries.put(line.substring(index + 1), Long.parseLong(line.substring(0, index)));
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid layer index line: " + line, e);
+            }
+        }
+        return new LayerIndex(entries);
+    }
+
+    public boolean contains(String path) {
+        return entries.containsKey(path);
+    }
+
+    /**
+     * @return The size of the file, or -1 if it is not in the layer
+     */
+    public long size(String path) {
+        return entries.getOrDefault(path, -1L);
+    }
+
+    public Map<String, Long> getEntries() {
+        return entries;
+    }
+}
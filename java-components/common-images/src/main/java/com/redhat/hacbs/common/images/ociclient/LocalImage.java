@@ -22,4 +22,9 @@ public interface LocalImage {
             Path outputPath,
             Consumer<Long> blobSizeListener,
             Consumer<Long> writtenByteCountListener) throws IOException;
+
+    /**
+     * Pulls and extracts a layer, notifying the listener as each file is extracted
+     */
+    void pullLayer(int layer, Path outputPath, LayerExtractor.EntryListener entryListener) throws IOException;
 }
@@ -1,22 +1,12 @@
 package com.redhat.hacbs.common.images.ociclient;
 
-import java.io.BufferedOutputStream;
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Base64;
 import java.util.Optional;
 import java.util.function.Consumer;
-import java.util.zip.GZIPInputStream;
 
-import org.apache.commons.compress.archivers.ArchiveEntry;
-import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
-import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
 import org.jboss.logging.Logger;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -48,6 +38,10 @@ public class OCIRegistryClient {
     private final String repository;
     private final boolean enableHttpAndInsecureFailover;
     private final Credential credential;
+    /**
+     * Shared by all pulls, so the connection pool and any bearer token are reused
+     */
+    private volatile RegistryClient registryClient;
 
     private static final Logger log = Logger.getLogger(OCIRegistryClient.class);
 
@@ -117,11 +111,7 @@ public class OCIRegistryClient {
             try {
                 return Optional.of(pullInternal(tagOrDigest, registryClient));
             } catch (RegistryUnauthorizedException e) {
-                //this is quay specific possibly?
-                //unfortunately we can't get the actual header
-                String wwwAuthenticate = "Bearer realm=\"https://" + registry + "/v2/auth\",service=\"" + registry
-                        + "\",scope=\"repository:" + owner + "/" + repository + ":pull\"";
-                registryClient.authPullByWwwAuthenticate(wwwAuthenticate);
+                authenticate(registryClient);
                 return Optional.of(pullInternal(tagOrDigest, registryClient));
             }
         } catch (Exception ex) {
@@ -161,6 +151,27 @@ public class OCIRegistryClient {
     }
 
     private RegistryClient getRegistryClient() {
+        RegistryClient ret = registryClient;
+        if (ret == null) {
+            synchronized (this) {
+                ret = registryClient;
+                if (ret == null) {
+                    ret = registryClient = createRegistryClient();
+                }
+            }
+        }
+        return ret;
+    }
+
+    private synchronized void authenticate(RegistryClient registryClient) throws RegistryException {
+        //this is quay specific possibly?
+        //unfortunately we can't get the actual header
+        String wwwAuthenticate = "Bearer realm=\"https://" + registry + "/v2/auth\",service=\"" + registry
+                + "\",scope=\"repository:" + owner + "/" + repository + ":pull\"";
+        registryClient.authPullByWwwAuthenticate(wwwAuthenticate);
+    }
+
+    private RegistryClient createRegistryClient() {
         RegistryClient.Factory factory = RegistryClient.factory(new EventHandlers.Builder().build(), registry,
                 owner + "/" + repository,
                 new FailoverHttpClient(enableHttpAndInsecureFailover, enableHttpAndInsecureFailover,
@@ -173,34 +184,6 @@ public class OCIRegistryClient {
         return factory.newRegistryClient();
     }
 
-    private void extractTarArchive(InputStream tarInput, String folder) throws IOException {
-        try (GZIPInputStream inputStream = new GZIPInputStream(tarInput);
-                TarArchiveInputStream tarArchiveInputStream = new TarArchiveInputStream(inputStream)) {
-
-            for (TarArchiveEntry entry = tarArchiveInputStream.getNextEntry(); entry != null; entry = tarArchiveInputStream
-                    .getNextEntry()) {
-                extractEntry(entry, tarArchiveInputStream, folder);
-            }
-        }
-    }
-
-    private void extractEntry(ArchiveEntry entry, InputStream tar, String folder) throws IOException {
-        final int bufferSize = 4096;
-        final String path = folder + File.separator + entry.getName();
-        if (entry.isDirectory()) {
-            new File(path).mkdirs();
-        } else {
-            int count;
-            byte[] data = new byte[bufferSize];
-            try (FileOutputStream os = new FileOutputStream(path);
-                    BufferedOutputStream dest = new BufferedOutputStream(os, bufferSize)) {
-                while ((count = tar.read(data, 0, bufferSize)) != -1) {
-                    dest.write(data, 0, count);
-                }
-            }
-        }
-    }
-
     /**
      * A local representation of a downloaded image.
      *
@@ -256,15 +239,17 @@ public class OCIRegistryClient {
             BuildableManifestTemplate.ContentDescriptorTemplate artifactsLayer = manifest.getLayers().get(layer);
 
             Blob blob = registryClient.pullBlob(artifactsLayer.getDigest(), blobSizeListener, writtenByteCountListener);
+            LayerExtractor.extract(blob, outputPath);
+        }
 
-            Path tarFile = Files.createFile(outputPath.resolve(digestHash + ".tar"));
-            try (OutputStream tarOutputStream = Files.newOutputStream(tarFile)) {
-                blob.writeTo(tarOutputStream);
-            }
-            try (InputStream tarInput = Files.newInputStream(tarFile)) {
-                extractTarArchive(tarInput, outputPath.toString());
-            }
-            tarFile.toFile().delete();
+        @Override
+        public void pullLayer(int layer, Path outputPath, LayerExtractor.EntryListener entryListener) throws IOException {
+            BuildableManifestTemplate.ContentDescriptorTemplate artifactsLayer = manifest.getLayers().get(layer);
+
+            Blob blob = registryClient.pullBlob(artifactsLayer.getDigest(), s -> {
+            }, s -> {
+            });
+            LayerExtractor.extract(blob, outputPath, entryListener);
         }
 
     }
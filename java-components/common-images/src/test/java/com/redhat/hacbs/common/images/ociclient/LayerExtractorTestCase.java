@@ -0,0 +1,148 @@
+package com.redhat.hacbs.common.images.ociclient;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.google.cloud.tools.jib.blob.Blob;
+import com.google.cloud.tools.jib.blob.BlobDescriptor;
+import com.google.cloud.tools.jib.blob.Blobs;
+
+public class LayerExtractorTestCase {
+
+    @TempDir
+    Path temp;
+
+    @Test
+    public void testExtract() throws Exception {
+        byte[] layer = layer(Map.of("a.txt", "a".getBytes(StandardCharsets.UTF_8),
+                "dir/b.txt", "b".getBytes(StandardCharsets.UTF_8)));
+        Path output = temp.resolve("output");
+        List<String> extracted = new ArrayList<>();
+        LayerExtractor.extract(Blobs.from(new ByteArrayInputStream(layer)), output, extracted::add);
+        Assertions.assertEquals("a", Files.readString(output.resolve("a.txt")));
+        Assertions.assertEquals("b", Files.readString(output.resolve("dir/b.txt")));
+        Assertions.assertEquals(List.of("a.txt", "dir/b.txt"), extracted.stream().sorted().toList());
+    }
+
+    @Test
+    public void testEntriesOutsideOutputRejected() throws Exception {
+        for (String name : List.of("../evil.txt", "dir/../../evil.txt")) {
+            byte[] layer = layer(Map.of(name, "evil".getBytes(StandardCharsets.UTF_8)));
+            Path output = temp.resolve("output");
+            IOException e = Assertions.assertThrows(IOException.class,
+                    () -> LayerExtractor.extract(new ByteArrayInputStream(layer), output));
+            Assertions.assertTrue(e.getMessage().contains("outside the output directory"), e.getMessage());
+            Assertions.assertFalse(Files.exists(temp.resolve("evil.txt")));
+        }
+    }
+
+    @Test
+    public void testDownloadFailure() throws Exception {
+        byte[] layer = layer(Map.of("large.bin", random(4 * LayerExtractor.PIPE_SIZE)));
+        IOException failure = new IOException("Connection reset");
+        Blob blob = new TestBlob(layer, layer.length / 2, failure);
+        Path target = temp.resolve("target");
+        IOException e = Assertions.assertThrows(IOException.class, () -> LayerExtractor.extractVerified(blob, target));
+        Assertions.assertTrue(e == failure || Arrays.asList(e.getSuppressed()).contains(failure), () -> e.toString());
+        assertNothingExtracted(target);
+    }
+
+    @Test
+    public void testExtractionFailureStopsDownload() throws Exception {
+        //the bad entry comes first, so the download is still writing into a full pipe when extraction fails
+        byte[] layer = layer(Map.of("../evil.txt", new byte[1], "large.bin", random(4 * LayerExtractor.PIPE_SIZE)));
+        Path target = temp.resolve("target");
+        Assertions.assertTimeoutPreemptively(Duration.ofSeconds(30), () -> Assertions.assertThrows(IOException.class,
+                () -> LayerExtractor.extractVerified(Blobs.from(new ByteArrayInputStream(layer)), target)));
+        assertNothingExtracted(target);
+    }
+
+    @Test
+    public void testDigestMismatch() throws Exception {
+        //the registry client only checks the digest once the whole blob has been written
+        byte[] layer = layer(Map.of("a.txt", "a".getBytes(StandardCharsets.UTF_8)));
+        IOException failure = new IOException("Unexpected blob digest");
+        Path target = temp.resolve("target");
+        IOException e = Assertions.assertThrows(IOException.class,
+                () -> LayerExtractor.extractVerified(new TestBlob(layer, layer.length, failure), target));
+        Assertions.assertSame(failure, e);
+        assertNothingExtracted(target);
+    }
+
+    @Test
+    public void testExtractVerifiedReplacesTarget() throws Exception {
+        Path target = temp.resolve("target");
+        Files.createDirectories(target.resolve("old"));
+        Files.writeString(target.resolve("old/stale.txt"), "stale");
+        byte[] layer = layer(Map.of("a.txt", "a".getBytes(StandardCharsets.UTF_8)));
+        LayerExtractor.extractVerified(Blobs.from(new ByteArrayInputStream(layer)), target);
+        Assertions.assertEquals("a", Files.readString(target.resolve("a.txt")));
+        Assertions.assertFalse(Files.exists(target.resolve("old")));
+        try (Stream<Path> files = Files.list(temp)) {
+            Assertions.assertEquals(List.of(target), files.toList());
+        }
+    }
+
+    private void assertNothingExtracted(Path target) throws IOException {
+        Assertions.assertFalse(Files.exists(target));
+        try (Stream<Path> files = Files.list(temp)) {
+            Assertions.assertEquals(List.of(), files.toList(), "temporary directory was not removed");
+        }
+    }
+
+    private static byte[] random(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+
+    private static byte[] layer(Map<String, byte[]> files) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (TarArchiveOutputStream tar = new TarArchiveOutputStream(new GZIPOutputStream(out))) {
+            for (var name : files.keySet().stream().sorted().toList()) {
+                TarArchiveEntry entry = new TarArchiveEntry(name);
+                entry.setSize(files.get(name).length);
+                tar.putArchiveEntry(entry);
+                tar.write(files.get(name));
+                tar.closeArchiveEntry();
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes the first {@code length} bytes of the data, then fails
+     */
+    record TestBlob(byte[] data, int length, IOException failure) implements Blob {
+
+        @Override
+        public BlobDescriptor writeTo(OutputStream outputStream) throws IOException {
+            outputStream.write(data, 0, length);
+            throw failure;
+        }
+
+        @Override
+        public boolean isRetryable() {
+            return false;
+        }
+    }
+}
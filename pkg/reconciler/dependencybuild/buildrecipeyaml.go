@@ -627,6 +627,7 @@ echo -n "$IMGDIGEST" >> $(results.%s.path)
 			{Name: PipelineResultDeployedResources},
 			{Name: PipelineResultPassedVerification},
 			{Name: PipelineResultVerificationResult},
+			{Name: PipelineResultVerificationTimings},
 		},
 		Steps: []tektonpipeline.Step{
 			{
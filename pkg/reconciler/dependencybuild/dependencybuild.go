@@ -61,6 +61,7 @@ const (
 	PipelineResultContaminants        = "CONTAMINANTS"
 	PipelineResultDeployedResources   = "DEPLOYED_RESOURCES"
 	PipelineResultVerificationResult  = "VERIFICATION_RESULTS"
+	PipelineResultVerificationTimings = "VERIFICATION_TIMINGS"
 	PipelineResultPassedVerification  = "PASSED_VERIFICATION" //#nosec
 	PipelineResultGitArchive          = "GIT_ARCHIVE"
 